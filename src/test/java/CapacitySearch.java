@@ -0,0 +1,148 @@
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.Stream;
+
+// Searches for the highest throughput a simulation can sustain while its p99 stays under a target.
+// Each probe runs the simulation in its own JVM with PROFILE=throttle at a given TARGET_RPS, reads the run's
+// global_stats.json and bisects between CAPACITY_MIN_RPS and CAPACITY_MAX_RPS.
+//
+// Runtime parameters (any other upper case system property, e.g. STUB, is passed on to the simulation):
+//   SIMULATION            simulation class (default videogamedb.simulation.VideoGameDbSimulations)
+//   P99_TARGET            p99 response time to stay under, in ms (default 500)
+//   MAX_ERROR_PERCENT     highest acceptable percentage of KOs (default 1)
+//   CAPACITY_MIN_RPS      lower bound of the search, assumed sustainable (default 1)
+//   CAPACITY_MAX_RPS      upper bound of the search (default 1000)
+//   CAPACITY_PRECISION    stop when the bounds are within this fraction of each other (default 0.05)
+//   TEST_DURATION         seconds each probe holds its target for (default 30)
+//   RAMP_DURATION         seconds each probe takes to reach its target (default 5)
+//   USERS_PER_RPS         users injected per requests/sec of target, so the throttle is always the limit (default 5)
+public class CapacitySearch {
+
+  private static final String SIMULATION = System.getProperty("SIMULATION", "videogamedb.simulation.VideoGameDbSimulations");
+  private static final double P99_TARGET = Double.parseDouble(System.getProperty("P99_TARGET", "500"));
+  private static final double MAX_ERROR_PERCENT = Double.parseDouble(System.getProperty("MAX_ERROR_PERCENT", "1"));
+  private static final int MIN_RPS = Integer.getInteger("CAPACITY_MIN_RPS", 1);
+  private static final int MAX_RPS = Integer.getInteger("CAPACITY_MAX_RPS", 1000);
+  private static final double PRECISION = Double.parseDouble(System.getProperty("CAPACITY_PRECISION", "0.05"));
+  private static final int TEST_DURATION = Integer.getInteger("TEST_DURATION", 30);
+  private static final int RAMP_DURATION = Integer.getInteger("RAMP_DURATION", 5);
+  private static final int USERS_PER_RPS = Integer.getInteger("USERS_PER_RPS", 5);
+
+  public static void main(String[] args) throws IOException, InterruptedException {
+    Path searchDirectory = IDEPathHelper.resultsDirectory.resolve("capacity-search-" + System.currentTimeMillis());
+    List<Probe> probes = new ArrayList<>();
+
+    int lo = MIN_RPS;
+    int hi = MAX_RPS;
+    Probe top = probe(hi, searchDirectory);
+    probes.add(top);
+    if (top.sustainable()) {
+      lo = hi; // Even the upper bound is fine, raise CAPACITY_MAX_RPS to search further
+    }
+    while (hi - lo > Math.max(1, lo * PRECISION)) {
+      int mid = lo + (hi - lo) / 2;
+      Probe probe = probe(mid, searchDirectory);
+      probes.add(probe);
+      if (probe.sustainable()) {
+        lo = mid;
+      } else {
+        hi = mid;
+      }
+    }
+
+    System.out.println();
+    System.out.printf("%10s %12s %10s %8s %s%n", "target rps", "achieved rps", "p99 ms", "KO %", "sustainable");
+    probes.sort(Comparator.comparingInt(Probe::targetRps));
+    for (Probe probe : probes) {
+      System.out.printf("%10d %12.1f %10.0f %8.2f %s%n", probe.targetRps, probe.achievedRps, probe.p99, probe.errorPercent, probe.sustainable());
+    }
+    System.out.printf("Maximum sustainable throughput of %s with p99 < %.0f ms: %d requests/sec%n", SIMULATION, P99_TARGET, lo);
+  }
+
+  private static Probe probe(int targetRps, Path searchDirectory) throws IOException, InterruptedException {
+    Path resultsDirectory = searchDirectory.resolve("rps-" + targetRps);
+    Files.createDirectories(resultsDirectory);
+
+    List<String> command = new ArrayList<>();
+    command.add(Path.of(System.getProperty("java.home"), "bin", "java").toString());
+    command.add("-cp");
+    command.add(System.getProperty("java.class.path"));
+    System.getProperties().stringPropertyNames().stream()
+      .filter(name -> name.matches("[A-Z][A-Z0-9_]*"))
+      .forEach(name -> command.add("-D" + name + "=" + System.getProperty(name)));
+    command.add("-DPROFILE=throttle");
+    command.add("-DTARGET_RPS=" + targetRps);
+    command.add("-DUSERS=" + Math.max(1, targetRps * USERS_PER_RPS));
+    command.add("-DTEST_DURATION=" + TEST_DURATION);
+    command.add("-DRAMP_DURATION=" + RAMP_DURATION);
+    command.add("io.gatling.app.Gatling");
+    command.add("--simulation");
+    command.add(SIMULATION);
+    command.add("--results-folder");
+    command.add(resultsDirectory.toString());
+    command.add("--resources-folder");
+    command.add(IDEPathHelper.mavenResourcesDirectory.toString());
+
+    System.out.printf("Probing %d requests/sec...%n", targetRps);
+    Process process = new ProcessBuilder(command)
+      .redirectErrorStream(true)
+      .redirectOutput(resultsDirectory.resolve("gatling-output.txt").toFile())
+      .start();
+    int exitCode = process.waitFor();
+
+    Optional<Path> stats = globalStats(resultsDirectory);
+    if (exitCode != 0 || stats.isEmpty()) {
+      System.out.printf("  run failed (exit code %d), see %s%n", exitCode, resultsDirectory.resolve("gatling-output.txt"));
+      return new Probe(targetRps, 0, Double.MAX_VALUE, 100);
+    }
+    JsonNode json = new ObjectMapper().readTree(stats.get().toFile());
+    double total = json.at("/numberOfRequests/total").asDouble();
+    double ko = json.at("/numberOfRequests/ko").asDouble();
+    Probe probe = new Probe(targetRps,
+      json.at("/meanNumberOfRequestsPerSecond/total").asDouble(),
+      json.at("/percentiles4/total").asDouble(), // percentiles4 is the 99th percentile with the default gatling.conf
+      total == 0 ? 100 : 100 * ko / total);
+    System.out.printf("  achieved %.1f requests/sec, p99 %.0f ms, %.2f%% KO%n", probe.achievedRps, probe.p99, probe.errorPercent);
+    return probe;
+  }
+
+  private static Optional<Path> globalStats(Path resultsDirectory) throws IOException {
+    try (Stream<Path> files = Files.walk(resultsDirectory, 3)) {
+      return files.filter(path -> path.endsWith("js" + File.separator + "global_stats.json")).findFirst();
+    }
+  }
+
+  private static final class Probe {
+    private final int targetRps;
+    private final double achievedRps;
+    private final double p99;
+    private final double errorPercent;
+
+    Probe(int targetRps, double achievedRps, double p99, double errorPercent) {
+      this.targetRps = targetRps;
+      this.achievedRps = achievedRps;
+      this.p99 = p99;
+      this.errorPercent = errorPercent;
+    }
+
+    int targetRps() {
+      return targetRps;
+    }
+
+    // The throttle must actually have been reached, otherwise the injector or the users ran out before the server did.
+    // The mean includes the linear ramp to the target, so compare against the mean a perfect run would have had.
+    boolean sustainable() {
+      double expectedRps = targetRps * (RAMP_DURATION / 2.0 + TEST_DURATION) / (RAMP_DURATION + TEST_DURATION);
+      return p99 <= P99_TARGET && errorPercent <= MAX_ERROR_PERCENT && achievedRps >= expectedRps * 0.9;
+    }
+  }
+}
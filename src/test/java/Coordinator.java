@@ -0,0 +1,281 @@
+import io.gatling.app.Gatling;
+import io.gatling.core.config.GatlingPropertiesBuilder;
+import videogamedb.profiles.LoadProfile;
+import videogamedb.stub.Latency;
+import videogamedb.stub.VideoGameDbStub;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintWriter;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.stream.Stream;
+
+// Runs one simulation from several injector JVMs at once, for loads a single JVM can't generate, and merges the results.
+// The coordinator:
+//   1. splits USERS, TARGET_RPS and STEP_USERS evenly across the injectors (every other setting is passed on as is).
+//      USERS must be set, as each simulation has its own default for it; TARGET_RPS and STEP_USERS are only read by
+//      LoadProfile, so its defaults are split when they aren't set, rather than each injector running all of them.
+//      Each injector must get at least 1 of USERS, and of TARGET_RPS or STEP_USERS when the PROFILE uses them,
+//   2. starts the injectors, as local processes or over ssh, each running Gatling with --no-reports,
+//   3. holds them at a barrier (see videogamedb.distributed.StartBarrier) until all of them are ready, then releases
+//      them to start injecting at the same wall clock time,
+//   4. collects every injector's simulation.log into one run folder and generates a single report from all of them.
+// The report is built from the raw records of every injector, so its percentiles are those of the whole run rather
+// than an average of per-injector percentiles.
+//
+// With STUB=true the coordinator starts one stub and points every injector at it, so a distributed run can be tried
+// out locally: mvn -B test-compile exec:java -Dexec.mainClass=Coordinator -Dexec.classpathScope=test -DINJECTORS=3 -DSTUB=true
+//
+// Runtime parameters (any other upper case system property, e.g. PROFILE or TEST_DURATION, is passed on to the injectors):
+//   SIMULATION         simulation class (default videogamedb.simulation.VideoGameDbSimulations)
+//   INJECTORS          number of local injector processes (default 2), ignored when INJECTOR_HOSTS is set
+//   INJECTOR_HOSTS     comma separated ssh hosts to run one injector on each, instead of local processes
+//   INJECTOR_JVM_OPTS  space separated JVM options for the injectors, e.g. -Xmx4g (default none)
+//   REMOTE_JAVA        java executable on the remote hosts (default java)
+//   REMOTE_CLASSPATH   classpath on the remote hosts (default the coordinator's, i.e. the same checkout path everywhere)
+//   REMOTE_RESULTS     results folder on the remote hosts (default /tmp/gatling-injector)
+//   COORDINATOR_HOST   address the injectors reach the coordinator and stub on (default 127.0.0.1, or this host's name
+//                      with INJECTOR_HOSTS)
+//   COORDINATOR_PORT   port of the start barrier (default any free port)
+//   START_DELAY        ms between the last injector becoming ready and the common start, so all of them receive it in time
+//                      (default 2000)
+public class Coordinator {
+
+  private static final Set<String> SPLIT_PROPERTIES = Set.of("USERS", "TARGET_RPS", "STEP_USERS");
+  private static final Map<String, Integer> SPLIT_DEFAULTS = Map.of(
+    "TARGET_RPS", LoadProfile.DEFAULT_TARGET_RPS,
+    "STEP_USERS", LoadProfile.DEFAULT_STEP_USERS);
+  private static final Set<String> COORDINATOR_PROPERTIES = Set.of("SIMULATION", "INJECTORS", "INJECTOR_HOSTS",
+    "INJECTOR_JVM_OPTS", "REMOTE_JAVA", "REMOTE_CLASSPATH", "REMOTE_RESULTS", "COORDINATOR_HOST", "COORDINATOR_PORT",
+    "START_DELAY", "COORDINATOR", "INJECTOR_ID", "STUB_HOST");
+
+  private static final String SIMULATION = System.getProperty("SIMULATION", "videogamedb.simulation.VideoGameDbSimulations");
+  private static final String INJECTOR_HOSTS = System.getProperty("INJECTOR_HOSTS", "");
+  private static final String INJECTOR_JVM_OPTS = System.getProperty("INJECTOR_JVM_OPTS", "");
+  private static final String REMOTE_JAVA = System.getProperty("REMOTE_JAVA", "java");
+  private static final String REMOTE_CLASSPATH = System.getProperty("REMOTE_CLASSPATH", System.getProperty("java.class.path"));
+  private static final String REMOTE_RESULTS = System.getProperty("REMOTE_RESULTS", "/tmp/gatling-injector");
+  private static final int COORDINATOR_PORT = Integer.getInteger("COORDINATOR_PORT", 0);
+  private static final long START_DELAY = Long.getLong("START_DELAY", 2000);
+  private static final int BARRIER_TIMEOUT_MS = 5 * 60 * 1000;
+
+  public static void main(String[] args) throws Exception {
+    List<String> hosts = INJECTOR_HOSTS.isBlank() ? List.of() : Arrays.asList(INJECTOR_HOSTS.trim().split("\\s*,\\s*"));
+    boolean remote = !hosts.isEmpty();
+    int injectors = remote ? hosts.size() : Integer.getInteger("INJECTORS", 2);
+    if (injectors < 1) {
+      throw new IllegalArgumentException("INJECTORS must be at least 1: " + injectors);
+    }
+    if (System.getProperty("USERS") == null) {
+      throw new IllegalArgumentException("USERS must be set for a distributed run, it is split across the injectors");
+    }
+    LoadProfile.Shape shape = LoadProfile.Shape.valueOf(System.getProperty("PROFILE", "ramp").toUpperCase(Locale.ROOT));
+    requireShare("USERS", injectors);
+    if (shape == LoadProfile.Shape.THROTTLE || shape == LoadProfile.Shape.SPIKE) {
+      requireShare("TARGET_RPS", injectors);
+    } else if (shape == LoadProfile.Shape.STEPPED) {
+      requireShare("STEP_USERS", injectors);
+    }
+    String coordinatorHost = System.getProperty("COORDINATOR_HOST",
+      remote ? InetAddress.getLocalHost().getCanonicalHostName() : "127.0.0.1");
+
+    String runName = "distributed-" + System.currentTimeMillis();
+    Path runDirectory = IDEPathHelper.resultsDirectory.resolve(runName);
+    Files.createDirectories(runDirectory);
+
+    VideoGameDbStub stub = VideoGameDbStub.ENABLED
+      ? VideoGameDbStub.start(Integer.parseInt(System.getProperty("STUB_PORT", "8089")),
+        Latency.parse(System.getProperty("STUB_LATENCY", "none")),
+        Double.parseDouble(System.getProperty("STUB_ERROR_RATE", "0")),
+        Long.parseLong(System.getProperty("STUB_TOKEN_TTL", "3600")))
+      : null;
+
+    try (ServerSocket barrier = new ServerSocket(COORDINATOR_PORT)) {
+      String coordinator = coordinatorHost + ":" + barrier.getLocalPort();
+      List<Process> processes = new ArrayList<>();
+      for (int i = 0; i < injectors; i++) {
+        Path injectorDirectory = runDirectory.resolve("injector-" + i);
+        Files.createDirectories(injectorDirectory);
+        List<String> command = remote
+          ? remoteCommand(hosts.get(i), injectorCommand(i, injectors, coordinator, coordinatorHost, stub, REMOTE_JAVA,
+          REMOTE_CLASSPATH, REMOTE_RESULTS + "/" + runName))
+          : injectorCommand(i, injectors, coordinator, coordinatorHost, stub,
+          Path.of(System.getProperty("java.home"), "bin", "java").toString(), System.getProperty("java.class.path"),
+          injectorDirectory.toString());
+        System.out.printf("Starting injector %d%s%n", i, remote ? " on " + hosts.get(i) : "");
+        processes.add(new ProcessBuilder(command)
+          .redirectErrorStream(true)
+          .redirectOutput(injectorDirectory.resolve("gatling-output.txt").toFile())
+          .start());
+      }
+
+      for (Process process : processes) {
+        process.onExit().thenAccept(exited -> {
+          if (exited.exitValue() != 0) {
+            closeQuietly(barrier); // Don't leave the others waiting at the barrier for an injector that will never arrive
+          }
+        });
+      }
+      Thread releaser = new Thread(() -> release(barrier, injectors), "start-barrier");
+      releaser.setDaemon(true);
+      releaser.start();
+
+      boolean failed = false;
+      for (int i = 0; i < injectors; i++) {
+        int exitCode = processes.get(i).waitFor();
+        if (exitCode != 0) {
+          System.out.printf("Injector %d failed (exit code %d), see %s%n", i, exitCode,
+            runDirectory.resolve("injector-" + i).resolve("gatling-output.txt"));
+          failed = true;
+        } else {
+          System.out.printf("Injector %d finished%n", i);
+        }
+      }
+      if (failed) {
+        processes.forEach(Process::destroy);
+        System.exit(1);
+      }
+    } finally {
+      if (stub != null) {
+        stub.close();
+      }
+    }
+
+    for (int i = 0; i < injectors; i++) {
+      Path target = runDirectory.resolve("simulation-" + i + ".log");
+      if (remote) {
+        String source = hosts.get(i) + ":" + REMOTE_RESULTS + "/" + runName + "/*/simulation.log";
+        int exitCode = new ProcessBuilder("scp", "-q", source, target.toString()).inheritIO().start().waitFor();
+        if (exitCode != 0) {
+          throw new IOException("Failed to copy " + source);
+        }
+      } else {
+        Path log = simulationLog(runDirectory.resolve("injector-" + i))
+          .orElseThrow(() -> new IOException("Injector produced no simulation.log"));
+        Files.move(log, target, StandardCopyOption.REPLACE_EXISTING); // Moved, not copied: the report reads every .log under the run folder
+      }
+    }
+
+    // Gatling reads every .log file of a run folder, so this builds one report from the records of all the injectors
+    GatlingPropertiesBuilder props = new GatlingPropertiesBuilder()
+      .resourcesDirectory(IDEPathHelper.mavenResourcesDirectory.toString())
+      .resultsDirectory(IDEPathHelper.resultsDirectory.toString())
+      .binariesDirectory(IDEPathHelper.mavenBinariesDirectory.toString())
+      .reportsOnly(runName);
+    Gatling.fromMap(props.build());
+    System.out.printf("Merged report of %d injectors: %s%n", injectors, runDirectory.resolve("index.html"));
+  }
+
+  private static List<String> injectorCommand(int index, int injectors, String coordinator, String coordinatorHost,
+                                              VideoGameDbStub stub, String java, String classpath, String resultsFolder) {
+    List<String> command = new ArrayList<>();
+    command.add(java);
+    if (!INJECTOR_JVM_OPTS.isBlank()) {
+      command.addAll(Arrays.asList(INJECTOR_JVM_OPTS.trim().split("\\s+")));
+    }
+    command.add("-cp");
+    command.add(classpath);
+    System.getProperties().stringPropertyNames().stream()
+      .filter(name -> name.matches("[A-Z][A-Z0-9_]*"))
+      .filter(name -> !COORDINATOR_PROPERTIES.contains(name) && !SPLIT_PROPERTIES.contains(name))
+      .forEach(name -> command.add("-D" + name + "=" + System.getProperty(name)));
+    for (String name : SPLIT_PROPERTIES) {
+      String total = System.getProperty(name);
+      command.add("-D" + name + "=" + share(total != null ? Integer.parseInt(total) : SPLIT_DEFAULTS.get(name), index, injectors));
+    }
+    if (stub != null) {
+      command.add("-DSTUB_HOST=" + coordinatorHost);
+      command.add("-DSTUB_PORT=" + stub.port());
+    }
+    command.add("-DCOORDINATOR=" + coordinator);
+    command.add("-DINJECTOR_ID=" + index);
+    command.add("io.gatling.app.Gatling");
+    command.add("--simulation");
+    command.add(SIMULATION);
+    command.add("--results-folder");
+    command.add(resultsFolder);
+    command.add("--no-reports");
+    return command;
+  }
+
+  // The injector command run over ssh, quoting each argument for the remote shell
+  private static List<String> remoteCommand(String host, List<String> command) {
+    StringBuilder remote = new StringBuilder();
+    for (String argument : command) {
+      remote.append(remote.length() == 0 ? "" : " ").append('\'').append(argument.replace("'", "'\\''")).append('\'');
+    }
+    return List.of("ssh", "-o", "BatchMode=yes", host, remote.toString());
+  }
+
+  // Fails when the total of a split property leaves an injector with none of it: it would run 0 users, or throttle to
+  // 0 requests/sec, which LoadProfile takes as given
+  private static void requireShare(String name, int injectors) {
+    String total = System.getProperty(name);
+    int value = total != null ? Integer.parseInt(total) : SPLIT_DEFAULTS.get(name);
+    if (value < injectors) {
+      throw new IllegalArgumentException(String.format("%s is %d%s, fewer than the %d injectors it is split across: "
+        + "set it to at least %d or use fewer injectors", name, value, total != null ? "" : " by default", injectors, injectors));
+    }
+  }
+
+  // Splits total as evenly as possible, the first injectors taking one more when it doesn't divide
+  static int share(int total, int index, int injectors) {
+    return total / injectors + (index < total % injectors ? 1 : 0);
+  }
+
+  // Waits for every injector to report ready, then tells all of them to start at the same time
+  private static void release(ServerSocket barrier, int injectors) {
+    List<Socket> ready = new ArrayList<>();
+    try {
+      barrier.setSoTimeout(BARRIER_TIMEOUT_MS);
+      while (ready.size() < injectors) {
+        Socket socket = barrier.accept();
+        String line = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.US_ASCII)).readLine();
+        System.out.printf("Injector %s ready (%d/%d)%n", line == null ? "?" : line.replace("READY ", ""), ready.size() + 1, injectors);
+        ready.add(socket);
+      }
+      long startAt = System.currentTimeMillis() + START_DELAY;
+      for (Socket socket : ready) {
+        new PrintWriter(socket.getOutputStream(), true, StandardCharsets.US_ASCII).println("GO " + startAt);
+      }
+      System.out.printf("All %d injectors ready, starting in %d ms%n", injectors, START_DELAY);
+    } catch (SocketTimeoutException e) {
+      System.err.printf("Only %d of %d injectors became ready within %d s%n", ready.size(), injectors, BARRIER_TIMEOUT_MS / 1000);
+    } catch (IOException e) {
+      if (!barrier.isClosed()) {
+        System.err.println("Start barrier failed: " + e);
+      }
+    } finally {
+      ready.forEach(Coordinator::closeQuietly); // Each injector has its start time by now, or will fail on its own
+    }
+  }
+
+  private static void closeQuietly(AutoCloseable closeable) {
+    try {
+      closeable.close();
+    } catch (Exception ignored) {
+      // Nothing left to do with it
+    }
+  }
+
+  private static Optional<Path> simulationLog(Path injectorDirectory) throws IOException {
+    try (Stream<Path> files = Files.walk(injectorDirectory, 2)) {
+      return files.filter(path -> path.getFileName().toString().equals("simulation.log")).findFirst();
+    }
+  }
+}
@@ -1,9 +1,39 @@
 import io.gatling.app.Gatling;
+import io.gatling.app.Gatling$;
+import io.gatling.app.SimulationClass;
 import io.gatling.core.config.GatlingPropertiesBuilder;
+import scala.Option;
+import videogamedb.tuning.TuningProfile;
 
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+// Runs a simulation from the IDE or a script.
+// Without a simulation class, Gatling loads every class in target/test-classes to list the simulations and asks
+// which one to run. With one, as the first argument or -DSIMULATION, the class is handed to Gatling directly: nothing
+// is scanned, no other simulation is loaded, and the JVM exits with Gatling's status code, e.g. for CI:
+//   java -cp <test classpath> Engine videogamedb.simulation.VideoGameDbSimulations --no-reports
+// Any further arguments are passed on to Gatling. See StartupBenchmark for what each mode costs, with and without a
+// class data sharing archive.
+//
+// Runtime parameters:
+//   SIMULATION  simulation class to run directly, when there is no argument (default unset, scan and ask)
 public class Engine {
 
   public static void main(String[] args) {
+    TuningProfile.fromSystemProperties().selectConfigFile(); // The engine settings of -DTUNING, read when Gatling starts
+
+    String simulation = args.length > 0 && !args[0].startsWith("-") ? args[0] : System.getProperty("SIMULATION");
+    if (simulation != null) {
+      List<String> gatlingArgs = new ArrayList<>(List.of(
+        "--results-folder", IDEPathHelper.resultsDirectory.toString(),
+        "--resources-folder", IDEPathHelper.mavenResourcesDirectory.toString()));
+      gatlingArgs.addAll(Arrays.asList(args).subList(args.length > 0 && args[0].equals(simulation) ? 1 : 0, args.length));
+      System.exit(runDirectly(simulation, gatlingArgs.toArray(new String[0])));
+    }
+
     GatlingPropertiesBuilder props = new GatlingPropertiesBuilder()
       .resourcesDirectory(IDEPathHelper.mavenResourcesDirectory.toString())
       .resultsDirectory(IDEPathHelper.resultsDirectory.toString())
@@ -11,4 +41,35 @@ public class Engine {
 
     Gatling.fromMap(props.build());
   }
+
+  // Gatling only takes an already selected simulation class through a private entry point, the one its own sbt
+  // integration uses for Scala simulations. If a Gatling upgrade moves it, fall back to naming the class, which scans.
+  private static int runDirectly(String simulation, String[] gatlingArgs) {
+    Class<? extends io.gatling.javaapi.core.Simulation> simulationClass;
+    try {
+      simulationClass = Class.forName(simulation, false, Engine.class.getClassLoader()) // Not initialised, its statics wait for Gatling
+        .asSubclass(io.gatling.javaapi.core.Simulation.class);
+    } catch (ClassNotFoundException e) {
+      throw new IllegalArgumentException("No simulation class " + simulation + " on the classpath", e);
+    }
+
+    Method fromArgs;
+    try {
+      fromArgs = Gatling$.class.getDeclaredMethod("fromArgs", String[].class, Option.class);
+      fromArgs.setAccessible(true);
+    } catch (NoSuchMethodException e) {
+      List<String> scanningArgs = new ArrayList<>(Arrays.asList(gatlingArgs));
+      scanningArgs.addAll(List.of("--simulation", simulation, "--binaries-folder", IDEPathHelper.mavenBinariesDirectory.toString()));
+      Gatling.main(scanningArgs.toArray(new String[0])); // Exits the JVM
+      return 0;
+    }
+
+    @SuppressWarnings("unchecked")
+    Class<io.gatling.javaapi.core.Simulation> forced = (Class<io.gatling.javaapi.core.Simulation>) simulationClass;
+    try {
+      return (Integer) fromArgs.invoke(Gatling$.MODULE$, gatlingArgs, Option.apply(new SimulationClass.Java(forced)));
+    } catch (ReflectiveOperationException e) {
+      throw new IllegalStateException("Couldn't start Gatling", e);
+    }
+  }
 }
@@ -4,6 +4,8 @@ import scala.Option;
 
 import java.nio.file.Path;
 
+// For recordings with many connections or hosts, or long ones, see videogamedb.recorder.CaptureProxy: it records a HAR
+// for videogamedb.har.HarConverter, with the same CA.
 public class Recorder {
   public static void main(String[] args) {
     RecorderPropertiesBuilder props = new RecorderPropertiesBuilder()
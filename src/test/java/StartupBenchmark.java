@@ -0,0 +1,192 @@
+import videogamedb.stub.Latency;
+import videogamedb.stub.VideoGameDbStub;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+// Measures how long a short simulation run takes to start, the cost that dominates CI jobs made of many short runs.
+// Each launch mode runs the simulation STARTUP_RUNS times in fresh JVMs against a stub started here, timing from the
+// JVM's launch to Gatling's "Simulation ... started" line, and to the JVM's exit:
+//   scan    io.gatling.app.Gatling --simulation, as gatling:test runs it: every class in target/test-classes is
+//           loaded to find the simulations before the named one is picked
+//   direct  Engine with the simulation class, which hands the class to Gatling without scanning
+//   appcds  direct, with a class data sharing archive of the classes one extra run loaded first. The JVM only
+//           archives classes from jars, so our compiled classes are jarred first, and target/test-classes stays at the
+//           end of the classpath for the resources. The archive is dumped from the list of the loaded classes rather
+//           than with -XX:ArchiveClassesAtExit, and without the lambda proxies: both crash Java 17.0.9 with ours
+//   mvn -B test-compile exec:java -Dexec.mainClass=StartupBenchmark -Dexec.classpathScope=test
+//
+// Runtime parameters (any other upper case system property is passed on to the simulation):
+//   SIMULATION     simulation class (default videogamedb.simulation.VideoGameDbSimulations)
+//   STARTUP_RUNS   runs of each mode (default 5)
+//   STARTUP_MODES  modes to compare (default scan,direct,appcds)
+//   STUB_PORT      port of the stub (default 8089)
+public class StartupBenchmark {
+
+  private static final String SIMULATION = System.getProperty("SIMULATION", "videogamedb.simulation.VideoGameDbSimulations");
+  private static final int RUNS = Integer.getInteger("STARTUP_RUNS", 5);
+  private static final List<String> MODES = Arrays.asList(System.getProperty("STARTUP_MODES", "scan,direct,appcds").split(","));
+  private static final int STUB_PORT = Integer.getInteger("STUB_PORT", 8089);
+
+  public static void main(String[] args) throws IOException, InterruptedException {
+    Path benchmarkDirectory = IDEPathHelper.resultsDirectory.resolve("startup-benchmark-" + System.currentTimeMillis());
+    Files.createDirectories(benchmarkDirectory);
+    Path archive = benchmarkDirectory.resolve("engine.jsa");
+    String archivableClasspath = null;
+
+    List<String> rows = new ArrayList<>();
+    try (VideoGameDbStub stub = VideoGameDbStub.start(STUB_PORT, Latency.parse("none"), 0, 3600)) {
+      for (String mode : MODES) {
+        mode = mode.trim();
+        if (mode.equals("appcds")) {
+          archivableClasspath = archivableClasspath(benchmarkDirectory.resolve("test-classes.jar"));
+          dumpArchive(archivableClasspath, archive, benchmarkDirectory, stub.port());
+        }
+        long[] started = new long[RUNS];
+        long[] total = new long[RUNS];
+        for (int i = 0; i < RUNS; i++) {
+          List<String> command;
+          switch (mode) {
+            case "scan":
+              command = command(null, System.getProperty("java.class.path"), "io.gatling.app.Gatling", stub.port());
+              command.addAll(List.of("--simulation", SIMULATION, "--binaries-folder", IDEPathHelper.mavenBinariesDirectory.toString()));
+              break;
+            case "direct":
+              command = command(null, System.getProperty("java.class.path"), "Engine", stub.port());
+              break;
+            case "appcds":
+              command = command("-XX:SharedArchiveFile=" + archive, archivableClasspath, "Engine", stub.port());
+              break;
+            default:
+              throw new IllegalArgumentException("Unknown startup mode " + mode + ", expected scan, direct or appcds");
+          }
+          long[] times = launch(command, benchmarkDirectory.resolve(mode + "-" + i + ".txt"));
+          started[i] = times[0];
+          total[i] = times[1];
+          System.out.printf("  %s run %d: started after %d ms, exited after %d ms%n", mode, i + 1, started[i], total[i]);
+        }
+        Arrays.sort(started);
+        Arrays.sort(total);
+        rows.add(String.format("%-8s %12d %12d %12d %12d", mode, started[RUNS / 2], started[0], total[RUNS / 2], total[0]));
+      }
+    }
+
+    try (PrintWriter out = new PrintWriter(Files.newBufferedWriter(benchmarkDirectory.resolve("comparison.txt")))) {
+      String header = String.format("%-8s %12s %12s %12s %12s", "mode", "start p50 ms", "start min ms", "exit p50 ms", "exit min ms");
+      System.out.println();
+      System.out.println(header);
+      out.println(header);
+      for (String row : rows) {
+        System.out.println(row);
+        out.println(row);
+      }
+    }
+    System.out.printf("Output of every run in %s%n", benchmarkDirectory);
+  }
+
+  // A two second run of a single user: long enough to start, short enough that starting is most of it
+  private static List<String> command(String jvmOption, String classpath, String mainClass, int stubPort) {
+    List<String> command = new ArrayList<>();
+    command.add(Path.of(System.getProperty("java.home"), "bin", "java").toString());
+    if (jvmOption != null) {
+      command.add(jvmOption);
+    }
+    command.add("-cp");
+    command.add(classpath);
+    System.getProperties().stringPropertyNames().stream()
+      .filter(name -> name.matches("[A-Z][A-Z0-9_]*"))
+      .filter(name -> !name.startsWith("STARTUP_") && !name.equals("SIMULATION"))
+      .forEach(name -> command.add("-D" + name + "=" + System.getProperty(name)));
+    command.add("-DSTUB=true");
+    command.add("-DSTUB_HOST=127.0.0.1");
+    command.add("-DSTUB_PORT=" + stubPort);
+    command.add("-DPROFILE=closed");
+    command.add("-DUSERS=1");
+    command.add("-DRAMP_DURATION=1");
+    command.add("-DTEST_DURATION=1");
+    command.add(mainClass);
+    if (mainClass.equals("Engine")) {
+      command.add(SIMULATION);
+    } else {
+      command.addAll(List.of("--results-folder", IDEPathHelper.resultsDirectory.toString(),
+        "--resources-folder", IDEPathHelper.mavenResourcesDirectory.toString()));
+    }
+    command.add("--no-reports");
+    return command;
+  }
+
+  // A training run lists the classes it loads, then a JVM that does nothing else archives them
+  private static void dumpArchive(String classpath, Path archive, Path benchmarkDirectory, int stubPort) throws IOException, InterruptedException {
+    Path classList = benchmarkDirectory.resolve("engine.classlist");
+    System.out.printf("Dumping the class data sharing archive %s...%n", archive);
+    launch(command("-XX:DumpLoadedClassList=" + classList, classpath, "Engine", stubPort), benchmarkDirectory.resolve("appcds-training.txt"));
+    List<String> classes;
+    try (Stream<String> lines = Files.lines(classList)) {
+      classes = lines.filter(line -> !line.startsWith("@lambda-proxy")).collect(Collectors.toList());
+    }
+    Files.write(classList, classes);
+    int exitCode = new ProcessBuilder(Path.of(System.getProperty("java.home"), "bin", "java").toString(), "-Xshare:dump",
+      "-XX:SharedClassListFile=" + classList, "-XX:SharedArchiveFile=" + archive, "-cp", classpath)
+      .redirectErrorStream(true)
+      .redirectOutput(benchmarkDirectory.resolve("appcds-dump.txt").toFile())
+      .start()
+      .waitFor();
+    if (exitCode != 0) {
+      throw new IllegalStateException("Dumping the archive failed with exit code " + exitCode + ", see " + benchmarkDirectory.resolve("appcds-dump.txt"));
+    }
+  }
+
+  // Our classes in a jar, then the dependencies, then target/test-classes, which is only left for the resources
+  private static String archivableClasspath(Path jar) throws IOException {
+    Path classes = IDEPathHelper.mavenBinariesDirectory;
+    try (JarOutputStream out = new JarOutputStream(Files.newOutputStream(jar)); Stream<Path> files = Files.walk(classes)) {
+      for (Path file : (Iterable<Path>) files.filter(path -> path.toString().endsWith(".class"))::iterator) {
+        out.putNextEntry(new JarEntry(classes.relativize(file).toString().replace('\\', '/')));
+        Files.copy(file, out);
+        out.closeEntry();
+      }
+    }
+    List<String> entries = Arrays.stream(System.getProperty("java.class.path").split(File.pathSeparator))
+      .filter(entry -> !Path.of(entry).toAbsolutePath().normalize().equals(classes.toAbsolutePath().normalize()))
+      .collect(Collectors.toList());
+    entries.add(0, jar.toString());
+    entries.add(classes.toString());
+    return String.join(File.pathSeparator, entries);
+  }
+
+  // Milliseconds from launch to the simulation starting, and to the JVM exiting
+  private static long[] launch(List<String> command, Path output) throws IOException, InterruptedException {
+    long launched = System.nanoTime();
+    long started = -1;
+    Process process = new ProcessBuilder(command).redirectErrorStream(true).start();
+    try (BufferedReader in = new BufferedReader(new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8));
+         PrintWriter out = new PrintWriter(Files.newBufferedWriter(output))) {
+      String line;
+      while ((line = in.readLine()) != null) {
+        if (started < 0 && line.startsWith("Simulation ") && line.endsWith(" started...")) {
+          started = (System.nanoTime() - launched) / 1_000_000;
+        }
+        out.println(line);
+      }
+    }
+    int exitCode = process.waitFor();
+    long exited = (System.nanoTime() - launched) / 1_000_000;
+    if (exitCode != 0 || started < 0) {
+      throw new IllegalStateException("Run failed with exit code " + exitCode + ", see " + output);
+    }
+    return new long[]{started, exited};
+  }
+}
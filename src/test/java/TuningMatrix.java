@@ -0,0 +1,229 @@
+import org.HdrHistogram.Histogram;
+import videogamedb.stub.Latency;
+import videogamedb.stub.VideoGameDbStub;
+import videogamedb.tuning.TuningProfile;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+// Benchmarks the tuning profiles (see videogamedb.tuning.TuningProfile) against each other: runs a simulation, in its
+// own JVM, for every combination of profile, transport and number of users against one local stub started here, and
+// prints a table of the throughput, the CPU the load generator spent per request and the p99 of each.
+// The users loop without think time (THINK_TIME_MS=0), so the throughput is as much as the injector can send.
+// Only the steady part of each run counts: from the end of the ramp to the last response. CPU is the injector JVM's
+// own, sampled from the outside every 200 ms; the stub runs in this JVM so it isn't counted.
+//   mvn -B test-compile exec:java -Dexec.mainClass=TuningMatrix -Dexec.classpathScope=test
+//
+// Runtime parameters (any other upper case system property is passed on to the simulation):
+//   SIMULATION                 simulation class (default videogamedb.simulation.VideoGameDbSimulations)
+//   TUNING_MATRIX_PROFILES     tuning profiles to compare (default default,max-rps,max-users,low-latency)
+//   TUNING_MATRIX_TRANSPORTS   epoll and/or nio, the Netty transport of the injector (default epoll,nio)
+//   TUNING_MATRIX_USERS        concurrent users of each run (default 50,500)
+//   TEST_DURATION              seconds each run is measured for (default 20)
+//   RAMP_DURATION              seconds each run ramps its users for, not measured (default 5)
+//   STUB_PORT                  port of the stub (default 8089)
+public class TuningMatrix {
+
+  private static final String SIMULATION = System.getProperty("SIMULATION", "videogamedb.simulation.VideoGameDbSimulations");
+  private static final List<String> PROFILES = list("TUNING_MATRIX_PROFILES", "default,max-rps,max-users,low-latency");
+  private static final List<String> TRANSPORTS = list("TUNING_MATRIX_TRANSPORTS", "epoll,nio");
+  private static final List<String> USERS = list("TUNING_MATRIX_USERS", "50,500");
+  private static final int TEST_DURATION = Integer.getInteger("TEST_DURATION", 20);
+  private static final int RAMP_DURATION = Integer.getInteger("RAMP_DURATION", 5);
+  private static final int STUB_PORT = Integer.getInteger("STUB_PORT", 8089);
+  private static final long CPU_SAMPLE_MILLIS = 200;
+
+  private static List<String> list(String property, String defaultValue) {
+    return Arrays.stream(System.getProperty(property, defaultValue).split(","))
+      .map(String::trim)
+      .filter(value -> !value.isEmpty())
+      .collect(Collectors.toList());
+  }
+
+  public static void main(String[] args) throws IOException, InterruptedException {
+    Path matrixDirectory = IDEPathHelper.resultsDirectory.resolve("tuning-matrix-" + System.currentTimeMillis());
+    List<Run> runs = new ArrayList<>();
+
+    try (VideoGameDbStub stub = VideoGameDbStub.start(STUB_PORT, Latency.parse("none"), 0, 3600)) {
+      for (String users : USERS) {
+        for (String profile : PROFILES) {
+          for (String transport : TRANSPORTS) {
+            runs.add(run(TuningProfile.parse(profile), transport, Integer.parseInt(users), stub.port(), matrixDirectory));
+          }
+        }
+      }
+    }
+
+    StringBuilder table = new StringBuilder();
+    table.append(String.format("%-12s %-9s %6s %10s %14s %9s %8s%n", "profile", "transport", "users", "rps", "cpu us/request", "p99 ms", "KO %"));
+    for (Run run : runs) {
+      table.append(String.format("%-12s %-9s %6d %10.1f %14.1f %9.1f %8.2f%n", run.profile.id(), run.transport, run.users,
+        run.rps, run.cpuMicrosPerRequest, run.p99Millis, run.errorPercent));
+    }
+    Files.writeString(matrixDirectory.resolve("comparison.txt"), table);
+    System.out.println();
+    System.out.print(table);
+    System.out.printf("Results of every run in %s%n", matrixDirectory);
+  }
+
+  private static Run run(TuningProfile profile, String transport, int users, int stubPort, Path matrixDirectory)
+    throws IOException, InterruptedException {
+    Path resultsDirectory = matrixDirectory.resolve(profile.id() + "-" + transport + "-" + users);
+    Files.createDirectories(resultsDirectory);
+
+    List<String> command = new ArrayList<>();
+    command.add(Path.of(System.getProperty("java.home"), "bin", "java").toString());
+    command.add("-cp");
+    command.add(System.getProperty("java.class.path"));
+    System.getProperties().stringPropertyNames().stream()
+      .filter(name -> name.matches("[A-Z][A-Z0-9_]*"))
+      .filter(name -> !name.startsWith("TUNING"))
+      .forEach(name -> command.add("-D" + name + "=" + System.getProperty(name)));
+    command.add("-DTUNING=" + profile.id());
+    command.add("-D" + TuningProfile.CONF_FILE_PROPERTY + "=" + profile.configFile());
+    command.add("-Dgatling.netty.useNativeTransport=" + "epoll".equalsIgnoreCase(transport));
+    command.add("-DSTUB=true");
+    command.add("-DSTUB_HOST=127.0.0.1");
+    command.add("-DSTUB_PORT=" + stubPort);
+    command.add("-DPROFILE=closed");
+    command.add("-DUSERS=" + users);
+    command.add("-DTEST_DURATION=" + TEST_DURATION);
+    command.add("-DRAMP_DURATION=" + RAMP_DURATION);
+    command.add("-DTHINK_TIME_MS=" + System.getProperty("THINK_TIME_MS", "0"));
+    command.add("io.gatling.app.Gatling");
+    command.add("--simulation");
+    command.add(SIMULATION);
+    command.add("--results-folder");
+    command.add(resultsDirectory.toString());
+    command.add("--resources-folder");
+    command.add(IDEPathHelper.mavenResourcesDirectory.toString());
+    command.add("--no-reports");
+
+    System.out.printf("Running %s with %s, %s, %d users...%n", SIMULATION, profile.id(), transport, users);
+    Process process = new ProcessBuilder(command)
+      .redirectErrorStream(true)
+      .redirectOutput(resultsDirectory.resolve("gatling-output.txt").toFile())
+      .start();
+    CpuSamples cpu = new CpuSamples();
+    while (!process.waitFor(CPU_SAMPLE_MILLIS, TimeUnit.MILLISECONDS)) {
+      process.info().totalCpuDuration().ifPresent(total -> cpu.add(System.currentTimeMillis(), total.toNanos()));
+    }
+
+    Optional<Path> log = simulationLog(resultsDirectory);
+    if (process.exitValue() != 0 || log.isEmpty()) {
+      System.out.printf("  run failed (exit code %d), see %s%n", process.exitValue(), resultsDirectory.resolve("gatling-output.txt"));
+      return new Run(profile, transport, users, 0, 0, 0, 100);
+    }
+    Run run = measure(profile, transport, users, log.get(), cpu);
+    System.out.printf("  %.1f requests/sec, %.1f us of CPU per request, p99 %.1f ms, %.2f%% KO%n", run.rps,
+      run.cpuMicrosPerRequest, run.p99Millis, run.errorPercent);
+    return run;
+  }
+
+  // Reads the requests of the steady part of the run from its simulation.log, in one pass and without keeping them
+  private static Run measure(TuningProfile profile, String transport, int users, Path simulationLog, CpuSamples cpu) throws IOException {
+    Histogram responseTimes = new Histogram(3); // Microseconds, simulation.log only has millisecond precision
+    long firstStart = Long.MAX_VALUE;
+    long lastEnd = 0;
+    long count = 0;
+    long ko = 0;
+    try (BufferedReader in = Files.newBufferedReader(simulationLog, StandardCharsets.UTF_8)) {
+      String line;
+      while ((line = in.readLine()) != null) {
+        if (!line.startsWith("REQUEST\t")) {
+          continue;
+        }
+        String[] fields = line.split("\t", 7); // REQUEST, group, name, start, end, OK|KO, message
+        long start = Long.parseLong(fields[3]);
+        long end = Long.parseLong(fields[4]);
+        if (firstStart == Long.MAX_VALUE) {
+          firstStart = start;
+        }
+        if (start < firstStart + RAMP_DURATION * 1000L) {
+          continue; // Still ramping up
+        }
+        responseTimes.recordValue((end - start) * 1000);
+        lastEnd = Math.max(lastEnd, end);
+        count++;
+        if (!"OK".equals(fields[5])) {
+          ko++;
+        }
+      }
+    }
+    long from = firstStart + RAMP_DURATION * 1000L;
+    double seconds = Math.max(1, lastEnd - from) / 1000.0;
+    double cpuNanos = cpu.between(from, lastEnd);
+    return new Run(profile, transport, users,
+      count / seconds,
+      count == 0 ? 0 : cpuNanos / 1000 / count,
+      responseTimes.getValueAtPercentile(99) / 1000.0,
+      count == 0 ? 100 : 100.0 * ko / count);
+  }
+
+  private static Optional<Path> simulationLog(Path resultsDirectory) throws IOException {
+    try (Stream<Path> files = Files.walk(resultsDirectory, 2)) {
+      return files.filter(path -> path.getFileName().toString().equals("simulation.log")).findFirst();
+    }
+  }
+
+  // Total CPU time of the injector process over wall clock time, interpolated between samples
+  private static final class CpuSamples {
+    private final List<long[]> samples = new ArrayList<>(); // {epoch millis, CPU nanos}
+
+    void add(long millis, long cpuNanos) {
+      samples.add(new long[]{millis, cpuNanos});
+    }
+
+    double between(long fromMillis, long toMillis) {
+      return at(toMillis) - at(fromMillis);
+    }
+
+    private double at(long millis) {
+      if (samples.isEmpty()) {
+        return 0;
+      }
+      long[] previous = samples.get(0);
+      if (millis <= previous[0]) {
+        return previous[1];
+      }
+      for (long[] sample : samples) {
+        if (sample[0] >= millis) {
+          double fraction = (double) (millis - previous[0]) / Math.max(1, sample[0] - previous[0]);
+          return previous[1] + fraction * (sample[1] - previous[1]);
+        }
+        previous = sample;
+      }
+      return previous[1];
+    }
+  }
+
+  private static final class Run {
+    private final TuningProfile profile;
+    private final String transport;
+    private final int users;
+    private final double rps;
+    private final double cpuMicrosPerRequest;
+    private final double p99Millis;
+    private final double errorPercent;
+
+    Run(TuningProfile profile, String transport, int users, double rps, double cpuMicrosPerRequest, double p99Millis, double errorPercent) {
+      this.profile = profile;
+      this.transport = transport;
+      this.users = users;
+      this.rps = rps;
+      this.cpuMicrosPerRequest = cpuMicrosPerRequest;
+      this.p99Millis = p99Millis;
+      this.errorPercent = errorPercent;
+    }
+  }
+}
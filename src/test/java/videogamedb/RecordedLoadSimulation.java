@@ -0,0 +1,91 @@
+package videogamedb;
+
+import io.gatling.javaapi.core.*;
+import io.gatling.javaapi.http.*;
+import videogamedb.bodies.BodyTemplate;
+import videogamedb.checks.BodyChecks;
+import videogamedb.har.ThinkTime;
+import videogamedb.profiles.LoadProfile;
+import videogamedb.stub.VideoGameDbStub;
+
+import java.util.Map;
+
+import static io.gatling.javaapi.core.CoreDsl.*;
+import static io.gatling.javaapi.http.HttpDsl.*;
+
+// Generated from www.videogamedb.uk.har by videogamedb.har.HarConverter, regenerate it rather than editing it.
+// Every user loops over the recorded journey, injected with the PROFILE injection profile (see LoadProfile),
+// pausing between requests as chosen with THINK_TIME (see ThinkTime).
+public class RecordedLoadSimulation extends Simulation {
+
+    private static final LoadProfile LOAD_PROFILE = LoadProfile.fromSystemProperties();
+
+    private HttpProtocolBuilder httpProtocol = http
+            .baseUrl(VideoGameDbStub.baseUrl("https://www.videogamedb.uk"))
+            .acceptHeader("application/json")
+            .acceptEncodingHeader("gzip, deflate, br, zstd")
+            .acceptLanguageHeader("en-GB,en-US;q=0.9,en;q=0.8")
+            .header("Referer", "https://www.videogamedb.uk/swagger-ui/index.html")
+            .userAgentHeader("Mozilla/5.0 (Windows NT 10.0; Win64; x64) AppleWebKit/537.36 (KHTML, like Gecko) Chrome/129.0.0.0 Safari/537.36");
+
+    private static ChainBuilder chain0() {
+        return exec(http("GET /api/videogame")
+                    .get("/api/videogame"))
+                .exec(ThinkTime.pause(28036))
+                .exec(http("GET /api/videogame/{id}")
+                    .get("/api/videogame/2"))
+                .exec(ThinkTime.pause(21761))
+                .exec(http("POST /api/authenticate")
+                    .post("/api/authenticate")
+                    .headers(Headers.HEADERS_0)
+                    .body(RawFileBody("videogamedb/recordedloadsimulation/0002_request.json"))
+                    .check(BodyChecks.jsonString("token").saveAs("token")))
+                .exec(ThinkTime.pause(44833))
+                .exec(http("POST /api/videogame")
+                    .post("/api/videogame")
+                    .headers(Headers.HEADERS_1)
+                    .body(RawFileBody("videogamedb/recordedloadsimulation/0003_request.json"))
+                    .check(BodyChecks.jsonInt("id").saveAs("videogameId")))
+                .exec(ThinkTime.pause(20833))
+                .exec(http("PUT /api/videogame/{id}")
+                    .put("/api/videogame/#{videogameId}")
+                    .headers(Headers.HEADERS_1)
+                    .body(RawFileBody("videogamedb/recordedloadsimulation/0004_request.json")))
+                .exec(ThinkTime.pause(9117))
+                .exec(http("DELETE /api/videogame/{id}")
+                    .delete("/api/videogame/#{videogameId}")
+                    .headers(Headers.HEADERS_2));
+    }
+
+    private static ScenarioBuilder scn = scenario("RecordedLoadSimulation")
+            .forever().on(
+                    exec(chain0())
+            );
+
+    {
+        LOAD_PROFILE.applyTo(setUp(
+                LOAD_PROFILE.inject(scn).protocols(httpProtocol)
+        ));
+    }
+
+    @Override
+    public void before() {
+        System.out.printf("Using the %s with %s%n", LOAD_PROFILE.describe(), ThinkTime.describe());
+    }
+
+    private static final class Headers {
+        static final Map<CharSequence, String> HEADERS_0 = Map.ofEntries(
+                Map.entry("Content-Type", "application/json"),
+                Map.entry("Origin", "https://www.videogamedb.uk")
+        );
+        static final Map<CharSequence, String> HEADERS_1 = Map.ofEntries(
+                Map.entry("Authorization", "Bearer #{token}"),
+                Map.entry("Content-Type", "application/json"),
+                Map.entry("Origin", "https://www.videogamedb.uk")
+        );
+        static final Map<CharSequence, String> HEADERS_2 = Map.ofEntries(
+                Map.entry("Authorization", "Bearer #{token}"),
+                Map.entry("Origin", "https://www.videogamedb.uk")
+        );
+    }
+}
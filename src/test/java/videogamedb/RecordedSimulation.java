@@ -6,6 +6,7 @@ import java.util.*;
 import io.gatling.javaapi.core.*;
 import io.gatling.javaapi.http.*;
 import io.gatling.javaapi.jdbc.*;
+import videogamedb.stub.VideoGameDbStub;
 
 import static io.gatling.javaapi.core.CoreDsl.*;
 import static io.gatling.javaapi.http.HttpDsl.*;
@@ -14,7 +15,7 @@ import static io.gatling.javaapi.jdbc.JdbcDsl.*;
 public class RecordedSimulation extends Simulation {
 
   private HttpProtocolBuilder httpProtocol = http
-    .baseUrl("https://www.videogamedb.uk")
+    .baseUrl(VideoGameDbStub.baseUrl("https://www.videogamedb.uk"))
     .inferHtmlResources(AllowList(), DenyList(".*\\.js", ".*\\.css", ".*\\.gif", ".*\\.jpeg", ".*\\.jpg", ".*\\.ico", ".*\\.woff", ".*\\.woff2", ".*\\.(t|o)tf", ".*\\.png", ".*detectportal\\.firefox\\.com.*"))
     .acceptHeader("application/json")
     .acceptEncodingHeader("gzip, deflate")
@@ -0,0 +1,182 @@
+package videogamedb.auth;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.gatling.javaapi.core.ChainBuilder;
+import io.gatling.javaapi.core.Session;
+import videogamedb.checks.BodyChecks;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Base64;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+import static io.gatling.javaapi.core.CoreDsl.*;
+import static io.gatling.javaapi.http.HttpDsl.*;
+
+// A pool of JWTs shared by every virtual user, so /authenticate is called once per token lifetime instead of once per
+// user (or once per loop). Each user is pinned to one slot of the pool. A slot is refreshed by a single user, through
+// the normal Authenticate request, shortly before its token's exp claim; every other user just copies the cached token
+// into its session, with no HTTP round trip.
+//
+// Runtime parameters:
+//   TOKEN_POOL_SIZE       number of tokens in the pool (default 1)
+//   TOKEN_REFRESH_MARGIN  seconds before exp at which a token is refreshed (default 60)
+//   TOKEN_REFRESH_JITTER  extra random seconds subtracted from each slot's refresh time, so slots don't refresh together (default 30)
+//   TOKEN_TTL             lifetime assumed for tokens without an exp claim, in seconds (default 300)
+public final class TokenCache {
+
+    private static final int POOL_SIZE = Integer.parseInt(System.getProperty("TOKEN_POOL_SIZE", "1"));
+    private static final long REFRESH_MARGIN_MS = Long.parseLong(System.getProperty("TOKEN_REFRESH_MARGIN", "60")) * 1000;
+    private static final long REFRESH_JITTER_MS = Long.parseLong(System.getProperty("TOKEN_REFRESH_JITTER", "30")) * 1000;
+    private static final long DEFAULT_TTL_MS = Long.parseLong(System.getProperty("TOKEN_TTL", "300")) * 1000;
+    private static final Duration RETRY_PAUSE = Duration.ofMillis(100);
+    private static final Duration MAX_WAIT = Duration.ofSeconds(30);
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+    private static final byte[] AUTH_BODY = ("{\n" +
+            " \"password\": \"admin\",\n" +
+            " \"username\": \"admin\"\n" +
+            "}").getBytes(StandardCharsets.UTF_8); // Encoded once and shared by every authenticate request
+
+    private final Slot[] slots;
+    private final LongAdder lookups = new LongAdder();
+    private final LongAdder refreshes = new LongAdder();
+    private final LongAdder failedRefreshes = new LongAdder();
+    private final LongAdder waits = new LongAdder();
+
+    private static final class Holder {
+        private static final TokenCache SHARED = new TokenCache(POOL_SIZE);
+    }
+
+    public static TokenCache shared() {
+        return Holder.SHARED;
+    }
+
+    // Drop in replacement for the per-user authenticate chain: puts a valid token in the session as "jwtToken"
+    public static ChainBuilder authenticate() {
+        return authenticate("/authenticate");
+    }
+
+    // The same, for protocols whose baseUrl doesn't end in /api, e.g. authenticate("/api/authenticate")
+    public static ChainBuilder authenticate(String path) {
+        return shared().chain(path);
+    }
+
+    public TokenCache(int poolSize) {
+        if (poolSize <= 0) {
+            throw new IllegalArgumentException("poolSize must be positive: " + poolSize);
+        }
+        slots = new Slot[poolSize];
+        for (int i = 0; i < poolSize; i++) {
+            slots[i] = new Slot();
+        }
+    }
+
+    private static final class Slot {
+        private volatile String token;
+        private volatile long refreshAt; // Epoch millis after which the token should be replaced
+        private volatile long expiresAt; // Epoch millis after which the token can't be used at all
+        private final AtomicBoolean refreshing = new AtomicBoolean();
+
+        boolean isValid() {
+            return token != null && System.currentTimeMillis() < expiresAt;
+        }
+
+        boolean dueForRefresh() {
+            return token == null || System.currentTimeMillis() >= refreshAt;
+        }
+
+        // Only one user gets to refresh a slot at a time
+        boolean tryStartRefresh() {
+            return refreshing.compareAndSet(false, true);
+        }
+
+        void store(String newToken) {
+            long expiry = expiryOf(newToken);
+            long jitter = REFRESH_JITTER_MS > 0 ? ThreadLocalRandom.current().nextLong(REFRESH_JITTER_MS) : 0;
+            long now = System.currentTimeMillis();
+            expiresAt = expiry;
+            refreshAt = Math.max(now, expiry - REFRESH_MARGIN_MS - jitter);
+            token = newToken;
+            refreshing.set(false);
+        }
+
+        void refreshFailed() {
+            refreshing.set(false);
+        }
+    }
+
+    private Slot slot(Session session) {
+        return slots[(int) Math.floorMod(session.userId(), (long) slots.length)];
+    }
+
+    private ChainBuilder chain(String path) {
+        ChainBuilder refresh =
+                exec(session -> session.remove("jwtToken"))
+                        .exec(http("Authenticate")
+                        .post(path)
+                        .body(ByteArrayBody(AUTH_BODY))
+                        .check(BodyChecks.jsonString("token").saveAs("jwtToken")))
+                        .exec(session -> {
+                            String token = session.getString("jwtToken");
+                            if (token == null) {
+                                failedRefreshes.increment();
+                                slot(session).refreshFailed();
+                            } else {
+                                refreshes.increment();
+                                slot(session).store(token);
+                            }
+                            return session;
+                        });
+
+        return doIf(session -> slot(session).dueForRefresh() && slot(session).tryStartRefresh()).then(refresh)
+                // Nobody has a usable token for this slot yet: try to be the one refreshing it, otherwise wait for it
+                .asLongAsDuring(session -> !slot(session).isValid(), MAX_WAIT).on(
+                        doIfOrElse(session -> slot(session).tryStartRefresh()).then(refresh)
+                                .orElse(exec(session -> {
+                                    waits.increment();
+                                    return session;
+                                }).pause(RETRY_PAUSE))
+                )
+                .exec(session -> {
+                    lookups.increment();
+                    String token = slot(session).token;
+                    return token == null ? session : session.set("jwtToken", token);
+                });
+    }
+
+    // Reads the exp claim from the token's payload, falling back to TOKEN_TTL if there isn't one
+    private static long expiryOf(String token) {
+        String[] parts = token.split("\\.");
+        if (parts.length >= 2) {
+            try {
+                JsonNode exp = MAPPER.readTree(Base64.getUrlDecoder().decode(parts[1])).get("exp");
+                if (exp != null && exp.canConvertToLong()) {
+                    return exp.asLong() * 1000;
+                }
+            } catch (IOException | IllegalArgumentException e) {
+                // Not a JWT we can read, use the default lifetime
+            }
+        }
+        return System.currentTimeMillis() + DEFAULT_TTL_MS;
+    }
+
+    public long lookups() {
+        return lookups.sum();
+    }
+
+    public long refreshes() {
+        return refreshes.sum();
+    }
+
+    public String report() {
+        long lookups = this.lookups.sum();
+        long refreshes = this.refreshes.sum();
+        double hitRate = lookups == 0 ? 0 : 100.0 * Math.max(0, lookups - refreshes) / lookups;
+        return String.format("Token cache: %d lookups, %d refreshes, %d failed refreshes, %d waits, %.2f%% hits",
+                lookups, refreshes, failedRefreshes.sum(), waits.sum(), hitRate);
+    }
+}
@@ -0,0 +1,22 @@
+package videogamedb.benchmarks;
+
+import io.gatling.commons.stats.OK$;
+import io.gatling.core.session.Session;
+import scala.collection.immutable.List$;
+import scala.collection.immutable.Map$;
+import scala.runtime.BoxedUnit;
+
+import java.util.Map;
+
+// Builds Gatling sessions outside of a running simulation, for benchmarks of code that reads or renders them
+final class BenchmarkSessions {
+
+    private BenchmarkSessions() {
+    }
+
+    static io.gatling.javaapi.core.Session session(Map<String, Object> attributes) {
+        Session scalaSession = new Session("benchmark", 1L, Map$.MODULE$.<String, Object>empty(),
+                OK$.MODULE$, List$.MODULE$.empty(), session -> BoxedUnit.UNIT, null);
+        return new io.gatling.javaapi.core.Session(scalaSession).setAll(attributes);
+    }
+}
@@ -0,0 +1,76 @@
+package videogamedb.benchmarks;
+
+import io.gatling.app.Gatling;
+import io.gatling.core.config.GatlingPropertiesBuilder;
+import videogamedb.results.BinaryLogReport;
+import videogamedb.results.SimulationLogConverter;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.SplittableRandom;
+
+// Bytes per record and report generation time of the binary results log against Gatling's text simulation.log, on a
+// generated log shaped like a VideoGameDbFullTest soak. Not a JMH benchmark, one report of a big log is what we want
+// to time, e.g. from the IDE with -DRECORDS=20000000. The log is generated into target/ the first time and reused.
+// Gatling's report is generated in the same JVM with --reports-only, so run with enough heap for it.
+public class BinaryLogReportBenchmark {
+
+    private static final long RECORDS = Long.parseLong(System.getProperty("RECORDS", "5000000"));
+    private static final String[] NAMES = {"Get all video games", "Authenticate", "Create New Game", "Get specific video game", "Delete video game"};
+
+    public static void main(String[] args) throws IOException {
+        Path resultsDirectory = Paths.get("target", "benchmark-data", "results");
+        String runName = "soak-" + RECORDS;
+        Path textLog = resultsDirectory.resolve(runName).resolve("simulation.log");
+        Path binaryLog = resultsDirectory.resolve(runName + ".vgl");
+        generate(textLog);
+
+        long start = System.nanoTime();
+        long records = SimulationLogConverter.convert(textLog, binaryLog, 3);
+        long convertMs = (System.nanoTime() - start) / 1_000_000;
+        System.out.printf("text log:   %,d bytes, %.1f bytes per record%n", Files.size(textLog), (double) Files.size(textLog) / records);
+        System.out.printf("binary log: %,d bytes, %.1f bytes per record (converted in %d ms)%n", Files.size(binaryLog), (double) Files.size(binaryLog) / records, convertMs);
+
+        start = System.nanoTime();
+        BinaryLogReport.Stats stats = BinaryLogReport.generate(binaryLog);
+        long binaryMs = (System.nanoTime() - start) / 1_000_000;
+        System.out.print(stats.summary());
+
+        start = System.nanoTime();
+        Gatling.fromMap(new GatlingPropertiesBuilder()
+                .resultsDirectory(resultsDirectory.toString())
+                .reportsOnly(runName)
+                .build());
+        long gatlingMs = (System.nanoTime() - start) / 1_000_000;
+
+        System.out.printf("%nReport of %,d records: BinaryLogReport %d ms on %d cores, Gatling --reports-only %d ms%n",
+                stats.requestCount(), binaryMs, Runtime.getRuntime().availableProcessors(), gatlingMs);
+    }
+
+    // Users of the full test looping over its five requests, one every 20 ms across all users
+    private static void generate(Path file) throws IOException {
+        if (Files.isRegularFile(file)) {
+            return;
+        }
+        Files.createDirectories(file.getParent());
+        SplittableRandom random = new SplittableRandom(42);
+        long runStart = 1_700_000_000_000L;
+        try (BufferedWriter out = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            out.write("RUN\tvideogamedb.finalsimulation.VideoGameDbFullTest\tvideogamedbfulltest\t" + runStart + "\t \t3.8.3\n");
+            for (long i = 0; i < RECORDS; i++) {
+                long start = runStart + i / 50;
+                if (i % 5 == 0) {
+                    out.write("USER\tVideo Game Db - Section 8 code\tSTART\t" + start + "\n");
+                }
+                long responseTime = (long) Math.exp(2 + random.nextGaussian() * 0.8); // Log-normal, median about 7 ms
+                boolean ok = random.nextInt(1000) != 0;
+                out.write("REQUEST\t\t" + NAMES[(int) (i % NAMES.length)] + "\t" + start + "\t" + (start + responseTime)
+                        + (ok ? "\tOK\t \n" : "\tKO\tstatus.find.in([200, 209], 304), found 500\n"));
+            }
+        }
+    }
+}
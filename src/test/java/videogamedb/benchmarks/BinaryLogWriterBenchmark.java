@@ -0,0 +1,78 @@
+package videogamedb.benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+import videogamedb.results.BinaryLogWriter;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+// What recording one response costs the thread that recorded it, while the run is live: an append to the binary
+// results log against formatting and writing the same REQUEST line of a text simulation.log, like Gatling's file
+// DataWriter does. Both write to a real file; -prof gc shows the allocation per record.
+//   mvn -Pjmh test-compile exec:exec -Djmh.include=BinaryLogWriterBenchmark
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class BinaryLogWriterBenchmark {
+
+    private static final String[] NAMES = {"Get all video games", "Authenticate", "Create New Game", "Get specific video game", "Delete video game"};
+
+    private Path directory;
+    private BinaryLogWriter binary;
+    private Writer text;
+    private int[] nameIds;
+    private long now;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("binary-log-benchmark");
+        now = System.currentTimeMillis();
+        binary = new BinaryLogWriter(directory.resolve("results.vgl"), "videogamedb.finalsimulation.VideoGameDbFullTest", "benchmark", now, 3);
+        text = Files.newBufferedWriter(directory.resolve("simulation.log"), StandardCharsets.UTF_8);
+        nameIds = new int[NAMES.length];
+        for (int i = 0; i < NAMES.length; i++) {
+            nameIds[i] = binary.intern(NAMES[i]);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        binary.close();
+        text.close();
+        System.out.printf("%nbinary: %d bytes, text: %d bytes%n",
+                Files.size(directory.resolve("results.vgl")), Files.size(directory.resolve("simulation.log")));
+        try (var files = Files.list(directory)) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                Files.delete(file);
+            }
+        }
+        Files.delete(directory);
+    }
+
+    @Benchmark
+    public void binaryRecord() throws IOException {
+        int i = next++;
+        long start = now + (i >> 4);
+        binary.request(0, nameIds[i % NAMES.length], start, start + (i & 63), true, 0);
+    }
+
+    @Benchmark
+    public void textRecord() throws IOException {
+        int i = next++;
+        long start = now + (i >> 4);
+        StringBuilder line = new StringBuilder(96)
+                .append("REQUEST\t\t").append(NAMES[i % NAMES.length])
+                .append('\t').append(start)
+                .append('\t').append(start + (i & 63))
+                .append("\tOK\t \n");
+        text.write(line.toString());
+    }
+}
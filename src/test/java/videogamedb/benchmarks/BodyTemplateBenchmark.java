@@ -0,0 +1,86 @@
+package videogamedb.benchmarks;
+
+import io.gatling.commons.validation.Validation;
+import io.gatling.javaapi.core.Session;
+import io.gatling.javaapi.core.internal.Expressions;
+import org.openjdk.jmh.annotations.*;
+import scala.Function1;
+import videogamedb.bodies.BodyTemplate;
+import videogamedb.feeders.GameFeeder;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+// Bodies/sec of createNewGame's body: ElFileBody against BodyTemplate, and the authenticate body as a StringBody
+// against a shared byte[]. ElFileBody is modelled the way Gatling runs it, the file compiled once into an EL
+// expression that renders a String per request, which the HTTP client then encodes to bytes.
+//   mvn -Pjmh test-compile exec:exec -Djmh.include=BodyTemplateBenchmark
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class BodyTemplateBenchmark {
+
+    private static final String AUTH_JSON = "{\n" +
+            " \"password\": \"admin\",\n" +
+            " \"username\": \"admin\"\n" +
+            "}";
+    private static final byte[] AUTH_BYTES = AUTH_JSON.getBytes(StandardCharsets.UTF_8);
+
+    private Session[] sessions;
+    private int next;
+    private Function1<io.gatling.core.session.Session, Validation<String>> elFileBody;
+    private Function1<io.gatling.core.session.Session, Validation<String>> authStringBody;
+    private BodyTemplate template;
+
+    @Setup
+    public void setUp() throws IOException {
+        String content;
+        try (InputStream in = getClass().getClassLoader().getResourceAsStream("bodies/newGameTemplate.json")) {
+            content = new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        }
+        elFileBody = Expressions.toStringExpression(content);
+        authStringBody = Expressions.toStringExpression(AUTH_JSON);
+        template = BodyTemplate.of("bodies/newGameTemplate.json");
+
+        GameFeeder feeder = new GameFeeder(1024);
+        sessions = new Session[1024];
+        for (int i = 0; i < sessions.length; i++) {
+            sessions[i] = BenchmarkSessions.session(feeder.next());
+        }
+        for (Session session : sessions) {
+            if (!Arrays.equals(elFileBody(session), template.render(session))) {
+                throw new IllegalStateException("BodyTemplate and ElFileBody render different bodies");
+            }
+        }
+    }
+
+    private byte[] elFileBody(Session session) {
+        return elFileBody.apply(session.asScala()).toOption().get().getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Benchmark
+    public byte[] newGameElFileBody() {
+        return elFileBody(sessions[next++ & 1023]);
+    }
+
+    @Benchmark
+    public byte[] newGameBodyTemplate() {
+        return template.render(sessions[next++ & 1023]);
+    }
+
+    @Benchmark
+    public byte[] authStringBody() {
+        return authStringBody.apply(sessions[next++ & 1023].asScala()).toOption().get().getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Benchmark
+    public byte[] authSharedBytes() {
+        return AUTH_BYTES;
+    }
+}
@@ -0,0 +1,78 @@
+package videogamedb.benchmarks;
+
+import org.apache.commons.lang3.RandomStringUtils;
+import org.openjdk.jmh.annotations.*;
+import videogamedb.feeders.GameFeeder;
+
+import java.time.LocalDate;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+// Records/sec of the old Stream.generate customFeeder, which builds a Random, random strings and a HashMap per record,
+// against GameFeeder, which hands out records it generated up front with a game id drawn per call.
+//   mvn -Pjmh test-compile exec:exec -Djmh.include=GameFeederBenchmark
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@Threads(4)
+@State(Scope.Benchmark)
+public class GameFeederBenchmark {
+
+    private Iterator<Map<String, Object>> legacyFeeder;
+    private GameFeeder gameFeeder;
+
+    @Setup
+    public void setUp() {
+        legacyFeeder = buildLegacyCustomFeeder();
+        gameFeeder = new GameFeeder(4096);
+    }
+
+    @Benchmark
+    public Map<String, Object> legacyCustomFeeder() {
+        synchronized (legacyFeeder) { // Gatling serialises feeder access, the Stream iterator is not thread safe
+            return legacyFeeder.next();
+        }
+    }
+
+    @Benchmark
+    public Map<String, Object> gameFeeder() {
+        return gameFeeder.next();
+    }
+
+    // The customFeeder as it was in VideoGameDbFeeders and VideoGameDbFullTest
+    private static Iterator<Map<String, Object>> buildLegacyCustomFeeder() {
+        return Stream.generate((Supplier<Map<String, Object>>) () -> {
+                    Random rand = new Random();
+                    int gameId = rand.nextInt(10 - 1 + 1) + 1;
+
+                    String gameName = RandomStringUtils.randomAlphabetic(5) + "-gameName";
+                    String releaseDate = randomDate().toString();
+                    int reviewScore = rand.nextInt(100);
+                    String category = RandomStringUtils.randomAlphabetic(5) + "-category";
+                    String rating = RandomStringUtils.randomAlphabetic(4) + "-rating";
+
+                    HashMap<String, Object> hmap = new HashMap<String, Object>();
+                    hmap.put("gameId", gameId);
+                    hmap.put("gameName", gameName);
+                    hmap.put("releaseDate", releaseDate);
+                    hmap.put("reviewScore", reviewScore);
+                    hmap.put("category", category);
+                    hmap.put("rating", rating);
+                    return hmap;
+                }
+        ).iterator();
+    }
+
+    private static LocalDate randomDate() {
+        int hundredYears = 100 * 365;
+        return LocalDate.ofEpochDay(ThreadLocalRandom.current().nextInt(-hundredYears, hundredYears));
+    }
+}
@@ -0,0 +1,116 @@
+package videogamedb.benchmarks;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+// Compares a JMH JSON result (the jmh profile writes target/jmh-result.json) against a baseline one and exits with 1
+// when a benchmark got slower or allocates more, so CI can keep the last good result and fail on regressions:
+//   mvn -Pjmh test-compile exec:exec -Djmh.include=SessionBenchmark
+//   mvn test-compile exec:java -Dexec.mainClass=videogamedb.benchmarks.JmhResultComparison -Dexec.classpathScope=test -Dexec.args="jmh-baseline.json target/jmh-result.json"
+// A score only counts as a regression when it is worse by more than JMH_REGRESSION_PERCENT and the two scores'
+// confidence intervals (JMH's 99.9% score error) don't overlap, so noise alone doesn't fail the build. Whether lower
+// or higher is better follows each benchmark's mode: higher for throughput, lower for the time modes.
+// Allocation, gc.alloc.rate.norm when the gc profiler ran, is compared without intervals: it barely varies.
+// A baseline score of 0 has no percentage change, so any change beyond the intervals counts as a regression.
+// Benchmarks in only one of the two files are listed but never fail the comparison.
+//
+// Runtime parameters:
+//   JMH_REGRESSION_PERCENT        how much worse a score may get (default 10)
+//   JMH_ALLOCATION_REGRESSION     how many more bytes per operation may be allocated (default 16)
+public final class JmhResultComparison {
+
+    private static final double REGRESSION_PERCENT = Double.parseDouble(System.getProperty("JMH_REGRESSION_PERCENT", "10"));
+    private static final double ALLOCATION_REGRESSION = Double.parseDouble(System.getProperty("JMH_ALLOCATION_REGRESSION", "16"));
+    private static final String ALLOCATION = "gc.alloc.rate.norm";
+
+    private JmhResultComparison() {
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length != 2) {
+            throw new IllegalArgumentException("Usage: JmhResultComparison <baseline.json> <result.json>");
+        }
+        Map<String, JsonNode> baseline = read(Path.of(args[0]));
+        Map<String, JsonNode> current = read(Path.of(args[1]));
+
+        int regressions = 0;
+        System.out.printf("%-60s %14s %14s %8s %12s %12s  %s%n", "benchmark", "baseline", "current", "change", "B/op before", "B/op now", "");
+        for (Map.Entry<String, JsonNode> entry : current.entrySet()) {
+            JsonNode now = entry.getValue();
+            JsonNode before = baseline.get(entry.getKey());
+            if (before == null) {
+                System.out.printf("%-60s %14s %14.3f %8s %12s %12s  new%n", entry.getKey(), "-", score(now), "", "", "");
+                continue;
+            }
+            boolean higherIsBetter = "thrpt".equals(now.path("mode").asText());
+            double change = change(score(before), score(now));
+            double worse = higherIsBetter ? -change : change;
+            boolean overlap = Math.abs(score(now) - score(before)) <= error(now) + error(before);
+            boolean slower = worse > REGRESSION_PERCENT && !overlap;
+
+            double allocatedBefore = allocation(before);
+            double allocatedNow = allocation(now);
+            boolean allocates = !Double.isNaN(allocatedBefore) && !Double.isNaN(allocatedNow)
+                    && allocatedNow - allocatedBefore > ALLOCATION_REGRESSION;
+
+            if (slower || allocates) {
+                regressions++;
+            }
+            System.out.printf("%-60s %14.3f %14.3f %+7.1f%% %12.0f %12.0f  %s%n", entry.getKey(), score(before), score(now), change,
+                    allocatedBefore, allocatedNow, slower && allocates ? "SLOWER, ALLOCATES MORE" : slower ? "SLOWER" : allocates ? "ALLOCATES MORE" : "");
+        }
+        for (String name : baseline.keySet()) {
+            if (!current.containsKey(name)) {
+                System.out.printf("%-60s  not in %s%n", name, args[1]);
+            }
+        }
+
+        if (regressions > 0) {
+            System.out.printf("%d benchmark(s) regressed by more than %.0f%% or %.0f B/op%n", regressions, REGRESSION_PERCENT, ALLOCATION_REGRESSION);
+            System.exit(1);
+        }
+        System.out.println("No regressions");
+    }
+
+    // Percentage change, infinite when the baseline score is 0 (a benchmark too fast or too slow for its unit) and the
+    // score isn't, so that any change beyond the confidence intervals counts
+    private static double change(double before, double now) {
+        if (before == 0) {
+            return now == 0 ? 0 : Math.copySign(Double.POSITIVE_INFINITY, now);
+        }
+        return 100 * (now - before) / before;
+    }
+
+    // Benchmarks by name and parameters, a parameterised benchmark is one entry per combination
+    private static Map<String, JsonNode> read(Path file) throws IOException {
+        Map<String, JsonNode> results = new LinkedHashMap<>();
+        for (JsonNode result : new ObjectMapper().readTree(file.toFile())) {
+            StringBuilder name = new StringBuilder(result.path("benchmark").asText().replaceFirst("^videogamedb\\.benchmarks\\.", ""));
+            result.path("params").fields().forEachRemaining(param -> name.append(':').append(param.getKey()).append('=').append(param.getValue().asText()));
+            results.put(name.toString(), result);
+        }
+        return results;
+    }
+
+    private static double score(JsonNode result) {
+        return result.path("primaryMetric").path("score").asDouble();
+    }
+
+    private static double error(JsonNode result) {
+        double error = result.path("primaryMetric").path("scoreError").asDouble(0);
+        return Double.isNaN(error) ? 0 : error;
+    }
+
+    private static double allocation(JsonNode result) {
+        JsonNode metric = result.path("secondaryMetrics").path(ALLOCATION);
+        if (metric.isMissingNode()) {
+            metric = result.path("secondaryMetrics").path("·" + ALLOCATION); // Older JMH versions name it with a leading dot
+        }
+        return metric.isMissingNode() ? Double.NaN : metric.path("score").asDouble();
+    }
+}
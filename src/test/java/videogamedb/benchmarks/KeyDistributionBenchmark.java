@@ -0,0 +1,37 @@
+package videogamedb.benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+import videogamedb.workload.KeyDistribution;
+
+import java.util.concurrent.TimeUnit;
+
+// Nanoseconds per id of each KeyDistribution shape, over a small and a large key space: with alias tables the time
+// shouldn't grow with the key space, apart from cache misses on the table, and nothing should be allocated per id.
+//   mvn -Pjmh test-compile exec:exec -Djmh.include=KeyDistributionBenchmark
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@Threads(4)
+@State(Scope.Benchmark)
+public class KeyDistributionBenchmark {
+
+    @Param({"UNIFORM", "ZIPFIAN", "HOTSPOT", "LATEST"})
+    public KeyDistribution.Shape shape;
+
+    @Param({"10", "10000000"})
+    public int keySpace;
+
+    private KeyDistribution distribution;
+
+    @Setup
+    public void setUp() {
+        distribution = new KeyDistribution(shape, keySpace, 0.99, 0.2, 0.8);
+    }
+
+    @Benchmark
+    public int next() {
+        return distribution.next();
+    }
+}
@@ -0,0 +1,104 @@
+package videogamedb.benchmarks;
+
+import io.netty.handler.ssl.SslContext;
+import io.netty.handler.ssl.SslContextBuilder;
+import io.netty.handler.ssl.SslProvider;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import videogamedb.recorder.LeafCertificates;
+
+import javax.net.ssl.SSLException;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.GeneralSecurityException;
+import java.security.KeyFactory;
+import java.security.KeyPairGenerator;
+import java.security.PrivateKey;
+import java.security.cert.X509Certificate;
+import java.security.spec.PKCS8EncodedKeySpec;
+import java.util.Base64;
+import java.util.Comparator;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+// Microseconds for CaptureProxy to get the certificate of a host it intercepts, the part of the first handshake with
+// the host that isn't TLS itself:
+//   perHostKeyAndContext  as Gatling's recorder does: a new RSA key, a certificate and a new OpenSSL context
+//   newHost               first time the host is seen: a certificate signed for the shared key, and stored
+//   storedHost            a host of an earlier recording: the certificate read back from the cache folder
+//   knownHost             every connection after the first one
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class LeafCertificateBenchmark {
+
+    private static final Path CA_CERT = Path.of("Certificates/gatlingCA.cert.pem");
+    private static final Path CA_KEY = Path.of("Certificates/gatlingCA.key.pem");
+    private static final String KNOWN_HOST = "videogamedb.uk";
+
+    private Path cache;
+    private LeafCertificates certificates;
+    private KeyPairGenerator keys;
+    private PrivateKey leafKey;
+    private long hosts;
+
+    @Setup
+    public void setUp() throws IOException, GeneralSecurityException {
+        cache = Files.createTempDirectory("leaf-certificates");
+        certificates = new LeafCertificates(CA_CERT, CA_KEY, cache, 10_000);
+        certificates.chain(KNOWN_HOST);
+        String pem = new String(Files.readAllBytes(cache.resolve("leaf.key.pem")), StandardCharsets.US_ASCII);
+        leafKey = KeyFactory.getInstance("RSA").generatePrivate(new PKCS8EncodedKeySpec(
+                Base64.getMimeDecoder().decode(pem.replaceAll("-----[A-Z ]+-----", ""))));
+        keys = KeyPairGenerator.getInstance("RSA");
+        keys.initialize(2048);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        try (Stream<Path> files = Files.walk(cache)) {
+            files.sorted(Comparator.reverseOrder()).forEach(file -> file.toFile().delete());
+        }
+    }
+
+    // A LeafCertificates that has seen no host yet, on the cache folder of the benchmark
+    @State(Scope.Thread)
+    public static class Restarted {
+        LeafCertificates certificates;
+
+        @Setup(Level.Invocation)
+        public void setUp(LeafCertificateBenchmark benchmark) throws IOException {
+            certificates = new LeafCertificates(CA_CERT, CA_KEY, benchmark.cache, 10_000);
+        }
+    }
+
+    @Benchmark
+    public SslContext perHostKeyAndContext(Blackhole blackhole) throws SSLException {
+        blackhole.consume(keys.generateKeyPair());
+        X509Certificate[] chain = certificates.chain("host" + hosts++ + ".example");
+        // The certificate is for the shared key, so that OpenSSL accepts the pair; signing it costs the same
+        return SslContextBuilder.forServer(leafKey, chain)
+                .sslProvider(SslProvider.OPENSSL)
+                .build();
+    }
+
+    @Benchmark
+    public X509Certificate[] newHost() {
+        return certificates.chain("host" + hosts++ + ".example");
+    }
+
+    @Benchmark
+    public X509Certificate[] storedHost(Restarted restarted) {
+        return restarted.certificates.chain(KNOWN_HOST);
+    }
+
+    @Benchmark
+    public X509Certificate[] knownHost() {
+        return certificates.chain(KNOWN_HOST);
+    }
+}
@@ -0,0 +1,87 @@
+package videogamedb.benchmarks;
+
+import io.gatling.core.Predef$;
+import io.gatling.core.config.GatlingConfiguration;
+import videogamedb.feeders.MappedFileFeeder;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.lang.ref.Reference;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+
+import static io.gatling.javaapi.core.CoreDsl.csv;
+
+// Startup time and heap use of MappedFileFeeder against the built-in csv() feeder on a large generated file.
+// Not a JMH benchmark, a single cold start is what we want to measure. Run one feeder per JVM so the numbers don't leak
+// into each other, e.g. from the IDE with -DSIZE_MB=5120 and the program argument "mapped" or "builtin".
+// The file is generated into target/ the first time and reused afterwards.
+public class MappedFileFeederStartupBenchmark {
+
+    private static final long SIZE_MB = Long.parseLong(System.getProperty("SIZE_MB", "5120"));
+
+    public static void main(String[] args) throws IOException {
+        Path file = Paths.get("target", "benchmark-data", "games-" + SIZE_MB + "mb.csv");
+        generate(file, SIZE_MB * 1024 * 1024);
+
+        String mode = args.length > 0 ? args[0] : "mapped";
+        long heapBefore = usedHeap();
+        long start = System.nanoTime();
+        long records;
+        Object retained;
+        try {
+            if (mode.equals("builtin")) {
+                // csv() reads gatling.conf through Predef, which is normally only set up by a running simulation
+                Predef$.MODULE$._configuration_$eq(GatlingConfiguration.loadForTest());
+                List<Map<String, Object>> all = csv(file.toAbsolutePath().toString()).circular().readRecords();
+                records = all.size();
+                retained = all;
+            } else {
+                MappedFileFeeder feeder = MappedFileFeeder.csv(file.toAbsolutePath().toString()).circular();
+                feeder.next();
+                records = feeder.recordCount();
+                retained = feeder;
+            }
+        } catch (OutOfMemoryError e) {
+            System.out.printf("%s feeder: OutOfMemoryError after %d ms with -Xmx%d MB%n", mode,
+                    (System.nanoTime() - start) / 1_000_000, Runtime.getRuntime().maxMemory() / (1024 * 1024));
+            return;
+        }
+        long elapsedMs = (System.nanoTime() - start) / 1_000_000;
+        long heapAfter = usedHeap();
+
+        System.out.printf("%s feeder: %d records, first record after %d ms, heap retained %d MB%n",
+                mode, records, elapsedMs, Math.max(0, heapAfter - heapBefore) / (1024 * 1024));
+        Reference.reachabilityFence(retained); // Keep the feeder's data alive until the heap has been measured
+    }
+
+    private static long usedHeap() {
+        MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+        System.gc();
+        return memory.getHeapMemoryUsage().getUsed();
+    }
+
+    private static void generate(Path file, long bytes) throws IOException {
+        if (Files.isRegularFile(file) && Files.size(file) >= bytes) {
+            return;
+        }
+        Files.createDirectories(file.getParent());
+        ThreadLocalRandom rand = ThreadLocalRandom.current();
+        long written = 0;
+        try (BufferedWriter out = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            out.write("gameId,gameName,reviewScore,category\n");
+            for (long id = 1; written < bytes; id++) {
+                String line = id + ",Game " + Long.toHexString(rand.nextLong()) + "," + rand.nextInt(100) + ",Category " + rand.nextInt(50) + "\n";
+                out.write(line);
+                written += line.length();
+            }
+        }
+    }
+}
@@ -0,0 +1,54 @@
+package videogamedb.benchmarks;
+
+import io.gatling.javaapi.core.Session;
+import videogamedb.metrics.BoundedRequestName;
+
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+
+// Shows that BoundedRequestName keeps the heap flat however many distinct names a template is filled with: names
+// COUNT requests each with a new game name, recording a response time for each, and prints the heap used after a GC
+// every tenth of the way. Exits with 1 when the heap grew by more than GROWTH_LIMIT_MB after the first tenth, where all
+// REQUEST_NAME_LIMIT names and their histograms exist already. Not a JMH benchmark, it's the memory we're after:
+//   mvn test-compile exec:java -Dexec.mainClass=videogamedb.benchmarks.RequestNameCardinalityBenchmark -Dexec.classpathScope=test
+//
+// Runtime parameters:
+//   COUNT            unique names (default 10000000)
+//   GROWTH_LIMIT_MB  heap growth allowed after the first tenth (default 8)
+public class RequestNameCardinalityBenchmark {
+
+    private static final long COUNT = Long.getLong("COUNT", 10_000_000);
+    private static final long GROWTH_LIMIT_MB = Long.getLong("GROWTH_LIMIT_MB", 8);
+
+    public static void main(String[] args) {
+        BoundedRequestName name = BoundedRequestName.of("Create New Game - #{gameName}");
+        Session session = BenchmarkSessions.session(Map.of());
+        long step = Math.max(1, COUNT / 10);
+        long heapAfterFirstStep = -1;
+        long heap = 0;
+        long start = System.nanoTime();
+        for (long i = 1; i <= COUNT; i++) {
+            Session named = session.set("gameName", "game-" + Long.toString(i, 36));
+            name.apply(named);
+            name.record(named, i % 500);
+            if (i % step == 0) {
+                heap = usedHeapMb();
+                if (heapAfterFirstStep < 0) {
+                    heapAfterFirstStep = heap;
+                }
+                System.out.printf("%,12d names: %d MB heap used, %d names kept, %,d folded%n", i, heap, name.nameCount(), name.foldedCount());
+            }
+        }
+        System.out.printf("%,d names in %d ms%n", COUNT, (System.nanoTime() - start) / 1_000_000);
+        System.out.println(BoundedRequestName.report());
+        if (heap - heapAfterFirstStep > GROWTH_LIMIT_MB) {
+            System.out.printf("The heap grew by %d MB, more than %d MB%n", heap - heapAfterFirstStep, GROWTH_LIMIT_MB);
+            System.exit(1);
+        }
+    }
+
+    private static long usedHeapMb() {
+        System.gc();
+        return ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed() / (1024 * 1024);
+    }
+}
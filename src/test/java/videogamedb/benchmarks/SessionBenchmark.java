@@ -0,0 +1,82 @@
+package videogamedb.benchmarks;
+
+import io.gatling.commons.validation.Validation;
+import io.gatling.javaapi.core.Session;
+import io.gatling.javaapi.core.internal.Expressions;
+import org.openjdk.jmh.annotations.*;
+import scala.Function1;
+import videogamedb.feeders.GameFeeder;
+
+import java.util.concurrent.TimeUnit;
+
+// What every request pays for the session: reading and setting attributes, as feeders, saveAs and
+// exec(session -> ...) do, and rendering the "Bearer #{jwtToken}" header of VideoGameDbFullTest, which Gatling compiles
+// once into an EL expression and evaluates per request. The header is also built by a function, and a constant
+// header is there for the floor.
+//   mvn -Pjmh test-compile exec:exec -Djmh.include=SessionBenchmark
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class SessionBenchmark {
+
+    private Session[] sessions;
+    private int next;
+    private Function1<io.gatling.core.session.Session, Validation<String>> bearerHeader;
+    private Function1<io.gatling.core.session.Session, Validation<String>> constantHeader;
+
+    @Setup
+    public void setUp() {
+        GameFeeder feeder = new GameFeeder(1024);
+        sessions = new Session[1024];
+        for (int i = 0; i < sessions.length; i++) {
+            sessions[i] = BenchmarkSessions.session(feeder.next()).set("jwtToken", "eyJhbGciOiJIUzI1NiJ9.token-" + i);
+        }
+        bearerHeader = Expressions.toStringExpression("Bearer #{jwtToken}");
+        constantHeader = Expressions.toStringExpression("application/json");
+        if (!bearerHeader.apply(sessions[1].asScala()).toOption().get().equals("Bearer " + sessions[1].getString("jwtToken"))) {
+            throw new IllegalStateException("The EL header and the function header differ");
+        }
+    }
+
+    private Session session() {
+        return sessions[next++ & 1023];
+    }
+
+    @Benchmark
+    public String getString() {
+        return session().getString("gameName");
+    }
+
+    @Benchmark
+    public int getInt() {
+        return session().getInt("gameId");
+    }
+
+    @Benchmark
+    public Session set() {
+        return session().set("gameId", next);
+    }
+
+    @Benchmark
+    public Session setAndRemove() {
+        return session().set("jsonBody", "{}").remove("jsonBody");
+    }
+
+    @Benchmark
+    public String bearerHeaderEl() {
+        return bearerHeader.apply(session().asScala()).toOption().get();
+    }
+
+    @Benchmark
+    public String bearerHeaderFunction() {
+        return "Bearer " + session().getString("jwtToken");
+    }
+
+    @Benchmark
+    public String constantHeaderEl() {
+        return constantHeader.apply(session().asScala()).toOption().get();
+    }
+}
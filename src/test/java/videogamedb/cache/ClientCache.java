@@ -0,0 +1,213 @@
+package videogamedb.cache;
+
+import io.gatling.javaapi.core.ChainBuilder;
+import io.gatling.javaapi.core.Session;
+import io.gatling.javaapi.http.HttpProtocolBuilder;
+import io.gatling.javaapi.http.HttpRequestActionBuilder;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+import static io.gatling.javaapi.core.CoreDsl.*;
+import static io.gatling.javaapi.http.HttpDsl.header;
+import static io.gatling.javaapi.http.HttpDsl.status;
+
+// An opt-in HTTP cache in front of the GETs of the virtual users, so the load looks like what browsers and mobile
+// clients that cache send: the first read of a resource downloads it, the next ones are conditional requests, with
+// If-None-Match when the response had an ETag or else If-Modified-Since, which the server answers with a 304 and no
+// body while the copy is current. Unlike Gatling's built-in cache, which it replaces (see applyTo), the responses are
+// kept in a ResponseCache bounded by bytes, either one per user, the way every browser has its own, or one shared by
+// all of them, like a proxy in front of many clients. report() gives the 304 rate and the bytes it saved.
+//   cached("/videogame", http("Get all video games").get("/videogame"))
+// The body of every cached response is saved into the user's session until the request's update() has stored it,
+// so while it's on a user holds a copy of the response it's reading on top of Gatling's own.
+//
+// Runtime parameters:
+//   CLIENT_CACHE          off, user or shared (default off)
+//   CLIENT_CACHE_USER_KB  size of each user's cache (default 256)
+//   CLIENT_CACHE_MAX_MB   size of the shared cache (default 64)
+public final class ClientCache {
+
+    public enum Mode {
+        OFF, USER, SHARED
+    }
+
+    private static final String CACHE = "clientCache";
+    private static final String KEY = "clientCacheKey";
+    private static final String ETAG = "clientCacheETag";
+    private static final String LAST_MODIFIED = "clientCacheLastModified";
+    private static final String STATUS = "clientCacheStatus";
+    private static final String RESPONSE_ETAG = "clientCacheResponseETag";
+    private static final String RESPONSE_LAST_MODIFIED = "clientCacheResponseLastModified";
+    private static final String RESPONSE_BODY = "clientCacheResponseBody";
+    private static final int SHARED_SEGMENTS = 16;
+
+    private final Mode mode;
+    private final long userBytes;
+    private final long sharedBytes;
+    private final ResponseCache shared;
+
+    private final LongAdder requests = new LongAdder();
+    private final LongAdder conditional = new LongAdder();
+    private final LongAdder notModified = new LongAdder();
+    private final LongAdder bytesDownloaded = new LongAdder();
+    private final LongAdder bytesSaved = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder userCaches = new LongAdder();
+
+    private static final class Holder {
+        private static final ClientCache SHARED = fromSystemProperties();
+    }
+
+    public static ClientCache shared() {
+        return Holder.SHARED;
+    }
+
+    public static ClientCache fromSystemProperties() {
+        return new ClientCache(
+                Mode.valueOf(System.getProperty("CLIENT_CACHE", "off").toUpperCase(Locale.ROOT)),
+                Long.getLong("CLIENT_CACHE_USER_KB", 256) * 1024,
+                Long.getLong("CLIENT_CACHE_MAX_MB", 64) * 1024 * 1024);
+    }
+
+    public ClientCache(Mode mode, long userBytes, long sharedBytes) {
+        if (userBytes <= 0 || sharedBytes <= 0) {
+            throw new IllegalArgumentException("CLIENT_CACHE_USER_KB and CLIENT_CACHE_MAX_MB must be positive");
+        }
+        this.mode = mode;
+        this.userBytes = userBytes;
+        this.sharedBytes = sharedBytes;
+        this.shared = mode == Mode.SHARED ? new ResponseCache(sharedBytes, SHARED_SEGMENTS, evictions) : null;
+    }
+
+    public boolean enabled() {
+        return mode != Mode.OFF;
+    }
+
+    // Turns Gatling's own cache off while this one is on, so the two don't both add validators to the same request
+    public HttpProtocolBuilder applyTo(HttpProtocolBuilder protocol) {
+        return enabled() ? protocol.disableCaching() : protocol;
+    }
+
+    public ChainBuilder cached(String key, HttpRequestActionBuilder request, int... alsoAccepted) {
+        return cached(session -> key, request, alsoAccepted);
+    }
+
+    // The request, sent conditionally when the cache has a copy stored under the key the function gives for the session.
+    // When the cache is off it's just the request. Saving the status replaces Gatling's implicit check on it, so the
+    // same statuses are checked here, 2xx and 304, plus the ones the request also accepts, like a 404 for a read of a
+    // game that may be gone. A check of its own on the status of the request must accept 304.
+    public ChainBuilder cached(Function<Session, String> key, HttpRequestActionBuilder request, int... alsoAccepted) {
+        if (!enabled()) {
+            return exec(request);
+        }
+        List<Integer> accepted = new ArrayList<>();
+        for (int status = 200; status < 300; status++) {
+            accepted.add(status);
+        }
+        accepted.add(304);
+        for (int status : alsoAccepted) {
+            accepted.add(status);
+        }
+        HttpRequestActionBuilder recorded = request.check(
+                status().in(accepted).saveAs(STATUS),
+                header("ETag").optional().saveAs(RESPONSE_ETAG),
+                header("Last-Modified").optional().saveAs(RESPONSE_LAST_MODIFIED),
+                bodyBytes().saveAs(RESPONSE_BODY));
+        return exec(session -> lookup(session, key.apply(session)))
+                .doIfOrElse(session -> session.contains(ETAG)).then(
+                        exec(recorded.header("If-None-Match", "#{" + ETAG + "}"))
+                ).orElse(
+                        doIfOrElse(session -> session.contains(LAST_MODIFIED)).then(
+                                exec(recorded.header("If-Modified-Since", "#{" + LAST_MODIFIED + "}"))
+                        ).orElse(
+                                exec(recorded)))
+                .exec(this::update);
+    }
+
+    // Puts the validators of the stored copy, if there is one, into the session for the request
+    private Session lookup(Session session, String key) {
+        requests.increment();
+        ResponseCache cache = cache(session);
+        if (mode == Mode.USER && !session.contains(CACHE)) {
+            session = session.set(CACHE, cache); // The user's first cached request
+        }
+        session = session.set(KEY, key).removeAll(ETAG, LAST_MODIFIED, STATUS, RESPONSE_ETAG, RESPONSE_LAST_MODIFIED, RESPONSE_BODY);
+        ResponseCache.Entry entry = cache.get(key);
+        if (entry == null) {
+            return session;
+        }
+        conditional.increment();
+        if (entry.etag != null) {
+            return session.set(ETAG, entry.etag());
+        }
+        return entry.lastModified != null ? session.set(LAST_MODIFIED, entry.lastModified()) : session;
+    }
+
+    // Stores a 200 with validators, counts the body a 304 saved downloading, and forgets a resource that's gone when the
+    // request accepts a 404 or 410. Other failures leave the cache alone.
+    private Session update(Session session) {
+        if (session.contains(STATUS)) {
+            ResponseCache cache = cache(session);
+            String key = session.getString(KEY);
+            int status = session.getInt(STATUS);
+            if (status == 304) {
+                notModified.increment();
+                ResponseCache.Entry entry = cache.get(key);
+                if (entry != null) {
+                    bytesSaved.add(entry.body.length);
+                }
+            } else if (status == 200 && session.contains(RESPONSE_BODY)) {
+                byte[] body = session.get(RESPONSE_BODY);
+                bytesDownloaded.add(body.length);
+                String etag = session.getString(RESPONSE_ETAG);
+                String lastModified = session.getString(RESPONSE_LAST_MODIFIED);
+                if (etag != null || lastModified != null) {
+                    cache.put(key, new ResponseCache.Entry(etag, lastModified, body));
+                }
+            } else if (status == 404 || status == 410) {
+                cache.remove(key);
+            }
+        }
+        return session.removeAll(KEY, ETAG, LAST_MODIFIED, STATUS, RESPONSE_ETAG, RESPONSE_LAST_MODIFIED, RESPONSE_BODY);
+    }
+
+    private ResponseCache cache(Session session) {
+        if (mode == Mode.SHARED) {
+            return shared;
+        }
+        ResponseCache cache = session.get(CACHE);
+        if (cache == null) {
+            userCaches.increment();
+            cache = new ResponseCache(userBytes, 1, evictions);
+        }
+        return cache;
+    }
+
+    public String describe() {
+        switch (mode) {
+            case USER:
+                return String.format("client cache per user, %d KB each", userBytes / 1024);
+            case SHARED:
+                return String.format("client cache shared by all users, %d MB", sharedBytes / 1024 / 1024);
+            default:
+                return "client cache off";
+        }
+    }
+
+    public String report() {
+        if (!enabled()) {
+            return describe();
+        }
+        long requestCount = requests.sum();
+        long notModifiedCount = notModified.sum();
+        return String.format("Client cache (%s): %d requests, %d conditional, %d not modified (%.1f%%), %d KB downloaded, %d KB saved, %d evictions%s",
+                mode.name().toLowerCase(Locale.ROOT), requestCount, conditional.sum(), notModifiedCount,
+                requestCount == 0 ? 0.0 : 100.0 * notModifiedCount / requestCount,
+                bytesDownloaded.sum() / 1024, bytesSaved.sum() / 1024, evictions.sum(),
+                mode == Mode.SHARED ? String.format(", %d KB held", shared.bytes() / 1024) : String.format(", %d user caches", userCaches.sum()));
+    }
+}
@@ -0,0 +1,125 @@
+package videogamedb.cache;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+// A least recently used cache of responses bounded by the bytes it holds rather than by its number of entries, so a few
+// large bodies can't take more memory than many small ones. An entry keeps the validators (ETag and Last-Modified) and
+// the body as byte arrays, about 100 bytes of overhead on top of them. The cache is split into segments by the key's
+// hash, each with an equal share of the budget and its own lock, so the users sharing a cache rarely wait for each
+// other; a cache owned by a single user has one segment.
+final class ResponseCache {
+
+    private static final int ENTRY_OVERHEAD = 96; // Entry, map node, key String and array headers, roughly
+
+    static final class Entry {
+        final byte[] etag;
+        final byte[] lastModified;
+        final byte[] body;
+
+        Entry(String etag, String lastModified, byte[] body) {
+            this.etag = etag == null ? null : etag.getBytes(StandardCharsets.ISO_8859_1);
+            this.lastModified = lastModified == null ? null : lastModified.getBytes(StandardCharsets.ISO_8859_1);
+            this.body = body;
+        }
+
+        String etag() {
+            return etag == null ? null : new String(etag, StandardCharsets.ISO_8859_1);
+        }
+
+        String lastModified() {
+            return lastModified == null ? null : new String(lastModified, StandardCharsets.ISO_8859_1);
+        }
+
+        long size(String key) {
+            return ENTRY_OVERHEAD + 2L * key.length() + body.length
+                    + (etag == null ? 0 : etag.length) + (lastModified == null ? 0 : lastModified.length);
+        }
+    }
+
+    private final Segment[] segments;
+    private final LongAdder evictions; // May be shared by many caches
+
+    ResponseCache(long maxBytes, int segmentCount, LongAdder evictions) {
+        this.evictions = evictions;
+        int count = Math.max(1, Integer.highestOneBit(Math.max(1, segmentCount))); // A power of two, so we can mask
+        segments = new Segment[count];
+        for (int i = 0; i < count; i++) {
+            segments[i] = new Segment(Math.max(1, maxBytes / count));
+        }
+    }
+
+    Entry get(String key) {
+        return segment(key).get(key);
+    }
+
+    // Stores an entry, evicting the least recently used ones until it fits. An entry larger than a segment isn't kept.
+    void put(String key, Entry entry) {
+        segment(key).put(key, entry);
+    }
+
+    void remove(String key) {
+        segment(key).remove(key);
+    }
+
+    long bytes() {
+        long bytes = 0;
+        for (Segment segment : segments) {
+            bytes += segment.bytes();
+        }
+        return bytes;
+    }
+
+    private Segment segment(String key) {
+        int hash = key.hashCode();
+        return segments[(hash ^ (hash >>> 16)) & (segments.length - 1)];
+    }
+
+    private final class Segment {
+        private final long maxBytes;
+        private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true); // Access order, the eldest first
+        private long bytes;
+
+        Segment(long maxBytes) {
+            this.maxBytes = maxBytes;
+        }
+
+        synchronized Entry get(String key) {
+            return entries.get(key);
+        }
+
+        synchronized void put(String key, Entry entry) {
+            long size = entry.size(key);
+            Entry previous = entries.remove(key);
+            if (previous != null) {
+                bytes -= previous.size(key);
+            }
+            if (size > maxBytes) {
+                return;
+            }
+            Iterator<Map.Entry<String, Entry>> eldest = entries.entrySet().iterator();
+            while (bytes + size > maxBytes && eldest.hasNext()) {
+                Map.Entry<String, Entry> evicted = eldest.next();
+                bytes -= evicted.getValue().size(evicted.getKey());
+                eldest.remove();
+                evictions.increment();
+            }
+            entries.put(key, entry);
+            bytes += size;
+        }
+
+        synchronized void remove(String key) {
+            Entry removed = entries.remove(key);
+            if (removed != null) {
+                bytes -= removed.size(key);
+            }
+        }
+
+        synchronized long bytes() {
+            return bytes;
+        }
+    }
+}
@@ -0,0 +1,93 @@
+package videogamedb.checks;
+
+import io.gatling.javaapi.core.CheckBuilder;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import static io.gatling.javaapi.core.CoreDsl.bodyStream;
+
+// Checks that run on the raw response bytes, through bodyStream() which reads the response chunks in place, instead
+// of bodyString() and jsonPath() which first copy the whole body into a String (and for jsonPath, a parsed document).
+// A passing check allocates nothing but the value it extracts; only a failing one builds a short preview of the body
+// for the error message.
+//   .check(BodyChecks.bodyIs("Video game deleted"))
+//   .check(BodyChecks.jsonInt("id").saveAs("gameId"))      instead of jsonPath("$.id").ofInt()
+//   .check(BodyChecks.jsonString("token").saveAs("jwtToken"))  instead of jsonPath("$.token")
+public final class BodyChecks {
+
+    private static final int PREVIEW_BYTES = 64;
+    private static final ThreadLocal<byte[]> SCRATCH = ThreadLocal.withInitial(() -> new byte[PREVIEW_BYTES]);
+
+    private BodyChecks() {
+    }
+
+    // The body is exactly expected
+    public static CheckBuilder.Final bodyIs(String expected) {
+        byte[] bytes = expected.getBytes(StandardCharsets.UTF_8);
+        return bodyStream().transform(in -> {
+            String mismatch = mismatch(in, bytes, true);
+            return mismatch == null ? expected : mismatch;
+        }).is(expected);
+    }
+
+    // The body starts with prefix
+    public static CheckBuilder.Final bodyStartsWith(String prefix) {
+        byte[] bytes = prefix.getBytes(StandardCharsets.UTF_8);
+        return bodyStream().transform(in -> {
+            String mismatch = mismatch(in, bytes, false);
+            return mismatch == null ? prefix : mismatch;
+        }).is(prefix);
+    }
+
+    // The top-level string (or other scalar, as written) field of a JSON object body
+    public static CheckBuilder.Validate<String> jsonString(String field) {
+        JsonFieldExtractor extractor = new JsonFieldExtractor(field);
+        return bodyStream().transform(in -> {
+            try {
+                return extractor.extractString(in);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+    }
+
+    // The top-level int field of a JSON object body
+    public static CheckBuilder.Validate<Integer> jsonInt(String field) {
+        JsonFieldExtractor extractor = new JsonFieldExtractor(field);
+        return bodyStream().transform(in -> {
+            try {
+                return extractor.extractInt(in);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+    }
+
+    // Null when the body matches expected (entirely, or as a prefix), otherwise the start of the body for the error message
+    public static String mismatch(InputStream in, byte[] expected, boolean whole) {
+        try {
+            byte[] buffer = SCRATCH.get();
+            if (buffer.length < expected.length + 1) {
+                buffer = new byte[Math.max(expected.length + 1, PREVIEW_BYTES)];
+                SCRATCH.set(buffer);
+            }
+            int read = in.readNBytes(buffer, 0, whole ? expected.length + 1 : expected.length); // One more, to spot a longer body
+            if (read >= expected.length && Arrays.equals(buffer, 0, expected.length, expected, 0, expected.length)
+                    && (!whole || read == expected.length)) {
+                return null;
+            }
+            if (read < PREVIEW_BYTES) {
+                read += in.readNBytes(buffer, read, PREVIEW_BYTES - read); // Only a failing check reads on, for the message
+            }
+            int length = Math.min(read, PREVIEW_BYTES);
+            String preview = new String(buffer, 0, length, StandardCharsets.UTF_8);
+            return read > length || in.read() >= 0 ? preview + "..." : preview;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
@@ -0,0 +1,152 @@
+package videogamedb.checks;
+
+import io.gatling.javaapi.core.CheckBuilder;
+
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import static io.gatling.javaapi.core.CoreDsl.bodyStream;
+
+// Logs a sample of response bodies for debugging, instead of println-ing every one of them from the virtual users.
+// A response is picked with probability DEBUG_LOG_SAMPLE and within DEBUG_LOG_RATE lines per second; only picked
+// responses are read into a String, and the lines are written by a background thread, so users never wait on stdout's
+// lock. Lines that don't fit in the queue are dropped and counted rather than slowing the run down.
+//   .check(DebugLog.responseBody("Create New Game"))
+//
+// Runtime parameters:
+//   DEBUG_LOG_SAMPLE  fraction of responses considered for logging, 0 to turn logging off (default 0.01)
+//   DEBUG_LOG_RATE    most lines written per second (default 10)
+//   DEBUG_LOG_FILE    file to append the lines to (default standard out)
+public final class DebugLog {
+
+    private static final double SAMPLE = Double.parseDouble(System.getProperty("DEBUG_LOG_SAMPLE", "0.01"));
+    private static final double RATE = Double.parseDouble(System.getProperty("DEBUG_LOG_RATE", "10"));
+    private static final String FILE = System.getProperty("DEBUG_LOG_FILE");
+    private static final int MAX_BODY_BYTES = 4096;
+    private static final int QUEUE_SIZE = 1024;
+
+    private final double sample;
+    private final long intervalNanos;
+    private final AtomicLong nextPermit = new AtomicLong(System.nanoTime());
+    private final BlockingQueue<String> queue = new ArrayBlockingQueue<>(QUEUE_SIZE);
+    private final LongAdder logged = new LongAdder();
+    private final LongAdder rateLimited = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
+    private final PrintStream out;
+
+    private static final class Holder {
+        private static final DebugLog SHARED = new DebugLog(SAMPLE, RATE, open(FILE));
+    }
+
+    public static DebugLog shared() {
+        return Holder.SHARED;
+    }
+
+    // A check that never fails and logs a sample of the request's response bodies
+    public static CheckBuilder.Final responseBody(String label) {
+        DebugLog log = shared();
+        return bodyStream().transform(in -> {
+            log.offer(label, in);
+            return Boolean.TRUE;
+        }).is(Boolean.TRUE);
+    }
+
+    DebugLog(double sample, double ratePerSecond, PrintStream out) {
+        this.sample = sample;
+        this.intervalNanos = (long) (TimeUnit.SECONDS.toNanos(1) / Math.max(ratePerSecond, 0.001));
+        this.out = out;
+        if (sample <= 0) {
+            return;
+        }
+        Thread writer = new Thread(this::drain, "debug-log");
+        writer.setDaemon(true);
+        writer.start();
+        Runtime.getRuntime().addShutdownHook(new Thread(this::close, "debug-log-shutdown"));
+    }
+
+    // Logs the body if the response is sampled and the rate allows it. Never blocks.
+    public void offer(String label, InputStream body) {
+        if (sample <= 0 || ThreadLocalRandom.current().nextDouble() >= sample) {
+            return;
+        }
+        if (!tryAcquire()) {
+            rateLimited.increment();
+            return;
+        }
+        String line;
+        try {
+            byte[] bytes = body.readNBytes(MAX_BODY_BYTES);
+            line = label + ": " + new String(bytes, StandardCharsets.UTF_8) + (body.read() >= 0 ? "..." : "");
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        if (!queue.offer(line)) {
+            dropped.increment();
+        }
+    }
+
+    public String report() {
+        return String.format("Debug log: %d responses logged, %d skipped by the rate limit, %d dropped by a full queue",
+                logged.sum(), rateLimited.sum(), dropped.sum());
+    }
+
+    // A permit every intervalNanos, with up to a second's worth saved up for bursts
+    private boolean tryAcquire() {
+        long now = System.nanoTime();
+        while (true) {
+            long next = nextPermit.get();
+            if (next - now > 0) {
+                return false;
+            }
+            long earliest = now - TimeUnit.SECONDS.toNanos(1);
+            if (nextPermit.compareAndSet(next, Math.max(next, earliest) + intervalNanos)) {
+                return true;
+            }
+        }
+    }
+
+    private void drain() {
+        try {
+            while (true) {
+                write(queue.take());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void write(String line) {
+        out.println(line);
+        logged.increment();
+    }
+
+    private void close() {
+        String line;
+        while ((line = queue.poll()) != null) {
+            write(line);
+        }
+        out.println(report());
+        out.flush();
+    }
+
+    private static PrintStream open(String file) {
+        if (file == null) {
+            return System.out;
+        }
+        try {
+            return new PrintStream(new FileOutputStream(file, true), false, StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to open " + file, e);
+        }
+    }
+}
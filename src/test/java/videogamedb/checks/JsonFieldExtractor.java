@@ -0,0 +1,270 @@
+package videogamedb.checks;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+// Pulls one top-level field, like $.token or $.id, out of a JSON object while streaming over its bytes, without
+// building a String of the body or a tree of the document the way jsonPath() does. Nested objects and arrays are
+// skipped over, never parsed, and reading stops as soon as the field's value is complete.
+// Only the top level is searched, so this can replace jsonPath("$.name") but not deeper or filtering paths.
+public final class JsonFieldExtractor {
+
+    private static final ThreadLocal<byte[]> SCRATCH = ThreadLocal.withInitial(() -> new byte[256]);
+    private static final ThreadLocal<byte[]> READ_BUFFER = ThreadLocal.withInitial(() -> new byte[512]);
+
+    private final byte[] field;
+
+    public JsonFieldExtractor(String field) {
+        this.field = field.getBytes(StandardCharsets.UTF_8);
+    }
+
+    // The field's value as a String (strings unescaped, other values as written), or null if the body has no such field
+    public String extractString(InputStream in) throws IOException {
+        Scanner scanner = new Scanner(in);
+        int first = scanner.findValue(field);
+        if (first < 0) {
+            return null;
+        }
+        return first == '"' ? scanner.readString() : scanner.readLiteral(first);
+    }
+
+    // The field's value as an Integer, or null if the body has no such field or its value isn't an int
+    public Integer extractInt(InputStream in) throws IOException {
+        Scanner scanner = new Scanner(in);
+        int first = scanner.findValue(field);
+        if (first != '-' && (first < '0' || first > '9')) {
+            return null;
+        }
+        boolean negative = first == '-';
+        long value = negative ? 0 : first - '0';
+        int digits = negative ? 0 : 1;
+        int b;
+        while ((b = scanner.next()) >= '0' && b <= '9') {
+            value = value * 10 + (b - '0');
+            if (++digits > 10) {
+                return null;
+            }
+        }
+        if (digits == 0 || b == '.' || b == 'e' || b == 'E') {
+            return null;
+        }
+        value = negative ? -value : value;
+        return value < Integer.MIN_VALUE || value > Integer.MAX_VALUE ? null : (int) value;
+    }
+
+    private static final class Scanner {
+        private final InputStream in;
+        private final byte[] buffer = READ_BUFFER.get(); // Read in chunks, a read() call per byte costs more than the parsing
+        private int position;
+        private int limit;
+        private int pushedBack = -2;
+
+        Scanner(InputStream in) {
+            this.in = in;
+        }
+
+        int next() throws IOException {
+            if (pushedBack != -2) {
+                int b = pushedBack;
+                pushedBack = -2;
+                return b;
+            }
+            if (position == limit) {
+                limit = in.read(buffer, 0, buffer.length);
+                position = 0;
+                if (limit <= 0) {
+                    limit = 0;
+                    return -1;
+                }
+            }
+            return buffer[position++] & 0xFF;
+        }
+
+        int nextNonWhitespace() throws IOException {
+            int b;
+            do {
+                b = next();
+            } while (b == ' ' || b == '\n' || b == '\r' || b == '\t');
+            return b;
+        }
+
+        // Positions the scanner on the value of the top-level field and returns the value's first byte, or -1
+        int findValue(byte[] field) throws IOException {
+            if (nextNonWhitespace() != '{') {
+                return -1;
+            }
+            while (true) {
+                int b = nextNonWhitespace();
+                if (b != '"') {
+                    return -1; // End of the object, or not JSON
+                }
+                boolean matches = keyMatches(field);
+                if (nextNonWhitespace() != ':') {
+                    return -1;
+                }
+                int first = nextNonWhitespace();
+                if (matches) {
+                    return first;
+                }
+                skipValue(first);
+                b = nextNonWhitespace();
+                if (b != ',') {
+                    return -1;
+                }
+            }
+        }
+
+        // Reads a key up to its closing quote, comparing it with field on the way
+        private boolean keyMatches(byte[] field) throws IOException {
+            boolean matches = true;
+            int i = 0;
+            int b;
+            while ((b = next()) != '"') {
+                if (b < 0) {
+                    return false;
+                }
+                if (b == '\\') {
+                    next(); // Escaped keys never match, our field names don't need escaping
+                    matches = false;
+                    continue;
+                }
+                matches &= i < field.length && field[i] == (byte) b;
+                i++;
+            }
+            return matches && i == field.length;
+        }
+
+        private void skipValue(int first) throws IOException {
+            if (first == '"') {
+                skipString();
+            } else if (first == '{' || first == '[') {
+                int depth = 1;
+                while (depth > 0) {
+                    int b = next();
+                    if (b < 0) {
+                        return;
+                    } else if (b == '"') {
+                        skipString();
+                    } else if (b == '{' || b == '[') {
+                        depth++;
+                    } else if (b == '}' || b == ']') {
+                        depth--;
+                    }
+                }
+            } else {
+                int b;
+                do {
+                    b = next();
+                } while (b >= 0 && b != ',' && b != '}' && b != ' ' && b != '\n' && b != '\r' && b != '\t');
+                pushedBack = b;
+            }
+        }
+
+        private void skipString() throws IOException {
+            int b;
+            while ((b = next()) != '"' && b >= 0) {
+                if (b == '\\') {
+                    next();
+                }
+            }
+        }
+
+        // Reads a string value after its opening quote, unescaping it into a per-thread buffer
+        String readString() throws IOException {
+            byte[] out = SCRATCH.get();
+            int length = 0;
+            int highSurrogate = -1;
+            int b;
+            while (true) {
+                if (pushedBack == -2 && position < limit) {
+                    // Copy the run of plain characters up to the next quote or escape in one go
+                    int from = position;
+                    while (position < limit && buffer[position] != '"' && buffer[position] != '\\') {
+                        position++;
+                    }
+                    int run = position - from;
+                    if (length + run + 4 > out.length) {
+                        out = grow(out, length + run + 4);
+                    }
+                    System.arraycopy(buffer, from, out, length, run);
+                    length += run;
+                }
+                if ((b = next()) == '"') {
+                    break;
+                }
+                if (b < 0) {
+                    return null;
+                }
+                if (length + 4 > out.length) {
+                    out = grow(out, length + 4);
+                }
+                if (b != '\\') {
+                    out[length++] = (byte) b;
+                    continue;
+                }
+                int escaped = next();
+                switch (escaped) {
+                    case 'b': out[length++] = '\b'; break;
+                    case 'f': out[length++] = '\f'; break;
+                    case 'n': out[length++] = '\n'; break;
+                    case 'r': out[length++] = '\r'; break;
+                    case 't': out[length++] = '\t'; break;
+                    case 'u': {
+                        int c = 0;
+                        for (int i = 0; i < 4; i++) {
+                            c = (c << 4) | Character.digit(next(), 16);
+                        }
+                        if (Character.isHighSurrogate((char) c)) {
+                            highSurrogate = c;
+                            continue;
+                        }
+                        int codePoint = highSurrogate >= 0 && Character.isLowSurrogate((char) c)
+                                ? Character.toCodePoint((char) highSurrogate, (char) c)
+                                : c;
+                        length = writeUtf8(out, length, codePoint);
+                        break;
+                    }
+                    default: out[length++] = (byte) escaped; // \" \\ \/
+                }
+                highSurrogate = -1;
+            }
+            return new String(out, 0, length, StandardCharsets.UTF_8);
+        }
+
+        private static byte[] grow(byte[] out, int minLength) {
+            byte[] grown = Arrays.copyOf(out, Math.max(out.length * 2, minLength));
+            SCRATCH.set(grown);
+            return grown;
+        }
+
+        String readLiteral(int first) throws IOException {
+            StringBuilder literal = new StringBuilder().append((char) first);
+            int b;
+            while ((b = next()) >= 0 && b != ',' && b != '}' && b != ' ' && b != '\n' && b != '\r' && b != '\t') {
+                literal.append((char) b);
+            }
+            return literal.toString();
+        }
+
+        private static int writeUtf8(byte[] buffer, int position, int codePoint) {
+            if (codePoint < 0x80) {
+                buffer[position++] = (byte) codePoint;
+            } else if (codePoint < 0x800) {
+                buffer[position++] = (byte) (0xC0 | (codePoint >> 6));
+                buffer[position++] = (byte) (0x80 | (codePoint & 0x3F));
+            } else if (codePoint < 0x10000) {
+                buffer[position++] = (byte) (0xE0 | (codePoint >> 12));
+                buffer[position++] = (byte) (0x80 | ((codePoint >> 6) & 0x3F));
+                buffer[position++] = (byte) (0x80 | (codePoint & 0x3F));
+            } else {
+                buffer[position++] = (byte) (0xF0 | (codePoint >> 18));
+                buffer[position++] = (byte) (0x80 | ((codePoint >> 12) & 0x3F));
+                buffer[position++] = (byte) (0x80 | ((codePoint >> 6) & 0x3F));
+                buffer[position++] = (byte) (0x80 | (codePoint & 0x3F));
+            }
+            return position;
+        }
+    }
+}
@@ -0,0 +1,116 @@
+package videogamedb.correlation;
+
+import io.gatling.javaapi.core.ChainBuilder;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+import static io.gatling.javaapi.core.CoreDsl.exec;
+
+// A lock-free pool of the ids of games created during the run, so virtual users can work on each other's games and
+// reads spread across many distinct keys instead of all hitting the same one.
+// Ids live in a fixed array of slots (0 meaning empty). Every operation starts probing at a random slot, so concurrent
+// users rarely touch the same slot, and claiming or clearing a slot is a single CAS.
+//
+// Runtime parameters:
+//   GAME_ID_POOL_SIZE  number of slots, rounded up to a power of two (default 65536)
+public final class GameIdPool {
+
+    private static final int POOL_SIZE = Integer.parseInt(System.getProperty("GAME_ID_POOL_SIZE", "65536"));
+    private static final int MAX_PROBES = 16;
+    private static final int EMPTY = 0;
+
+    private final AtomicIntegerArray slots;
+    private final int mask;
+
+    private static final class Holder {
+        private static final GameIdPool SHARED = new GameIdPool(POOL_SIZE);
+    }
+
+    public static GameIdPool shared() {
+        return Holder.SHARED;
+    }
+
+    public GameIdPool(int size) {
+        if (size <= 0) {
+            throw new IllegalArgumentException("size must be positive: " + size);
+        }
+        int capacity = size == 1 ? 1 : Integer.highestOneBit(size - 1) << 1;
+        slots = new AtomicIntegerArray(capacity);
+        mask = capacity - 1;
+    }
+
+    // Adds an id to the pool and returns the slot it went into, or -1 if no free slot was found and the id was dropped
+    public int offer(int id) {
+        if (id == EMPTY) {
+            throw new IllegalArgumentException("Game ids must not be 0");
+        }
+        int start = ThreadLocalRandom.current().nextInt();
+        for (int i = 0; i < MAX_PROBES; i++) {
+            int slot = (start + i) & mask;
+            if (slots.get(slot) == EMPTY && slots.compareAndSet(slot, EMPTY, id)) {
+                return slot;
+            }
+        }
+        return -1;
+    }
+
+    // Removes an id offered earlier, e.g. once its game has been deleted. Does nothing if someone else already took it.
+    public boolean remove(int slot, int id) {
+        return slot >= 0 && slots.compareAndSet(slot & mask, id, EMPTY);
+    }
+
+    // Returns a random id from the pool without removing it, or 0 if none was found
+    public int sample() {
+        int start = ThreadLocalRandom.current().nextInt();
+        for (int i = 0; i < MAX_PROBES; i++) {
+            int id = slots.get((start + i) & mask);
+            if (id != EMPTY) {
+                return id;
+            }
+        }
+        return EMPTY;
+    }
+
+    // Removes and returns a random id from the pool, so no other user can get it, or 0 if none was found
+    public int poll() {
+        int start = ThreadLocalRandom.current().nextInt();
+        for (int i = 0; i < MAX_PROBES; i++) {
+            int slot = (start + i) & mask;
+            int id = slots.get(slot);
+            if (id != EMPTY && slots.compareAndSet(slot, id, EMPTY)) {
+                return id;
+            }
+        }
+        return EMPTY;
+    }
+
+    // Offers the game id saved in the session under idKey, remembering its slot in idKey + "Slot" so it can be released
+    public ChainBuilder offer(String idKey) {
+        return exec(session -> session.contains(idKey)
+                ? session.set(idKey + "Slot", offer(session.getInt(idKey)))
+                : session);
+    }
+
+    // Takes the game id saved under idKey back out of the pool, so other users stop reading it
+    public ChainBuilder release(String idKey) {
+        return exec(session -> {
+            if (session.contains(idKey) && session.contains(idKey + "Slot")) {
+                remove(session.getInt(idKey + "Slot"), session.getInt(idKey));
+            }
+            return session.remove(idKey + "Slot");
+        });
+    }
+
+    // Saves a random pooled game id under intoKey, falling back to the session's own fallbackKey when the pool is empty
+    // The id isn't leased: its owner can release and delete the game before the read, so reads should accept a 404
+    public ChainBuilder sample(String intoKey, String fallbackKey) {
+        return exec(session -> {
+            int id = sample();
+            if (id != EMPTY) {
+                return session.set(intoKey, id);
+            }
+            return session.contains(fallbackKey) ? session.set(intoKey, session.getInt(fallbackKey)) : session;
+        });
+    }
+}
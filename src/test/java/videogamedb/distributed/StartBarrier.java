@@ -0,0 +1,61 @@
+package videogamedb.distributed;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintWriter;
+import java.io.UncheckedIOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+
+// Lines up the start of injection across the injector JVMs of a distributed run (see Coordinator).
+// Call await() at the end of a simulation's before(): when the JVM was started by the Coordinator (COORDINATOR is set)
+// it reports in and blocks until every injector has, then all of them start at the same agreed wall clock time.
+// Otherwise it returns straight away.
+//
+// Runtime parameters, set by the Coordinator:
+//   COORDINATOR  host:port of the coordinator's barrier
+//   INJECTOR_ID  index of this injector
+public final class StartBarrier {
+
+    private static final String COORDINATOR = System.getProperty("COORDINATOR");
+    private static final String INJECTOR_ID = System.getProperty("INJECTOR_ID", "0");
+    private static final int TIMEOUT_MS = 5 * 60 * 1000;
+
+    private StartBarrier() {
+    }
+
+    public static void await() {
+        if (COORDINATOR == null) {
+            return;
+        }
+        int separator = COORDINATOR.lastIndexOf(':');
+        String host = COORDINATOR.substring(0, separator);
+        int port = Integer.parseInt(COORDINATOR.substring(separator + 1));
+
+        try (Socket socket = new Socket()) {
+            socket.connect(new InetSocketAddress(host, port), 10_000);
+            socket.setSoTimeout(TIMEOUT_MS);
+            PrintWriter out = new PrintWriter(socket.getOutputStream(), true, StandardCharsets.US_ASCII);
+            BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.US_ASCII));
+            out.println("READY " + INJECTOR_ID);
+
+            String go = in.readLine(); // "GO <epoch millis to start at>"
+            if (go == null || !go.startsWith("GO ")) {
+                throw new IllegalStateException("Unexpected message from the coordinator: " + go);
+            }
+            long startAt = Long.parseLong(go.substring(3).trim());
+            long wait = startAt - System.currentTimeMillis();
+            System.out.printf("Injector %s starting in %d ms%n", INJECTOR_ID, Math.max(0, wait));
+            if (wait > 0) {
+                Thread.sleep(wait);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to reach the coordinator at " + COORDINATOR, e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for the other injectors", e);
+        }
+    }
+}
@@ -0,0 +1,155 @@
+package videogamedb.failures;
+
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.core.UnsynchronizedAppenderBase;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.zip.GZIPOutputStream;
+
+// Writes the failed requests FailureSampler picked to gzipped files, without slowing the run down the way Gatling's
+// console logging of failures does at load. On the event loop, append() only puts the dump into a FailureRing; a
+// background thread writes it out. When the ring is full the failure is dropped and counted, it never waits.
+// The files are FAILURE_LOG_DIR/failures-<start>-<n>.log.gz, a new one every FAILURE_LOG_MAX_MB of uncompressed
+// dumps, keeping the last FAILURE_LOG_FILES. They are flushed every second, so zcat shows them while the run goes on.
+// report() sums up what was captured, per request name. See logback-test.xml.
+//
+// Runtime parameters:
+//   FAILURE_LOG_DIR     folder of the files (default target/failures)
+//   FAILURE_LOG_MAX_MB  uncompressed size of a file before the next one is started (default 50)
+//   FAILURE_LOG_FILES   files kept, the oldest are deleted (default 10)
+//   FAILURE_LOG_BUFFER  failures held for the writer before new ones are dropped (default 1024)
+public final class FailureLogAppender extends UnsynchronizedAppenderBase<ILoggingEvent> {
+
+    private static final Path DIRECTORY = Path.of(System.getProperty("FAILURE_LOG_DIR", "target/failures"));
+    private static final long MAX_FILE_BYTES = Long.getLong("FAILURE_LOG_MAX_MB", 50) * 1024 * 1024;
+    private static final int MAX_FILES = Integer.getInteger("FAILURE_LOG_FILES", 10);
+    private static final int BUFFER = Integer.getInteger("FAILURE_LOG_BUFFER", 1024);
+    private static final long FLUSH_NANOS = TimeUnit.SECONDS.toNanos(1);
+    private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(10);
+
+    private static final LongAdder CAPTURED = new LongAdder();
+    private static final LongAdder WRITTEN = new LongAdder();
+    private static final LongAdder DROPPED = new LongAdder();
+
+    private final FailureRing<Failure> ring = new FailureRing<>(BUFFER);
+    private final long started = System.currentTimeMillis();
+    private final Deque<Path> files = new ArrayDeque<>(); // Those kept, the oldest first
+    private int fileCount;
+    private volatile boolean running;
+    private Thread writer;
+    private OutputStream out;
+    private long fileBytes;
+
+    @Override
+    public void start() {
+        running = true;
+        writer = new Thread(this::drain, "failure-log");
+        writer.setDaemon(true);
+        writer.start();
+        Runtime.getRuntime().addShutdownHook(new Thread(this::stop, "failure-log-shutdown"));
+        super.start();
+    }
+
+    @Override
+    protected void append(ILoggingEvent event) {
+        String name = FailureSampler.takeCaptured();
+        CAPTURED.increment();
+        if (!ring.offer(new Failure(event.getTimeStamp(), name == null ? "?" : name, event.getMessage()))) {
+            DROPPED.increment();
+        }
+    }
+
+    @Override
+    public synchronized void stop() {
+        if (!running) {
+            return;
+        }
+        super.stop();
+        running = false;
+        LockSupport.unpark(writer);
+        try {
+            writer.join(TimeUnit.SECONDS.toMillis(5));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    public static String report() {
+        return String.format("Failure log: %d failures captured, %d written to %s, %d dropped by a full buffer%s",
+                CAPTURED.sum(), WRITTEN.sum(), DIRECTORY, DROPPED.sum(), FailureSampler.report());
+    }
+
+    private void drain() {
+        long lastFlush = System.nanoTime();
+        try {
+            while (running) {
+                Failure failure = ring.poll();
+                if (failure != null) {
+                    write(failure);
+                } else {
+                    LockSupport.parkNanos(IDLE_PARK_NANOS);
+                }
+                if (out != null && System.nanoTime() - lastFlush > FLUSH_NANOS) {
+                    out.flush(); // A sync flush, so what's written so far can be decompressed
+                    lastFlush = System.nanoTime();
+                }
+            }
+            Failure failure;
+            while ((failure = ring.poll()) != null) {
+                write(failure);
+            }
+            if (out != null) {
+                out.close();
+            }
+        } catch (IOException e) {
+            addError("Failed to write the failure log in " + DIRECTORY, e);
+        }
+    }
+
+    private void write(Failure failure) throws IOException {
+        byte[] bytes = (Instant.ofEpochMilli(failure.timestampMillis) + " " + failure.requestName + System.lineSeparator()
+                + failure.dump + System.lineSeparator()).getBytes(StandardCharsets.UTF_8);
+        if (out == null || fileBytes + bytes.length > MAX_FILE_BYTES && fileBytes > 0) {
+            rotate();
+        }
+        out.write(bytes);
+        fileBytes += bytes.length;
+        WRITTEN.increment();
+    }
+
+    private void rotate() throws IOException {
+        if (out != null) {
+            out.close();
+        }
+        Files.createDirectories(DIRECTORY);
+        Path file = DIRECTORY.resolve("failures-" + started + "-" + fileCount++ + ".log.gz");
+        out = new GZIPOutputStream(Files.newOutputStream(file), 64 * 1024, true);
+        fileBytes = 0;
+        files.addLast(file);
+        while (files.size() > MAX_FILES) {
+            Files.deleteIfExists(files.removeFirst());
+        }
+    }
+
+    private static final class Failure {
+        final long timestampMillis;
+        final String requestName;
+        final String dump;
+
+        Failure(long timestampMillis, String requestName, String dump) {
+            this.timestampMillis = timestampMillis;
+            this.requestName = requestName;
+            this.dump = dump;
+        }
+    }
+}
@@ -0,0 +1,25 @@
+package videogamedb.failures;
+
+import ch.qos.logback.core.PropertyDefinerBase;
+
+// Levels of Gatling's response loggers in logback-test.xml. Gatling decides once, from the level of the package logger
+// io.gatling.http.engine.response, whether to keep the body parts of every response, failed or not, so it could dump
+// them; its failure dumps come from the DefaultStatsProcessor logger in that package. Splitting the two keeps the
+// capture cheap enough to leave on:
+//   default        DefaultStatsProcessor's level: DEBUG unless FAILURE_LOG_SAMPLE is 0, so failures are dumped
+//   <bodies>true   the package's level: DEBUG only with FAILURE_LOG_BODIES=true as well, so responses are only kept
+//                  when asked for; otherwise a dump has the response body only if the request had a body check
+public final class FailureLogLevel extends PropertyDefinerBase {
+
+    private boolean bodies;
+
+    public void setBodies(boolean bodies) {
+        this.bodies = bodies;
+    }
+
+    @Override
+    public String getPropertyValue() {
+        boolean capture = Double.parseDouble(System.getProperty("FAILURE_LOG_SAMPLE", "1")) > 0;
+        return capture && (!bodies || Boolean.getBoolean("FAILURE_LOG_BODIES")) ? "DEBUG" : "WARN";
+    }
+}
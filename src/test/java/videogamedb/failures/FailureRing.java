@@ -0,0 +1,48 @@
+package videogamedb.failures;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+// A bounded, lock-free ring of entries from many producers to the one writer thread. A producer claims the next
+// position with a CAS on the tail and publishes its entry into the slot; when the ring is full it gives up at once
+// instead of waiting, so the event loops that call offer() never block on the writer or the disk.
+final class FailureRing<T> {
+
+    private final AtomicReferenceArray<T> slots;
+    private final int mask;
+    private final AtomicLong tail = new AtomicLong(); // Next position to claim
+    private final AtomicLong head = new AtomicLong(); // Next position to take, only moved by the consumer
+
+    FailureRing(int capacity) {
+        int size = capacity <= 1 ? 1 : Integer.highestOneBit(capacity - 1) << 1; // Round up to a power of two so we can mask
+        slots = new AtomicReferenceArray<>(size);
+        mask = size - 1;
+    }
+
+    // False when the ring is full and the entry was not added
+    boolean offer(T entry) {
+        while (true) {
+            long position = tail.get();
+            if (position - head.get() > mask) {
+                return false;
+            }
+            if (tail.compareAndSet(position, position + 1)) {
+                slots.lazySet((int) position & mask, entry);
+                return true;
+            }
+        }
+    }
+
+    // The oldest entry, or null when there is none, or it's claimed but not published yet. Only one thread may call it.
+    T poll() {
+        long position = head.get();
+        int slot = (int) position & mask;
+        T entry = slots.get(slot);
+        if (entry == null) {
+            return null;
+        }
+        slots.lazySet(slot, null);
+        head.lazySet(position + 1);
+        return entry;
+    }
+}
@@ -0,0 +1,137 @@
+package videogamedb.failures;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import ch.qos.logback.classic.turbo.TurboFilter;
+import ch.qos.logback.core.spi.FilterReply;
+import org.slf4j.Marker;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+// Decides which failed requests FailureLogAppender captures, before Gatling spends anything on them.
+// With io.gatling.http.engine.response.DefaultStatsProcessor at DEBUG, Gatling handles a KO on the event loop in this order:
+//   isDebugEnabled(), debug("Request '{}' failed for user {}: {}", name, ...), isDebugEnabled(), debug(<dump>)
+// where the dump is the whole request, response and session rendered into a String. This filter sees each of those
+// calls on the same thread: it samples the failure on the request name of the short line, and if it isn't picked,
+// answers the second isDebugEnabled() with no, so the dump is never built. The short line itself is always dropped,
+// the dump repeats it. Each request name is sampled with FAILURE_LOG_SAMPLE and limited to FAILURE_LOG_RATE captures
+// a second on its own, so one endpoint failing in bulk doesn't crowd the others out of the log.
+// Other loggers and levels are left alone. See logback-test.xml.
+//
+// Runtime parameters:
+//   FAILURE_LOG_SAMPLE  fraction of the failures of each request name considered, 1 for all, 0 for none, which also
+//                       leaves the response loggers at WARN (default 1)
+//   FAILURE_LOG_RATE    most failures of each request name captured per second (default 5)
+//   FAILURE_LOG_BODIES  true for the response body in every dump, at the cost of Gatling keeping the body of every
+//                       response, see FailureLogLevel (default false)
+public final class FailureSampler extends TurboFilter {
+
+    static final String RESPONSE_LOGGER = "io.gatling.http.engine.response"; // And the loggers of its classes
+    private static final String FAILED = "Request '{}' failed for user {}: {}";
+    private static final String SKIP = "";
+    private static final int MAX_NAMES = 1000;
+    private static final String OTHER_NAMES = "(other request names)";
+
+    private static final double SAMPLE = Double.parseDouble(System.getProperty("FAILURE_LOG_SAMPLE", "1"));
+    private static final double RATE = Double.parseDouble(System.getProperty("FAILURE_LOG_RATE", "5"));
+    private static final long INTERVAL_NANOS = (long) (TimeUnit.SECONDS.toNanos(1) / Math.max(RATE, 0.001));
+
+    private static final Map<String, Counters> COUNTERS = new ConcurrentHashMap<>();
+    private static final ThreadLocal<String> PENDING = new ThreadLocal<>(); // Between the short line and the dump: the name, or SKIP
+    private static final ThreadLocal<String> CAPTURED = new ThreadLocal<>(); // Name of the dump being appended
+
+    @Override
+    public FilterReply decide(Marker marker, Logger logger, Level level, String format, Object[] params, Throwable t) {
+        if (level != Level.DEBUG || !logger.getName().startsWith(RESPONSE_LOGGER)) {
+            return FilterReply.NEUTRAL;
+        }
+        if (SAMPLE <= 0) {
+            return FilterReply.DENY; // Gatling doesn't even format the short line
+        }
+        String pending = PENDING.get();
+        if (format == null) { // isDebugEnabled()
+            if (pending == SKIP) {
+                PENDING.remove();
+                return FilterReply.DENY;
+            }
+            return FilterReply.NEUTRAL;
+        }
+        if (FAILED.equals(format)) {
+            String name = params != null && params.length > 0 ? String.valueOf(params[0]) : "?";
+            PENDING.set(sample(name) ? name : SKIP);
+            return FilterReply.DENY;
+        }
+        if (pending != null) { // The dump of a sampled failure
+            PENDING.remove();
+            CAPTURED.set(pending);
+        }
+        return FilterReply.NEUTRAL;
+    }
+
+    // The request name of the dump FailureLogAppender is appending on this thread, null if it wasn't sampled here
+    static String takeCaptured() {
+        String name = CAPTURED.get();
+        CAPTURED.remove();
+        return name;
+    }
+
+    private static boolean sample(String name) {
+        Counters counters = counters(name);
+        counters.failures.increment();
+        if (ThreadLocalRandom.current().nextDouble() >= SAMPLE) {
+            return false;
+        }
+        if (!counters.tryAcquire()) {
+            counters.rateLimited.increment();
+            return false;
+        }
+        counters.sampled.increment();
+        return true;
+    }
+
+    private static Counters counters(String name) {
+        Counters counters = COUNTERS.get(name);
+        if (counters != null) {
+            return counters;
+        }
+        if (COUNTERS.size() >= MAX_NAMES) {
+            return COUNTERS.computeIfAbsent(OTHER_NAMES, other -> new Counters());
+        }
+        return COUNTERS.computeIfAbsent(name, newName -> new Counters());
+    }
+
+    // One line per request name that failed: failures, captures and the failures skipped by the rate limit
+    static String report() {
+        StringBuilder report = new StringBuilder();
+        COUNTERS.forEach((name, counters) -> report.append(String.format("%n  %-45s %8d failed, %6d captured, %8d rate limited",
+                name, counters.failures.sum(), counters.sampled.sum(), counters.rateLimited.sum())));
+        return report.toString();
+    }
+
+    private static final class Counters {
+        final LongAdder failures = new LongAdder();
+        final LongAdder sampled = new LongAdder();
+        final LongAdder rateLimited = new LongAdder();
+        final AtomicLong nextPermit = new AtomicLong(System.nanoTime());
+
+        // A permit every INTERVAL_NANOS, with up to a second's worth saved up for bursts, as in DebugLog
+        boolean tryAcquire() {
+            long now = System.nanoTime();
+            while (true) {
+                long next = nextPermit.get();
+                if (next - now > 0) {
+                    return false;
+                }
+                long earliest = now - TimeUnit.SECONDS.toNanos(1);
+                if (nextPermit.compareAndSet(next, Math.max(next, earliest) + INTERVAL_NANOS)) {
+                    return true;
+                }
+            }
+        }
+    }
+}
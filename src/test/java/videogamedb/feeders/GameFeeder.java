@@ -0,0 +1,144 @@
+package videogamedb.feeders;
+
+import videogamedb.workload.KeyDistribution;
+
+import java.time.LocalDate;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+
+// A feeder of random video games that can be shared by every simulation in the videogamedb package.
+// The names, dates, scores and so on are generated once, up front, into a ring of immutable maps. The game id is
+// drawn from KEY_DISTRIBUTION (see KeyDistribution, uniform over 1 to 10 by default) on every next(), not baked into
+// the ring, so the load reads the whole KEY_SPACE however small the ring, and the latest distribution follows the
+// writes made during the test. next() only picks an index and allocates the small view that adds the id to the record.
+public final class GameFeeder implements Iterator<Map<String, Object>> {
+
+    private static final int DEFAULT_POOL_SIZE = 4096;
+    private static final char[] ALPHABET = "abcdefghijklmnopqrstuvwxyzABCDEFGHIJKLMNOPQRSTUVWXYZ".toCharArray();
+
+    private final Map<String, Object>[] records;
+    private final int mask;
+    private final KeyDistribution gameIds = KeyDistribution.shared();
+
+    // The shared feeder is only built the first time a simulation asks for it
+    private static final class Holder {
+        private static final GameFeeder SHARED = new GameFeeder(DEFAULT_POOL_SIZE);
+    }
+
+    public static GameFeeder shared() {
+        return Holder.SHARED;
+    }
+
+    @SuppressWarnings("unchecked")
+    public GameFeeder(int poolSize) {
+        if (poolSize <= 0) {
+            throw new IllegalArgumentException("poolSize must be positive: " + poolSize);
+        }
+        int size = Integer.highestOneBit(poolSize - 1) << 1; // Round up to a power of two so we can mask instead of mod
+        if (size <= 0) {
+            size = 1;
+        }
+        records = new Map[size];
+        mask = size - 1;
+
+        ThreadLocalRandom rand = ThreadLocalRandom.current();
+        for (int i = 0; i < size; i++) {
+            records[i] = Map.of(
+                    "gameName", randomAlphabetic(rand, 5) + "-gameName",
+                    "releaseDate", randomDate(rand).toString(),
+                    "reviewScore", rand.nextInt(100),
+                    "category", randomAlphabetic(rand, 5) + "-category",
+                    "rating", randomAlphabetic(rand, 4) + "-rating"
+            );
+        }
+    }
+
+    public int size() {
+        return records.length;
+    }
+
+    @Override
+    public boolean hasNext() {
+        return true; // The ring never runs out
+    }
+
+    @Override
+    public Map<String, Object> next() {
+        return new Game(records[ThreadLocalRandom.current().nextInt() & mask], gameIds.next());
+    }
+
+    // A record of the ring with the game id drawn for this call
+    private static final class Game extends AbstractMap<String, Object> {
+        private final Map<String, Object> record;
+        private final int gameId;
+
+        Game(Map<String, Object> record, int gameId) {
+            this.record = record;
+            this.gameId = gameId;
+        }
+
+        @Override
+        public Object get(Object key) {
+            return "gameId".equals(key) ? (Object) gameId : record.get(key);
+        }
+
+        @Override
+        public boolean containsKey(Object key) {
+            return "gameId".equals(key) || record.containsKey(key);
+        }
+
+        @Override
+        public int size() {
+            return record.size() + 1;
+        }
+
+        @Override
+        public Set<Entry<String, Object>> entrySet() {
+            return new AbstractSet<>() {
+                @Override
+                public Iterator<Entry<String, Object>> iterator() {
+                    Iterator<Entry<String, Object>> fields = record.entrySet().iterator();
+                    return new Iterator<>() {
+                        private boolean idReturned;
+
+                        @Override
+                        public boolean hasNext() {
+                            return !idReturned || fields.hasNext();
+                        }
+
+                        @Override
+                        public Entry<String, Object> next() {
+                            if (!idReturned) {
+                                idReturned = true;
+                                return Map.entry("gameId", gameId);
+                            }
+                            return fields.next();
+                        }
+                    };
+                }
+
+                @Override
+                public int size() {
+                    return Game.this.size();
+                }
+            };
+        }
+    }
+
+    private static LocalDate randomDate(ThreadLocalRandom rand) {
+        int hundredYears = 100 * 365;
+        return LocalDate.ofEpochDay(rand.nextInt(-hundredYears, hundredYears));
+    }
+
+    private static String randomAlphabetic(ThreadLocalRandom rand, int length) {
+        char[] chars = new char[length];
+        for (int i = 0; i < length; i++) {
+            chars[i] = ALPHABET[rand.nextInt(ALPHABET.length)];
+        }
+        return new String(chars);
+    }
+}
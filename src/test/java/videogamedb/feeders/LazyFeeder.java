@@ -0,0 +1,49 @@
+package videogamedb.feeders;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.function.Supplier;
+
+// A feeder that is only built when the first virtual user is fed, not when the simulation class is loaded.
+// Feeders held in static fields are otherwise built, and their files read or mapped, while Gatling is still starting,
+// even when the scenario that feeds them never runs, e.g. a run with a smoke-test PROFILE:
+//   private static Iterator<Map<String, Object>> customFeeder = LazyFeeder.of(GameFeeder::shared);
+//   private static Iterator<Map<String, Object>> mappedCsvFeeder = LazyFeeder.of(() -> MappedFileFeeder.csv("data/gameCsvFile.csv").circular());
+// Building it is then paid by the first user fed, once; after that next() costs a volatile read more.
+public final class LazyFeeder implements Iterator<Map<String, Object>> {
+
+    private final Supplier<? extends Iterator<Map<String, Object>>> supplier;
+    private volatile Iterator<Map<String, Object>> delegate;
+
+    private LazyFeeder(Supplier<? extends Iterator<Map<String, Object>>> supplier) {
+        this.supplier = supplier;
+    }
+
+    public static LazyFeeder of(Supplier<? extends Iterator<Map<String, Object>>> supplier) {
+        return new LazyFeeder(supplier);
+    }
+
+    private Iterator<Map<String, Object>> delegate() {
+        Iterator<Map<String, Object>> built = delegate;
+        if (built == null) {
+            synchronized (this) {
+                built = delegate;
+                if (built == null) {
+                    built = supplier.get();
+                    delegate = built;
+                }
+            }
+        }
+        return built;
+    }
+
+    @Override
+    public boolean hasNext() {
+        return delegate().hasNext();
+    }
+
+    @Override
+    public Map<String, Object> next() {
+        return delegate().next();
+    }
+}
@@ -0,0 +1,358 @@
+package videogamedb.feeders;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+// A streaming replacement for csv(...) and jsonFile(...) when the data file is too big to load onto the heap.
+// The file is memory mapped and indexed once into a file of record offsets (also memory mapped, and cached in
+// java.io.tmpdir between runs), so heap use stays flat however many rows the file has. Only the record being fed
+// is ever parsed.
+//
+// Usage mirrors the built-in feeders:
+//   private static Iterator<Map<String, Object>> csvFeeder = MappedFileFeeder.csv("data/gameCsvFile.csv").circular();
+//   private static Iterator<Map<String, Object>> jsonFeeder = MappedFileFeeder.jsonFile("data/gameJsonFile.json").random();
+//
+// CSV files must have a header line and must not have line breaks inside quoted values.
+// JSON files must be a top level array of objects.
+public final class MappedFileFeeder implements Iterator<Map<String, Object>> {
+
+    public enum Strategy {
+        QUEUE, // Every record once, in file order, then the feeder is empty
+        CIRCULAR, // Every record in file order, starting again from the top when the end is reached
+        RANDOM, // A random record every time
+        SHUFFLE // Every record once, in a random order, then the feeder is empty
+    }
+
+    private enum Format {
+        CSV, JSON
+    }
+
+    private static final long INDEX_MAGIC = 0x56474442_49445831L; // "VGDBIDX1"
+    private static final int INDEX_HEADER_SIZE = 4 * Long.BYTES;
+    private static final int SCAN_BUFFER_SIZE = 64 * 1024;
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private final Source source;
+    private final Strategy strategy;
+    private final AtomicLong cursor = new AtomicLong();
+    private final Shuffle shuffle;
+
+    public static MappedFileFeeder csv(String resource) {
+        return new MappedFileFeeder(new Source(resolve(resource), Format.CSV), Strategy.QUEUE);
+    }
+
+    public static MappedFileFeeder jsonFile(String resource) {
+        return new MappedFileFeeder(new Source(resolve(resource), Format.JSON), Strategy.QUEUE);
+    }
+
+    private MappedFileFeeder(Source source, Strategy strategy) {
+        this.source = source;
+        this.strategy = strategy;
+        this.shuffle = strategy == Strategy.SHUFFLE ? new Shuffle(source.count) : null;
+    }
+
+    // Each strategy returns a new feeder over the same mapped file and index, so they are cheap to create
+    public MappedFileFeeder queue() {
+        return new MappedFileFeeder(source, Strategy.QUEUE);
+    }
+
+    public MappedFileFeeder circular() {
+        return new MappedFileFeeder(source, Strategy.CIRCULAR);
+    }
+
+    public MappedFileFeeder random() {
+        return new MappedFileFeeder(source, Strategy.RANDOM);
+    }
+
+    public MappedFileFeeder shuffle() {
+        return new MappedFileFeeder(source, Strategy.SHUFFLE);
+    }
+
+    public long recordCount() {
+        return source.count;
+    }
+
+    @Override
+    public boolean hasNext() {
+        if (source.count == 0) {
+            return false;
+        }
+        return strategy == Strategy.CIRCULAR || strategy == Strategy.RANDOM || cursor.get() < source.count;
+    }
+
+    @Override
+    public Map<String, Object> next() {
+        long count = source.count;
+        if (count == 0) {
+            throw new NoSuchElementException("Feeder is empty: " + source.path);
+        }
+        switch (strategy) {
+            case CIRCULAR:
+                return source.record(Math.floorMod(cursor.getAndIncrement(), count));
+            case RANDOM:
+                return source.record(ThreadLocalRandom.current().nextLong(count));
+            default:
+                long i = cursor.getAndIncrement();
+                if (i >= count) {
+                    throw new NoSuchElementException("Feeder is now empty: " + source.path);
+                }
+                return source.record(strategy == Strategy.SHUFFLE ? shuffle.permute(i) : i);
+        }
+    }
+
+    private static Path resolve(String resource) {
+        URL url = MappedFileFeeder.class.getClassLoader().getResource(resource);
+        if (url == null) {
+            Path path = Paths.get(resource);
+            if (!Files.isRegularFile(path)) {
+                throw new IllegalArgumentException("Resource " + resource + " not found on the classpath or the file system");
+            }
+            return path.toAbsolutePath();
+        }
+        if (!"file".equals(url.getProtocol())) {
+            throw new IllegalArgumentException("Resource " + resource + " must be a file to be memory mapped, not " + url);
+        }
+        try {
+            return Paths.get(url.toURI());
+        } catch (URISyntaxException e) {
+            throw new IllegalArgumentException("Invalid resource " + resource, e);
+        }
+    }
+
+    // The mapped data file plus its mapped index of record offsets, shared by every strategy
+    private static final class Source {
+        private final Path path;
+        private final Format format;
+        private final MappedFile data;
+        private final MappedFile index;
+        private final long count;
+        private final String[] header;
+
+        Source(Path path, Format format) {
+            this.path = path;
+            this.format = format;
+            this.data = new MappedFile(path);
+            this.index = new MappedFile(indexFor(path, format, data));
+            this.count = index.getLong(3 * Long.BYTES);
+            this.header = format == Format.CSV ? parseHeader() : null;
+        }
+
+        Map<String, Object> record(long i) {
+            long start = index.getLong(INDEX_HEADER_SIZE + i * Long.BYTES);
+            long end = index.getLong(INDEX_HEADER_SIZE + (i + 1) * Long.BYTES);
+            byte[] bytes = new byte[(int) (end - start)];
+            data.get(start, bytes, 0, bytes.length);
+            return format == Format.CSV ? csvRecord(bytes) : jsonRecord(bytes);
+        }
+
+        private Map<String, Object> csvRecord(byte[] bytes) {
+            List<String> values = splitCsvLine(bytes, bytes.length);
+            Map<String, Object> record = new HashMap<>(header.length * 2);
+            for (int i = 0; i < header.length; i++) {
+                record.put(header[i], i < values.size() ? values.get(i) : "");
+            }
+            return record;
+        }
+
+        @SuppressWarnings("unchecked")
+        private Map<String, Object> jsonRecord(byte[] bytes) {
+            try {
+                // The slice runs up to the next record, Jackson stops after the first object and ignores the trailing comma
+                return MAPPER.readValue(bytes, Map.class);
+            } catch (IOException e) {
+                throw new UncheckedIOException("Invalid JSON record in " + path, e);
+            }
+        }
+
+        private String[] parseHeader() {
+            int length = 0;
+            while (length < data.size() && data.get(length) != '\n') {
+                length++;
+            }
+            byte[] bytes = new byte[length];
+            data.get(0, bytes, 0, length);
+            return splitCsvLine(bytes, length).toArray(new String[0]);
+        }
+    }
+
+    private static List<String> splitCsvLine(byte[] bytes, int length) {
+        while (length > 0 && (bytes[length - 1] == '\n' || bytes[length - 1] == '\r')) {
+            length--;
+        }
+        List<String> values = new ArrayList<>();
+        StringBuilder value = new StringBuilder();
+        String line = new String(bytes, 0, length, StandardCharsets.UTF_8);
+        boolean quoted = false;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (quoted) {
+                if (c == '"' && i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                    value.append('"');
+                    i++;
+                } else if (c == '"') {
+                    quoted = false;
+                } else {
+                    value.append(c);
+                }
+            } else if (c == '"') {
+                quoted = true;
+            } else if (c == ',') {
+                values.add(value.toString());
+                value.setLength(0);
+            } else {
+                value.append(c);
+            }
+        }
+        values.add(value.toString());
+        return values;
+    }
+
+    // The index is cached in java.io.tmpdir and rebuilt whenever the data file's size or modification time changes
+    private static Path indexFor(Path path, Format format, MappedFile data) {
+        try {
+            long lastModified = Files.getLastModifiedTime(path).toMillis();
+            Path dir = Paths.get(System.getProperty("java.io.tmpdir"), "videogamedb-feeder-index");
+            Files.createDirectories(dir);
+            Path indexPath = dir.resolve(Integer.toHexString(path.toAbsolutePath().toString().hashCode()) + "-" + path.getFileName() + ".idx");
+            if (Files.isRegularFile(indexPath) && Files.size(indexPath) >= INDEX_HEADER_SIZE) {
+                MappedFile existing = new MappedFile(indexPath);
+                if (existing.getLong(0) == INDEX_MAGIC && existing.getLong(Long.BYTES) == data.size()
+                        && existing.getLong(2 * Long.BYTES) == lastModified) {
+                    return indexPath;
+                }
+            }
+            Path tmp = Files.createTempFile(dir, "building-", ".idx");
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp), SCAN_BUFFER_SIZE))) {
+                out.writeLong(INDEX_MAGIC);
+                out.writeLong(data.size());
+                out.writeLong(lastModified);
+                out.writeLong(0); // Record count, patched once the scan is done
+                long count = format == Format.CSV ? scanCsv(data, out) : scanJson(data, out);
+                out.writeLong(data.size()); // End of the last record
+                out.flush();
+                try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.WRITE)) {
+                    channel.write(ByteBuffer.allocate(Long.BYTES).putLong(0, count), 3 * Long.BYTES);
+                }
+            }
+            return Files.move(tmp, indexPath, StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to index " + path, e);
+        }
+    }
+
+    // Every line after the header is a record
+    private static long scanCsv(MappedFile data, DataOutputStream out) throws IOException {
+        byte[] buffer = new byte[SCAN_BUFFER_SIZE];
+        long count = 0;
+        for (long position = 0; position < data.size(); position += buffer.length) {
+            int length = (int) Math.min(buffer.length, data.size() - position);
+            data.get(position, buffer, 0, length);
+            for (int i = 0; i < length; i++) {
+                long next = position + i + 1;
+                if (buffer[i] == '\n' && next < data.size()) {
+                    out.writeLong(next);
+                    count++;
+                }
+            }
+        }
+        return count;
+    }
+
+    // Every object directly inside the top level array is a record
+    private static long scanJson(MappedFile data, DataOutputStream out) throws IOException {
+        byte[] buffer = new byte[SCAN_BUFFER_SIZE];
+        long count = 0;
+        int depth = 0;
+        boolean inString = false;
+        boolean escaped = false;
+        for (long position = 0; position < data.size(); position += buffer.length) {
+            int length = (int) Math.min(buffer.length, data.size() - position);
+            data.get(position, buffer, 0, length);
+            for (int i = 0; i < length; i++) {
+                byte b = buffer[i];
+                if (inString) {
+                    if (escaped) {
+                        escaped = false;
+                    } else if (b == '\\') {
+                        escaped = true;
+                    } else if (b == '"') {
+                        inString = false;
+                    }
+                } else if (b == '"') {
+                    inString = true;
+                } else if (b == '{' || b == '[') {
+                    if (b == '{' && depth == 1) {
+                        out.writeLong(position + i);
+                        count++;
+                    }
+                    depth++;
+                } else if (b == '}' || b == ']') {
+                    depth--;
+                }
+            }
+        }
+        return count;
+    }
+
+    // A bijection over [0, count) so SHUFFLE visits every record exactly once without holding a permutation in memory.
+    // A 4 round Feistel network over the next even power of two, cycle walking until the result is in range.
+    private static final class Shuffle {
+        private final long count;
+        private final int halfBits;
+        private final long halfMask;
+        private final long[] keys = new long[4];
+
+        Shuffle(long count) {
+            this.count = count;
+            int bits = Math.max(2, 64 - Long.numberOfLeadingZeros(Math.max(1, count - 1)));
+            this.halfBits = (bits + 1) / 2;
+            this.halfMask = (1L << halfBits) - 1;
+            ThreadLocalRandom rand = ThreadLocalRandom.current();
+            for (int i = 0; i < keys.length; i++) {
+                keys[i] = rand.nextLong();
+            }
+        }
+
+        long permute(long i) {
+            long x = i;
+            do {
+                x = feistel(x);
+            } while (x >= count);
+            return x;
+        }
+
+        private long feistel(long x) {
+            long left = x >>> halfBits;
+            long right = x & halfMask;
+            for (long key : keys) {
+                long next = left ^ (mix(right ^ key) & halfMask);
+                left = right;
+                right = next;
+            }
+            return (left << halfBits) | right;
+        }
+
+        private static long mix(long z) {
+            z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+            z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+            return z ^ (z >>> 31);
+        }
+    }
+}
@@ -2,138 +2,147 @@ package videogamedb.finalsimulation;
 
 import io.gatling.javaapi.core.*;
 import io.gatling.javaapi.http.*;
-import org.apache.commons.lang3.RandomStringUtils;
-
-import java.time.LocalDate;
-import java.util.HashMap;
+import videogamedb.bodies.BodyTemplate;
+import videogamedb.cache.ClientCache;
+import videogamedb.checks.BodyChecks;
+import videogamedb.checks.DebugLog;
+import videogamedb.feeders.GameFeeder;
+import videogamedb.feeders.LazyFeeder;
+import videogamedb.failures.FailureLogAppender;
+import videogamedb.hooks.EventLoopMonitor;
+import videogamedb.metrics.BoundedRequestName;
+import videogamedb.metrics.InjectorHealth;
+import videogamedb.metrics.LiveMetrics;
+import videogamedb.distributed.StartBarrier;
+import videogamedb.metrics.Pacing;
+import videogamedb.auth.TokenCache;
+import videogamedb.correlation.GameIdPool;
+import videogamedb.profiles.LoadProfile;
+import videogamedb.results.BinaryResults;
+import videogamedb.stub.VideoGameDbStub;
+import videogamedb.tuning.TuningProfile;
+
+import java.time.Duration;
 import java.util.Iterator;
 import java.util.Map;
-import java.util.Random;
-import java.util.concurrent.ThreadLocalRandom;
-import java.util.function.Supplier;
-import java.util.stream.Stream;
 
 import static io.gatling.javaapi.core.CoreDsl.*;
 import static io.gatling.javaapi.http.HttpDsl.*;
 
 public class VideoGameDbFullTest extends Simulation {
-    private static int gameId;
 
     // HTTP Protocol
-    private HttpProtocolBuilder httpProtocol = http
-            .baseUrl("https://videogamedb.uk/api")
+    private static final String BASE_URL = VideoGameDbStub.baseUrl("https://videogamedb.uk/api");
+    private static final TuningProfile TUNING = TuningProfile.fromSystemProperties(); // Connection and event loop settings, see TuningProfile
+    private static final ClientCache CLIENT_CACHE = ClientCache.shared(); // Conditional GETs with -DCLIENT_CACHE=user or shared, see ClientCache
+
+    private HttpProtocolBuilder httpProtocol = Pacing.applyTo(CLIENT_CACHE.applyTo(TUNING.applyTo(http
+            .baseUrl(BASE_URL)
             .acceptHeader("application/json")
-            .contentTypeHeader("application/json");
+            .contentTypeHeader("application/json"), BASE_URL + "/videogame/1")));
 
     // Runtime Parameters
     private static final int USER_COUNT = Integer.parseInt(System.getProperty("USERS", "5")); // Store the system property USERS in a variable, and have it default to 5
     private static final int RAMP_DURATION = Integer.parseInt(System.getProperty("RAMP_DURATION","10")); // Store the system property RAMP_DURATION in a variable, and have it default to 10
     private static final int TEST_DURATION = Integer.parseInt(System.getProperty("TEST_DURATION","20")); // Store the system property TEST_DURATION in a variable, and have it default to 20
+    private static final Duration THINK_TIME = Duration.ofSeconds(5); // Time between calls
+    private static final LoadProfile LOAD_PROFILE = LoadProfile.fromSystemProperties(); // Pick the injection profile with the system property PROFILE, defaulting to a ramp of USERS
 
     // Feeders
-    public static LocalDate randomDate(){
-        int hundredYears = 100 * 365;
-        return LocalDate.ofEpochDay(ThreadLocalRandom.current().nextInt(-hundredYears, hundredYears));
-    }
+    private static Iterator<Map<String, Object>> customFeeder = LazyFeeder.of(GameFeeder::shared); // Pre-generated feeder of random video games, generated when the first user is fed, with a game id drawn per record
 
-    private static Iterator<Map<String, Object>> customFeeder =
-            Stream.generate((Supplier<Map<String, Object>>) () -> {
-                        Random rand = new Random();
-                        gameId = rand.nextInt(10 - 1 + 1) + 1;
-
-                        String gameName = RandomStringUtils.randomAlphabetic(5) + "-gameName";
-                        String releaseDate = randomDate().toString();
-                        int reviewScore = rand.nextInt(100);
-                        String category = RandomStringUtils.randomAlphabetic(5) + "-category";
-                        String rating = RandomStringUtils.randomAlphabetic(4) + "-rating";
-
-                        HashMap<String, Object> hmap = new HashMap<String, Object>();
-                        hmap.put("gameId", gameId);
-                        hmap.put("gameName", gameName);
-                        hmap.put("releaseDate", releaseDate);
-                        hmap.put("reviewScore", reviewScore);
-                        hmap.put("category", category);
-                        hmap.put("rating", rating);
-                        return hmap;
-                    }
-            ).iterator();
+    // Correlation
+    private static GameIdPool gameIdPool = GameIdPool.shared(); // Ids of the games created by all users
 
     // Before Block
     @Override
     public void before(){
         System.out.printf("Running test with %d users%n", USER_COUNT);
         System.out.printf("Ramping users over %d seconds%n", RAMP_DURATION);
-        System.out.printf("Total test duration: %d seconds", TEST_DURATION);
+        System.out.printf("Total test duration: %d seconds%n", TEST_DURATION);
+        System.out.printf("Using the %s%n", LOAD_PROFILE.describe());
+        System.out.printf("Using the %s%n", TUNING.describe());
+        System.out.printf("Using the %s%n", CLIENT_CACHE.describe());
+        StartBarrier.await(); // Only waits when this is one injector of a distributed run
     }
 
     // HTTP calls
+    private static final BoundedRequestName CREATE_GAME_NAME = BoundedRequestName.of("Create New Game - #{gameName}"); // At most REQUEST_NAME_LIMIT names, not one per random game
+
     private static ChainBuilder getAllVideoGames =
-            exec(http("Get all video games")
+            exec(CLIENT_CACHE.cached("/videogame", BinaryResults.capture("Get all video games", http("Get all video games") // Also record into the binary results log, with -DBINARY_LOG
                     .get("/videogame")
-                    .check(status().is(200)));
+                    .check(status().in(200, 304)) // 304 when the client cache's copy is current
+                    .check(LiveMetrics.latency("Get all video games"))))); // Stream this request's response times while the test runs
 
-    private static ChainBuilder authenticate =
-            exec(http("Authenticate")
-                    .post("/authenticate")
-                    .body(StringBody("{\n" +
-                            " \"password\": \"admin\",\n" +
-                            " \"username\": \"admin\"\n" +
-                            "}"))
-                    .check(jsonPath("$.token").saveAs("jwtToken"))); // Save the token from the response as a variable called "jwtToken"
+    private static ChainBuilder authenticate = TokenCache.authenticate(); // Put a shared, cached token in the session variable "jwtToken"
 
     private static ChainBuilder createNewGame =
-            feed(customFeeder)
-                    .exec(http("Create New Game - #{gameName}")
+            feed(customFeeder) // Its gameId is the one sent, the one created is saved apart so a failed create offers none
+                    .exec(session -> session.remove("createdGameId"))
+                    .exec(BinaryResults.capture("Create New Game", http(CREATE_GAME_NAME)
                             .post("/videogame")
                             .header("Authorization", "Bearer #{jwtToken}")
-                            .body(ElFileBody("bodies/newGameTemplate.json")).asJson() // Convert the data from the feeder to JSON using a template
-                            .check(bodyString().saveAs("responseBody")))
-                    .exec(session -> {
-                        System.out.println(session.getString("responseBody"));
-                        return session;
-                    });
+                            .body(BodyTemplate.of("bodies/newGameTemplate.json").body()).asJson() // Convert the data from the feeder to JSON using a template compiled once to bytes
+                            .check(BodyChecks.jsonInt("id").saveAs("createdGameId")) // Save the id of the game we created in this user's session, read straight from the response bytes
+                            .check(DebugLog.responseBody("Create New Game")) // Print a sample of the responses, see DebugLog
+                            .check(LiveMetrics.latency("Create New Game"))
+                            .check(CREATE_GAME_NAME.latency())))
+                    .doIf(session -> session.contains("createdGameId")).then(
+                            exec(gameIdPool.offer("createdGameId"))); // Share it so other users can read it too
 
     private static ChainBuilder getSpecificVideoGame =
-            exec(http("Get specific video game")
-                    .get("videogame/" + gameId));
+            exec(gameIdPool.sample("readGameId", "createdGameId")) // Read any user's game, so reads spread across many ids
+                    .exec(BinaryResults.capture("Get specific video game", http("Get specific video game")
+                            .get("/videogame/#{readGameId}")
+                            .check(status().in(200, 404)) // 404 when its owner deleted the game after we sampled it, which isn't a failure
+                            .check(LiveMetrics.latency("Get specific video game"))));
 
     private static ChainBuilder deleteGame =
-            exec(http("Delete video game")
-                    .delete("videogame/" + gameId)
-                    .check(bodyString().is("Video game deleted")));
+            doIf(session -> session.contains("createdGameId")).then( // Nothing to delete when the create failed
+                    exec(gameIdPool.release("createdGameId")) // Stop other users reading the game before we delete it
+                            .exec(BinaryResults.capture("Delete video game", http("Delete video game")
+                                    .delete("/videogame/#{createdGameId}")
+                                    .header("Authorization", "Bearer #{jwtToken}")
+                                    .check(BodyChecks.bodyIs("Video game deleted"))
+                                    .check(LiveMetrics.latency("Delete video game")))));
 
     // Scenario or user journey
     // 1. Get all video games
     // 2. Create a new game
-    // 3. Get details of newly created game
+    // 3. Get details of a game created by any user
     // 4. delete newly created game
 
     private static ScenarioBuilder scn = scenario("Video Game Db - Section 8 code")
-            .forever().on(
-                    exec(getAllVideoGames)
-                            .pause(5)
-                            .exec(authenticate)
-                            .pause(5)
-                            .exec(createNewGame)
-                            .pause(5)
-                            .exec(getSpecificVideoGame)
-                            .pause(5)
-                            .exec(deleteGame)
+            .exec(InjectorHealth.install()) // Sample the injector's own CPU, GC and event loops, to tell an overloaded injector from a slow server
+            .forever().on( // With -DPACING=true the 5 second pauses become a fixed schedule, see Pacing
+                    exec(Pacing.step("Get all video games", Duration.ZERO, getAllVideoGames))
+                            .exec(Pacing.step("Authenticate", THINK_TIME, authenticate))
+                            .exec(Pacing.step("Create New Game", THINK_TIME, createNewGame))
+                            .exec(Pacing.step("Get specific video game", THINK_TIME, getSpecificVideoGame))
+                            .exec(Pacing.step("Delete video game", THINK_TIME, deleteGame))
             );
 
     // Load simulation
     {
-        setUp(
-                scn.injectOpen(
-                        nothingFor(5), // Do nothing for 5 seconds
-                        rampUsers(USER_COUNT).during(RAMP_DURATION)
-                ).protocols(httpProtocol)
-        ).maxDuration(TEST_DURATION);
+        LOAD_PROFILE.applyTo(setUp(
+                LOAD_PROFILE.inject(scn).protocols(httpProtocol)
+        )); // Adds any throttling and the maximum duration the profile needs
     }
 
     // After block - print message
     @Override
     public void after(){
         System.out.println("Stress test finished");
+        System.out.println(TokenCache.shared().report());
+        System.out.println(DebugLog.shared().report());
+        System.out.println(EventLoopMonitor.report());
+        System.out.println(InjectorHealth.report());
+        System.out.println(BoundedRequestName.report());
+        System.out.println(FailureLogAppender.report()); // Failed requests sampled into target/failures
+        System.out.println(CLIENT_CACHE.report());
+        if (Pacing.ENABLED) {
+            System.out.println(Pacing.report()); // Raw and coordinated-omission-corrected response times side by side
+        }
     }
 }
@@ -0,0 +1,640 @@
+package videogamedb.har;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.JsonToken;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.regex.Pattern;
+
+// Converts a HAR recording (browser dev tools, or the Gatling recorder's HAR mode) into a simulation that can be run
+// at load without editing it, unlike what the recorder writes (see RecordedSimulation):
+//   - headers sent with the same value on every request become protocol defaults, the rest are grouped into as few
+//     shared header maps as possible, and browser noise (sec-ch-*, sec-fetch-*, cookies, cache validators, ...) is dropped
+//   - long strings returned in a JSON response and sent again later, like the token of the authenticate response, are
+//     saved from the response with BodyChecks.jsonString and sent as #{name}, instead of the recorded, expired values;
+//     a Bearer token nothing in the recording returned is sent as #{jwtToken}, set from -DJWT_TOKEN
+//   - a POST whose JSON response has a numeric "id" creates a resource: later requests to <the POST's URL>/<number>
+//     are sent to the id the POST returned, saved with BodyChecks.jsonInt, since the recorded one is another user's
+//   - the recorded pauses become ThinkTime pauses, whose distribution, scale and cap are chosen at runtime
+//   - consecutive identical requests (polling) become one request in a repeat loop, and identical bodies of the same
+//     request name share a file, so editing the body of one request doesn't change another's
+//   - a request body with fewer bytes in the HAR than its bodySize, cut short by whatever recorded it, is warned about
+//     and counted, since the simulation can only send what was recorded; base64 encoded bodies are written as they are
+//   - users loop over the journey with the PROFILE injection profile (see LoadProfile) against VideoGameDbStub.baseUrl
+//
+// The HAR is streamed twice by HarReader, never loaded: once to find the shared headers and the values to correlate,
+// and once to write the simulation. Memory is bounded by the largest single entry and MAX_HEADER_SETS shared header
+// maps, not by the size of the file, so multi-hundred-MB recordings convert in a small heap. Requests with header
+// sets past that have their headers written inline instead.
+//   mvn -B test-compile exec:java -Dexec.mainClass=videogamedb.har.HarConverter -Dexec.classpathScope=test -Dexec.args="hars/www.videogamedb.uk.har RecordedLoadSimulation"
+//
+// Runtime parameters:
+//   HAR_PACKAGE       package of the generated simulation (default videogamedb)
+//   HAR_SOURCES       source folder the simulation is written to (default src/test/java)
+//   HAR_RESOURCES     resource folder the request bodies are written to (default src/test/resources)
+//   HAR_EXCLUDE       regex of URLs to leave out (default static resources: .js, .css, images, fonts)
+//   HAR_MIN_PAUSE     recorded gaps shorter than this many ms aren't think time, e.g. a page's parallel calls (default 100)
+//   HAR_MAX_REQUESTS  requests kept at most, a class can't hold many more constants than that (default 10000)
+public final class HarConverter {
+
+    private static final String PACKAGE = System.getProperty("HAR_PACKAGE", "videogamedb");
+    private static final Path SOURCES = Paths.get(System.getProperty("HAR_SOURCES", "src/test/java"));
+    private static final Path RESOURCES = Paths.get(System.getProperty("HAR_RESOURCES", "src/test/resources"));
+    private static final Pattern EXCLUDE = Pattern.compile(System.getProperty("HAR_EXCLUDE",
+            "(?i)\\.(js|css|png|jpe?g|gif|ico|svg|webp|woff2?|ttf|otf|map)(\\?.*)?$"));
+    private static final long MIN_PAUSE = Long.getLong("HAR_MIN_PAUSE", 100);
+    private static final long MAX_REQUESTS = Long.getLong("HAR_MAX_REQUESTS", 10_000);
+
+    private static final JsonFactory JSON = new JsonFactory();
+    private static final int MIN_CORRELATED_LENGTH = 12; // Shorter strings (names, categories) would match by chance
+    private static final int MAX_CANDIDATES = 10_000;    // Response values remembered while looking for later uses
+    private static final int STEPS_PER_CHAIN = 50;       // Keeps each generated method well under the 64KB bytecode limit
+    private static final int MAX_HEADER_SETS = 1000;     // Shared header maps, a class can't hold many more constants
+    private static final Pattern NUMBER = Pattern.compile("\\d+");
+    private static final Pattern ID_SEGMENT = Pattern.compile("\\d+|[0-9a-fA-F-]{16,}|[^/]{32,}");
+    private static final Set<String> NOISE_HEADERS = Set.of("host", "connection", "content-length", "cookie",
+            "keep-alive", "transfer-encoding", "te", "priority", "if-none-match", "if-modified-since", "postman-token");
+    private static final Map<String, String> PROTOCOL_HEADERS = Map.of(
+            "accept", "acceptHeader",
+            "accept-encoding", "acceptEncodingHeader",
+            "accept-language", "acceptLanguageHeader",
+            "content-type", "contentTypeHeader",
+            "origin", "originHeader",
+            "user-agent", "userAgentHeader");
+
+    private HarConverter() {
+    }
+
+    static boolean keep(HarEntry entry) {
+        return entry.method != null && entry.url != null && entry.url.startsWith("http") && entry.status != 0
+                && !entry.method.equalsIgnoreCase("OPTIONS") // CORS preflights are the browser's, not the user's
+                && !EXCLUDE.matcher(entry.url).find();
+    }
+
+    static boolean noise(String header) {
+        String name = header.toLowerCase(Locale.ROOT);
+        return NOISE_HEADERS.contains(name) || name.startsWith(":") || name.startsWith("sec-ch-") || name.startsWith("sec-fetch-");
+    }
+
+    static String origin(String url) {
+        URI uri = URI.create(url);
+        return uri.getScheme() + "://" + uri.getRawAuthority();
+    }
+
+    // First pass: what every request shares, and which response values are sent back later
+    private static final class Survey implements HarReader.EntryHandler {
+        private final Map<String, Long> origins = new HashMap<>();
+        private final Map<String, String[]> headers = new TreeMap<>(); // lower case name -> {name, value}, value null when it varies
+        private final Map<String, Long> headerCounts = new HashMap<>();
+        private final Map<String, Candidate> candidates = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Candidate> eldest) {
+                return size() > MAX_CANDIDATES;
+            }
+        };
+        private final Map<Long, Set<String>> saves = new HashMap<>(); // Entry index -> response fields to save
+        private final Map<String, Long> creations = new HashMap<>(); // Collection URL -> index of the last POST to it that returned an id
+        private final Set<Long> creates = new HashSet<>();           // Index of the POSTs whose id later requests use
+        private String unmatchedBearer;
+        private long kept;
+        private long entries;
+
+        @Override
+        public void entry(HarEntry entry) throws IOException {
+            entries++;
+            if (!keep(entry) || kept >= MAX_REQUESTS) {
+                return;
+            }
+            kept++;
+            String collection = collection(entry.url);
+            if (collection != null && creations.containsKey(collection)) {
+                creates.add(creations.get(collection));
+            }
+            if (entry.method.equalsIgnoreCase("POST") && entry.responseBody != null && hasNumericId(entry.responseBody)
+                    && (creations.size() < MAX_CANDIDATES || creations.containsKey(withoutQuery(entry.url)))) {
+                creations.put(withoutQuery(entry.url), entry.index);
+            }
+            if (origins.size() < 1000 || origins.containsKey(origin(entry.url))) {
+                origins.merge(origin(entry.url), 1L, Long::sum);
+            }
+            for (String part : entry.url.split("[/?&=;]")) {
+                use(part);
+            }
+            for (String[] header : entry.headers) {
+                if (noise(header[0])) {
+                    continue;
+                }
+                use(header[1]);
+                if (header[0].equalsIgnoreCase("authorization") && header[1].startsWith("Bearer ")
+                        && !use(header[1].substring(7)) && unmatchedBearer == null) {
+                    unmatchedBearer = header[1].substring(7);
+                }
+                String name = header[0].toLowerCase(Locale.ROOT);
+                String[] seen = headers.get(name);
+                if (seen == null) {
+                    headers.put(name, new String[]{header[0], header[1]});
+                } else if (seen[1] != null && !seen[1].equals(header[1])) {
+                    seen[1] = null;
+                }
+                headerCounts.merge(name, 1L, Long::sum);
+            }
+            if (entry.requestBody != null && !entry.requestBase64) {
+                if (HarReader.isJson(entry.requestMimeType)) {
+                    forEachString(entry.requestBody, false, (field, value) -> use(value));
+                } else {
+                    for (String part : entry.requestBody.split("[&=]")) {
+                        use(part);
+                    }
+                }
+            }
+            if (entry.responseBody != null) {
+                forEachString(entry.responseBody, true, (field, value) -> {
+                    if (value.length() >= MIN_CORRELATED_LENGTH) {
+                        candidates.put(value, new Candidate(entry.index, field));
+                    }
+                });
+            }
+        }
+
+        // Marks the response field the value came from as one to save, if it came from one
+        private boolean use(String value) {
+            if (value.length() < MIN_CORRELATED_LENGTH) {
+                return false;
+            }
+            Candidate candidate = candidates.get(value);
+            if (candidate == null) {
+                return false;
+            }
+            saves.computeIfAbsent(candidate.entryIndex, i -> new TreeSet<>()).add(candidate.field);
+            return true;
+        }
+
+        String baseOrigin() {
+            return origins.entrySet().stream().max(Map.Entry.comparingByValue()).map(Map.Entry::getKey).orElseThrow();
+        }
+
+        // Headers every kept request sent with the same value, by lower case name
+        Map<String, String[]> commonHeaders() {
+            Map<String, String[]> common = new TreeMap<>();
+            headers.forEach((name, header) -> {
+                if (header[1] != null && headerCounts.get(name) == kept) {
+                    common.put(name, header);
+                }
+            });
+            return common;
+        }
+    }
+
+    private static final class Candidate {
+        final long entryIndex;
+        final String field;
+
+        Candidate(long entryIndex, String field) {
+            this.entryIndex = entryIndex;
+            this.field = field;
+        }
+    }
+
+    private interface StringVisitor {
+        void visit(String field, String value) throws IOException;
+    }
+
+    // Visits the string values of a JSON document, only the top-level fields when topLevelOnly; bodies that aren't
+    // valid JSON are visited up to where they stop being JSON
+    private static void forEachString(String json, boolean topLevelOnly, StringVisitor visitor) throws IOException {
+        try (JsonParser parser = JSON.createParser(json)) {
+            JsonToken token = parser.nextToken();
+            if (topLevelOnly) {
+                if (token != JsonToken.START_OBJECT) {
+                    return;
+                }
+                while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                    String field = parser.getCurrentName();
+                    if (parser.nextToken() == JsonToken.VALUE_STRING) {
+                        visitor.visit(field, parser.getText());
+                    } else {
+                        parser.skipChildren();
+                    }
+                }
+                return;
+            }
+            for (; token != null; token = parser.nextToken()) {
+                if (token == JsonToken.VALUE_STRING) {
+                    visitor.visit(parser.getCurrentName(), parser.getText());
+                }
+            }
+        } catch (JsonProcessingException e) {
+            // Not JSON after all, nothing (more) to visit
+        }
+    }
+
+    // Second pass: writes the simulation while streaming the entries again
+    private static final class Emitter implements HarReader.EntryHandler {
+        private final Survey survey;
+        private final Writer out;
+        private final String className;
+        private final String resourceFolder;
+        private final String baseOrigin;
+        private final Map<String, String[]> commonHeaders;
+        private final Map<String, String> substitutions = new LinkedHashMap<>(); // Recorded value -> session attribute
+        private final Map<String, Integer> headerSets = new LinkedHashMap<>();    // Rendered Map.ofEntries -> index
+        private final Map<String, String> bodies = new HashMap<>();               // Request name and SHA-256 of the body -> resource
+        private final Map<String, String> createdIds = new HashMap<>();           // Collection URL -> attribute of the id a POST to it created
+        private final MessageDigest digest;
+        private HarEntry previous;
+        private String pendingStep;
+        private long pendingRepeats;
+        private long pendingGaps;
+        private int chains;
+        private int stepsInChain;
+        private long requests;
+        private long collapsed;
+        private long correlated;
+        private long inlineHeaders;
+        private long incompleteBodies;
+
+        Emitter(Survey survey, Writer out, String className) {
+            this.survey = survey;
+            this.out = out;
+            this.className = className;
+            this.resourceFolder = PACKAGE.replace('.', '/') + "/" + className.toLowerCase(Locale.ROOT);
+            this.baseOrigin = survey.baseOrigin();
+            this.commonHeaders = survey.commonHeaders();
+            try {
+                this.digest = MessageDigest.getInstance("SHA-256");
+            } catch (NoSuchAlgorithmException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+
+        void writeHeader(Path har) throws IOException {
+            out.write("package " + PACKAGE + ";\n\n");
+            out.write("import io.gatling.javaapi.core.*;\n");
+            out.write("import io.gatling.javaapi.http.*;\n");
+            out.write("import videogamedb.bodies.BodyTemplate;\n");
+            out.write("import videogamedb.checks.BodyChecks;\n");
+            out.write("import videogamedb.har.ThinkTime;\n");
+            out.write("import videogamedb.profiles.LoadProfile;\n");
+            out.write("import videogamedb.stub.VideoGameDbStub;\n\n");
+            out.write("import java.util.Map;\n\n");
+            out.write("import static io.gatling.javaapi.core.CoreDsl.*;\n");
+            out.write("import static io.gatling.javaapi.http.HttpDsl.*;\n\n");
+            out.write("// Generated from " + har.getFileName() + " by videogamedb.har.HarConverter, regenerate it rather than editing it.\n");
+            out.write("// Every user loops over the recorded journey, injected with the PROFILE injection profile (see LoadProfile),\n");
+            out.write("// pausing between requests as chosen with THINK_TIME (see ThinkTime).\n");
+            out.write("public class " + className + " extends Simulation {\n\n");
+            out.write("    private static final LoadProfile LOAD_PROFILE = LoadProfile.fromSystemProperties();\n");
+            if (survey.unmatchedBearer != null) {
+                out.write("    private static final String JWT_TOKEN = System.getProperty(\"JWT_TOKEN\", " + literal(survey.unmatchedBearer)
+                        + "); // Nothing in the recording returned this token, pass a valid one\n");
+            }
+            out.write("\n    private HttpProtocolBuilder httpProtocol = http\n");
+            out.write("            .baseUrl(VideoGameDbStub.baseUrl(" + literal(baseOrigin) + "))");
+            for (Map.Entry<String, String[]> header : commonHeaders.entrySet()) {
+                String method = PROTOCOL_HEADERS.get(header.getKey());
+                out.write("\n            ." + (method != null ? method + "(" : "header(" + literal(header.getValue()[0]) + ", ")
+                        + literal(header.getValue()[1]) + ")");
+            }
+            out.write(";\n");
+        }
+
+        @Override
+        public void entry(HarEntry entry) throws IOException {
+            if (!keep(entry) || requests >= MAX_REQUESTS) {
+                return;
+            }
+            requests++;
+            String step = request(entry);
+            long gap = previous == null ? 0 : Math.max(0, entry.startedMillis - previous.endMillis());
+            previous = entry;
+            if (step.equals(pendingStep)) {
+                pendingRepeats++;
+                pendingGaps += gap;
+                collapsed++;
+                return;
+            }
+            flush();
+            if (gap >= MIN_PAUSE) {
+                step("exec(ThinkTime.pause(" + gap + "))");
+            }
+            pendingStep = step;
+            pendingRepeats = 0;
+            pendingGaps = 0;
+        }
+
+        // The Java expression of one request, with recorded values replaced by the session attributes they came from
+        private String request(HarEntry entry) throws IOException {
+            StringBuilder request = new StringBuilder("http(").append(literal(requestName(entry))).append(")");
+            String url = createdId(entry.url);
+            url = substitute(url.startsWith(baseOrigin + "/") || url.equals(baseOrigin) ? url.substring(baseOrigin.length()) : url);
+            String method = entry.method.toUpperCase(Locale.ROOT);
+            if (Set.of("GET", "POST", "PUT", "DELETE", "PATCH", "HEAD").contains(method)) {
+                request.append("\n                    .").append(method.toLowerCase(Locale.ROOT)).append("(").append(literal(url.isEmpty() ? "/" : url)).append(")");
+            } else {
+                request.append("\n                    .httpRequest(").append(literal(method)).append(", ").append(literal(url)).append(")");
+            }
+
+            Map<String, String> headers = new TreeMap<>();
+            for (String[] header : entry.headers) {
+                String name = header[0].toLowerCase(Locale.ROOT);
+                if (noise(name) || commonHeaders.containsKey(name)) {
+                    continue;
+                }
+                String value = substitute(header[1]);
+                if (name.equals("authorization") && value.equals(header[1]) && header[1].startsWith("Bearer ")) {
+                    value = "Bearer #{jwtToken}";
+                }
+                if (!value.equals(header[1])) {
+                    correlated++;
+                }
+                headers.put(header[0], value);
+            }
+            if (!headers.isEmpty()) {
+                StringBuilder set = new StringBuilder("Map.ofEntries(");
+                String separator = "\n                Map.entry(";
+                for (Map.Entry<String, String> header : headers.entrySet()) {
+                    set.append(separator).append(literal(header.getKey())).append(", ").append(literal(header.getValue())).append(")");
+                    separator = ",\n                Map.entry(";
+                }
+                set.append("\n        )");
+                Integer index = headerSets.get(set.toString());
+                if (index == null && headerSets.size() < MAX_HEADER_SETS) {
+                    index = headerSets.size();
+                    headerSets.put(set.toString(), index);
+                }
+                if (index != null) {
+                    request.append("\n                    .headers(Headers.HEADERS_").append(index).append(")");
+                } else {
+                    inlineHeaders++;
+                    request.append("\n                    .headers(").append(set).append(")");
+                }
+            }
+
+            byte[] recorded = entry.requestBody == null ? new byte[0] : entry.requestBase64
+                    ? Base64.getMimeDecoder().decode(entry.requestBody) : entry.requestBody.getBytes(StandardCharsets.UTF_8);
+            if (entry.requestBodySize > 0 && entry.requestBodySize != recorded.length) {
+                incompleteBodies++;
+                System.err.printf("Warning: %s %s sent a %d byte body, the recording has %d of it: the simulation sends only those%n",
+                        entry.method, entry.url, entry.requestBodySize, recorded.length);
+            }
+            if (entry.requestBase64 && recorded.length > 0) {
+                request.append("\n                    .body(RawFileBody(").append(literal(body(entry, recorded, "bin"))).append("))");
+            } else if (entry.requestBody != null && !entry.requestBody.isEmpty()) {
+                String body = substitute(entry.requestBody);
+                String resource = body(entry, body.getBytes(StandardCharsets.UTF_8),
+                        HarReader.isJson(entry.requestMimeType) ? "json" : "txt");
+                if (!body.equals(entry.requestBody)) {
+                    correlated++;
+                    request.append("\n                    .body(BodyTemplate.of(").append(literal(resource)).append(").body())");
+                } else {
+                    request.append("\n                    .body(RawFileBody(").append(literal(resource)).append("))");
+                }
+            }
+
+            Set<String> saves = survey.saves.get(entry.index);
+            if (saves != null && entry.responseBody != null) {
+                forEachString(entry.responseBody, true, (field, value) -> {
+                    if (saves.contains(field)) {
+                        String attribute = attributeName(field);
+                        substitutions.put(value, attribute);
+                        request.append("\n                    .check(BodyChecks.jsonString(").append(literal(field))
+                                .append(").saveAs(").append(literal(attribute)).append("))");
+                    }
+                });
+            }
+            if (survey.creates.contains(entry.index)) {
+                String collection = withoutQuery(entry.url);
+                String attribute = attributeName(collection.substring(collection.lastIndexOf('/') + 1) + "Id");
+                createdIds.put(collection, attribute);
+                request.append("\n                    .check(BodyChecks.jsonInt(\"id\").saveAs(").append(literal(attribute)).append("))");
+            }
+            return request.toString();
+        }
+
+        // The URL with the id of <collection>/<number> replaced by the one a POST to the collection created, if one did
+        private String createdId(String url) {
+            String collection = collection(url);
+            String attribute = collection == null ? null : createdIds.get(collection);
+            if (attribute == null) {
+                return url;
+            }
+            correlated++;
+            int query = url.indexOf('?');
+            return collection + "/#{" + attribute + "}" + (query < 0 ? "" : url.substring(query));
+        }
+
+        private String substitute(String value) {
+            for (Map.Entry<String, String> substitution : substitutions.entrySet()) {
+                if (value.contains(substitution.getKey())) {
+                    value = value.replace(substitution.getKey(), "#{" + substitution.getValue() + "}");
+                }
+            }
+            return value;
+        }
+
+        // Writes the body to a resource file, once per distinct body, and returns the resource
+        private String body(HarEntry entry, byte[] bytes, String extension) throws IOException {
+            StringBuilder hash = new StringBuilder();
+            for (byte b : digest.digest(bytes)) {
+                hash.append(String.format("%02x", b));
+            }
+            String key = requestName(entry) + " " + hash;
+            String existing = bodies.get(key);
+            if (existing != null) {
+                return existing;
+            }
+            String resource = String.format("%s/%04d_request.%s", resourceFolder, entry.index, extension);
+            Path file = RESOURCES.resolve(resource);
+            Files.createDirectories(file.getParent());
+            Files.write(file, bytes);
+            bodies.put(key, resource);
+            return resource;
+        }
+
+        private void flush() throws IOException {
+            if (pendingStep == null) {
+                return;
+            }
+            step("exec(" + pendingStep + ")");
+            if (pendingRepeats > 0) {
+                long gap = pendingGaps / pendingRepeats;
+                step("repeat(" + pendingRepeats + ").on(" + (gap >= MIN_PAUSE ? "exec(ThinkTime.pause(" + gap + ")).exec(" : "exec(")
+                        + pendingStep + "))");
+            }
+            pendingStep = null;
+        }
+
+        // Appends a chain element, starting a new chain method every STEPS_PER_CHAIN elements
+        private void step(String element) throws IOException {
+            if (stepsInChain == STEPS_PER_CHAIN) {
+                out.write(";\n    }\n");
+                stepsInChain = 0;
+            }
+            if (stepsInChain == 0) {
+                out.write("\n    private static ChainBuilder chain" + chains++ + "() {\n        return " + element);
+            } else {
+                out.write("\n                ." + element);
+            }
+            stepsInChain++;
+        }
+
+        void writeFooter() throws IOException {
+            flush();
+            if (stepsInChain > 0) {
+                out.write(";\n    }\n");
+            }
+            out.write("\n    private static ScenarioBuilder scn = scenario(" + literal(className) + ")\n");
+            out.write("            .forever().on(\n");
+            List<String> elements = new ArrayList<>();
+            if (survey.unmatchedBearer != null) {
+                elements.add("exec(session -> session.set(\"jwtToken\", JWT_TOKEN))");
+            }
+            for (int i = 0; i < chains; i++) {
+                elements.add("exec(chain" + i + "())");
+            }
+            out.write("                    " + String.join("\n                            .", elements) + "\n");
+            out.write("            );\n\n");
+            out.write("    {\n");
+            out.write("        LOAD_PROFILE.applyTo(setUp(\n");
+            out.write("                LOAD_PROFILE.inject(scn).protocols(httpProtocol)\n");
+            out.write("        ));\n");
+            out.write("    }\n\n");
+            out.write("    @Override\n");
+            out.write("    public void before() {\n");
+            out.write("        System.out.printf(\"Using the %s with %s%n\", LOAD_PROFILE.describe(), ThinkTime.describe());\n");
+            out.write("    }\n");
+            if (!headerSets.isEmpty()) {
+                // A nested class, so the maps are initialised before the chains first use them
+                out.write("\n    private static final class Headers {\n");
+                for (Map.Entry<String, Integer> set : headerSets.entrySet()) {
+                    out.write("        static final Map<CharSequence, String> HEADERS_" + set.getValue() + " = " + set.getKey() + ";\n");
+                }
+                out.write("    }\n");
+            }
+            out.write("}\n");
+        }
+    }
+
+    // Request names without ids, so a long recording doesn't produce a statistic per game
+    static String requestName(HarEntry entry) {
+        String path = URI.create(entry.url).getRawPath();
+        List<String> segments = new ArrayList<>();
+        for (String segment : (path == null || path.isEmpty() ? "/" : path).split("/", -1)) {
+            segments.add(ID_SEGMENT.matcher(segment).matches() ? "{id}" : segment);
+        }
+        return entry.method.toUpperCase(Locale.ROOT) + " " + String.join("/", segments);
+    }
+
+    static String withoutQuery(String url) {
+        int query = url.indexOf('?');
+        return query < 0 ? url : url.substring(0, query);
+    }
+
+    // The collection a URL of the form <collection>/<number> is in, null for other URLs
+    static String collection(String url) {
+        String path = withoutQuery(url);
+        int slash = path.lastIndexOf('/');
+        return slash > 0 && NUMBER.matcher(path.substring(slash + 1)).matches() ? path.substring(0, slash) : null;
+    }
+
+    // Whether the top level of a JSON object has a numeric "id", as the response of a POST that created something
+    private static boolean hasNumericId(String json) throws IOException {
+        try (JsonParser parser = JSON.createParser(json)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                return false;
+            }
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.getCurrentName();
+                if (parser.nextToken() == JsonToken.VALUE_NUMBER_INT && field.equals("id")) {
+                    return true;
+                }
+                parser.skipChildren();
+            }
+        } catch (JsonProcessingException e) {
+            // Not JSON after all
+        }
+        return false;
+    }
+
+    private static String attributeName(String field) {
+        String name = field.replaceAll("[^A-Za-z0-9_]", "_");
+        return name.isEmpty() || !Character.isLetter(name.charAt(0)) && name.charAt(0) != '_' ? "_" + name : name;
+    }
+
+    static String literal(String value) {
+        StringBuilder literal = new StringBuilder(value.length() + 2).append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"': literal.append("\\\""); break;
+                case '\\': literal.append("\\\\"); break;
+                case '\n': literal.append("\\n"); break;
+                case '\r': literal.append("\\r"); break;
+                case '\t': literal.append("\\t"); break;
+                default:
+                    if (c < 0x20 || c > 0x7E) {
+                        literal.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        literal.append(c);
+                    }
+            }
+        }
+        return literal.append('"').toString();
+    }
+
+    public static Path convert(Path har, String className) throws IOException {
+        Survey survey = new Survey();
+        HarReader.read(har, survey);
+        if (survey.kept == 0) {
+            throw new IOException("No requests to convert in " + har + " (" + survey.entries + " entries, all excluded)");
+        }
+        Path source = SOURCES.resolve(PACKAGE.replace('.', '/')).resolve(className + ".java");
+        Files.createDirectories(source.getParent());
+        Emitter emitter;
+        try (Writer out = new BufferedWriter(Files.newBufferedWriter(source, StandardCharsets.UTF_8))) {
+            emitter = new Emitter(survey, out, className);
+            emitter.writeHeader(har);
+            HarReader.read(har, emitter);
+            emitter.writeFooter();
+        }
+        System.out.printf("%d entries, %d requests kept%s: %d protocol headers, %d header sets (%d requests with inline headers), "
+                        + "%d bodies (%d incomplete), %d correlated values, %d repeated requests collapsed%n",
+                survey.entries, survey.kept, survey.kept == MAX_REQUESTS ? " (HAR_MAX_REQUESTS reached)" : "",
+                emitter.commonHeaders.size(), emitter.headerSets.size(), emitter.inlineHeaders, emitter.bodies.size(), emitter.incompleteBodies,
+                emitter.correlated, emitter.collapsed);
+        return source;
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1 || args.length > 2) {
+            throw new IllegalArgumentException("Usage: HarConverter <file.har> [simulation class name]");
+        }
+        long started = System.nanoTime();
+        Path source = convert(Paths.get(args[0]), args.length == 2 ? args[1] : "HarSimulation");
+        Runtime runtime = Runtime.getRuntime();
+        System.out.printf("Wrote %s in %d ms, heap in use %d MB%n", source, (System.nanoTime() - started) / 1_000_000,
+                (runtime.totalMemory() - runtime.freeMemory()) / (1024 * 1024));
+    }
+}
@@ -0,0 +1,36 @@
+package videogamedb.har;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// The parts of one HAR entry the converter uses; everything else in the entry (timings, cache, initiator stacks,
+// response headers, ...) is skipped by HarReader without being materialised.
+final class HarEntry {
+
+    long index;             // Position in the HAR's entries array
+    long startedMillis;     // startedDateTime as epoch millis
+    long timeMillis;        // Total time of the exchange
+    String method;
+    String url;
+    final List<String[]> headers = new ArrayList<>(); // {name, value}, in recorded order
+    String requestMimeType;
+    String requestBody;     // postData.text, or null
+    boolean requestBase64;  // postData.text is base64 encoded, as CaptureProxy writes non-textual bodies
+    long requestBodySize = -1; // bodySize, the bytes sent, -1 when unknown
+    int status;
+    String responseMimeType;
+    String responseBody;    // content.text of small JSON responses only, or null
+
+    long endMillis() {
+        return startedMillis + timeMillis;
+    }
+
+    String header(String name) {
+        for (String[] header : headers) {
+            if (header[0].equalsIgnoreCase(name)) {
+                return header[1];
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,197 @@
+package videogamedb.har;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.OffsetDateTime;
+import java.time.format.DateTimeParseException;
+
+// Streams the entries of a HAR file one at a time with Jackson's token parser, so converting a recording takes memory
+// for one entry, not for the whole file. Fields the converter doesn't use are skipped token by token without being
+// read into Strings, which matters for browser recordings: most of their bytes are initiator stacks, timings and
+// base64 encoded response bodies of static resources.
+final class HarReader {
+
+    private static final JsonFactory FACTORY = new JsonFactory();
+    private static final int MAX_RESPONSE_BODY = 64 * 1024; // Larger responses aren't searched for values to correlate
+
+    interface EntryHandler {
+        void entry(HarEntry entry) throws IOException;
+    }
+
+    private HarReader() {
+    }
+
+    // Calls the handler with each entry of log.entries in order and returns how many there were
+    static long read(Path har, EntryHandler handler) throws IOException {
+        try (InputStream in = Files.newInputStream(har); JsonParser parser = FACTORY.createParser(in)) {
+            expect(parser.nextToken(), JsonToken.START_OBJECT, har);
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.getCurrentName();
+                parser.nextToken();
+                if (!field.equals("log")) {
+                    parser.skipChildren();
+                    continue;
+                }
+                expect(parser.currentToken(), JsonToken.START_OBJECT, har);
+                while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                    String logField = parser.getCurrentName();
+                    parser.nextToken();
+                    if (logField.equals("entries")) {
+                        return readEntries(parser, handler, har);
+                    }
+                    parser.skipChildren();
+                }
+            }
+            throw new IOException(har + " has no log.entries");
+        }
+    }
+
+    private static long readEntries(JsonParser parser, EntryHandler handler, Path har) throws IOException {
+        expect(parser.currentToken(), JsonToken.START_ARRAY, har);
+        long index = 0;
+        while (parser.nextToken() == JsonToken.START_OBJECT) {
+            HarEntry entry = new HarEntry();
+            entry.index = index++;
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.getCurrentName();
+                JsonToken value = parser.nextToken();
+                switch (field) {
+                    case "startedDateTime":
+                        entry.startedMillis = parseTime(parser.getText(), har);
+                        break;
+                    case "time":
+                        entry.timeMillis = value.isNumeric() ? Math.max(0, Math.round(parser.getDoubleValue())) : 0;
+                        break;
+                    case "request":
+                        readRequest(parser, entry);
+                        break;
+                    case "response":
+                        readResponse(parser, entry);
+                        break;
+                    default:
+                        parser.skipChildren();
+                }
+            }
+            handler.entry(entry);
+        }
+        return index;
+    }
+
+    private static void readRequest(JsonParser parser, HarEntry entry) throws IOException {
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.getCurrentName();
+            parser.nextToken();
+            switch (field) {
+                case "method":
+                    entry.method = parser.getText();
+                    break;
+                case "url":
+                    entry.url = parser.getText();
+                    break;
+                case "bodySize":
+                    entry.requestBodySize = parser.getValueAsLong(-1);
+                    break;
+                case "headers":
+                    while (parser.nextToken() == JsonToken.START_OBJECT) {
+                        String name = null;
+                        String headerValue = null;
+                        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                            String headerField = parser.getCurrentName();
+                            parser.nextToken();
+                            if (headerField.equals("name")) {
+                                name = parser.getText();
+                            } else if (headerField.equals("value")) {
+                                headerValue = parser.getText();
+                            } else {
+                                parser.skipChildren();
+                            }
+                        }
+                        if (name != null && headerValue != null) {
+                            entry.headers.add(new String[]{name, headerValue});
+                        }
+                    }
+                    break;
+                case "postData":
+                    while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                        String postField = parser.getCurrentName();
+                        parser.nextToken();
+                        if (postField.equals("mimeType")) {
+                            entry.requestMimeType = parser.getText();
+                        } else if (postField.equals("text")) {
+                            entry.requestBody = parser.getText();
+                        } else if (postField.equals("encoding")) {
+                            entry.requestBase64 = "base64".equals(parser.getText());
+                        } else {
+                            parser.skipChildren(); // params of multipart forms aren't supported
+                        }
+                    }
+                    break;
+                default:
+                    parser.skipChildren();
+            }
+        }
+    }
+
+    private static void readResponse(JsonParser parser, HarEntry entry) throws IOException {
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.getCurrentName();
+            parser.nextToken();
+            if (field.equals("status")) {
+                entry.status = parser.getValueAsInt(0);
+            } else if (field.equals("content")) {
+                long size = -1;
+                while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                    String contentField = parser.getCurrentName();
+                    parser.nextToken();
+                    switch (contentField) {
+                        case "size":
+                            size = parser.getValueAsLong(-1);
+                            break;
+                        case "mimeType":
+                            entry.responseMimeType = parser.getText();
+                            break;
+                        case "text":
+                            // Only read when we already know it's small JSON, otherwise the string is skipped unread
+                            if (isJson(entry.responseMimeType) && size >= 0 && size <= MAX_RESPONSE_BODY) {
+                                entry.responseBody = parser.getText();
+                            }
+                            break;
+                        case "encoding":
+                            if ("base64".equals(parser.getText())) {
+                                entry.responseBody = null;
+                            }
+                            break;
+                        default:
+                            parser.skipChildren();
+                    }
+                }
+            } else {
+                parser.skipChildren();
+            }
+        }
+    }
+
+    static boolean isJson(String mimeType) {
+        return mimeType != null && mimeType.toLowerCase().contains("json");
+    }
+
+    private static long parseTime(String value, Path har) throws IOException {
+        try {
+            return OffsetDateTime.parse(value).toInstant().toEpochMilli();
+        } catch (DateTimeParseException e) {
+            throw new IOException(har + ": invalid startedDateTime " + value, e);
+        }
+    }
+
+    private static void expect(JsonToken actual, JsonToken expected, Path har) throws IOException {
+        if (actual != expected) {
+            throw new IOException(har + " isn't a HAR file: expected " + expected + " but found " + actual);
+        }
+    }
+}
@@ -0,0 +1,62 @@
+package videogamedb.har;
+
+import io.gatling.javaapi.core.ChainBuilder;
+import io.gatling.javaapi.core.CoreDsl;
+
+import java.time.Duration;
+import java.util.concurrent.ThreadLocalRandom;
+
+import static io.gatling.javaapi.core.CoreDsl.exec;
+
+// Think times for simulations generated by HarConverter. The converter keeps how long the recorded user paused before
+// each request, and this decides at runtime how long virtual users pause instead, so a recording made at human speed
+// (a pause of 44 seconds while someone typed a body) can be replayed at load-test speed without regenerating it.
+//
+// Runtime parameters:
+//   THINK_TIME         distribution of the pauses (default recorded):
+//                        recorded     the recorded pause, scaled
+//                        uniform      uniformly random within THINK_TIME_SPREAD of the scaled recorded pause
+//                        exponential  exponentially distributed around the scaled recorded pause, like independent users
+//                        none         no pauses at all
+//   THINK_TIME_SCALE   factor applied to every recorded pause (default 1.0)
+//   THINK_TIME_SPREAD  fraction either side of the pause for uniform (default 0.5)
+//   THINK_TIME_MAX     longest pause in seconds, whatever was recorded (default 5)
+public final class ThinkTime {
+
+    public enum Mode {
+        RECORDED, UNIFORM, EXPONENTIAL, NONE
+    }
+
+    private static final Mode MODE = Mode.valueOf(System.getProperty("THINK_TIME", "recorded").toUpperCase());
+    private static final double SCALE = Double.parseDouble(System.getProperty("THINK_TIME_SCALE", "1.0"));
+    private static final double SPREAD = Double.parseDouble(System.getProperty("THINK_TIME_SPREAD", "0.5"));
+    private static final long MAX_MILLIS = Math.round(Double.parseDouble(System.getProperty("THINK_TIME_MAX", "5")) * 1000);
+
+    private ThinkTime() {
+    }
+
+    // The pause standing in for one recorded between requests
+    public static ChainBuilder pause(long recordedMillis) {
+        long mean = Math.min(MAX_MILLIS, Math.round(recordedMillis * SCALE));
+        switch (MODE) {
+            case NONE:
+                return exec(session -> session);
+            case UNIFORM: {
+                long min = Math.round(mean * (1 - SPREAD));
+                long max = Math.min(MAX_MILLIS, Math.round(mean * (1 + SPREAD)));
+                return min >= max ? CoreDsl.pause(Duration.ofMillis(mean))
+                        : CoreDsl.pause(session -> Duration.ofMillis(ThreadLocalRandom.current().nextLong(min, max + 1)));
+            }
+            case EXPONENTIAL:
+                return CoreDsl.pause(session -> Duration.ofMillis(Math.min(MAX_MILLIS,
+                        Math.round(-mean * Math.log(1 - ThreadLocalRandom.current().nextDouble())))));
+            default:
+                return CoreDsl.pause(Duration.ofMillis(mean));
+        }
+    }
+
+    public static String describe() {
+        return MODE == Mode.NONE ? "no think times"
+                : String.format("%s think times, scaled by %.2f and capped at %d ms", MODE.name().toLowerCase(), SCALE, MAX_MILLIS);
+    }
+}
@@ -0,0 +1,74 @@
+package videogamedb.hooks;
+
+import io.gatling.javaapi.core.*;
+import io.gatling.javaapi.http.*;
+import videogamedb.stub.VideoGameDbStub;
+
+import java.time.Duration;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Function;
+
+import static io.gatling.javaapi.core.CoreDsl.*;
+import static io.gatling.javaapi.http.HttpDsl.*;
+
+// Shows what a blocking session hook does to everything else on the event loop, and that offloading it doesn't.
+// Each user reads a game and then runs a "lookup" that blocks for HOOK_BLOCK_MS, standing in for a JDBC query or a
+// file read, either inline on the event loop or offloaded with BlockingHooks. Compare the throughput, the response
+// times of the HTTP requests and the event loop report of the two modes:
+//   mvn -B gatling:test -Dgatling.simulationClass=videogamedb.hooks.BlockingHookSimulation -DSTUB=true -DHOOK_MODE=inline
+//   mvn -B gatling:test -Dgatling.simulationClass=videogamedb.hooks.BlockingHookSimulation -DSTUB=true -DHOOK_MODE=offload
+//
+// Runtime parameters:
+//   HOOK_MODE      inline or offload (default offload)
+//   HOOK_BLOCK_MS  how long each lookup blocks (default 20)
+//   USERS          concurrent users (default 50)
+//   TEST_DURATION  seconds to run for (default 20)
+public class BlockingHookSimulation extends Simulation {
+
+    private static final boolean OFFLOAD = !"inline".equalsIgnoreCase(System.getProperty("HOOK_MODE", "offload"));
+    private static final long BLOCK_MS = Long.getLong("HOOK_BLOCK_MS", 20);
+    private static final int USERS = Integer.getInteger("USERS", 50);
+    private static final int TEST_DURATION = Integer.getInteger("TEST_DURATION", 20);
+
+    private HttpProtocolBuilder httpProtocol = http
+            .baseUrl(VideoGameDbStub.baseUrl("https://videogamedb.uk/api"))
+            .acceptHeader("application/json");
+
+    // A lookup that blocks its thread, like a JDBC call would
+    private static final Function<Session, Session> LOOKUP = session -> {
+        try {
+            Thread.sleep(BLOCK_MS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return session.set("price", ThreadLocalRandom.current().nextInt(10, 70));
+    };
+
+    private static ChainBuilder lookup = OFFLOAD
+            ? BlockingHooks.offload("Look up price", LOOKUP)
+            : exec(BlockingHooks.timed("Look up price", LOOKUP));
+
+    private static ScenarioBuilder scn = scenario("Blocking hooks - " + (OFFLOAD ? "offload" : "inline"))
+            .exec(EventLoopMonitor.install())
+            .forever().on(
+                    exec(http("Get specific game")
+                            .get(session -> "/videogame/" + ThreadLocalRandom.current().nextInt(1, 11)))
+                            .exec(lookup)
+            );
+
+    {
+        setUp(scn.injectClosed(constantConcurrentUsers(USERS).during(TEST_DURATION)).protocols(httpProtocol))
+                .maxDuration(Duration.ofSeconds(TEST_DURATION));
+    }
+
+    @Override
+    public void before() {
+        System.out.printf("Running %d users with a %d ms lookup %s%n", USERS, BLOCK_MS, OFFLOAD ? "offloaded" : "inline");
+    }
+
+    @Override
+    public void after() {
+        System.out.println(EventLoopMonitor.report());
+        System.out.println(BlockingHooks.report());
+    }
+}
@@ -0,0 +1,189 @@
+package videogamedb.hooks;
+
+import com.typesafe.scalalogging.Logger;
+import io.gatling.core.action.Action;
+import io.gatling.core.structure.ScenarioContext;
+import io.gatling.javaapi.core.ActionBuilder;
+import io.gatling.javaapi.core.ChainBuilder;
+import io.gatling.javaapi.core.Session;
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+import org.slf4j.LoggerFactory;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+import static io.gatling.javaapi.core.CoreDsl.exec;
+
+// Session hooks that may block, e.g. a JDBC lookup or reading a file, run off Gatling's event loops. A hook written
+// as exec(session -> ...) runs on the virtual user's event loop, which also serves the HTTP traffic of every other
+// user on it, so while it blocks all of them wait. offload() instead hands the hook to an executor and the user
+// resumes, on its own event loop, once the hook has returned; the event loop only pays for handing the hook over.
+//   .exec(BlockingHooks.offload("Look up price", session -> session.set("price", dao.price(session.getInt("gameId")))))
+//
+// The executor uses virtual threads when the JVM has them (Java 21 and later). On older JVMs, like the Java 17 we
+// build with, it is a pool of HOOK_THREADS platform threads, which bounds how many hooks block at the same time; the
+// others wait in its queue, and that wait is reported. A hook that throws marks the user's session as failed, like
+// a failing exec(session -> ...) does, and the user carries on.
+// timed() is for comparison: it runs the hook inline but records how long it held the event loop.
+//
+// Runtime parameters:
+//   HOOK_THREADS  platform threads running offloaded hooks when virtual threads aren't available (default 64)
+public final class BlockingHooks {
+
+    private static final int THREADS = Integer.getInteger("HOOK_THREADS", 64);
+    private static final Logger LOGGER = Logger.apply(LoggerFactory.getLogger(BlockingHooks.class));
+    private static final Map<String, HookStats> STATS = new ConcurrentHashMap<>();
+
+    private static final class Holder {
+        private static final ExecutorService EXECUTOR = executor();
+        private static final boolean VIRTUAL = !(EXECUTOR instanceof ThreadPoolExecutor);
+    }
+
+    private BlockingHooks() {
+    }
+
+    private static ExecutorService executor() {
+        try {
+            // Looked up reflectively so this compiles for Java 17
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            AtomicInteger count = new AtomicInteger();
+            ThreadPoolExecutor pool = new ThreadPoolExecutor(THREADS, THREADS, 30, TimeUnit.SECONDS, new LinkedBlockingQueue<>(),
+                    runnable -> {
+                        Thread thread = new Thread(runnable, "blocking-hook-" + count.incrementAndGet());
+                        thread.setDaemon(true);
+                        return thread;
+                    });
+            pool.allowCoreThreadTimeOut(true);
+            return pool;
+        }
+    }
+
+    // Runs the hook off the event loop and resumes the user with the session it returns
+    public static ChainBuilder offload(String name, Function<Session, Session> hook) {
+        HookStats stats = STATS.computeIfAbsent(name, n -> new HookStats(true));
+        ActionBuilder builder = () -> (ScenarioContext ctx, Action next) -> new OffloadAction(name, hook, stats, next);
+        return exec(builder);
+    }
+
+    // Runs the hook inline, on the event loop, recording how long it kept the event loop busy
+    public static Function<Session, Session> timed(String name, Function<Session, Session> hook) {
+        HookStats stats = STATS.computeIfAbsent(name, n -> new HookStats(false));
+        return session -> {
+            long started = System.nanoTime();
+            try {
+                return hook.apply(session);
+            } finally {
+                stats.record(0, System.nanoTime() - started);
+            }
+        };
+    }
+
+    private static final class OffloadAction implements Action {
+        private final String name;
+        private final Function<Session, Session> hook;
+        private final HookStats stats;
+        private final Action next;
+
+        OffloadAction(String name, Function<Session, Session> hook, HookStats stats, Action next) {
+            this.name = name;
+            this.hook = hook;
+            this.stats = stats;
+            this.next = next;
+        }
+
+        @Override
+        public String name() {
+            return name;
+        }
+
+        @Override
+        public Logger logger() {
+            return LOGGER;
+        }
+
+        @Override
+        public void com$typesafe$scalalogging$StrictLogging$_setter_$logger_$eq(Logger logger) {
+            // The logger is our static one, Scala's trait initialiser never runs for a Java class
+        }
+
+        @Override
+        public void execute(io.gatling.core.session.Session session) {
+            long queued = System.nanoTime();
+            try {
+                Holder.EXECUTOR.execute(() -> run(session, queued));
+            } catch (RejectedExecutionException e) {
+                stats.failed(e);
+                next.$bang(session.markAsFailed());
+            }
+        }
+
+        private void run(io.gatling.core.session.Session session, long queued) {
+            long started = System.nanoTime();
+            io.gatling.core.session.Session result;
+            try {
+                result = hook.apply(new Session(session)).asScala();
+            } catch (RuntimeException e) {
+                stats.failed(e);
+                result = session.markAsFailed();
+            }
+            stats.record(started - queued, System.nanoTime() - started);
+            io.gatling.core.session.Session resumed = result;
+            try {
+                session.eventLoop().execute(() -> next.$bang(resumed)); // Gatling expects a user's actions on its own event loop
+            } catch (RejectedExecutionException e) {
+                // The simulation is over and its event loops are shut down, there is no user left to resume
+            }
+        }
+    }
+
+    private static final class HookStats {
+        private final boolean offloaded;
+        private final Histogram waits = new ConcurrentHistogram(3); // Microseconds in the executor's queue
+        private final Histogram runs = new ConcurrentHistogram(3);  // Microseconds running the hook
+        private final LongAdder errors = new LongAdder();
+        private volatile String lastError;
+
+        HookStats(boolean offloaded) {
+            this.offloaded = offloaded;
+        }
+
+        void record(long waitNanos, long runNanos) {
+            waits.recordValue(Math.max(0, waitNanos / 1000));
+            runs.recordValue(Math.max(0, runNanos / 1000));
+        }
+
+        void failed(Exception e) {
+            errors.increment();
+            lastError = e.toString();
+        }
+    }
+
+    public static String report() {
+        StringBuilder out = new StringBuilder(String.format("Blocking hooks (%s):%n", Holder.VIRTUAL ? "virtual threads"
+                : "pool of " + THREADS + " platform threads, " + ((ThreadPoolExecutor) Holder.EXECUTOR).getLargestPoolSize() + " used"));
+        out.append(String.format("%-30s %9s %8s %8s %10s %10s %10s %10s%n", "Hook (ms)", "calls", "errors", "where",
+                "wait p99", "run p50", "run p99", "run max"));
+        new TreeMap<>(STATS).forEach((name, stats) -> {
+            out.append(String.format("%-30s %9d %8d %8s %10.1f %10.1f %10.1f %10.1f%n", name, stats.runs.getTotalCount(),
+                    stats.errors.sum(), stats.offloaded ? "offload" : "inline", stats.waits.getValueAtPercentile(99) / 1000.0,
+                    stats.runs.getValueAtPercentile(50) / 1000.0, stats.runs.getValueAtPercentile(99) / 1000.0,
+                    stats.runs.getMaxValue() / 1000.0));
+            if (stats.lastError != null) {
+                out.append("    last error: ").append(stats.lastError).append(System.lineSeparator());
+            }
+        });
+        return out.toString();
+    }
+}
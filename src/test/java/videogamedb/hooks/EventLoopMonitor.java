@@ -0,0 +1,129 @@
+package videogamedb.hooks;
+
+import io.gatling.core.action.Action;
+import io.gatling.core.structure.ScenarioContext;
+import io.gatling.javaapi.core.ActionBuilder;
+import io.gatling.javaapi.core.ChainBuilder;
+import io.netty.channel.EventLoopGroup;
+import io.netty.util.concurrent.EventExecutor;
+import io.netty.util.concurrent.SingleThreadEventExecutor;
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static io.gatling.javaapi.core.CoreDsl.exec;
+
+// Measures how long Gatling's event loops are kept from running new tasks, which is what blocking hooks, slow checks
+// or an overloaded injector do to every virtual user on a loop. Every EVENT_LOOP_PROBE_INTERVAL ms a probe task is
+// submitted to each event loop and the delay until it runs is recorded; a loop that is free runs it within
+// microseconds. Delays of a millisecond or more are added up as blocked time.
+// Put install() first in a scenario: it adds no action, it only starts the probes when the scenario is built.
+//
+// Runtime parameters:
+//   EVENT_LOOP_PROBE_INTERVAL  ms between probes of each event loop (default 10)
+public final class EventLoopMonitor {
+
+    private static final long PROBE_INTERVAL_MS = Long.getLong("EVENT_LOOP_PROBE_INTERVAL", 10);
+    private static final long BLOCKED_MICROS = 1000;
+
+    private static final AtomicBoolean STARTED = new AtomicBoolean();
+    private static final Histogram DELAYS = new ConcurrentHistogram(3); // Microseconds
+    private static final Recorder INTERVAL_DELAYS = new Recorder(3); // The same, drained by intervalDelays()
+    private static final AtomicLong BLOCKED_MICROS_TOTAL = new AtomicLong();
+    private static final List<Probe> PROBES = new CopyOnWriteArrayList<>();
+    private static volatile long startedNanos;
+
+    private EventLoopMonitor() {
+    }
+
+    public static ChainBuilder install() {
+        ActionBuilder builder = () -> (ScenarioContext ctx, Action next) -> {
+            start(ctx.coreComponents().eventLoopGroup());
+            return next;
+        };
+        return exec(builder);
+    }
+
+    private static void start(EventLoopGroup group) {
+        if (!STARTED.compareAndSet(false, true)) {
+            return;
+        }
+        for (EventExecutor loop : group) {
+            PROBES.add(new Probe(loop));
+        }
+        ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "event-loop-monitor");
+            thread.setDaemon(true);
+            return thread;
+        });
+        startedNanos = System.nanoTime();
+        scheduler.scheduleAtFixedRate(() -> PROBES.forEach(Probe::submit), PROBE_INTERVAL_MS, PROBE_INTERVAL_MS, TimeUnit.MILLISECONDS);
+    }
+
+    private static final class Probe {
+        private final EventExecutor loop;
+        private final AtomicBoolean pending = new AtomicBoolean();
+
+        Probe(EventExecutor loop) {
+            this.loop = loop;
+        }
+
+        // A loop still busy with the last probe isn't probed again, the pending probe will record the whole delay
+        void submit() {
+            if (!pending.compareAndSet(false, true)) {
+                return;
+            }
+            long submitted = System.nanoTime();
+            loop.execute(() -> {
+                long delayMicros = (System.nanoTime() - submitted) / 1000;
+                DELAYS.recordValue(delayMicros);
+                INTERVAL_DELAYS.recordValue(delayMicros);
+                if (delayMicros >= BLOCKED_MICROS) {
+                    BLOCKED_MICROS_TOTAL.addAndGet(delayMicros);
+                }
+                pending.set(false);
+            });
+        }
+    }
+
+    // Probe delays in microseconds since the last call, for samplers like InjectorHealth that report every interval
+    public static Histogram intervalDelays() {
+        return INTERVAL_DELAYS.getIntervalHistogram();
+    }
+
+    // The longest task queue of any event loop right now: tasks submitted to it and not run yet
+    public static int maxPendingTasks() {
+        int max = 0;
+        for (Probe probe : PROBES) {
+            if (probe.loop instanceof SingleThreadEventExecutor) {
+                max = Math.max(max, ((SingleThreadEventExecutor) probe.loop).pendingTasks());
+            }
+        }
+        return max;
+    }
+
+    public static int monitoredLoops() {
+        return PROBES.size();
+    }
+
+    public static String report() {
+        if (!STARTED.get()) {
+            return "Event loops: not monitored, add EventLoopMonitor.install() to the scenario";
+        }
+        double seconds = (System.nanoTime() - startedNanos) / 1e9;
+        double blockedSeconds = BLOCKED_MICROS_TOTAL.get() / 1e6;
+        return String.format("Event loops: %d monitored, probe delay p50 %.2f ms, p99 %.2f ms, p99.9 %.2f ms, max %.1f ms, "
+                        + "blocked %.1f s of %.1f s per loop (%.1f%%)",
+                PROBES.size(), DELAYS.getValueAtPercentile(50) / 1000.0, DELAYS.getValueAtPercentile(99) / 1000.0,
+                DELAYS.getValueAtPercentile(99.9) / 1000.0, DELAYS.getMaxValue() / 1000.0,
+                blockedSeconds / PROBES.size(), seconds, 100 * blockedSeconds / PROBES.size() / seconds);
+    }
+}
@@ -0,0 +1,171 @@
+package videogamedb.metrics;
+
+import io.gatling.javaapi.core.CheckBuilder;
+import io.gatling.javaapi.core.Session;
+import org.HdrHistogram.AtomicHistogram;
+import org.HdrHistogram.Histogram;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static io.gatling.javaapi.core.CoreDsl.responseTimeInMillis;
+
+// A request name built from session attributes whose number of distinct values stays bounded. Gatling keeps
+// statistics, and the report a page, per request name, so a name like "Create New Game - #{gameName}" with a random
+// game name makes a new statistic for every request: over a soak test the stats engine's memory and the report grow
+// without end. Used in place of the name:
+//   private static final BoundedRequestName CREATE_GAME = BoundedRequestName.of("Create New Game - #{gameName}");
+//   http(CREATE_GAME).post("/videogame").check(CREATE_GAME.latency())
+// Attribute values that look like ids (numbers, UUIDs, hashes) are left out, so "#{gameId}" names the template
+// "Get video game with id - {gameId}". Other values make a name of their own, up to REQUEST_NAME_LIMIT names per
+// template; after that they all share the template's "other" name, e.g. "Create New Game - other". Names are never
+// evicted, so those already in the report keep their statistics.
+// latency() also records each name's response times, and the template's, in fixed-size histograms: report() prints
+// the percentiles of every template whatever the number of names it had.
+//
+// Runtime parameters:
+//   REQUEST_NAME_LIMIT  distinct names per template before they are folded into its "other" name (default 50)
+public final class BoundedRequestName implements Function<Session, String> {
+
+    private static final int LIMIT = Integer.getInteger("REQUEST_NAME_LIMIT", 50);
+    private static final long HIGHEST_TRACKABLE_MS = 60_000; // Gatling's default request timeout
+    private static final int SIGNIFICANT_DIGITS = 2; // 1% precision keeps each histogram around 10 KB
+    private static final Pattern ATTRIBUTE = Pattern.compile("#\\{([^}]+)}");
+    private static final Pattern ID = Pattern.compile("\\d+|[0-9a-fA-F-]{16,}|\\S{32,}");
+    private static final List<BoundedRequestName> TEMPLATES = new CopyOnWriteArrayList<>();
+
+    private final String template;
+    private final String[] literals; // literals[i] comes before attributes[i], the last one after all of them
+    private final String[] attributes;
+    private final Bucket other;
+    private final Histogram all = histogram();
+    private final Map<String, Bucket> names = new ConcurrentHashMap<>();
+    private final AtomicInteger nameCount = new AtomicInteger();
+    private final LongAdder folded = new LongAdder();
+
+    private BoundedRequestName(String template) {
+        this.template = template;
+        List<String> literals = new ArrayList<>();
+        List<String> attributes = new ArrayList<>();
+        Matcher matcher = ATTRIBUTE.matcher(template);
+        int end = 0;
+        StringBuilder otherName = new StringBuilder();
+        while (matcher.find()) {
+            literals.add(template.substring(end, matcher.start()));
+            attributes.add(matcher.group(1));
+            otherName.append(template, end, matcher.start()).append("other");
+            end = matcher.end();
+        }
+        literals.add(template.substring(end));
+        otherName.append(template.substring(end));
+        this.literals = literals.toArray(new String[0]);
+        this.attributes = attributes.toArray(new String[0]);
+        this.other = new Bucket(otherName.toString());
+    }
+
+    public static BoundedRequestName of(String template) {
+        BoundedRequestName name = new BoundedRequestName(template);
+        TEMPLATES.add(name);
+        return name;
+    }
+
+    @Override
+    public String apply(Session session) {
+        Bucket bucket = bucket(session);
+        if (bucket == other && attributes.length > 0) {
+            folded.increment();
+        }
+        return bucket.name;
+    }
+
+    // A check that records the request's response time under its bounded name and its template
+    public CheckBuilder.Final latency() {
+        return responseTimeInMillis().transformWithSession((millis, session) -> {
+            record(session, millis);
+            return millis;
+        });
+    }
+
+    public void record(Session session, long millis) {
+        long value = Math.min(millis, HIGHEST_TRACKABLE_MS);
+        bucket(session).histogram.recordValue(value);
+        all.recordValue(value);
+    }
+
+    private Bucket bucket(Session session) {
+        if (attributes.length == 0) {
+            return other; // Named after the template, there is nothing to fill in
+        }
+        StringBuilder name = new StringBuilder(template.length() + 16);
+        for (int i = 0; i < attributes.length; i++) {
+            name.append(literals[i]);
+            Object value = session.get(attributes[i]);
+            String text = String.valueOf(value);
+            name.append(ID.matcher(text).matches() ? "{" + attributes[i] + "}" : text);
+        }
+        name.append(literals[attributes.length]);
+        return bucket(name.toString());
+    }
+
+    private Bucket bucket(String name) {
+        Bucket bucket = names.get(name);
+        if (bucket != null) {
+            return bucket;
+        }
+        if (nameCount.get() >= LIMIT || nameCount.incrementAndGet() > LIMIT) {
+            return other;
+        }
+        Bucket created = new Bucket(name);
+        Bucket existing = names.putIfAbsent(name, created);
+        if (existing != null) { // Another user named it first
+            nameCount.decrementAndGet();
+            return existing;
+        }
+        return created;
+    }
+
+    public int nameCount() {
+        return names.size();
+    }
+
+    public long foldedCount() {
+        return folded.sum();
+    }
+
+    // One line per template: its names, how many requests were folded into "other", and its percentiles
+    public static String report() {
+        StringBuilder report = new StringBuilder("Request names:");
+        if (TEMPLATES.isEmpty()) {
+            return report.append(" none bounded").toString();
+        }
+        for (BoundedRequestName name : TEMPLATES) {
+            Histogram all = name.all;
+            report.append(String.format("%n  %-45s %5d names, %8d requests as %s, %8d responses, p50 %d ms, p99 %d ms, max %d ms",
+                    name.template, name.nameCount(), name.foldedCount(), name.other.name, all.getTotalCount(),
+                    all.getValueAtPercentile(50), all.getValueAtPercentile(99), all.getMaxValue()));
+        }
+        return report.toString();
+    }
+
+    private static Histogram histogram() {
+        return new AtomicHistogram(HIGHEST_TRACKABLE_MS, SIGNIFICANT_DIGITS); // Wait-free recording, never resizes
+    }
+
+    private static final class Bucket {
+        final String name;
+        final Histogram histogram;
+
+        Bucket(String name) {
+            this.name = name;
+            this.histogram = histogram();
+        }
+    }
+}
@@ -0,0 +1,91 @@
+package videogamedb.metrics;
+
+import org.HdrHistogram.Histogram;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+
+// Streams the interval histograms to a Graphite (or anything speaking its plaintext protocol) listener over TCP:
+//   <prefix>.<request>.<stat> <value> <epoch seconds>
+// The connection is reopened on the next interval if it drops, and that interval's points are lost.
+final class GraphiteSink implements MetricsSink {
+
+    private final String host;
+    private final int port;
+    private final String prefix;
+    private Socket socket;
+    private Writer writer;
+
+    GraphiteSink(String host, int port, String prefix) {
+        this.host = host;
+        this.port = port;
+        this.prefix = prefix;
+    }
+
+    @Override
+    public void write(long timestampMillis, Map<String, Histogram> interval) throws IOException {
+        long seconds = timestampMillis / 1000;
+        try {
+            Writer out = writer();
+            for (Map.Entry<String, Histogram> entry : interval.entrySet()) {
+                String path = prefix + "." + sanitize(entry.getKey()) + ".";
+                Histogram histogram = entry.getValue();
+                line(out, path + "count", histogram.getTotalCount(), seconds);
+                if (histogram.getTotalCount() > 0) {
+                    line(out, path + "mean", Math.round(histogram.getMean()), seconds);
+                    line(out, path + "p50", histogram.getValueAtPercentile(50), seconds);
+                    line(out, path + "p75", histogram.getValueAtPercentile(75), seconds);
+                    line(out, path + "p95", histogram.getValueAtPercentile(95), seconds);
+                    line(out, path + "p99", histogram.getValueAtPercentile(99), seconds);
+                    line(out, path + "p999", histogram.getValueAtPercentile(99.9), seconds);
+                    line(out, path + "max", histogram.getMaxValue(), seconds);
+                }
+            }
+            out.flush();
+        } catch (IOException e) {
+            close();
+            throw e;
+        }
+    }
+
+    private Writer writer() throws IOException {
+        if (writer == null) {
+            socket = new Socket();
+            socket.connect(new InetSocketAddress(host, port), 1000);
+            writer = new BufferedWriter(new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.US_ASCII));
+        }
+        return writer;
+    }
+
+    private static void line(Writer out, String path, long value, long seconds) throws IOException {
+        out.write(path);
+        out.write(' ');
+        out.write(Long.toString(value));
+        out.write(' ');
+        out.write(Long.toString(seconds));
+        out.write('\n');
+    }
+
+    static String sanitize(String name) {
+        return name.replaceAll("[^A-Za-z0-9_-]+", "_");
+    }
+
+    @Override
+    public void close() {
+        try {
+            if (socket != null) {
+                socket.close();
+            }
+        } catch (IOException e) {
+            // Nothing more we can do with a broken connection
+        }
+        socket = null;
+        writer = null;
+    }
+}
@@ -0,0 +1,299 @@
+package videogamedb.metrics;
+
+import com.sun.management.OperatingSystemMXBean;
+import com.sun.management.ThreadMXBean;
+import io.gatling.core.action.Action;
+import io.gatling.core.structure.ScenarioContext;
+import io.gatling.javaapi.core.ActionBuilder;
+import io.gatling.javaapi.core.ChainBuilder;
+import org.HdrHistogram.Histogram;
+import videogamedb.hooks.EventLoopMonitor;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+// Samples the load generator's own health every HEALTH_INTERVAL ms while a simulation runs, so a slow run can be put
+// down to the server or to the injector: process and machine CPU, allocation rate, GC pause time, event loop
+// scheduling lag and longest task queue (see EventLoopMonitor), open sockets and the host's TCP retransmits.
+// Each interval is a line of injector-health.csv; at the end injector-health.txt sums it up. Both are moved into
+// the run's folder next to simulation.log. An interval where the injector was saturated, its CPU, event loop lag or
+// GC pauses over their limits, is flagged, and when more than HEALTH_MAX_SATURATED_PERCENT of them are, the whole
+// run is reported as untrustworthy: its response times include time the requests spent waiting for the injector.
+// Put install() first in a scenario, like EventLoopMonitor's, and print report() in after().
+//
+// GC pause time is the collection time of the JVM's collectors, which is all stop-the-world for Serial, Parallel and
+// G1; for ZGC and Shenandoah it includes concurrent work. Open sockets and retransmits come from /proc, so are only
+// sampled on Linux, and retransmits are the whole host's, including traffic that isn't ours.
+//
+// Runtime parameters:
+//   HEALTH_INTERVAL               ms between samples (default 1000)
+//   HEALTH_CPU_LIMIT              process CPU, as a fraction of all cores, above which the injector is saturated (default 0.9)
+//   HEALTH_LAG_LIMIT              event loop lag p99 in ms above which the injector is saturated (default 50)
+//   HEALTH_GC_LIMIT               percentage of an interval spent in GC above which the injector is saturated (default 10)
+//   HEALTH_MAX_SATURATED_PERCENT  percentage of saturated intervals above which the run is untrustworthy (default 5)
+public final class InjectorHealth {
+
+    private static final long INTERVAL_MS = Long.getLong("HEALTH_INTERVAL", 1000);
+    private static final double CPU_LIMIT = Double.parseDouble(System.getProperty("HEALTH_CPU_LIMIT", "0.9"));
+    private static final double LAG_LIMIT_MS = Double.parseDouble(System.getProperty("HEALTH_LAG_LIMIT", "50"));
+    private static final double GC_LIMIT_PERCENT = Double.parseDouble(System.getProperty("HEALTH_GC_LIMIT", "10"));
+    private static final double MAX_SATURATED_PERCENT = Double.parseDouble(System.getProperty("HEALTH_MAX_SATURATED_PERCENT", "5"));
+    private static final Path SNMP = Path.of("/proc/net/snmp");
+    private static final Path FDS = Path.of("/proc/self/fd");
+
+    private static final AtomicBoolean STARTED = new AtomicBoolean();
+    private static final OperatingSystemMXBean OS = (OperatingSystemMXBean) ManagementFactory.getOperatingSystemMXBean();
+    private static final ThreadMXBean THREADS = (ThreadMXBean) ManagementFactory.getThreadMXBean();
+    private static final List<GarbageCollectorMXBean> COLLECTORS = ManagementFactory.getGarbageCollectorMXBeans();
+
+    private static ScheduledExecutorService sampler;
+    private static Path resultsDirectory;
+    private static Path csv;
+    private static BufferedWriter out;
+    private static long startedMillis;
+
+    // Written by the sampler thread only, read by report() once it has stopped
+    private static long lastNanos;
+    private static long lastAllocated;
+    private static long lastGcMillis;
+    private static long lastRetransmits = -1;
+    private static long intervals;
+    private static long saturatedIntervals;
+    private static long cpuSaturated;
+    private static long lagSaturated;
+    private static long gcSaturated;
+    private static long retransmits;
+    private static double maxCpu;
+    private static double maxLagMillis;
+    private static double maxAllocationMbPerSecond;
+    private static long gcMillis;
+    private static int maxPendingTasks;
+    private static int maxSockets;
+
+    private InjectorHealth() {
+    }
+
+    public static ChainBuilder install() {
+        ActionBuilder builder = () -> (ScenarioContext ctx, Action next) -> {
+            start(ctx.coreComponents().configuration().core().directory().results());
+            return next;
+        };
+        return EventLoopMonitor.install().exec(builder);
+    }
+
+    private static void start(Path results) {
+        if (!STARTED.compareAndSet(false, true)) {
+            return;
+        }
+        startedMillis = System.currentTimeMillis();
+        resultsDirectory = results;
+        csv = results.resolve("injector-health-" + startedMillis + ".csv");
+        try {
+            Files.createDirectories(results);
+            out = Files.newBufferedWriter(csv, StandardCharsets.UTF_8);
+            out.write("timestamp,process_cpu,machine_cpu,heap_used_mb,alloc_mb_per_s,gc_pause_ms,loop_lag_p99_ms,loop_lag_max_ms,max_pending_tasks,open_sockets,tcp_retransmits,flags\n");
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        lastNanos = System.nanoTime();
+        lastAllocated = allocatedBytes();
+        lastGcMillis = gcMillis();
+        lastRetransmits = retransmits();
+        sampler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "injector-health");
+            thread.setDaemon(true);
+            return thread;
+        });
+        sampler.scheduleAtFixedRate(InjectorHealth::sample, INTERVAL_MS, INTERVAL_MS, TimeUnit.MILLISECONDS);
+    }
+
+    private static void sample() {
+        long now = System.nanoTime();
+        double seconds = (now - lastNanos) / 1e9;
+        lastNanos = now;
+
+        double cpu = Math.max(0, OS.getProcessCpuLoad());
+        double machineCpu = Math.max(0, OS.getCpuLoad());
+        long allocated = allocatedBytes();
+        double allocationMbPerSecond = Math.max(0, allocated - lastAllocated) / 1048576.0 / seconds;
+        lastAllocated = allocated;
+        long gc = gcMillis();
+        long pauseMillis = gc - lastGcMillis;
+        lastGcMillis = gc;
+        Histogram lag = EventLoopMonitor.intervalDelays();
+        double lagP99 = lag.getValueAtPercentile(99) / 1000.0;
+        double lagMax = lag.getMaxValue() / 1000.0;
+        int pending = EventLoopMonitor.maxPendingTasks();
+        int sockets = openSockets();
+        long totalRetransmits = retransmits();
+        long newRetransmits = totalRetransmits < 0 || lastRetransmits < 0 ? 0 : totalRetransmits - lastRetransmits;
+        lastRetransmits = totalRetransmits;
+
+        List<String> flags = new ArrayList<>();
+        if (cpu >= CPU_LIMIT) {
+            flags.add("cpu");
+            cpuSaturated++;
+        }
+        if (lagP99 >= LAG_LIMIT_MS) {
+            flags.add("loop-lag");
+            lagSaturated++;
+        }
+        if (100.0 * pauseMillis / (seconds * 1000) >= GC_LIMIT_PERCENT) {
+            flags.add("gc");
+            gcSaturated++;
+        }
+        if (!flags.isEmpty()) {
+            saturatedIntervals++;
+        }
+        if (newRetransmits > 0) {
+            flags.add("retransmits"); // Not the injector's fault, but the network's, so not counted as saturated
+        }
+        intervals++;
+        retransmits += newRetransmits;
+        gcMillis += pauseMillis;
+        maxCpu = Math.max(maxCpu, cpu);
+        maxLagMillis = Math.max(maxLagMillis, lagMax);
+        maxAllocationMbPerSecond = Math.max(maxAllocationMbPerSecond, allocationMbPerSecond);
+        maxPendingTasks = Math.max(maxPendingTasks, pending);
+        maxSockets = Math.max(maxSockets, sockets);
+
+        Runtime runtime = Runtime.getRuntime();
+        try {
+            out.write(String.format("%d,%.3f,%.3f,%d,%.1f,%d,%.2f,%.2f,%d,%d,%d,%s%n", System.currentTimeMillis(), cpu, machineCpu,
+                    (runtime.totalMemory() - runtime.freeMemory()) / 1048576, allocationMbPerSecond, pauseMillis, lagP99, lagMax,
+                    pending, sockets, newRetransmits, String.join(" ", flags)));
+            out.flush(); // A line a second, flushed so the file can be tailed while the run goes on
+        } catch (IOException e) {
+            // A full disk shouldn't stop the run, the summary will still be printed
+        }
+    }
+
+    // Bytes allocated by the live threads, Gatling's are there for the whole run. Java 17 has no total for the JVM
+    private static long allocatedBytes() {
+        long total = 0;
+        for (long bytes : THREADS.getThreadAllocatedBytes(THREADS.getAllThreadIds())) {
+            total += Math.max(0, bytes);
+        }
+        return total;
+    }
+
+    private static long gcMillis() {
+        long total = 0;
+        for (GarbageCollectorMXBean collector : COLLECTORS) {
+            total += Math.max(0, collector.getCollectionTime());
+        }
+        return total;
+    }
+
+    // Sockets among this process's file descriptors, -1 without /proc
+    private static int openSockets() {
+        if (!Files.isDirectory(FDS)) {
+            return -1;
+        }
+        int sockets = 0;
+        try (DirectoryStream<Path> fds = Files.newDirectoryStream(FDS)) {
+            for (Path fd : fds) {
+                try {
+                    if (Files.readSymbolicLink(fd).toString().startsWith("socket:")) {
+                        sockets++;
+                    }
+                } catch (IOException e) {
+                    // Closed since it was listed
+                }
+            }
+        } catch (IOException e) {
+            return -1;
+        }
+        return sockets;
+    }
+
+    // The host's TCP segments retransmitted since boot, from the RetransSegs column of /proc/net/snmp, -1 without it
+    private static long retransmits() {
+        try {
+            List<String> lines = Files.readAllLines(SNMP);
+            for (int i = 0; i + 1 < lines.size(); i++) {
+                if (lines.get(i).startsWith("Tcp:") && lines.get(i + 1).startsWith("Tcp:")) {
+                    String[] names = lines.get(i).split("\\s+");
+                    String[] values = lines.get(i + 1).split("\\s+");
+                    for (int column = 0; column < names.length; column++) {
+                        if (names[column].equals("RetransSegs")) {
+                            return Long.parseLong(values[column]);
+                        }
+                    }
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            // Not Linux, or a format we don't know
+        }
+        return -1;
+    }
+
+    public static String report() {
+        if (!STARTED.get()) {
+            return "Injector health: not monitored, add InjectorHealth.install() to the scenario";
+        }
+        sampler.shutdown();
+        try {
+            sampler.awaitTermination(INTERVAL_MS * 2, TimeUnit.MILLISECONDS); // Let a sample in progress finish
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        double saturatedPercent = intervals == 0 ? 0 : 100.0 * saturatedIntervals / intervals;
+        boolean trustworthy = saturatedPercent <= MAX_SATURATED_PERCENT;
+        String summary = String.format("Injector health: %d intervals of %d ms, %d saturated (%.1f%%): %d CPU over %.0f%%, %d event loop lag p99 over %.0f ms, %d GC over %.0f%%%n"
+                        + "  max process CPU %.0f%% of %d cores, max event loop lag %.1f ms, max pending tasks %d, max allocation %.0f MB/s, GC %d ms in total%n"
+                        + "  max open sockets %d, %d TCP retransmits on the host%n"
+                        + "  %s",
+                intervals, INTERVAL_MS, saturatedIntervals, saturatedPercent, cpuSaturated, CPU_LIMIT * 100, lagSaturated, LAG_LIMIT_MS,
+                gcSaturated, GC_LIMIT_PERCENT, maxCpu * 100, OS.getAvailableProcessors(), maxLagMillis, maxPendingTasks,
+                maxAllocationMbPerSecond, gcMillis, maxSockets, retransmits,
+                trustworthy ? "The injector kept up, the response times are the server's"
+                        : "UNTRUSTWORTHY: the injector was saturated in more than " + MAX_SATURATED_PERCENT + "% of the run, its response times include time spent waiting for the injector");
+        try {
+            out.close();
+            Path txt = csv.resolveSibling("injector-health-" + startedMillis + ".txt");
+            Files.writeString(txt, summary + System.lineSeparator(), StandardCharsets.UTF_8);
+            Path run = runDirectory();
+            if (run != null) {
+                Files.move(csv, run.resolve("injector-health.csv"), StandardCopyOption.REPLACE_EXISTING);
+                Files.move(txt, run.resolve("injector-health.txt"), StandardCopyOption.REPLACE_EXISTING);
+                summary += String.format("%n  Written to %s", run.resolve("injector-health.csv"));
+            } else {
+                summary += String.format("%n  Written to %s", csv);
+            }
+        } catch (IOException e) {
+            summary += String.format("%n  Couldn't write the health files: %s", e);
+        }
+        return summary;
+    }
+
+    // The folder of this run: the newest one with a simulation.log written since we started
+    private static Path runDirectory() throws IOException {
+        Path newest = null;
+        long newestModified = startedMillis - 1000;
+        try (DirectoryStream<Path> runs = Files.newDirectoryStream(resultsDirectory, Files::isDirectory)) {
+            for (Path run : runs) {
+                Path log = run.resolve("simulation.log");
+                if (Files.exists(log) && Files.getLastModifiedTime(log).toMillis() > newestModified) {
+                    newest = run;
+                    newestModified = Files.getLastModifiedTime(log).toMillis();
+                }
+            }
+        }
+        return newest;
+    }
+}
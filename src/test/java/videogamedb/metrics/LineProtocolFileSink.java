@@ -0,0 +1,58 @@
+package videogamedb.metrics;
+
+import org.HdrHistogram.Histogram;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+
+// Appends the interval histograms to a file in InfluxDB line protocol, one line per request name per interval:
+//   response_time,request=Get\ all\ video\ games count=12i,mean=4.2,p50=4i,...,max=9i <epoch nanos>
+final class LineProtocolFileSink implements MetricsSink {
+
+    private final BufferedWriter writer;
+
+    LineProtocolFileSink(Path file) throws IOException {
+        if (file.getParent() != null) {
+            Files.createDirectories(file.getParent());
+        }
+        writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8, StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+    }
+
+    @Override
+    public void write(long timestampMillis, Map<String, Histogram> interval) throws IOException {
+        for (Map.Entry<String, Histogram> entry : interval.entrySet()) {
+            Histogram histogram = entry.getValue();
+            if (histogram.getTotalCount() == 0) {
+                continue;
+            }
+            writer.write("response_time,request=");
+            writer.write(escape(entry.getKey()));
+            writer.write(" count=" + histogram.getTotalCount() + "i");
+            writer.write(",mean=" + histogram.getMean());
+            writer.write(",p50=" + histogram.getValueAtPercentile(50) + "i");
+            writer.write(",p75=" + histogram.getValueAtPercentile(75) + "i");
+            writer.write(",p95=" + histogram.getValueAtPercentile(95) + "i");
+            writer.write(",p99=" + histogram.getValueAtPercentile(99) + "i");
+            writer.write(",p999=" + histogram.getValueAtPercentile(99.9) + "i");
+            writer.write(",max=" + histogram.getMaxValue() + "i");
+            writer.write(" " + timestampMillis * 1_000_000);
+            writer.newLine();
+        }
+        writer.flush();
+    }
+
+    // Tag values escape commas, equals signs and spaces
+    private static String escape(String tag) {
+        return tag.replace(",", "\\,").replace("=", "\\=").replace(" ", "\\ ");
+    }
+
+    @Override
+    public void close() throws IOException {
+        writer.close();
+    }
+}
@@ -0,0 +1,149 @@
+package videogamedb.metrics;
+
+import io.gatling.javaapi.core.CheckBuilder;
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static io.gatling.javaapi.core.CoreDsl.responseTimeInMillis;
+
+// Streams per-request latency percentiles while a simulation runs, instead of only in the report at the end.
+// Each request name gets an HdrHistogram Recorder, created when the chain is built, so recording a response is a
+// wait-free recordValue() on a fixed-size histogram: no locks, no map lookups and no allocation on our side. Once per
+// interval a background thread swaps out each interval histogram and hands them to the configured sinks.
+//
+// Attach it to a request with .check(LiveMetrics.latency("Request name")).
+//
+// Runtime parameters:
+//   METRICS_SINK      comma separated list of graphite, prometheus and file (default none, which records nothing)
+//   METRICS_INTERVAL  reporting interval in ms (default 1000)
+//   GRAPHITE_HOST     Graphite plaintext listener host (default localhost)
+//   GRAPHITE_PORT     Graphite plaintext listener port (default 2003)
+//   METRICS_PREFIX    Graphite metric path prefix (default gatling.videogamedb)
+//   METRICS_PORT      port of the Prometheus scrape endpoint (default 9464)
+//   METRICS_FILE      line protocol file (default target/live-metrics.lp)
+public final class LiveMetrics {
+
+    private static final String SINKS = System.getProperty("METRICS_SINK", "none");
+    private static final long INTERVAL_MS = Long.getLong("METRICS_INTERVAL", 1000);
+    private static final long HIGHEST_TRACKABLE_MS = 60_000; // Gatling's default request timeout
+    private static final int SIGNIFICANT_DIGITS = 3;
+
+    private final Map<String, Recorder> recorders = new ConcurrentHashMap<>();
+    private final Map<String, Histogram> intervals = new LinkedHashMap<>(); // Recycled interval histograms, only used by the reporting thread
+    private final List<MetricsSink> sinks;
+    private final ScheduledExecutorService reporter;
+
+    private static final class Holder {
+        private static final LiveMetrics SHARED = new LiveMetrics(createSinks(SINKS));
+    }
+
+    public static LiveMetrics shared() {
+        return Holder.SHARED;
+    }
+
+    // A check that records the request's response time under requestName
+    public static CheckBuilder.Final latency(String requestName) {
+        LiveMetrics metrics = shared();
+        if (!metrics.enabled()) {
+            return responseTimeInMillis();
+        }
+        Recorder recorder = metrics.recorder(requestName);
+        return responseTimeInMillis().transform(millis -> {
+            recorder.recordValue(Math.min(millis, HIGHEST_TRACKABLE_MS));
+            return millis;
+        });
+    }
+
+    LiveMetrics(List<MetricsSink> sinks) {
+        this.sinks = sinks;
+        if (sinks.isEmpty()) {
+            reporter = null;
+            return;
+        }
+        reporter = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "live-metrics");
+            thread.setDaemon(true);
+            return thread;
+        });
+        reporter.scheduleAtFixedRate(this::report, INTERVAL_MS, INTERVAL_MS, TimeUnit.MILLISECONDS);
+        Runtime.getRuntime().addShutdownHook(new Thread(this::close, "live-metrics-shutdown"));
+    }
+
+    public boolean enabled() {
+        return !sinks.isEmpty();
+    }
+
+    public Recorder recorder(String requestName) {
+        return recorders.computeIfAbsent(requestName, name -> new Recorder(HIGHEST_TRACKABLE_MS, SIGNIFICANT_DIGITS));
+    }
+
+    private synchronized void report() {
+        long now = System.currentTimeMillis();
+        Map<String, Histogram> snapshot = new LinkedHashMap<>();
+        for (Map.Entry<String, Recorder> entry : recorders.entrySet()) {
+            Histogram histogram = entry.getValue().getIntervalHistogram(intervals.get(entry.getKey()));
+            intervals.put(entry.getKey(), histogram);
+            snapshot.put(entry.getKey(), histogram);
+        }
+        for (MetricsSink sink : sinks) {
+            try {
+                sink.write(now, snapshot);
+            } catch (IOException | RuntimeException e) {
+                System.err.println("Live metrics: failed to write to " + sink.getClass().getSimpleName() + ": " + e);
+            }
+        }
+    }
+
+    private synchronized void close() {
+        reporter.shutdownNow();
+        report(); // Whatever was recorded since the last interval
+        for (MetricsSink sink : sinks) {
+            try {
+                sink.close();
+            } catch (Exception e) {
+                System.err.println("Live metrics: failed to close " + sink.getClass().getSimpleName() + ": " + e);
+            }
+        }
+    }
+
+    private static List<MetricsSink> createSinks(String spec) {
+        List<MetricsSink> sinks = new ArrayList<>();
+        try {
+            for (String name : spec.split(",")) {
+                switch (name.trim().toLowerCase()) {
+                    case "graphite":
+                        sinks.add(new GraphiteSink(System.getProperty("GRAPHITE_HOST", "localhost"),
+                                Integer.getInteger("GRAPHITE_PORT", 2003),
+                                System.getProperty("METRICS_PREFIX", "gatling.videogamedb")));
+                        break;
+                    case "prometheus":
+                        sinks.add(new PrometheusSink(Integer.getInteger("METRICS_PORT", 9464)));
+                        break;
+                    case "file":
+                        sinks.add(new LineProtocolFileSink(Paths.get(System.getProperty("METRICS_FILE", "target/live-metrics.lp"))));
+                        break;
+                    case "none":
+                    case "":
+                        break;
+                    default:
+                        throw new IllegalArgumentException("Unknown METRICS_SINK: " + name);
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to start the live metrics sinks", e);
+        }
+        return sinks;
+    }
+}
@@ -0,0 +1,18 @@
+package videogamedb.metrics;
+
+import org.HdrHistogram.Histogram;
+
+import java.io.IOException;
+import java.util.Map;
+
+// Somewhere LiveMetrics streams its per-request latency histograms to, once per interval.
+// Sinks are only ever called from the LiveMetrics reporting thread, never from the response path.
+public interface MetricsSink extends AutoCloseable {
+
+    // interval holds the latencies recorded since the last call, in milliseconds, keyed by request name
+    void write(long timestampMillis, Map<String, Histogram> interval) throws IOException;
+
+    @Override
+    default void close() throws IOException {
+    }
+}
@@ -0,0 +1,119 @@
+package videogamedb.metrics;
+
+import io.gatling.javaapi.core.ChainBuilder;
+import io.gatling.javaapi.http.HttpProtocolBuilder;
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static io.gatling.javaapi.core.CoreDsl.exec;
+import static io.gatling.javaapi.core.CoreDsl.pause;
+import static io.gatling.javaapi.core.CoreDsl.responseTimeInMillis;
+
+// Optional coordinated-omission-corrected reporting for scenarios that wait a fixed time between calls.
+// With a plain pause, a call that stalls delays every call after it, so the slow period is sampled less and the
+// reported latencies understate what users on a fixed schedule would see. With PACING=true each step is instead
+// scheduled a fixed interval after the previous step *should* have been sent, and we record both:
+//   raw        from when the request was actually sent to when the response arrived
+//   corrected  from when the request should have been sent to when the response arrived
+// A step without think time follows the previous one as soon as it completes, as a user would, so it starts the
+// schedule again from then rather than inheriting a lateness that isn't its own. A step that got no response, like a
+// cached token or a skipped delete, keeps the schedule but records nothing; applyTo() on the protocol is how a step
+// knows. The corrected times stay out of Gatling's results, so Global and the percentiles CapacitySearch reads are the
+// real requests only: report() prints both side by side and writes them to PACING_REPORT.
+// Without PACING, step() is just the pause followed by the chain, as before.
+//
+// Runtime parameters:
+//   PACING         true to pace steps and report corrected latencies (default false)
+//   PACING_REPORT  file the side by side table is written to at the end of the run (default target/coordinated-omission.txt)
+public final class Pacing {
+
+    public static final boolean ENABLED = Boolean.getBoolean("PACING");
+    private static final String REPORT_FILE = System.getProperty("PACING_REPORT", "target/coordinated-omission.txt");
+    private static final String INTENDED_KEY = "pacingIntendedSendTime";
+    private static final String SENT_KEY = "pacingSendTime";
+    private static final String RESPONDED_KEY = "pacingResponseTime";
+    private static final long HIGHEST_TRACKABLE_MS = 3_600_000;
+
+    private static final Map<String, Histogram[]> HISTOGRAMS = new ConcurrentHashMap<>(); // Request name -> {raw, corrected}
+
+    private Pacing() {
+    }
+
+    // Marks every response in the session, so that a step records only when it sent a request. Not a status check,
+    // which would replace Gatling's default one.
+    public static HttpProtocolBuilder applyTo(HttpProtocolBuilder protocol) {
+        return ENABLED ? protocol.check(responseTimeInMillis().saveAs(RESPONDED_KEY)) : protocol;
+    }
+
+    // Waits think time, then runs step. When pacing, the wait is measured from the previous step's intended send time,
+    // and a step without think time is due when the previous one completes.
+    public static ChainBuilder step(String name, Duration think, ChainBuilder step) {
+        if (!ENABLED) {
+            return think.isZero() ? exec(step) : pause(think).exec(step);
+        }
+        Histogram[] histograms = HISTOGRAMS.computeIfAbsent(name, n -> new Histogram[]{
+                new ConcurrentHistogram(HIGHEST_TRACKABLE_MS, 3),
+                new ConcurrentHistogram(HIGHEST_TRACKABLE_MS, 3)
+        });
+        long interval = think.toMillis();
+
+        return exec(session -> {
+            long intended = session.contains(INTENDED_KEY) && interval > 0
+                    ? session.getLong(INTENDED_KEY) + interval
+                    : System.currentTimeMillis(); // The first step of a user, or one right after the previous, sets the schedule
+            return session.set(INTENDED_KEY, intended);
+        })
+                .pause(session -> Duration.ofMillis(Math.max(0, session.getLong(INTENDED_KEY) - System.currentTimeMillis())))
+                .exec(session -> session.set(SENT_KEY, System.currentTimeMillis()).remove(RESPONDED_KEY))
+                .exec(step)
+                .exec(session -> {
+                    if (session.contains(RESPONDED_KEY)) {
+                        long now = System.currentTimeMillis();
+                        histograms[0].recordValue(clamp(now - session.getLong(SENT_KEY)));
+                        histograms[1].recordValue(clamp(now - session.getLong(INTENDED_KEY)));
+                    }
+                    return session;
+                });
+    }
+
+    private static long clamp(long millis) {
+        return Math.max(0, Math.min(millis, HIGHEST_TRACKABLE_MS));
+    }
+
+    // The raw and corrected percentiles of each paced step side by side, also written to PACING_REPORT
+    public static String report() {
+        if (!ENABLED) {
+            return "Pacing disabled, run with -DPACING=true for coordinated-omission-corrected latencies";
+        }
+        StringBuilder out = new StringBuilder();
+        out.append(String.format("%-30s %8s | %8s %8s %8s %8s | %8s %8s %8s %8s%n",
+                "Request (ms)", "count", "raw p50", "raw p95", "raw p99", "raw max", "cor p50", "cor p95", "cor p99", "cor max"));
+        HISTOGRAMS.forEach((name, histograms) -> {
+            Histogram raw = histograms[0];
+            Histogram corrected = histograms[1];
+            out.append(String.format("%-30s %8d | %8d %8d %8d %8d | %8d %8d %8d %8d%n", name, raw.getTotalCount(),
+                    raw.getValueAtPercentile(50), raw.getValueAtPercentile(95), raw.getValueAtPercentile(99), raw.getMaxValue(),
+                    corrected.getValueAtPercentile(50), corrected.getValueAtPercentile(95), corrected.getValueAtPercentile(99), corrected.getMaxValue()));
+        });
+        try {
+            Path file = Paths.get(REPORT_FILE);
+            if (file.getParent() != null) {
+                Files.createDirectories(file.getParent());
+            }
+            Files.write(file, out.toString().getBytes(StandardCharsets.UTF_8));
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to write " + REPORT_FILE, e);
+        }
+        return out.toString();
+    }
+}
@@ -0,0 +1,61 @@
+package videogamedb.metrics;
+
+import com.sun.net.httpserver.HttpServer;
+import org.HdrHistogram.Histogram;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+
+// Serves the latest interval's latencies on http://<host>:<port>/metrics in the Prometheus text format, as a summary
+// per request name. Quantiles are for the last interval; _count and _sum are cumulative, as Prometheus expects.
+final class PrometheusSink implements MetricsSink {
+
+    private final HttpServer server;
+    private final Map<String, long[]> totals = new HashMap<>(); // Request name -> {count, sum}, only touched by the reporting thread
+    private volatile byte[] page = new byte[0];
+
+    PrometheusSink(int port) throws IOException {
+        server = HttpServer.create(new InetSocketAddress(port), 0);
+        server.createContext("/metrics", exchange -> {
+            byte[] body = page;
+            exchange.getResponseHeaders().set("Content-Type", "text/plain; version=0.0.4");
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        });
+        server.start();
+    }
+
+    @Override
+    public void write(long timestampMillis, Map<String, Histogram> interval) {
+        StringBuilder out = new StringBuilder(4096);
+        out.append("# HELP videogamedb_response_time_ms Response time of each request, in milliseconds\n");
+        out.append("# TYPE videogamedb_response_time_ms summary\n");
+        for (Map.Entry<String, Histogram> entry : interval.entrySet()) {
+            String label = "request=\"" + entry.getKey().replace("\\", "\\\\").replace("\"", "\\\"") + "\"";
+            Histogram histogram = entry.getValue();
+            long[] total = totals.computeIfAbsent(entry.getKey(), name -> new long[2]);
+            total[0] += histogram.getTotalCount();
+            total[1] += Math.round(histogram.getMean() * histogram.getTotalCount());
+            if (histogram.getTotalCount() > 0) {
+                for (double quantile : new double[]{0.5, 0.75, 0.95, 0.99, 0.999}) {
+                    out.append("videogamedb_response_time_ms{").append(label).append(",quantile=\"").append(quantile).append("\"} ")
+                            .append(histogram.getValueAtPercentile(quantile * 100)).append('\n');
+                }
+            }
+            out.append("videogamedb_response_time_ms_count{").append(label).append("} ").append(total[0]).append('\n');
+            out.append("videogamedb_response_time_ms_sum{").append(label).append("} ").append(total[1]).append('\n');
+        }
+        page = out.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+    }
+}
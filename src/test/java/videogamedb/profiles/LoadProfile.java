@@ -0,0 +1,170 @@
+package videogamedb.profiles;
+
+import io.gatling.javaapi.core.PopulationBuilder;
+import io.gatling.javaapi.core.ScenarioBuilder;
+import io.gatling.javaapi.core.Simulation;
+
+import java.time.Duration;
+
+import static io.gatling.javaapi.core.CoreDsl.*;
+
+// A library of injection profiles, chosen at runtime with the system property PROFILE so the same scenario can be
+// ramped, stepped, throttled, run closed-model, spiked or soaked without editing the simulation:
+//   ramp      open model, nothingFor(5) then rampUsers(USERS) over RAMP_DURATION (default, what we always did)
+//   stepped   closed model, STEPS levels of STEP_USERS more concurrent users each, held for STEP_DURATION, to find saturation
+//   throttle  open model, USERS ramped in and throttled to a constant TARGET_RPS for TEST_DURATION
+//   closed    closed model, ramp to USERS concurrent users over RAMP_DURATION and hold for TEST_DURATION
+//   spike     like throttle, but jumps to TARGET_RPS * SPIKE_FACTOR for SPIKE_DURATION in the middle of the run
+//   soak      like ramp, but held for SOAK_DURATION (default an hour)
+// Our scenarios loop forever, so throughput-shaped profiles need enough USERS to reach the target: roughly TARGET_RPS
+// times the seconds one loop of the scenario takes, divided by the requests in a loop.
+public final class LoadProfile {
+
+    public enum Shape {
+        RAMP, STEPPED, THROTTLE, CLOSED, SPIKE, SOAK
+    }
+
+    // The defaults Coordinator splits across its injectors when they aren't set
+    public static final int DEFAULT_TARGET_RPS = 10;
+    public static final int DEFAULT_STEP_USERS = 10;
+
+    private final Shape shape;
+    private final int users;
+    private final int rampDuration;
+    private final int testDuration;
+    private final int targetRps;
+    private final int steps;
+    private final int stepUsers;
+    private final int stepDuration;
+    private final int spikeFactor;
+    private final int spikeDuration;
+    private final int soakDuration;
+
+    public static LoadProfile fromSystemProperties() {
+        return new LoadProfile(
+                Shape.valueOf(System.getProperty("PROFILE", "ramp").toUpperCase()),
+                Integer.getInteger("USERS", 5),
+                Integer.getInteger("RAMP_DURATION", 10),
+                Integer.getInteger("TEST_DURATION", 20),
+                Integer.getInteger("TARGET_RPS", DEFAULT_TARGET_RPS),
+                Integer.getInteger("STEPS", 5),
+                Integer.getInteger("STEP_USERS", DEFAULT_STEP_USERS),
+                Integer.getInteger("STEP_DURATION", 30),
+                Integer.getInteger("SPIKE_FACTOR", 5),
+                Integer.getInteger("SPIKE_DURATION", 10),
+                Integer.getInteger("SOAK_DURATION", 3600));
+    }
+
+    public LoadProfile(Shape shape, int users, int rampDuration, int testDuration, int targetRps, int steps, int stepUsers,
+                       int stepDuration, int spikeFactor, int spikeDuration, int soakDuration) {
+        this.shape = shape;
+        this.users = users;
+        this.rampDuration = rampDuration;
+        this.testDuration = testDuration;
+        this.targetRps = targetRps;
+        this.steps = steps;
+        this.stepUsers = stepUsers;
+        this.stepDuration = stepDuration;
+        this.spikeFactor = spikeFactor;
+        this.spikeDuration = spikeDuration;
+        this.soakDuration = soakDuration;
+    }
+
+    public Shape shape() {
+        return shape;
+    }
+
+    // The injection steps for the scenario
+    public PopulationBuilder inject(ScenarioBuilder scn) {
+        switch (shape) {
+            case STEPPED:
+                return scn.injectClosed(
+                        incrementConcurrentUsers(stepUsers)
+                                .times(steps)
+                                .eachLevelLasting(stepDuration)
+                                .separatedByRampsLasting(Math.max(1, stepDuration / 10))
+                                .startingFrom(0)
+                );
+            case CLOSED:
+                return scn.injectClosed(
+                        rampConcurrentUsers(0).to(users).during(rampDuration),
+                        constantConcurrentUsers(users).during(testDuration)
+                );
+            case THROTTLE:
+            case SPIKE:
+                return scn.injectOpen(
+                        rampUsers(users).during(rampDuration)
+                );
+            case RAMP:
+            case SOAK:
+            default:
+                return scn.injectOpen(
+                        nothingFor(5), // Do nothing for 5 seconds
+                        rampUsers(users).during(rampDuration)
+                );
+        }
+    }
+
+    // Adds the throttling and maximum duration the profile needs to the simulation's setUp
+    public Simulation.SetUp applyTo(Simulation.SetUp setUp) {
+        switch (shape) {
+            case THROTTLE:
+                setUp.throttle(
+                        reachRps(targetRps).in(Math.max(1, rampDuration)),
+                        holdFor(testDuration)
+                );
+                break;
+            case SPIKE: {
+                int plateau = Math.max(1, (testDuration - spikeDuration) / 2);
+                setUp.throttle(
+                        reachRps(targetRps).in(Math.max(1, rampDuration)),
+                        holdFor(plateau),
+                        jumpToRps(targetRps * spikeFactor),
+                        holdFor(spikeDuration),
+                        jumpToRps(targetRps),
+                        holdFor(plateau)
+                );
+                break;
+            }
+            default:
+                break;
+        }
+        return setUp.maxDuration(Duration.ofSeconds(maxDuration()));
+    }
+
+    // Our scenarios loop forever, so every profile needs a maximum duration to end
+    public long maxDuration() {
+        switch (shape) {
+            case STEPPED:
+                return (long) steps * (stepDuration + Math.max(1, stepDuration / 10));
+            case CLOSED:
+            case THROTTLE:
+                return rampDuration + testDuration;
+            case SPIKE:
+                return rampDuration + spikeDuration + 2L * Math.max(1, (testDuration - spikeDuration) / 2);
+            case SOAK:
+                return 5L + rampDuration + soakDuration;
+            case RAMP:
+            default:
+                return testDuration;
+        }
+    }
+
+    public String describe() {
+        switch (shape) {
+            case STEPPED:
+                return String.format("stepped profile: %d steps of %d concurrent users, %d seconds each", steps, stepUsers, stepDuration);
+            case CLOSED:
+                return String.format("closed profile: %d concurrent users, ramped over %d seconds, held for %d seconds", users, rampDuration, testDuration);
+            case THROTTLE:
+                return String.format("throttle profile: %d users throttled to %d requests/sec for %d seconds", users, targetRps, testDuration);
+            case SPIKE:
+                return String.format("spike profile: %d requests/sec spiking to %d for %d seconds", targetRps, targetRps * spikeFactor, spikeDuration);
+            case SOAK:
+                return String.format("soak profile: %d users ramped over %d seconds, held for %d seconds", users, rampDuration, soakDuration);
+            case RAMP:
+            default:
+                return String.format("ramp profile: %d users ramped over %d seconds, %d seconds in total", users, rampDuration, testDuration);
+        }
+    }
+}
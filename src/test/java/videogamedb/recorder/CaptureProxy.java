@@ -0,0 +1,232 @@
+package videogamedb.recorder;
+
+import io.netty.bootstrap.ServerBootstrap;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelInitializer;
+import io.netty.channel.ChannelOption;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.ServerChannel;
+import io.netty.channel.epoll.Epoll;
+import io.netty.channel.epoll.EpollEventLoopGroup;
+import io.netty.channel.epoll.EpollServerSocketChannel;
+import io.netty.channel.epoll.EpollSocketChannel;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.socket.SocketChannel;
+import io.netty.channel.socket.nio.NioServerSocketChannel;
+import io.netty.channel.socket.nio.NioSocketChannel;
+import io.netty.handler.codec.http.HttpServerCodec;
+import io.netty.handler.ssl.OpenSsl;
+import io.netty.handler.ssl.ReferenceCountedOpenSslEngine;
+import io.netty.handler.ssl.SslContext;
+import io.netty.handler.ssl.SslContextBuilder;
+import io.netty.handler.ssl.SslProvider;
+import io.netty.handler.ssl.util.InsecureTrustManagerFactory;
+import io.netty.util.concurrent.DefaultThreadFactory;
+
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.SSLException;
+import java.io.IOException;
+import java.lang.reflect.Method;
+import java.net.InetSocketAddress;
+import java.nio.file.Path;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+// An HTTP(S) recording proxy for sessions the Gatling recorder (see Recorder) slows down on: many parallel connections
+// to many hosts, for a long time. Point the app or browser at it like at the recorder's proxy, trusting the same CA,
+// then convert the recording with HarConverter:
+//   mvn test-compile exec:java -Dexec.mainClass=videogamedb.recorder.CaptureProxy -Dexec.classpathScope=test
+// Unlike the recorder it:
+//   - presents certificates from LeafCertificates, issued once per host with a shared key and kept on disk, and
+//     resumes the TLS sessions of reconnecting clients, on both sides of the proxy
+//   - streams requests and responses through as they arrive, rather than aggregating them, and keeps request bodies
+//     whole but only the first RECORDER_BODY_KB of textual response bodies for the recording
+//   - writes each exchange to the HAR from a background thread when it completes (see HarWriter), so the memory it
+//     takes depends on the connections open, not on how long the recording is
+// A slow side of a connection stops the proxy reading from the other until it catches up, so one connection never
+// buffers more than Netty's write buffer. It doesn't do HTTP/2 or WebSockets: clients fall back to HTTP/1.1.
+//
+// Runtime parameters (see also LeafCertificates):
+//   RECORDER_PORT        port to listen on (default 8000, like recorder.conf)
+//   RECORDER_HAR         file to record to (default target/recorder/recording-<start>.har)
+//   RECORDER_BODY_KB     bytes of each textual response body recorded (default 64)
+//   RECORDER_BUFFER_MB   exchanges held for the HAR writer before response bodies are left out (default 32)
+public final class CaptureProxy implements AutoCloseable {
+
+    private static final Method SESSION_REUSED = sessionReused();
+
+    private final EventLoopGroup group;
+    private final Channel channel;
+    private final Class<? extends Channel> socketChannel;
+    private final LeafCertificates certificates;
+    private final SslContext upstreamTls;
+    private final HarWriter har;
+    private final int bodyLimit;
+
+    private final LongAdder connections = new LongAdder();
+    private final LongAdder tunnels = new LongAdder();
+    private final AtomicInteger open = new AtomicInteger();
+    private final AtomicInteger maxOpen = new AtomicInteger();
+    private final LongAdder clientHandshakes = new LongAdder();
+    private final LongAdder clientResumed = new LongAdder();
+    private final LongAdder upstreamHandshakes = new LongAdder();
+    private final LongAdder upstreamResumed = new LongAdder();
+
+    public static CaptureProxy fromSystemProperties() throws IOException {
+        return start(Integer.getInteger("RECORDER_PORT", 8000),
+                LeafCertificates.fromSystemProperties(),
+                Path.of(System.getProperty("RECORDER_HAR", "target/recorder/recording-" + System.currentTimeMillis() + ".har")),
+                Integer.getInteger("RECORDER_BODY_KB", 64) * 1024,
+                Long.getLong("RECORDER_BUFFER_MB", 32) * 1024 * 1024);
+    }
+
+    public static CaptureProxy start(int port, LeafCertificates certificates, Path har, int bodyLimit, long bufferBytes) throws IOException {
+        return new CaptureProxy(port, certificates, new HarWriter(har, bufferBytes), bodyLimit);
+    }
+
+    private CaptureProxy(int port, LeafCertificates certificates, HarWriter har, int bodyLimit) throws SSLException {
+        this.certificates = certificates;
+        this.har = har;
+        this.bodyLimit = bodyLimit;
+        // Upstream certificates aren't checked, as in the recorder. One context for every host, so its session cache
+        // lets all the proxy's connections to a host resume the same session.
+        this.upstreamTls = SslContextBuilder.forClient()
+                .sslProvider(OpenSsl.isAvailable() ? SslProvider.OPENSSL : SslProvider.JDK)
+                .trustManager(InsecureTrustManagerFactory.INSTANCE)
+                .build();
+        LeafCertificates.enableResumption(upstreamTls);
+
+        boolean epoll = Epoll.isAvailable();
+        DefaultThreadFactory threadFactory = new DefaultThreadFactory("capture-proxy", true);
+        group = epoll ? new EpollEventLoopGroup(0, threadFactory) : new NioEventLoopGroup(0, threadFactory);
+        Class<? extends ServerChannel> serverChannel = epoll ? EpollServerSocketChannel.class : NioServerSocketChannel.class;
+        socketChannel = epoll ? EpollSocketChannel.class : NioSocketChannel.class;
+        try {
+            channel = new ServerBootstrap()
+                    .group(group)
+                    .channel(serverChannel)
+                    .option(ChannelOption.SO_BACKLOG, 4096)
+                    .option(ChannelOption.SO_REUSEADDR, true)
+                    .childOption(ChannelOption.TCP_NODELAY, true)
+                    .childHandler(new ChannelInitializer<SocketChannel>() {
+                        @Override
+                        protected void initChannel(SocketChannel ch) {
+                            ch.pipeline()
+                                    .addLast(ProxyHandler.CODEC, new HttpServerCodec())
+                                    .addLast(new ProxyHandler(CaptureProxy.this));
+                        }
+                    })
+                    .bind(port)
+                    .sync()
+                    .channel();
+        } catch (InterruptedException e) {
+            group.shutdownGracefully();
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while starting the proxy", e);
+        } catch (RuntimeException e) {
+            group.shutdownGracefully();
+            throw e;
+        }
+    }
+
+    public int port() {
+        return ((InetSocketAddress) channel.localAddress()).getPort();
+    }
+
+    Class<? extends Channel> socketChannel() {
+        return socketChannel;
+    }
+
+    LeafCertificates certificates() {
+        return certificates;
+    }
+
+    SslContext upstreamTls() {
+        return upstreamTls;
+    }
+
+    int bodyLimit() {
+        return bodyLimit;
+    }
+
+    void recorded(Exchange exchange) {
+        har.submit(exchange);
+    }
+
+    void opened(boolean tunnel) {
+        if (tunnel) {
+            tunnels.increment();
+            return;
+        }
+        connections.increment();
+        int now = open.incrementAndGet();
+        int max;
+        while (now > (max = maxOpen.get()) && !maxOpen.compareAndSet(max, now)) {
+            // Raced with another event loop, try again
+        }
+    }
+
+    void closed() {
+        open.decrementAndGet();
+    }
+
+    void handshaken(boolean upstream, SSLEngine engine, long connectedMillis) {
+        boolean resumed = resumed(engine, connectedMillis);
+        (upstream ? upstreamHandshakes : clientHandshakes).increment();
+        if (resumed) {
+            (upstream ? upstreamResumed : clientResumed).increment();
+        }
+    }
+
+    // Netty only tells whether an OpenSSL engine resumed its session from a package-private method; for other
+    // engines, a session created before the connection was made is a resumed one
+    private static boolean resumed(SSLEngine engine, long connectedMillis) {
+        if (SESSION_REUSED != null && SESSION_REUSED.getDeclaringClass().isInstance(engine)) {
+            try {
+                return (Boolean) SESSION_REUSED.invoke(engine);
+            } catch (ReflectiveOperationException e) {
+                // Fall back to the creation time
+            }
+        }
+        return engine.getSession().getCreationTime() < connectedMillis;
+    }
+
+    private static Method sessionReused() {
+        try {
+            Method method = ReferenceCountedOpenSslEngine.class.getDeclaredMethod("isSessionReused");
+            method.setAccessible(true);
+            return method;
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            return null;
+        }
+    }
+
+    public String report() {
+        return String.format("Capture proxy: %d connections, at most %d open at once, %d HTTPS tunnels%n"
+                        + "TLS handshakes: %d with clients, %d of them resumed; %d with hosts, %d of them resumed%n%s%n%s",
+                connections.sum(), maxOpen.get(), tunnels.sum(), clientHandshakes.sum(), clientResumed.sum(),
+                upstreamHandshakes.sum(), upstreamResumed.sum(), certificates.report(), har.report());
+    }
+
+    // Stops accepting connections, closes those open and ends the HAR
+    @Override
+    public void close() throws IOException {
+        channel.close().syncUninterruptibly();
+        group.shutdownGracefully().syncUninterruptibly();
+        har.close();
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        CaptureProxy proxy = fromSystemProperties();
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            try {
+                proxy.close();
+            } catch (IOException e) {
+                System.err.printf("Failed to end the recording: %s%n", e);
+            }
+            System.out.println(proxy.report());
+        }, "capture-proxy-shutdown"));
+        System.out.printf("Recording through the proxy on port %d, Ctrl-C to stop%n", proxy.port());
+        proxy.channel.closeFuture().sync();
+    }
+}
@@ -0,0 +1,132 @@
+package videogamedb.recorder;
+
+import com.sun.management.GarbageCollectionNotificationInfo;
+import com.sun.management.GcInfo;
+import io.gatling.javaapi.core.*;
+import io.gatling.javaapi.http.*;
+import videogamedb.stub.Latency;
+import videogamedb.stub.VideoGameDbStub;
+
+import javax.management.NotificationEmitter;
+import javax.management.openmbean.CompositeData;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.lang.management.MemoryUsage;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static io.gatling.javaapi.core.CoreDsl.*;
+import static io.gatling.javaapi.http.HttpDsl.*;
+
+// Benchmark of CaptureProxy: CAPTURE_USERS users, each with its own connection, read games from the stub over HTTPS
+// through the proxy, as a recorded app would, and close their connection every CAPTURE_RECONNECT_EVERY requests so
+// that the TLS sessions on both sides of the proxy get resumed. Run it again with CAPTURE_DIRECT=true for the same
+// load without the proxy:
+//   mvn gatling:test -Dgatling.simulationClass=videogamedb.recorder.CaptureProxySimulation -DCAPTURE_USERS=500
+// Prints the proxy's report, with the TLS sessions resumed on both sides, and the most heap a GC left in use.
+//
+// Runtime parameters (see also CaptureProxy and LeafCertificates):
+//   CAPTURE_USERS             concurrent users, so connections (default 300)
+//   CAPTURE_SECONDS           duration of the run (default 60)
+//   CAPTURE_RECONNECT_EVERY   requests per connection (default 20)
+//   CAPTURE_DIRECT            true to go to the stub without the proxy (default false)
+public class CaptureProxySimulation extends Simulation {
+
+    private static final int USERS = Integer.getInteger("CAPTURE_USERS", 300);
+    private static final Duration DURATION = Duration.ofSeconds(Long.getLong("CAPTURE_SECONDS", 60));
+    private static final int RECONNECT_EVERY = Integer.getInteger("CAPTURE_RECONNECT_EVERY", 20);
+    private static final boolean DIRECT = Boolean.getBoolean("CAPTURE_DIRECT");
+
+    private static final LeafCertificates CERTIFICATES = certificates();
+    private static final VideoGameDbStub STUB = VideoGameDbStub.start(0, Latency.NONE, 0, 3600, CERTIFICATES.serverContext());
+    private static final CaptureProxy PROXY = DIRECT ? null : proxy();
+
+    private HttpProtocolBuilder httpProtocol = proxied(http
+            .baseUrl("https://localhost:" + STUB.port() + "/api")
+            .acceptHeader("application/json")
+            .disableWarmUp()); // Its request to gatling.io would go through the proxy too
+
+    private static ChainBuilder getSpecificGame =
+            exec(session -> session.set("gameId", ThreadLocalRandom.current().nextInt(1, 11)))
+                    .exec(http("Get specific video game")
+                            .get("/videogame/#{gameId}"));
+
+    private static ScenarioBuilder scn = scenario("Capture proxy")
+            .during(DURATION).on(
+                    repeat(RECONNECT_EVERY - 1).on(getSpecificGame)
+                            .exec(http("Get all video games")
+                                    .get("/videogame")
+                                    .header("Connection", "close")) // The next request reconnects, and resumes its TLS session
+            );
+
+    {
+        setUp(scn.injectOpen(rampUsers(USERS).during(Duration.ofSeconds(5)))).protocols(httpProtocol);
+    }
+
+    private static final AtomicLong MAX_LIVE_HEAP = new AtomicLong();
+    private static long heapBefore;
+
+    @Override
+    public void before() {
+        System.out.printf("Using %d users through %s, a new connection every %d requests%n", USERS,
+                DIRECT ? "no proxy" : "the capture proxy on port " + PROXY.port(), RECONNECT_EVERY);
+        heapBefore = heapAfterGc();
+        for (GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans()) {
+            ((NotificationEmitter) collector).addNotificationListener((notification, handback) -> {
+                if (GarbageCollectionNotificationInfo.GARBAGE_COLLECTION_NOTIFICATION.equals(notification.getType())) {
+                    GcInfo gc = GarbageCollectionNotificationInfo.from((CompositeData) notification.getUserData()).getGcInfo();
+                    long live = gc.getMemoryUsageAfterGc().values().stream().mapToLong(MemoryUsage::getUsed).sum();
+                    MAX_LIVE_HEAP.accumulateAndGet(live, Math::max);
+                }
+            }, null, null);
+        }
+    }
+
+    @Override
+    public void after() {
+        if (PROXY != null) {
+            try {
+                PROXY.close();
+            } catch (IOException e) {
+                System.err.printf("Failed to end the recording: %s%n", e);
+            }
+            System.out.println(PROXY.report());
+        }
+        STUB.close();
+        long heapAfter = heapAfterGc(); // Once the connections Gatling keeps open are closed too
+        System.out.printf("Heap after GC: %d MB before the run, at most %d MB during it, %d MB at its end%n",
+                heapBefore >> 20, MAX_LIVE_HEAP.get() >> 20, heapAfter >> 20);
+    }
+
+    private static HttpProtocolBuilder proxied(HttpProtocolBuilder protocol) {
+        return DIRECT ? protocol : protocol.proxy(Proxy("127.0.0.1", PROXY.port()));
+    }
+
+    private static long heapAfterGc() {
+        MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+        memory.gc();
+        return memory.getHeapMemoryUsage().getUsed();
+    }
+
+    private static LeafCertificates certificates() {
+        try {
+            return LeafCertificates.fromSystemProperties();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static CaptureProxy proxy() {
+        try {
+            return CaptureProxy.start(0, CERTIFICATES, Path.of(System.getProperty("RECORDER_HAR", "target/recorder/capture-proxy-simulation.har")),
+                    Integer.getInteger("RECORDER_BODY_KB", 64) * 1024, Long.getLong("RECORDER_BUFFER_MB", 32) * 1024 * 1024);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
@@ -0,0 +1,137 @@
+package videogamedb.recorder;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.handler.codec.http.HttpHeaders;
+import io.netty.handler.codec.http.HttpRequest;
+import io.netty.handler.codec.http.HttpResponse;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+// One request and its response as CaptureProxy records them for the HAR: the headers, the times, the whole request
+// body, which a simulation converted from the recording sends again, and the first bytes of textual response bodies.
+// Other response bodies, images, fonts and the like, are only counted: they make most of the bytes of a recording and
+// neither HarConverter nor a simulation uses them.
+final class Exchange {
+
+    private static final Pattern TEXTUAL = Pattern.compile("(?i).*(json|text|xml|javascript|x-www-form-urlencoded|graphql).*");
+    private static final int OVERHEAD = 256;
+
+    final long startedMillis;
+    final String method;
+    final String url;
+    final String requestVersion;
+    final List<Map.Entry<String, String>> requestHeaders;
+    final Body requestBody;
+    final boolean requestTextual;
+    long requestSentMillis;
+
+    int status;
+    String statusText = "";
+    String responseVersion = "";
+    List<Map.Entry<String, String>> responseHeaders = List.of();
+    Body responseBody = new Body(0);
+    long firstByteMillis;
+    long endMillis;
+
+    private final int bodyLimit;
+
+    Exchange(HttpRequest request, String url, int bodyLimit) {
+        this.startedMillis = System.currentTimeMillis();
+        this.method = request.method().name();
+        this.url = url;
+        this.requestVersion = request.protocolVersion().text();
+        this.requestHeaders = request.headers().entries();
+        this.bodyLimit = bodyLimit;
+        this.requestTextual = textual(request.headers());
+        this.requestBody = new Body(Integer.MAX_VALUE);
+        this.requestSentMillis = startedMillis;
+    }
+
+    void response(HttpResponse response) {
+        firstByteMillis = System.currentTimeMillis();
+        status = response.status().code();
+        statusText = response.status().reasonPhrase();
+        responseVersion = response.protocolVersion().text();
+        responseHeaders = response.headers().entries();
+        responseBody = new Body(textual(response.headers()) ? bodyLimit : 0);
+    }
+
+    // Roughly the heap it holds until HarWriter has written it
+    long size() {
+        long size = OVERHEAD + url.length() + requestBody.length() + responseBody.length();
+        for (Map.Entry<String, String> header : requestHeaders) {
+            size += 32 + header.getKey().length() + header.getValue().length();
+        }
+        for (Map.Entry<String, String> header : responseHeaders) {
+            size += 32 + header.getKey().length() + header.getValue().length();
+        }
+        return size;
+    }
+
+    // Only the response's: the request body is needed to send the request again
+    void dropResponseBody() {
+        responseBody.drop();
+    }
+
+    private static boolean textual(HttpHeaders headers) {
+        String contentType = headers.get("Content-Type");
+        return contentType == null || TEXTUAL.matcher(contentType).matches();
+    }
+
+    // The first bytes of a body, up to the limit, and the size of the whole body
+    static final class Body {
+        private final int limit;
+        private byte[] bytes = new byte[0];
+        private int length;
+        private long total;
+
+        Body(int limit) {
+            this.limit = limit;
+        }
+
+        void append(ByteBuf content) {
+            int readable = content.readableBytes();
+            total += readable;
+            int kept = Math.min(readable, limit - length);
+            if (kept <= 0) {
+                return;
+            }
+            if (length + kept > bytes.length) {
+                bytes = Arrays.copyOf(bytes, Math.min(limit, Math.max(length + kept, bytes.length * 2)));
+            }
+            content.getBytes(content.readerIndex(), bytes, length, kept);
+            length += kept;
+        }
+
+        int length() {
+            return length;
+        }
+
+        long total() {
+            return total;
+        }
+
+        // Whether bytes of the body were left out, past the limit or dropped
+        boolean truncated() {
+            return total > length;
+        }
+
+        String text() {
+            return new String(bytes, 0, length, StandardCharsets.UTF_8);
+        }
+
+        String base64() {
+            return Base64.getEncoder().encodeToString(Arrays.copyOf(bytes, length));
+        }
+
+        void drop() {
+            bytes = new byte[0];
+            length = 0;
+        }
+    }
+}
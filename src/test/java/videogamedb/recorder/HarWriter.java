@@ -0,0 +1,246 @@
+package videogamedb.recorder;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+// Writes the exchanges CaptureProxy records as a HAR file, on its own thread, as they complete: nothing of a recording
+// stays in memory once it's written, however long it runs, and the event loops never wait for the disk. The file is a
+// valid HAR once close() ends it, and can be converted with HarConverter.
+// The exchanges waiting to be written hold at most maxBufferedBytes of response bodies: when the disk can't keep up,
+// further exchanges are written without them, and counted, rather than the memory growing or the proxied traffic
+// slowing down. Request bodies are always written whole, non-textual ones base64 encoded, since a simulation converted
+// from the recording sends them again. A response body that was cut short or left out has a comment saying how much of
+// it was recorded.
+// When a write fails, e.g. with the disk full, the recording stops there: later exchanges are dropped and counted, and
+// the file is left as it is, cut short, rather than ended as if it were complete.
+final class HarWriter implements AutoCloseable {
+
+    private static final JsonFactory FACTORY = new JsonFactory();
+    private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(5);
+    private static final long FLUSH_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    private final Path file;
+    private final long maxBufferedBytes;
+    private final Queue<Exchange> queue = new ConcurrentLinkedQueue<>();
+    private final AtomicLong buffered = new AtomicLong();
+    private final Thread writer;
+    private volatile boolean running = true;
+    private volatile IOException failure;
+    private final JsonGenerator json;
+    private final OutputStream out;
+
+    private final LongAdder written = new LongAdder();
+    private final LongAdder bodiesDropped = new LongAdder();
+    private final LongAdder bodiesTruncated = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
+    private final AtomicLong maxBuffered = new AtomicLong();
+
+    HarWriter(Path file, long maxBufferedBytes) throws IOException {
+        this.file = file;
+        this.maxBufferedBytes = maxBufferedBytes;
+        Path parent = file.toAbsolutePath().getParent();
+        Files.createDirectories(parent);
+        out = Files.newOutputStream(file);
+        json = FACTORY.createGenerator(out, JsonEncoding.UTF8);
+        json.writeStartObject();
+        json.writeObjectFieldStart("log");
+        json.writeStringField("version", "1.2");
+        json.writeObjectFieldStart("creator");
+        json.writeStringField("name", "videogamedb CaptureProxy");
+        json.writeStringField("version", "1.0");
+        json.writeEndObject();
+        json.writeArrayFieldStart("entries");
+        writer = new Thread(this::drain, "har-writer");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    // Called on the event loops when an exchange is complete
+    void submit(Exchange exchange) {
+        if (failure != null) {
+            dropped.increment();
+            return;
+        }
+        long size = exchange.size();
+        long now = buffered.addAndGet(size);
+        if (now > maxBufferedBytes) {
+            buffered.addAndGet(-size);
+            exchange.dropResponseBody();
+            bodiesDropped.increment();
+            size = exchange.size();
+            now = buffered.addAndGet(size);
+        }
+        long max;
+        while (now > (max = maxBuffered.get()) && !maxBuffered.compareAndSet(max, now)) {
+            // Raced with another event loop, try again
+        }
+        queue.add(exchange);
+    }
+
+    // Keeps taking exchanges after a failure too, so those submitted while it happened are dropped and counted
+    private void drain() {
+        long lastFlush = System.nanoTime();
+        while (running || !queue.isEmpty()) {
+            Exchange exchange = queue.poll();
+            try {
+                if (exchange == null) {
+                    if (failure == null && System.nanoTime() - lastFlush > FLUSH_NANOS) {
+                        json.flush();
+                        lastFlush = System.nanoTime();
+                    }
+                    LockSupport.parkNanos(IDLE_PARK_NANOS);
+                    continue;
+                }
+                buffered.addAndGet(-exchange.size());
+                if (failure != null) {
+                    dropped.increment();
+                    continue;
+                }
+                write(exchange);
+                written.increment();
+            } catch (IOException e) {
+                failure = e;
+                if (exchange != null) {
+                    dropped.increment();
+                }
+                System.err.printf("Failed to write the recording %s, the exchanges from now on are dropped: %s%n", file, e);
+            }
+        }
+    }
+
+    private void write(Exchange exchange) throws IOException {
+        json.writeStartObject();
+        json.writeStringField("startedDateTime", Instant.ofEpochMilli(exchange.startedMillis).toString());
+        json.writeNumberField("time", exchange.endMillis - exchange.startedMillis);
+
+        json.writeObjectFieldStart("request");
+        json.writeStringField("method", exchange.method);
+        json.writeStringField("url", exchange.url);
+        json.writeStringField("httpVersion", exchange.requestVersion);
+        headers(exchange.requestHeaders);
+        json.writeArrayFieldStart("queryString");
+        json.writeEndArray();
+        json.writeArrayFieldStart("cookies");
+        json.writeEndArray();
+        if (exchange.requestBody.total() > 0) {
+            json.writeObjectFieldStart("postData");
+            json.writeStringField("mimeType", header(exchange.requestHeaders, "Content-Type", ""));
+            if (exchange.requestTextual) {
+                json.writeStringField("text", exchange.requestBody.text());
+            } else {
+                json.writeStringField("text", exchange.requestBody.base64());
+                json.writeStringField("encoding", "base64");
+            }
+            json.writeEndObject();
+        }
+        json.writeNumberField("headersSize", -1);
+        json.writeNumberField("bodySize", exchange.requestBody.total());
+        json.writeEndObject();
+
+        json.writeObjectFieldStart("response");
+        json.writeNumberField("status", exchange.status);
+        json.writeStringField("statusText", exchange.statusText);
+        json.writeStringField("httpVersion", exchange.responseVersion);
+        headers(exchange.responseHeaders);
+        json.writeArrayFieldStart("cookies");
+        json.writeEndArray();
+        json.writeObjectFieldStart("content");
+        json.writeNumberField("size", exchange.responseBody.total());
+        json.writeStringField("mimeType", header(exchange.responseHeaders, "Content-Type", ""));
+        if (exchange.responseBody.length() > 0 && header(exchange.responseHeaders, "Content-Encoding", null) == null) {
+            json.writeStringField("text", exchange.responseBody.text());
+        }
+        if (exchange.responseBody.truncated() && exchange.responseBody.length() > 0) {
+            bodiesTruncated.increment();
+            json.writeStringField("comment", String.format("Truncated: %d of %d bytes recorded",
+                    exchange.responseBody.length(), exchange.responseBody.total()));
+        } else if (exchange.responseBody.truncated()) {
+            json.writeStringField("comment", String.format("Not recorded: %d bytes", exchange.responseBody.total()));
+        }
+        json.writeEndObject();
+        json.writeStringField("redirectURL", header(exchange.responseHeaders, "Location", ""));
+        json.writeNumberField("headersSize", -1);
+        json.writeNumberField("bodySize", exchange.responseBody.total());
+        json.writeEndObject();
+
+        json.writeObjectFieldStart("cache");
+        json.writeEndObject();
+        json.writeObjectFieldStart("timings");
+        json.writeNumberField("send", Math.max(0, exchange.requestSentMillis - exchange.startedMillis));
+        json.writeNumberField("wait", Math.max(0, exchange.firstByteMillis - exchange.requestSentMillis));
+        json.writeNumberField("receive", Math.max(0, exchange.endMillis - exchange.firstByteMillis));
+        json.writeEndObject();
+        json.writeEndObject();
+    }
+
+    private void headers(Iterable<Map.Entry<String, String>> headers) throws IOException {
+        json.writeArrayFieldStart("headers");
+        for (Map.Entry<String, String> header : headers) {
+            json.writeStartObject();
+            json.writeStringField("name", header.getKey());
+            json.writeStringField("value", header.getValue());
+            json.writeEndObject();
+        }
+        json.writeEndArray();
+    }
+
+    private static String header(Iterable<Map.Entry<String, String>> headers, String name, String otherwise) {
+        for (Map.Entry<String, String> header : headers) {
+            if (header.getKey().equalsIgnoreCase(name)) {
+                return header.getValue();
+            }
+        }
+        return otherwise;
+    }
+
+    // Writes what's still queued and ends the HAR, unless writing it failed
+    @Override
+    public synchronized void close() throws IOException {
+        if (!running) {
+            return;
+        }
+        running = false;
+        LockSupport.unpark(writer);
+        try {
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (failure != null) {
+            out.close(); // Not json.close(), which would end the objects it has open
+            throw new IOException("The recording " + file + " is incomplete, writing it failed", failure);
+        }
+        json.writeEndArray();
+        json.writeEndObject();
+        json.writeEndObject();
+        json.close();
+        out.close();
+    }
+
+    String report() {
+        long bytes;
+        try {
+            bytes = Files.size(file);
+        } catch (IOException e) {
+            bytes = -1;
+        }
+        return String.format("Recording %s: %d exchanges, %d KB written, %d response bodies truncated, %d written without their response body, "
+                        + "at most %d KB waiting for the disk%s",
+                file, written.sum(), bytes / 1024, bodiesTruncated.sum(), bodiesDropped.sum(), maxBuffered.get() / 1024,
+                failure == null ? "" : String.format("; writing failed (%s), %d exchanges dropped", failure.getMessage(), dropped.sum()));
+    }
+}
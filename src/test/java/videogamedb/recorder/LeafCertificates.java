@@ -0,0 +1,331 @@
+package videogamedb.recorder;
+
+import io.gatling.recorder.internal.bouncycastle.asn1.pkcs.PrivateKeyInfo;
+import io.gatling.recorder.internal.bouncycastle.asn1.x509.BasicConstraints;
+import io.gatling.recorder.internal.bouncycastle.asn1.x509.Extension;
+import io.gatling.recorder.internal.bouncycastle.asn1.x509.GeneralName;
+import io.gatling.recorder.internal.bouncycastle.asn1.x509.GeneralNames;
+import io.gatling.recorder.internal.bouncycastle.cert.jcajce.JcaX509CertificateConverter;
+import io.gatling.recorder.internal.bouncycastle.cert.jcajce.JcaX509v3CertificateBuilder;
+import io.gatling.recorder.internal.bouncycastle.openssl.PEMKeyPair;
+import io.gatling.recorder.internal.bouncycastle.openssl.PEMParser;
+import io.gatling.recorder.internal.bouncycastle.openssl.jcajce.JcaPEMKeyConverter;
+import io.gatling.recorder.internal.bouncycastle.operator.jcajce.JcaContentSignerBuilder;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.handler.ssl.OpenSsl;
+import io.netty.handler.ssl.OpenSslCachingX509KeyManagerFactory;
+import io.netty.handler.ssl.OpenSslSessionContext;
+import io.netty.handler.ssl.OpenSslSessionTicketKey;
+import io.netty.handler.ssl.SslContext;
+import io.netty.handler.ssl.SslContextBuilder;
+import io.netty.handler.ssl.SslHandler;
+import io.netty.handler.ssl.SslProvider;
+import io.netty.handler.ssl.util.SimpleKeyManagerFactory;
+
+import javax.net.ssl.ExtendedSSLSession;
+import javax.net.ssl.KeyManager;
+import javax.net.ssl.KeyManagerFactory;
+import javax.net.ssl.ManagerFactoryParameters;
+import javax.net.ssl.SNIHostName;
+import javax.net.ssl.SNIServerName;
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.SSLException;
+import javax.net.ssl.X509ExtendedKeyManager;
+import javax.security.auth.x500.X500Principal;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.math.BigInteger;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.GeneralSecurityException;
+import java.security.KeyFactory;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.KeyStore;
+import java.security.Principal;
+import java.security.PrivateKey;
+import java.security.PublicKey;
+import java.security.SecureRandom;
+import java.security.cert.CertificateFactory;
+import java.security.cert.X509Certificate;
+import java.security.interfaces.RSAPrivateCrtKey;
+import java.security.spec.PKCS8EncodedKeySpec;
+import java.security.spec.RSAPublicKeySpec;
+import java.util.Base64;
+import java.util.Date;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.regex.Pattern;
+
+// The certificates CaptureProxy presents for each host it intercepts, signed by the recorder's CA (Certificates/gatlingCA),
+// which the browser or app being recorded trusts. Gatling's recorder generates a new RSA key, and builds a new TLS
+// context, for every host, which takes most of the first handshake with it. Here:
+//   - all the hosts share one key, so a new host only costs a signature, and the key and certificates are kept in
+//     RECORDER_CERT_CACHE, so the next recording starts with them. A certificate that expired or was signed by
+//     another CA is issued again.
+//   - one server context, OpenSSL (BoringSSL) when available, serves every host: its key manager picks the host's
+//     certificate during the handshake, and OpenSSL's copy of it is cached after the first one
+//   - that context has a session cache and session tickets, so clients that reconnect resume their TLS session
+//     instead of doing a full handshake
+//
+// Runtime parameters:
+//   RECORDER_CA_CERT           the CA certificate, PEM (default Certificates/gatlingCA.cert.pem)
+//   RECORDER_CA_KEY            its private key, PEM (default Certificates/gatlingCA.key.pem)
+//   RECORDER_CERT_CACHE        folder the key and certificates are kept in (default target/recorder-certs)
+//   RECORDER_TLS_SESSIONS      TLS sessions cached (default 10000)
+public final class LeafCertificates {
+
+    private static final Pattern IP_ADDRESS = Pattern.compile("[0-9.]+|.*:.*");
+    private static final long VALIDITY_MILLIS = TimeUnit.DAYS.toMillis(365);
+    private static final long SESSION_TIMEOUT_SECONDS = TimeUnit.HOURS.toSeconds(1);
+    private static final String KEY_FILE = "leaf.key.pem";
+    private static final String DEFAULT_HOST = "localhost";
+
+    private final X509Certificate ca;
+    private final PrivateKey caKey;
+    private final KeyPair leafKey;
+    private final Path cache;
+    private final SslProvider provider = OpenSsl.isAvailable() ? SslProvider.OPENSSL : SslProvider.JDK;
+    private final Map<String, X509Certificate[]> chains = new ConcurrentHashMap<>();
+    private final SslContext context;
+
+    private final LongAdder issued = new LongAdder();
+    private final LongAdder loaded = new LongAdder();
+
+    public static LeafCertificates fromSystemProperties() throws IOException {
+        return new LeafCertificates(
+                Path.of(System.getProperty("RECORDER_CA_CERT", "Certificates/gatlingCA.cert.pem")),
+                Path.of(System.getProperty("RECORDER_CA_KEY", "Certificates/gatlingCA.key.pem")),
+                Path.of(System.getProperty("RECORDER_CERT_CACHE", "target/recorder-certs")),
+                Long.getLong("RECORDER_TLS_SESSIONS", 10_000));
+    }
+
+    public LeafCertificates(Path caCertificate, Path caPrivateKey, Path cache, long sessionCacheSize) throws IOException {
+        this.ca = readCertificate(caCertificate);
+        this.caKey = readPrivateKey(caPrivateKey);
+        this.cache = cache;
+        Files.createDirectories(cache);
+        this.leafKey = leafKey(cache.resolve(KEY_FILE));
+
+        KeyManagerFactory keyManagers = new SimpleKeyManagerFactory() {
+            @Override
+            protected void engineInit(KeyStore keyStore, char[] password) {
+            }
+
+            @Override
+            protected void engineInit(ManagerFactoryParameters parameters) {
+            }
+
+            @Override
+            protected KeyManager[] engineGetKeyManagers() {
+                return new KeyManager[]{new HostKeyManager()};
+            }
+        };
+        this.context = SslContextBuilder.forServer(provider == SslProvider.OPENSSL ? new OpenSslCachingX509KeyManagerFactory(keyManagers) : keyManagers)
+                .sslProvider(provider)
+                .sessionCacheSize(sessionCacheSize)
+                .sessionTimeout(SESSION_TIMEOUT_SECONDS)
+                .build();
+        enableResumption(context);
+    }
+
+    // TLS as the host, for a client that asked CaptureProxy to connect to it
+    public SslHandler newHandler(ByteBufAllocator alloc, String host, int port) {
+        return context.newHandler(alloc, host.toLowerCase(Locale.ROOT), port);
+    }
+
+    // The context for a stub or test server that should be trusted like the recorded hosts: it presents the
+    // certificate of the name the client asked for with SNI, else of localhost
+    public SslContext serverContext() {
+        return context;
+    }
+
+    // The certificate chain presented for the host, from memory, else from the cache folder, else newly issued
+    public X509Certificate[] chain(String host) {
+        return chains.computeIfAbsent(host.toLowerCase(Locale.ROOT), h -> new X509Certificate[]{certificate(h), ca});
+    }
+
+    // Netty turns TLS session tickets off in OpenSSL contexts until they get a key, and TLS 1.3 only resumes sessions
+    // with tickets: a random key, for the life of the JVM, shared by all the contexts. Client contexts also only cache
+    // their sessions when asked to, or with -Dio.netty.handler.ssl.openssl.sessionCacheClient=true.
+    static void enableResumption(SslContext context) {
+        if (context.sessionContext() instanceof OpenSslSessionContext) {
+            OpenSslSessionContext sessions = (OpenSslSessionContext) context.sessionContext();
+            sessions.setTicketKeys(TicketKey.KEY);
+            sessions.setSessionCacheEnabled(true);
+        }
+    }
+
+    private static final class TicketKey {
+        private static final OpenSslSessionTicketKey KEY = new OpenSslSessionTicketKey(random(OpenSslSessionTicketKey.NAME_SIZE),
+                random(OpenSslSessionTicketKey.HMAC_KEY_SIZE), random(OpenSslSessionTicketKey.AES_KEY_SIZE));
+
+        private static byte[] random(int size) {
+            byte[] bytes = new byte[size];
+            new SecureRandom().nextBytes(bytes);
+            return bytes;
+        }
+    }
+
+    // Picks the certificate of the host the engine was made for, or the client asked for. The alias is the host.
+    private final class HostKeyManager extends X509ExtendedKeyManager {
+
+        @Override
+        public String chooseEngineServerAlias(String keyType, Principal[] issuers, SSLEngine engine) {
+            if (!"RSA".equals(keyType)) {
+                return null;
+            }
+            String host = engine.getPeerHost();
+            if (host == null && engine.getHandshakeSession() instanceof ExtendedSSLSession) {
+                for (SNIServerName name : ((ExtendedSSLSession) engine.getHandshakeSession()).getRequestedServerNames()) {
+                    if (name instanceof SNIHostName) {
+                        host = ((SNIHostName) name).getAsciiName();
+                    }
+                }
+            }
+            host = host == null ? DEFAULT_HOST : host.toLowerCase(Locale.ROOT);
+            chain(host);
+            return host;
+        }
+
+        @Override
+        public X509Certificate[] getCertificateChain(String alias) {
+            return chain(alias);
+        }
+
+        @Override
+        public PrivateKey getPrivateKey(String alias) {
+            return leafKey.getPrivate();
+        }
+
+        @Override
+        public String chooseServerAlias(String keyType, Principal[] issuers, Socket socket) {
+            return null;
+        }
+
+        @Override
+        public String[] getServerAliases(String keyType, Principal[] issuers) {
+            return chains.keySet().toArray(new String[0]);
+        }
+
+        @Override
+        public String chooseClientAlias(String[] keyTypes, Principal[] issuers, Socket socket) {
+            return null;
+        }
+
+        @Override
+        public String[] getClientAliases(String keyType, Principal[] issuers) {
+            return null;
+        }
+    }
+
+    private X509Certificate certificate(String host) {
+        Path file = cache.resolve(host.replaceAll("[^A-Za-z0-9.-]", "_") + ".crt.pem");
+        if (Files.exists(file)) {
+            try {
+                X509Certificate certificate = readCertificate(file);
+                certificate.checkValidity(new Date(System.currentTimeMillis() + TimeUnit.DAYS.toMillis(1)));
+                certificate.verify(ca.getPublicKey());
+                if (certificate.getPublicKey().equals(leafKey.getPublic())) {
+                    loaded.increment();
+                    return certificate;
+                }
+            } catch (IOException | GeneralSecurityException e) {
+                // Expired, signed by another CA or unreadable: issue it again
+            }
+        }
+        X509Certificate certificate = issue(host);
+        try {
+            writePem(file, "CERTIFICATE", certificate.getEncoded());
+        } catch (IOException | GeneralSecurityException e) {
+            throw new IllegalStateException("Failed to store the certificate of " + host + " in " + cache, e);
+        }
+        issued.increment();
+        return certificate;
+    }
+
+    private X509Certificate issue(String host) {
+        try {
+            long now = System.currentTimeMillis();
+            JcaX509v3CertificateBuilder builder = new JcaX509v3CertificateBuilder(ca,
+                    BigInteger.valueOf(now).shiftLeft(16).add(BigInteger.valueOf(ThreadLocalRandom.current().nextInt(1 << 16))),
+                    new Date(now - TimeUnit.DAYS.toMillis(1)), new Date(now + VALIDITY_MILLIS),
+                    new X500Principal("CN=" + host), leafKey.getPublic());
+            builder.addExtension(Extension.subjectAlternativeName, false, new GeneralNames(
+                    new GeneralName(IP_ADDRESS.matcher(host).matches() ? GeneralName.iPAddress : GeneralName.dNSName, host)));
+            builder.addExtension(Extension.basicConstraints, true, new BasicConstraints(false));
+            return new JcaX509CertificateConverter().getCertificate(builder.build(new JcaContentSignerBuilder("SHA256withRSA").build(caKey)));
+        } catch (Exception e) {
+            throw new IllegalStateException("Failed to issue a certificate for " + host, e);
+        }
+    }
+
+    // The key every leaf certificate shares, generated the first time and kept in the cache folder
+    private static KeyPair leafKey(Path file) throws IOException {
+        try {
+            KeyFactory factory = KeyFactory.getInstance("RSA");
+            if (Files.exists(file)) {
+                RSAPrivateCrtKey key = (RSAPrivateCrtKey) factory.generatePrivate(new PKCS8EncodedKeySpec(readPem(file)));
+                PublicKey publicKey = factory.generatePublic(new RSAPublicKeySpec(key.getModulus(), key.getPublicExponent()));
+                return new KeyPair(publicKey, key);
+            }
+            KeyPairGenerator generator = KeyPairGenerator.getInstance("RSA");
+            generator.initialize(2048);
+            KeyPair keyPair = generator.generateKeyPair();
+            writePem(file, "PRIVATE KEY", keyPair.getPrivate().getEncoded());
+            return keyPair;
+        } catch (GeneralSecurityException e) {
+            throw new IOException("Invalid leaf key " + file + ", delete it to generate a new one", e);
+        }
+    }
+
+    private static X509Certificate readCertificate(Path file) throws IOException {
+        try (InputStream in = Files.newInputStream(file)) {
+            return (X509Certificate) CertificateFactory.getInstance("X.509").generateCertificate(in);
+        } catch (GeneralSecurityException e) {
+            throw new IOException("Invalid certificate " + file, e);
+        }
+    }
+
+    // The CA key, PKCS#1 as Gatling writes it or PKCS#8
+    private static PrivateKey readPrivateKey(Path file) throws IOException {
+        try (Reader reader = Files.newBufferedReader(file, StandardCharsets.US_ASCII); PEMParser parser = new PEMParser(reader)) {
+            Object pem = parser.readObject();
+            JcaPEMKeyConverter converter = new JcaPEMKeyConverter();
+            if (pem instanceof PEMKeyPair) {
+                return converter.getKeyPair((PEMKeyPair) pem).getPrivate();
+            }
+            if (pem instanceof PrivateKeyInfo) {
+                return converter.getPrivateKey((PrivateKeyInfo) pem);
+            }
+            throw new IOException("No private key in " + file);
+        }
+    }
+
+    private static byte[] readPem(Path file) throws IOException {
+        String pem = new String(Files.readAllBytes(file), StandardCharsets.US_ASCII);
+        return Base64.getMimeDecoder().decode(pem.replaceAll("-----[A-Z ]+-----", ""));
+    }
+
+    // Written to a temporary file and moved, so a recording stopped halfway never leaves half a file
+    private static void writePem(Path file, String type, byte[] der) throws IOException {
+        String pem = "-----BEGIN " + type + "-----\n" + Base64.getMimeEncoder(64, new byte[]{'\n'}).encodeToString(der)
+                + "\n-----END " + type + "-----\n";
+        Path temporary = Files.createTempFile(file.getParent(), file.getFileName().toString(), ".tmp");
+        Files.write(temporary, pem.getBytes(StandardCharsets.US_ASCII));
+        Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    public String report() {
+        return String.format("Leaf certificates: %d hosts, %d issued, %d reused from %s (%s)",
+                chains.size(), issued.sum(), loaded.sum(), cache, provider);
+    }
+}
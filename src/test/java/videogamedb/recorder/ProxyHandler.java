@@ -0,0 +1,315 @@
+package videogamedb.recorder;
+
+import io.netty.bootstrap.Bootstrap;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelFutureListener;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.channel.ChannelInitializer;
+import io.netty.channel.ChannelOption;
+import io.netty.handler.codec.http.DefaultFullHttpResponse;
+import io.netty.handler.codec.http.FullHttpResponse;
+import io.netty.handler.codec.http.HttpClientCodec;
+import io.netty.handler.codec.http.HttpContent;
+import io.netty.handler.codec.http.HttpHeaderNames;
+import io.netty.handler.codec.http.HttpHeaderValues;
+import io.netty.handler.codec.http.HttpMethod;
+import io.netty.handler.codec.http.HttpObject;
+import io.netty.handler.codec.http.HttpRequest;
+import io.netty.handler.codec.http.HttpResponse;
+import io.netty.handler.codec.http.HttpResponseStatus;
+import io.netty.handler.codec.http.HttpServerCodec;
+import io.netty.handler.codec.http.HttpVersion;
+import io.netty.handler.codec.http.LastHttpContent;
+import io.netty.handler.ssl.SslHandler;
+import io.netty.handler.ssl.SslHandshakeCompletionEvent;
+import io.netty.util.ReferenceCountUtil;
+
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+
+// One client connection of CaptureProxy, and its connection to the host it talks to. Both run on the same event loop,
+// so nothing here is shared between threads. A CONNECT turns the client connection into TLS with the host's leaf
+// certificate; the requests then go to that host over TLS. Plain requests go to the host of their absolute URI.
+// Requests and responses are passed on as the codecs decode them, each body chunk captured into its Exchange on the
+// way; an exchange goes to the HAR writer when its response ends.
+final class ProxyHandler extends ChannelInboundHandlerAdapter {
+
+    static final String CODEC = "codec";
+    private static final String TLS = "tls";
+
+    private final CaptureProxy proxy;
+    // Exchanges sent to the host, waiting for their responses, in order
+    private final ArrayDeque<Exchange> exchanges = new ArrayDeque<>();
+    // Messages decoded while the connection to the host is being made
+    private final List<Object> pending = new ArrayList<>();
+
+    private Channel client;
+    private long clientConnectedMillis;
+    private String tunnelHost;
+    private int tunnelPort;
+
+    private Channel upstream;
+    private String upstreamTarget;
+    private boolean upstreamConnected;
+    private Exchange sending;
+
+    ProxyHandler(CaptureProxy proxy) {
+        this.proxy = proxy;
+    }
+
+    @Override
+    public void channelActive(ChannelHandlerContext ctx) {
+        client = ctx.channel();
+        clientConnectedMillis = System.currentTimeMillis();
+        proxy.opened(false);
+        ctx.fireChannelActive();
+    }
+
+    @Override
+    public void channelRead(ChannelHandlerContext ctx, Object msg) {
+        if (msg instanceof HttpRequest) {
+            HttpRequest request = (HttpRequest) msg;
+            if (request.method().equals(HttpMethod.CONNECT)) {
+                ReferenceCountUtil.release(msg);
+                tunnel(ctx, request.uri());
+                return;
+            }
+            request(request);
+        } else if (msg instanceof HttpContent) {
+            if (sending == null) {
+                // The end of a CONNECT, or the rest of a request that was refused
+                ReferenceCountUtil.release(msg);
+                return;
+            }
+            HttpContent content = (HttpContent) msg;
+            sending.requestBody.append(content.content());
+            if (content instanceof LastHttpContent) {
+                sending.requestSentMillis = System.currentTimeMillis();
+                sending = null;
+            }
+            forward(msg);
+        } else {
+            ReferenceCountUtil.release(msg);
+        }
+    }
+
+    // Answers the CONNECT and from then on speaks TLS to the client, as the host
+    private void tunnel(ChannelHandlerContext ctx, String authority) {
+        int colon = authority.lastIndexOf(':');
+        tunnelHost = colon < 0 ? authority : authority.substring(0, colon);
+        tunnelPort = colon < 0 ? 443 : Integer.parseInt(authority.substring(colon + 1));
+        if (tunnelHost.startsWith("[")) {
+            tunnelHost = tunnelHost.substring(1, tunnelHost.length() - 1);
+        }
+        proxy.opened(true);
+        ctx.writeAndFlush(new DefaultFullHttpResponse(HttpVersion.HTTP_1_1, new HttpResponseStatus(200, "Connection Established")));
+        // The client only starts its handshake once it has read the answer above, so nothing is lost in between
+        ctx.pipeline().remove(CODEC);
+        ctx.pipeline().addBefore(ctx.name(), TLS, proxy.certificates().newHandler(ctx.alloc(), tunnelHost, tunnelPort));
+        ctx.pipeline().addBefore(ctx.name(), CODEC, new HttpServerCodec());
+    }
+
+    private void request(HttpRequest request) {
+        String host;
+        int port;
+        boolean tls;
+        String url;
+        if (tunnelHost != null) {
+            host = tunnelHost;
+            port = tunnelPort;
+            tls = true;
+            url = "https://" + (host.contains(":") ? "[" + host + "]" : host) + (port == 443 ? "" : ":" + port) + request.uri();
+        } else {
+            URI uri;
+            try {
+                uri = new URI(request.uri());
+            } catch (URISyntaxException e) {
+                uri = null;
+            }
+            if (uri == null || uri.getHost() == null || !"http".equalsIgnoreCase(uri.getScheme())) {
+                refuse(HttpResponseStatus.BAD_REQUEST);
+                return;
+            }
+            host = uri.getHost();
+            port = uri.getPort() < 0 ? 80 : uri.getPort();
+            tls = false;
+            url = request.uri();
+            String path = uri.getRawPath() == null || uri.getRawPath().isEmpty() ? "/" : uri.getRawPath();
+            request.setUri(uri.getRawQuery() == null ? path : path + "?" + uri.getRawQuery());
+        }
+        request.headers().remove("Proxy-Connection");
+        request.headers().remove(HttpHeaderNames.PROXY_AUTHORIZATION);
+
+        sending = new Exchange(request, url, proxy.bodyLimit());
+        exchanges.add(sending);
+        String target = host + ':' + port;
+        if (upstream != null && !target.equals(upstreamTarget)) {
+            // A plain client moving on to another host: that connection is done with
+            upstream.close();
+            upstream = null;
+        }
+        if (upstream == null) {
+            connect(host, port, tls, target);
+        }
+        forward(request);
+    }
+
+    private void connect(String host, int port, boolean tls, String target) {
+        upstreamTarget = target;
+        upstreamConnected = false;
+        client.config().setAutoRead(false);
+        upstream = new Bootstrap()
+                .group(client.eventLoop())
+                .channel(proxy.socketChannel())
+                .option(ChannelOption.TCP_NODELAY, true)
+                .handler(new ChannelInitializer<Channel>() {
+                    @Override
+                    protected void initChannel(Channel ch) {
+                        if (tls) {
+                            // With the host and port, so the upstream session is cached and resumed
+                            ch.pipeline().addLast(proxy.upstreamTls().newHandler(ch.alloc(), host, port));
+                        }
+                        ch.pipeline().addLast(new HttpClientCodec()).addLast(new Upstream());
+                    }
+                })
+                .connect(host, port)
+                .addListener((ChannelFutureListener) future -> {
+                    if (future.channel() != upstream) {
+                        return;
+                    }
+                    if (!future.isSuccess()) {
+                        pending.forEach(ReferenceCountUtil::release);
+                        pending.clear();
+                        exchanges.clear();
+                        refuse(HttpResponseStatus.BAD_GATEWAY);
+                        return;
+                    }
+                    upstreamConnected = true;
+                    for (Object message : pending) {
+                        upstream.write(message);
+                    }
+                    pending.clear();
+                    upstream.flush();
+                    client.config().setAutoRead(upstream.isWritable());
+                })
+                .channel();
+    }
+
+    private void forward(Object msg) {
+        if (upstream == null) {
+            ReferenceCountUtil.release(msg);
+        } else if (!upstreamConnected) {
+            pending.add(msg);
+        } else {
+            upstream.writeAndFlush(msg);
+            if (!upstream.isWritable()) {
+                client.config().setAutoRead(false);
+            }
+        }
+    }
+
+    private void refuse(HttpResponseStatus status) {
+        sending = null;
+        FullHttpResponse response = new DefaultFullHttpResponse(HttpVersion.HTTP_1_1, status);
+        response.headers().set(HttpHeaderNames.CONTENT_LENGTH, 0);
+        response.headers().set(HttpHeaderNames.CONNECTION, HttpHeaderValues.CLOSE);
+        client.writeAndFlush(response).addListener(ChannelFutureListener.CLOSE);
+    }
+
+    @Override
+    public void userEventTriggered(ChannelHandlerContext ctx, Object evt) {
+        if (evt instanceof SslHandshakeCompletionEvent && ((SslHandshakeCompletionEvent) evt).isSuccess()) {
+            proxy.handshaken(false, ctx.pipeline().get(SslHandler.class).engine(), clientConnectedMillis);
+        }
+        ctx.fireUserEventTriggered(evt);
+    }
+
+    @Override
+    public void channelWritabilityChanged(ChannelHandlerContext ctx) {
+        if (upstream != null && upstreamConnected) {
+            upstream.config().setAutoRead(client.isWritable());
+        }
+        ctx.fireChannelWritabilityChanged();
+    }
+
+    @Override
+    public void channelInactive(ChannelHandlerContext ctx) {
+        proxy.closed();
+        pending.forEach(ReferenceCountUtil::release);
+        pending.clear();
+        if (upstream != null) {
+            upstream.close();
+        }
+    }
+
+    @Override
+    public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause) {
+        // Mostly clients going away mid-request or refusing the certificate: nothing a recording can do about it
+        ctx.close();
+    }
+
+    // The connection to the host: responses go back to the client as they're decoded
+    private final class Upstream extends ChannelInboundHandlerAdapter {
+
+        private final long connectedMillis = System.currentTimeMillis();
+
+        @Override
+        public void userEventTriggered(ChannelHandlerContext ctx, Object evt) {
+            if (evt instanceof SslHandshakeCompletionEvent && ((SslHandshakeCompletionEvent) evt).isSuccess()) {
+                proxy.handshaken(true, ctx.pipeline().get(SslHandler.class).engine(), connectedMillis);
+            }
+            ctx.fireUserEventTriggered(evt);
+        }
+
+        @Override
+        public void channelRead(ChannelHandlerContext ctx, Object msg) {
+            if (ctx.channel() != upstream) {
+                ReferenceCountUtil.release(msg);
+                return;
+            }
+            Exchange exchange = exchanges.peek();
+            if (exchange != null && msg instanceof HttpObject) {
+                if (msg instanceof HttpResponse) {
+                    exchange.response((HttpResponse) msg);
+                }
+                if (msg instanceof HttpContent) {
+                    exchange.responseBody.append(((HttpContent) msg).content());
+                }
+                // An interim 100 Continue ends too, but the exchange goes on to its final response
+                if (msg instanceof LastHttpContent && exchange.status != 100) {
+                    exchange.endMillis = System.currentTimeMillis();
+                    exchanges.poll();
+                    proxy.recorded(exchange);
+                }
+            }
+            client.writeAndFlush(msg);
+            if (!client.isWritable()) {
+                ctx.channel().config().setAutoRead(false);
+            }
+        }
+
+        @Override
+        public void channelWritabilityChanged(ChannelHandlerContext ctx) {
+            client.config().setAutoRead(ctx.channel().isWritable());
+            ctx.fireChannelWritabilityChanged();
+        }
+
+        @Override
+        public void channelInactive(ChannelHandlerContext ctx) {
+            if (ctx.channel() == upstream) {
+                // Sends what's already been written before closing the client's side too
+                client.writeAndFlush(Unpooled.EMPTY_BUFFER).addListener(ChannelFutureListener.CLOSE);
+            }
+        }
+
+        @Override
+        public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause) {
+            ctx.close();
+        }
+    }
+}
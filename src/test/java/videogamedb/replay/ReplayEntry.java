@@ -0,0 +1,19 @@
+package videogamedb.replay;
+
+// One request of a traffic log, as it will be replayed
+final class ReplayEntry {
+
+    final long timestampMillis; // When it was originally sent
+    final String method;
+    final String path;
+    final byte[] body;          // Empty when the log has no body for it
+    final String name;          // Request name for the reports, with ids replaced so their number stays small
+
+    ReplayEntry(long timestampMillis, String method, String path, byte[] body, String name) {
+        this.timestampMillis = timestampMillis;
+        this.method = method;
+        this.path = path;
+        this.body = body;
+        this.name = name;
+    }
+}
@@ -0,0 +1,206 @@
+package videogamedb.replay;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.OffsetDateTime;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.GZIPInputStream;
+
+// Reads a traffic log on a background thread into a bounded queue, so a log of millions of requests is replayed with
+// at most readAhead of them in memory: the thread blocks while the queue is full and the virtual users take entries
+// from it without ever blocking. Two formats are read, line by line, and files ending in .gz are decompressed:
+//   JSON lines   {"timestamp": "2024-10-15T09:36:44.881Z", "method": "POST", "path": "/api/videogame", "body": {...}}
+//                timestamp can also be epoch millis or seconds, path can be a full "url", and body a string
+//   access logs  Common or Combined Log Format, e.g. from nginx or Apache; these have no bodies and only whole seconds,
+//                so the requests of one second are spread evenly over it instead of all being sent at its start
+// Lines that can't be read, and methods other than GET, POST, PUT, PATCH, DELETE and HEAD, are counted and skipped.
+final class ReplayLogReader implements AutoCloseable {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+    private static final Pattern ACCESS_LOG = Pattern.compile("^\\S+ \\S+ \\S+ \\[([^]]+)] \"(\\S+) (\\S+)[^\"]*\"");
+    private static final DateTimeFormatter ACCESS_LOG_TIME = DateTimeFormatter.ofPattern("dd/MMM/yyyy:HH:mm:ss Z", Locale.ENGLISH);
+    private static final Pattern ID_SEGMENT = Pattern.compile("/(\\d+|[0-9a-fA-F-]{16,})(?=/|$)");
+    private static final Set<String> METHODS = Set.of("GET", "POST", "PUT", "PATCH", "DELETE", "HEAD");
+    private static final byte[] NO_BODY = new byte[0];
+
+    private final BlockingQueue<ReplayEntry> queue;
+    private final Thread thread;
+    private final List<ReplayEntry> sameSecond = new ArrayList<>(); // Access log requests of the second being read
+    private long sameSecondMillis = Long.MIN_VALUE;
+    private String lastAccessLogTime;
+    private volatile long firstTimestampMillis = Long.MIN_VALUE;
+    private volatile long read;
+    private volatile long skipped;
+    private volatile boolean done;
+
+    ReplayLogReader(String log, int readAhead) throws IOException {
+        BufferedReader in = open(log);
+        queue = new ArrayBlockingQueue<>(readAhead);
+        thread = new Thread(() -> run(in, log), "replay-log-reader");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    // A file, or else a classpath resource
+    private static BufferedReader open(String log) throws IOException {
+        Path file = Paths.get(log);
+        InputStream in = Files.exists(file) ? Files.newInputStream(file)
+                : Thread.currentThread().getContextClassLoader().getResourceAsStream(log);
+        if (in == null) {
+            throw new IOException("Traffic log " + log + " is neither a file nor on the classpath");
+        }
+        if (log.endsWith(".gz")) {
+            in = new GZIPInputStream(in, 64 * 1024);
+        }
+        return new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8), 64 * 1024);
+    }
+
+    private void run(BufferedReader in, String log) {
+        try (in) {
+            String line;
+            while ((line = in.readLine()) != null) {
+                if (line.isBlank()) {
+                    continue;
+                }
+                try {
+                    if (line.charAt(0) == '{') {
+                        put(parseJson(line));
+                    } else {
+                        parseAccessLog(line);
+                    }
+                } catch (IOException | RuntimeException e) {
+                    skipped++;
+                }
+            }
+            flushSecond();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (IOException e) {
+            System.err.println("Replay: failed to read " + log + ", stopping after " + read + " requests: " + e);
+        } finally {
+            done = true;
+        }
+    }
+
+    private ReplayEntry parseJson(String line) throws IOException {
+        JsonNode node = MAPPER.readTree(line);
+        JsonNode timestamp = node.path("timestamp");
+        long millis;
+        if (timestamp.isNumber()) {
+            double value = timestamp.asDouble();
+            millis = Math.round(value < 100_000_000_000.0 ? value * 1000 : value); // Epoch seconds or millis
+        } else if (timestamp.isTextual()) {
+            millis = OffsetDateTime.parse(timestamp.asText()).toInstant().toEpochMilli();
+        } else {
+            throw new IOException("No timestamp");
+        }
+        String method = node.path("method").asText("GET").toUpperCase(Locale.ROOT);
+        String path = node.has("path") ? node.get("path").asText() : pathOf(node.path("url").asText(""));
+        JsonNode body = node.get("body");
+        byte[] bytes = body == null || body.isNull() ? NO_BODY
+                : body.isTextual() ? body.asText().getBytes(StandardCharsets.UTF_8) : MAPPER.writeValueAsBytes(body);
+        return entry(millis, method, path, bytes);
+    }
+
+    private void parseAccessLog(String line) throws IOException, InterruptedException {
+        Matcher matcher = ACCESS_LOG.matcher(line);
+        if (!matcher.find()) {
+            throw new IOException("Not an access log line");
+        }
+        String time = matcher.group(1);
+        long millis = time.equals(lastAccessLogTime) ? sameSecondMillis // Most lines share their second with the previous one
+                : ZonedDateTime.parse(time, ACCESS_LOG_TIME).toInstant().toEpochMilli();
+        if (millis != sameSecondMillis) {
+            flushSecond();
+            sameSecondMillis = millis;
+        }
+        lastAccessLogTime = time;
+        sameSecond.add(entry(millis, matcher.group(2), pathOf(matcher.group(3)), NO_BODY));
+    }
+
+    // Queues the requests of the last second read, spread evenly over that second
+    private void flushSecond() throws InterruptedException {
+        int count = sameSecond.size();
+        for (int i = 0; i < count; i++) {
+            ReplayEntry entry = sameSecond.get(i);
+            put(new ReplayEntry(entry.timestampMillis + i * 1000L / count, entry.method, entry.path, entry.body, entry.name));
+        }
+        sameSecond.clear();
+    }
+
+    private static ReplayEntry entry(long millis, String method, String path, byte[] body) throws IOException {
+        if (!METHODS.contains(method) || !path.startsWith("/")) {
+            throw new IOException("Unsupported request " + method + " " + path);
+        }
+        int query = path.indexOf('?');
+        String name = method + " " + ID_SEGMENT.matcher(query < 0 ? path : path.substring(0, query)).replaceAll("/{id}");
+        return new ReplayEntry(millis, method, path, body, name);
+    }
+
+    private static String pathOf(String url) {
+        if (url.startsWith("/")) {
+            return url;
+        }
+        URI uri = URI.create(url);
+        return (uri.getRawPath() == null || uri.getRawPath().isEmpty() ? "/" : uri.getRawPath())
+                + (uri.getRawQuery() == null ? "" : "?" + uri.getRawQuery());
+    }
+
+    private void put(ReplayEntry entry) throws InterruptedException {
+        if (firstTimestampMillis == Long.MIN_VALUE) {
+            firstTimestampMillis = entry.timestampMillis;
+        }
+        queue.put(entry);
+        read++;
+    }
+
+    // The next request, or null if none is read yet or the log is finished
+    ReplayEntry poll() {
+        return queue.poll();
+    }
+
+    boolean finished() {
+        return done && queue.isEmpty();
+    }
+
+    // Timestamp of the log's first request, the origin of the replay's schedule
+    long firstTimestampMillis() {
+        return firstTimestampMillis;
+    }
+
+    long read() {
+        return read;
+    }
+
+    long skipped() {
+        return skipped;
+    }
+
+    int buffered() {
+        return queue.size();
+    }
+
+    @Override
+    public void close() {
+        thread.interrupt();
+    }
+}
@@ -0,0 +1,106 @@
+package videogamedb.replay;
+
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+// When each replayed request is due, and how late it actually went out. The first request is due when the replay
+// asks for it; every other one its original offset from the first, divided by the speed, after that. The lag of a
+// request is how long after being due it was sent: it stays near zero while the injector keeps up, and grows when
+// there are too few replay users, the read-ahead runs dry, or the injector is overloaded.
+final class ReplaySchedule {
+
+    private static final long LATE_MICROS = 100_000; // Requests sent more than 100 ms late are counted as late
+
+    private final double speed;
+    private final LongSupplier originMillis;
+    private final AtomicLong anchorNanos = new AtomicLong(Long.MIN_VALUE);
+    private final Recorder lag = new Recorder(3); // Microseconds, auto-resizing
+    private final Histogram total = new Histogram(3);
+    private final LongAdder sent = new LongAdder();
+    private final LongAdder late = new LongAdder();
+    private final LongAdder starved = new LongAdder();
+    private ScheduledExecutorService reporter;
+
+    ReplaySchedule(double speed, LongSupplier originMillis) {
+        if (speed <= 0) {
+            throw new IllegalArgumentException("The replay speed must be positive: " + speed);
+        }
+        this.speed = speed;
+        this.originMillis = originMillis;
+    }
+
+    private long dueNanos(ReplayEntry entry) {
+        long anchor = anchorNanos.get();
+        if (anchor == Long.MIN_VALUE) {
+            anchorNanos.compareAndSet(Long.MIN_VALUE, System.nanoTime());
+            anchor = anchorNanos.get();
+        }
+        return anchor + Math.round((entry.timestampMillis - originMillis.getAsLong()) * 1_000_000 / speed);
+    }
+
+    // How long to wait before sending the request, zero if it's already due
+    long nanosUntilDue(ReplayEntry entry) {
+        return Math.max(0, dueNanos(entry) - System.nanoTime());
+    }
+
+    void sent(ReplayEntry entry) {
+        long lagMicros = Math.max(0, System.nanoTime() - dueNanos(entry)) / 1000;
+        lag.recordValue(lagMicros);
+        sent.increment();
+        if (lagMicros > LATE_MICROS) {
+            late.increment();
+        }
+    }
+
+    // A replay user found nothing read ahead for it
+    void starved() {
+        starved.increment();
+    }
+
+    // Prints the lag of the requests sent in every interval while the replay runs
+    void startReporting(ReplayLogReader reader, int intervalSeconds) {
+        reporter = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "replay-lag-reporter");
+            thread.setDaemon(true);
+            return thread;
+        });
+        reporter.scheduleAtFixedRate(() -> {
+            Histogram interval = drain();
+            System.out.printf("Replay: %d sent, %d read ahead, lag p50 %.1f ms, p99 %.1f ms, max %.1f ms over the last %d s, %d late, %d starved%n",
+                    sent.sum(), reader.buffered(), interval.getValueAtPercentile(50) / 1000.0,
+                    interval.getValueAtPercentile(99) / 1000.0, interval.getMaxValue() / 1000.0, intervalSeconds,
+                    late.sum(), starved.sum());
+        }, intervalSeconds, intervalSeconds, TimeUnit.SECONDS);
+    }
+
+    private Histogram drain() {
+        Histogram interval = lag.getIntervalHistogram();
+        synchronized (total) {
+            total.add(interval);
+        }
+        return interval;
+    }
+
+    String report(ReplayLogReader reader) {
+        if (reporter != null) {
+            reporter.shutdownNow();
+        }
+        drain();
+        synchronized (total) {
+            return String.format("Replay at %.1fx: %d requests read, %d skipped, %d sent, %d more than 100 ms late (%.2f%%), %d starved polls%n"
+                            + "Lag behind the original schedule (ms): p50 %.1f, p90 %.1f, p99 %.1f, p99.9 %.1f, max %.1f",
+                    speed, reader.read(), reader.skipped(), sent.sum(), late.sum(),
+                    sent.sum() == 0 ? 0 : 100.0 * late.sum() / sent.sum(), starved.sum(),
+                    total.getValueAtPercentile(50) / 1000.0, total.getValueAtPercentile(90) / 1000.0,
+                    total.getValueAtPercentile(99) / 1000.0, total.getValueAtPercentile(99.9) / 1000.0,
+                    total.getMaxValue() / 1000.0);
+        }
+    }
+}
@@ -0,0 +1,142 @@
+package videogamedb.replay;
+
+import io.gatling.javaapi.core.*;
+import io.gatling.javaapi.http.*;
+import videogamedb.auth.TokenCache;
+import videogamedb.stub.VideoGameDbStub;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.Duration;
+import java.util.Set;
+
+import static io.gatling.javaapi.core.CoreDsl.*;
+import static io.gatling.javaapi.http.HttpDsl.*;
+
+// Replays a traffic log (see ReplayLogReader for the formats) against the API at the original pace, or faster or
+// slower with REPLAY_SPEED, instead of a scripted journey. Each request is sent at its own point of the original
+// timeline whatever happened to the requests before it, like the open model: REPLAY_USERS virtual users take the
+// next request from the read-ahead queue, wait until it's due and send it. As long as there are more of them than
+// requests in flight, nothing is sent late; when there aren't, the lag reported every REPLAY_REPORT_INTERVAL seconds
+// and at the end shows by how much the replay fell behind the original schedule (see ReplaySchedule).
+// The replay ends with the log, or after REPLAY_MAX_DURATION.
+//
+// Runtime parameters:
+//   REPLAY_LOG              file or classpath resource to replay, optionally gzipped (default data/replay-sample.jsonl)
+//   REPLAY_SPEED            time compression, e.g. 10 to replay an hour of traffic in 6 minutes (default 1)
+//   REPLAY_USERS            virtual users sending the requests, more than the requests ever in flight (default 200)
+//   REPLAY_READ_AHEAD       requests read ahead of the replay, the only ones held in memory (default 10000)
+//   REPLAY_BASE_URL         base URL the logged paths are relative to (default https://videogamedb.uk)
+//   REPLAY_AUTH             true to send a shared token (see TokenCache) with every request, as logs don't have them (default true)
+//   REPLAY_AUTH_PATH        path of the authenticate endpoint (default /api/authenticate)
+//   REPLAY_MAX_DURATION     seconds after which to stop, whatever is left of the log (default 0, no limit)
+//   REPLAY_REPORT_INTERVAL  seconds between lag reports (default 10)
+public class TrafficReplaySimulation extends Simulation {
+
+    private static final String LOG = System.getProperty("REPLAY_LOG", "data/replay-sample.jsonl");
+    private static final double SPEED = Double.parseDouble(System.getProperty("REPLAY_SPEED", "1"));
+    private static final int USERS = Integer.getInteger("REPLAY_USERS", 200);
+    private static final int READ_AHEAD = Integer.getInteger("REPLAY_READ_AHEAD", 10_000);
+    private static final String BASE_URL = System.getProperty("REPLAY_BASE_URL", "https://videogamedb.uk");
+    private static final boolean AUTH = Boolean.parseBoolean(System.getProperty("REPLAY_AUTH", "true"));
+    private static final String AUTH_PATH = System.getProperty("REPLAY_AUTH_PATH", "/api/authenticate");
+    private static final int MAX_DURATION = Integer.getInteger("REPLAY_MAX_DURATION", 0);
+    private static final int REPORT_INTERVAL = Integer.getInteger("REPLAY_REPORT_INTERVAL", 10);
+
+    private static final String ENTRY = "replayEntry";
+    private static final String DONE = "replayDone";
+    private static final Duration STARVED_PAUSE = Duration.ofMillis(10); // When the read-ahead is empty but the log isn't finished
+    private static final Set<String> METHODS_WITH_BODY = Set.of("POST", "PUT", "PATCH");
+
+    // Opened when the simulation starts rather than when the class is loaded
+    private static final class Holder {
+        private static final ReplayLogReader READER = open();
+        private static final ReplaySchedule SCHEDULE = new ReplaySchedule(SPEED, READER::firstTimestampMillis);
+    }
+
+    private static ReplayLogReader open() {
+        try {
+            return new ReplayLogReader(LOG, READ_AHEAD);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private HttpProtocolBuilder httpProtocol = http
+            .baseUrl(VideoGameDbStub.baseUrl(BASE_URL))
+            .acceptHeader("application/json")
+            .contentTypeHeader("application/json");
+
+    private static ReplayEntry entry(Session session) {
+        return session.get(ENTRY);
+    }
+
+    // Takes the next request of the log for this user, or marks the user done when the log is finished
+    private static Session next(Session session) {
+        ReplayEntry entry = Holder.READER.poll();
+        if (entry != null) {
+            return session.set(ENTRY, entry);
+        }
+        if (Holder.READER.finished()) {
+            return session.set(DONE, true);
+        }
+        Holder.SCHEDULE.starved();
+        return session.remove(ENTRY);
+    }
+
+    private static HttpRequestActionBuilder request(String method) {
+        HttpRequestActionBuilder request = http(session -> entry(session).name)
+                .httpRequest(method, session -> entry(session).path);
+        if (AUTH) {
+            request = request.header("Authorization", "Bearer #{jwtToken}");
+        }
+        if (METHODS_WITH_BODY.contains(method)) {
+            request = request.body(ByteArrayBody(session -> entry(session).body));
+        }
+        return request;
+    }
+
+    private static ChainBuilder authenticate = AUTH ? TokenCache.authenticate(AUTH_PATH) : exec(session -> session);
+
+    private static ChainBuilder send =
+            exec(authenticate) // A cached token, so this is no request at all most of the time
+                    .pause(session -> Duration.ofNanos(Holder.SCHEDULE.nanosUntilDue(entry(session))))
+                    .exec(session -> {
+                        Holder.SCHEDULE.sent(entry(session));
+                        return session;
+                    })
+                    .doSwitch(session -> entry(session).method).on(
+                            Choice.withKey("GET", exec(request("GET"))),
+                            Choice.withKey("POST", exec(request("POST"))),
+                            Choice.withKey("PUT", exec(request("PUT"))),
+                            Choice.withKey("PATCH", exec(request("PATCH"))),
+                            Choice.withKey("DELETE", exec(request("DELETE"))),
+                            Choice.withKey("HEAD", exec(request("HEAD")))
+                    );
+
+    private static ScenarioBuilder scn = scenario("Traffic replay")
+            .forever().on(
+                    exec(TrafficReplaySimulation::next)
+                            .exitHereIf(session -> session.contains(DONE))
+                            .doIfOrElse(session -> session.contains(ENTRY)).then(send).orElse(pause(STARVED_PAUSE))
+            );
+
+    {
+        SetUp setUp = setUp(scn.injectOpen(atOnceUsers(USERS)).protocols(httpProtocol));
+        if (MAX_DURATION > 0) {
+            setUp.maxDuration(Duration.ofSeconds(MAX_DURATION));
+        }
+    }
+
+    @Override
+    public void before() {
+        System.out.printf("Replaying %s at %.1fx with %d users, reading up to %d requests ahead%n", LOG, SPEED, USERS, READ_AHEAD);
+        Holder.SCHEDULE.startReporting(Holder.READER, REPORT_INTERVAL);
+    }
+
+    @Override
+    public void after() {
+        System.out.println(Holder.SCHEDULE.report(Holder.READER));
+        Holder.READER.close();
+    }
+}
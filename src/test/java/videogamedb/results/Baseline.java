@@ -0,0 +1,78 @@
+package videogamedb.results;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.HdrHistogram.Histogram;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.zip.DataFormatException;
+
+// Stores RunStatistics as a small JSON file, to compare later runs against: the load parameters of the run, and per
+// request name the counts, the time span and the histogram in HdrHistogram's compressed encoding, base64. A name takes
+// a few hundred bytes however many requests it had, so the baselines can be committed next to the simulations.
+final class Baseline {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private Baseline() {
+    }
+
+    static void write(RunStatistics statistics, Path file) throws IOException {
+        ObjectNode root = MAPPER.createObjectNode();
+        root.put("simulation", statistics.simulationClass());
+        if (statistics.load() != null) {
+            ObjectNode load = root.putObject("load");
+            statistics.load().forEach(load::put);
+        }
+        ObjectNode requests = root.putObject("requests");
+        for (Map.Entry<String, RunStatistics.Request> entry : statistics.requests().entrySet()) {
+            RunStatistics.Request request = entry.getValue();
+            ByteBuffer buffer = ByteBuffer.allocate(request.histogram.getNeededByteBufferCapacity());
+            int length = request.histogram.encodeIntoCompressedByteBuffer(buffer);
+            requests.putObject(entry.getKey())
+                    .put("ok", request.ok)
+                    .put("ko", request.ko)
+                    .put("firstStart", request.firstStart)
+                    .put("lastEnd", request.lastEnd)
+                    .put("histogram", Base64.getEncoder().encodeToString(Arrays.copyOf(buffer.array(), length)));
+        }
+        Path parent = file.toAbsolutePath().getParent();
+        if (parent != null) {
+            Files.createDirectories(parent);
+        }
+        MAPPER.writerWithDefaultPrettyPrinter().writeValue(file.toFile(), root);
+    }
+
+    static RunStatistics read(Path file) throws IOException {
+        JsonNode root = MAPPER.readTree(file.toFile());
+        RunStatistics statistics = new RunStatistics();
+        statistics.simulationClass(root.path("simulation").asText());
+        if (root.has("load")) { // Baselines stored before the load was, can't tell
+            Map<String, String> load = new TreeMap<>();
+            root.path("load").fields().forEachRemaining(entry -> load.put(entry.getKey(), entry.getValue().asText()));
+            statistics.load(load);
+        }
+        for (Map.Entry<String, JsonNode> entry : (Iterable<Map.Entry<String, JsonNode>>) root.path("requests")::fields) {
+            JsonNode request = entry.getValue();
+            Histogram histogram;
+            try {
+                histogram = Histogram.decodeFromCompressedByteBuffer(
+                        ByteBuffer.wrap(Base64.getDecoder().decode(request.path("histogram").asText())), 2);
+            } catch (DataFormatException e) {
+                throw new IOException("Invalid histogram of " + entry.getKey() + " in " + file, e);
+            }
+            histogram.setAutoResize(true);
+            statistics.add(entry.getKey(), new RunStatistics.Request(histogram, request.path("ok").asLong(),
+                    request.path("ko").asLong(), request.path("firstStart").asLong(), request.path("lastEnd").asLong()));
+        }
+        return statistics;
+    }
+}
@@ -0,0 +1,203 @@
+package videogamedb.results;
+
+import com.github.luben.zstd.Zstd;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+// Reads a log written by BinaryLogWriter. Opening it only walks the block headers to build an index; readBlock() then
+// decodes any block on its own, with positional reads, so several threads can read different blocks at the same time.
+public final class BinaryLogReader implements AutoCloseable {
+
+    // Receives the records of a block, in the order they were written
+    public interface RecordVisitor {
+        void request(String group, String name, long start, long end, boolean ok, String message);
+
+        void user(String scenario, boolean start, long timestamp);
+    }
+
+    private static final ThreadLocal<byte[][]> BUFFERS = ThreadLocal.withInitial(() -> new byte[][]{new byte[0], new byte[0]});
+
+    private final FileChannel channel;
+    private final String simulationClass;
+    private final String simulationId;
+    private final long runStart;
+    private long[] offsets = new long[16];
+    private int[] lengths = new int[16];
+    private int[] compressedLengths = new int[16];
+    private int blocks;
+
+    public BinaryLogReader(Path file) throws IOException {
+        channel = FileChannel.open(file, StandardOpenOption.READ);
+        try {
+            DataInputStream in = new DataInputStream(Channels.newInputStream(channel));
+            byte[] magic = new byte[BinaryLogWriter.MAGIC.length];
+            in.readFully(magic);
+            if (!Arrays.equals(magic, BinaryLogWriter.MAGIC)) {
+                throw new IOException(file + " is not a binary results log");
+            }
+            simulationClass = in.readUTF();
+            simulationId = in.readUTF();
+            runStart = in.readLong();
+            indexBlocks(channel.position());
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    public String simulationClass() {
+        return simulationClass;
+    }
+
+    public String simulationId() {
+        return simulationId;
+    }
+
+    public long runStart() {
+        return runStart;
+    }
+
+    public int blockCount() {
+        return blocks;
+    }
+
+    public void readBlock(int index, RecordVisitor visitor) throws IOException {
+        byte[][] buffers = BUFFERS.get();
+        if (buffers[0].length < compressedLengths[index]) {
+            buffers[0] = new byte[compressedLengths[index]];
+        }
+        if (buffers[1].length < lengths[index]) {
+            buffers[1] = new byte[lengths[index]];
+        }
+        byte[] compressed = buffers[0];
+        byte[] block = buffers[1];
+
+        ByteBuffer target = ByteBuffer.wrap(compressed, 0, compressedLengths[index]);
+        long position = offsets[index];
+        while (target.hasRemaining()) {
+            int read = channel.read(target, position);
+            if (read < 0) {
+                throw new IOException("Truncated block " + index);
+            }
+            position += read;
+        }
+        long size = Zstd.decompressByteArray(block, 0, lengths[index], compressed, 0, compressedLengths[index]);
+        if (Zstd.isError(size) || size != lengths[index]) {
+            throw new IOException("Corrupt block " + index + (Zstd.isError(size) ? ": " + Zstd.getErrorName(size) : ""));
+        }
+        decode(block, lengths[index], visitor);
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    private void indexBlocks(long position) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(2 * Integer.BYTES);
+        long size = channel.size();
+        while (position + header.capacity() <= size) {
+            header.clear();
+            while (header.hasRemaining()) {
+                channel.read(header, position + header.position());
+            }
+            header.flip();
+            int length = header.getInt();
+            int compressedLength = header.getInt();
+            if (position + header.capacity() + compressedLength > size) {
+                break; // The last block of a run that didn't close the log cleanly
+            }
+            if (blocks == offsets.length) {
+                offsets = Arrays.copyOf(offsets, blocks * 2);
+                lengths = Arrays.copyOf(lengths, blocks * 2);
+                compressedLengths = Arrays.copyOf(compressedLengths, blocks * 2);
+            }
+            offsets[blocks] = position + header.capacity();
+            lengths[blocks] = length;
+            compressedLengths[blocks] = compressedLength;
+            blocks++;
+            position += header.capacity() + compressedLength;
+        }
+    }
+
+    private static void decode(byte[] block, int length, RecordVisitor visitor) {
+        Decoder in = new Decoder(block);
+        long base = 0;
+        for (int i = 0; i < Long.BYTES; i++) {
+            base = (base << 8) | (block[in.position++] & 0xFF);
+        }
+        String[] strings = new String[64];
+        strings[0] = "";
+
+        while (in.position < length) {
+            byte tag = block[in.position++];
+            switch (tag) {
+                case BinaryLogWriter.DEFINE: {
+                    int id = in.varInt();
+                    int size = in.varInt();
+                    if (id >= strings.length) {
+                        strings = Arrays.copyOf(strings, Math.max(strings.length * 2, id + 1));
+                    }
+                    strings[id] = new String(block, in.position, size, StandardCharsets.UTF_8);
+                    in.position += size;
+                    break;
+                }
+                case BinaryLogWriter.REQUEST_OK:
+                case BinaryLogWriter.REQUEST_KO: {
+                    String group = strings[in.varInt()];
+                    String name = strings[in.varInt()];
+                    long start = base + unzigzag(in.varLong());
+                    long end = start + in.varLong();
+                    boolean ok = tag == BinaryLogWriter.REQUEST_OK;
+                    visitor.request(group, name, start, end, ok, ok ? null : strings[in.varInt()]);
+                    break;
+                }
+                case BinaryLogWriter.USER_START:
+                case BinaryLogWriter.USER_END: {
+                    String scenario = strings[in.varInt()];
+                    visitor.user(scenario, tag == BinaryLogWriter.USER_START, base + unzigzag(in.varLong()));
+                    break;
+                }
+                default:
+                    throw new IllegalStateException("Unknown record type " + tag + " at " + (in.position - 1));
+            }
+        }
+    }
+
+    private static long unzigzag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    private static final class Decoder {
+        private final byte[] bytes;
+        private int position;
+
+        Decoder(byte[] bytes) {
+            this.bytes = bytes;
+        }
+
+        int varInt() {
+            return (int) varLong();
+        }
+
+        long varLong() {
+            long value = 0;
+            int shift = 0;
+            byte b;
+            do {
+                b = bytes[position++];
+                value |= (long) (b & 0x7F) << shift;
+                shift += 7;
+            } while (b < 0);
+            return value;
+        }
+    }
+}
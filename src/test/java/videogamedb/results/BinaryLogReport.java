@@ -0,0 +1,143 @@
+package videogamedb.results;
+
+import org.HdrHistogram.Histogram;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.stream.IntStream;
+
+// Builds the request statistics of a run from a binary results log (see BinaryLogWriter) in one parallel pass: the
+// blocks are spread over the common ForkJoin pool, each worker folds the blocks it gets into its own Stats, and the
+// workers' Stats are merged at the end. Response times go into HdrHistograms, so merged percentiles are exact to
+// three significant digits rather than averages of per-worker percentiles.
+//
+// The summary is printed and written next to the log as <log>.txt:
+//   mvn -B test-compile exec:java -Dexec.mainClass=videogamedb.results.BinaryLogReport -Dexec.classpathScope=test -Dexec.args="target/gatling/results.vgl"
+public final class BinaryLogReport {
+
+    private BinaryLogReport() {
+    }
+
+    public static Stats generate(Path file) throws IOException {
+        try (BinaryLogReader reader = new BinaryLogReader(file)) {
+            return IntStream.range(0, reader.blockCount())
+                    .parallel()
+                    .collect(Stats::new, (stats, block) -> {
+                        try {
+                            reader.readBlock(block, stats);
+                        } catch (IOException e) {
+                            throw new UncheckedIOException(e);
+                        }
+                    }, Stats::merge);
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length == 0) {
+            throw new IllegalArgumentException("Usage: BinaryLogReport <binary results log>...");
+        }
+        for (String arg : args) {
+            Path file = Paths.get(arg);
+            long started = System.nanoTime();
+            Stats stats = generate(file);
+            String summary = stats.summary();
+            Files.write(Paths.get(arg + ".txt"), summary.getBytes(StandardCharsets.UTF_8));
+            System.out.print(summary);
+            System.out.printf("Report of %s generated in %d ms%n", file, (System.nanoTime() - started) / 1_000_000);
+        }
+    }
+
+    // Everything the summary needs, accumulated from any subset of the blocks
+    public static final class Stats implements BinaryLogReader.RecordVisitor {
+        private final Map<String, RequestStats> requests = new HashMap<>();
+        private final Map<String, Long> errors = new HashMap<>();
+        private final RequestStats total = new RequestStats();
+        private long firstStart = Long.MAX_VALUE;
+        private long lastEnd = Long.MIN_VALUE;
+        private long usersStarted;
+
+        @Override
+        public void request(String group, String name, long start, long end, boolean ok, String message) {
+            String key = group.isEmpty() ? name : group + " / " + name;
+            long responseTime = end - start;
+            requests.computeIfAbsent(key, k -> new RequestStats()).record(responseTime, ok);
+            total.record(responseTime, ok);
+            if (!ok) {
+                errors.merge(message, 1L, Long::sum);
+            }
+            firstStart = Math.min(firstStart, start);
+            lastEnd = Math.max(lastEnd, end);
+        }
+
+        @Override
+        public void user(String scenario, boolean start, long timestamp) {
+            if (start) {
+                usersStarted++;
+            }
+        }
+
+        void merge(Stats other) {
+            other.requests.forEach((key, stats) -> requests.computeIfAbsent(key, k -> new RequestStats()).merge(stats));
+            other.errors.forEach((message, count) -> errors.merge(message, count, Long::sum));
+            total.merge(other.total);
+            firstStart = Math.min(firstStart, other.firstStart);
+            lastEnd = Math.max(lastEnd, other.lastEnd);
+            usersStarted += other.usersStarted;
+        }
+
+        public long requestCount() {
+            return total.histogram.getTotalCount();
+        }
+
+        public String summary() {
+            double seconds = Math.max(1, lastEnd - firstStart) / 1000.0;
+            StringBuilder out = new StringBuilder();
+            out.append(String.format("%-40s %10s %8s %7s %7s %7s %7s %7s %7s %9s%n",
+                    "Request (ms)", "count", "KO", "min", "p50", "p75", "p95", "p99", "max", "req/s"));
+            new TreeMap<>(requests).forEach((name, stats) -> stats.appendTo(out, name, seconds));
+            total.appendTo(out, "All requests", seconds);
+            if (usersStarted > 0) {
+                out.append(String.format("%d users started%n", usersStarted));
+            }
+            if (!errors.isEmpty()) {
+                out.append(String.format("Errors:%n"));
+                errors.entrySet().stream()
+                        .sorted(Map.Entry.<String, Long>comparingByValue().reversed())
+                        .forEach(error -> out.append(String.format("%10d  %s%n", error.getValue(), error.getKey())));
+            }
+            return out.toString();
+        }
+    }
+
+    private static final class RequestStats {
+        private final Histogram histogram = new Histogram(3); // Auto-resizing, so any response time fits
+        private long ko;
+
+        void record(long responseTime, boolean ok) {
+            histogram.recordValue(Math.max(0, responseTime));
+            if (!ok) {
+                ko++;
+            }
+        }
+
+        void merge(RequestStats other) {
+            histogram.add(other.histogram);
+            ko += other.ko;
+        }
+
+        void appendTo(StringBuilder out, String name, double seconds) {
+            out.append(String.format("%-40s %10d %8d %7d %7d %7d %7d %7d %7d %9.1f%n", name,
+                    histogram.getTotalCount(), ko, histogram.getMinValue(),
+                    histogram.getValueAtPercentile(50), histogram.getValueAtPercentile(75),
+                    histogram.getValueAtPercentile(95), histogram.getValueAtPercentile(99),
+                    histogram.getMaxValue(), histogram.getTotalCount() / seconds));
+        }
+    }
+}
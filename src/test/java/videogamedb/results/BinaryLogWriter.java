@@ -0,0 +1,266 @@
+package videogamedb.results;
+
+import com.github.luben.zstd.Zstd;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+// An append-only binary alternative to Gatling's text simulation.log, for long high-rate runs where the text log grows
+// to gigabytes. Records are varint encoded, request names, scenarios and error messages are interned to small ids, and
+// records are gathered into blocks of about BLOCK_SIZE bytes that are zstd compressed on a background thread.
+//
+// File layout:
+//   header  MAGIC, simulation class and simulation id (writeUTF), run start (long)
+//   blocks  uncompressed length (int), compressed length (int), zstd frame
+// Every block starts with its base timestamp (long), the latest timestamp seen before it, and carries the definitions
+// of the ids it uses, so blocks can be decoded independently and in parallel (see BinaryLogReader). Inside a block each record is a tag byte followed by:
+//   DEFINE       id, length, UTF-8 bytes
+//   REQUEST_OK   group id, name id, start - base (zigzag), end - start
+//   REQUEST_KO   as REQUEST_OK, then message id
+//   USER_START   scenario id, timestamp - base (zigzag)
+//   USER_END     scenario id, timestamp - base (zigzag)
+// Id 0 is always the empty string, e.g. for requests outside a group.
+//
+// Appending is synchronized and allocation free once every name has been interned; intern names up front (when the
+// chain is built) so recording a response is just a few varints into the current block.
+public final class BinaryLogWriter implements AutoCloseable {
+
+    static final byte[] MAGIC = "VGDBLOG1".getBytes(StandardCharsets.US_ASCII);
+    static final byte DEFINE = 0;
+    static final byte REQUEST_OK = 1;
+    static final byte REQUEST_KO = 2;
+    static final byte USER_START = 3;
+    static final byte USER_END = 4;
+
+    static final int BLOCK_SIZE = 256 * 1024;
+    private static final int MAX_RECORD = 64; // Largest record without a definition: a tag byte and five varints
+    private static final int BUFFERS = 4; // Blocks being filled or compressed at once, beyond which appending waits
+
+    private final FileChannel channel;
+    private final int level;
+    private final ExecutorService compressor;
+    private final BlockingQueue<byte[]> freeBuffers = new ArrayBlockingQueue<>(BUFFERS);
+    private volatile IOException failure;
+
+    private final Map<String, Integer> ids = new HashMap<>();
+    private String[] strings = new String[64];
+    private int[] definedInBlock = new int[64]; // Block number each id was last defined in
+    private int blockNumber = 1;
+
+    private byte[] block;
+    private int position;
+    private long base;
+    private long latest;
+    private byte[] compressed = new byte[0]; // Only used by the compressor thread
+
+    public BinaryLogWriter(Path file, String simulationClass, String simulationId, long runStart, int level) throws IOException {
+        this.level = level;
+        if (file.getParent() != null) {
+            Files.createDirectories(file.getParent());
+        }
+        channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+
+        ByteArrayOutputStream header = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(header);
+        out.write(MAGIC);
+        out.writeUTF(simulationClass);
+        out.writeUTF(simulationId);
+        out.writeLong(runStart);
+        writeFully(ByteBuffer.wrap(header.toByteArray()));
+
+        compressor = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "binary-log-compressor");
+            thread.setDaemon(true);
+            return thread;
+        });
+        for (int i = 1; i < BUFFERS; i++) {
+            freeBuffers.add(new byte[BLOCK_SIZE + MAX_RECORD]);
+        }
+        strings[0] = "";
+        ids.put("", 0);
+        block = new byte[BLOCK_SIZE + MAX_RECORD];
+        latest = runStart;
+        startBlock();
+    }
+
+    // The id of a request name, group, scenario or message, to pass to the append methods
+    public synchronized int intern(String string) {
+        Integer id = ids.get(string);
+        if (id != null) {
+            return id;
+        }
+        int newId = ids.size();
+        if (newId == strings.length) {
+            strings = Arrays.copyOf(strings, newId * 2);
+            definedInBlock = Arrays.copyOf(definedInBlock, newId * 2);
+        }
+        strings[newId] = string;
+        ids.put(string, newId);
+        return newId;
+    }
+
+    public synchronized void request(int groupId, int nameId, long start, long end, boolean ok, int messageId) throws IOException {
+        define(groupId);
+        define(nameId);
+        if (!ok) {
+            define(messageId);
+        }
+        block[position++] = ok ? REQUEST_OK : REQUEST_KO;
+        writeVarInt(groupId);
+        writeVarInt(nameId);
+        writeVarLong(zigzag(start - base));
+        writeVarLong(Math.max(0, end - start));
+        if (!ok) {
+            writeVarInt(messageId);
+        }
+        latest = Math.max(latest, start);
+        flushIfFull();
+    }
+
+    public synchronized void user(int scenarioId, boolean start, long timestamp) throws IOException {
+        define(scenarioId);
+        block[position++] = start ? USER_START : USER_END;
+        writeVarInt(scenarioId);
+        writeVarLong(zigzag(timestamp - base));
+        latest = Math.max(latest, timestamp);
+        flushIfFull();
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        try {
+            if (position > Long.BYTES) {
+                submit();
+            }
+            compressor.shutdown();
+            if (!compressor.awaitTermination(1, TimeUnit.MINUTES)) {
+                throw new IOException("Timed out compressing the last blocks");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while compressing the last blocks", e);
+        } finally {
+            channel.close();
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    private void define(int id) {
+        if (definedInBlock[id] == blockNumber || id == 0) {
+            return;
+        }
+        definedInBlock[id] = blockNumber;
+        byte[] utf8 = strings[id].getBytes(StandardCharsets.UTF_8);
+        ensureCapacity(1 + 10 + utf8.length + MAX_RECORD);
+        block[position++] = DEFINE;
+        writeVarInt(id);
+        writeVarInt(utf8.length);
+        System.arraycopy(utf8, 0, block, position, utf8.length);
+        position += utf8.length;
+    }
+
+    private void flushIfFull() throws IOException {
+        if (position >= BLOCK_SIZE) {
+            submit();
+            startBlock();
+        }
+    }
+
+    private void startBlock() {
+        base = latest; // Keeps the deltas in this block small
+        position = 0;
+        for (int i = 0; i < Long.BYTES; i++) {
+            block[position++] = (byte) (base >>> (56 - 8 * i));
+        }
+    }
+
+    // Hands the current block to the compressor and takes a free buffer for the next one, waiting if the compressor is
+    // behind so a run that records faster than we can compress slows down instead of running out of memory
+    private void submit() throws IOException {
+        if (failure != null) {
+            throw failure;
+        }
+        byte[] full = block;
+        int length = position;
+        compressor.execute(() -> compressAndWrite(full, length));
+        try {
+            block = freeBuffers.take();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for the compressor", e);
+        }
+        blockNumber++;
+    }
+
+    private void compressAndWrite(byte[] uncompressed, int length) {
+        try {
+            int bound = (int) Zstd.compressBound(length);
+            if (compressed.length < bound) {
+                compressed = new byte[bound];
+            }
+            long size = Zstd.compressByteArray(compressed, 0, compressed.length, uncompressed, 0, length, level);
+            if (Zstd.isError(size)) {
+                throw new IOException("zstd compression failed: " + Zstd.getErrorName(size));
+            }
+            writeFully(ByteBuffer.allocate(2 * Integer.BYTES).putInt(length).putInt((int) size).flip());
+            writeFully(ByteBuffer.wrap(compressed, 0, (int) size));
+        } catch (IOException e) {
+            failure = e;
+        } finally {
+            if (uncompressed.length == BLOCK_SIZE + MAX_RECORD) {
+                freeBuffers.offer(uncompressed);
+            } else {
+                freeBuffers.offer(new byte[BLOCK_SIZE + MAX_RECORD]); // Don't keep a block grown for a long definition
+            }
+        }
+    }
+
+    private void writeFully(ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    private void ensureCapacity(int extra) {
+        if (position + extra > block.length) {
+            block = Arrays.copyOf(block, Math.max(block.length * 2, position + extra));
+        }
+    }
+
+    private void writeVarInt(int value) {
+        while ((value & ~0x7F) != 0) {
+            block[position++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        block[position++] = (byte) value;
+    }
+
+    private void writeVarLong(long value) {
+        while ((value & ~0x7FL) != 0) {
+            block[position++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        block[position++] = (byte) value;
+    }
+
+    private static long zigzag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+}
@@ -0,0 +1,83 @@
+package videogamedb.results;
+
+import io.gatling.javaapi.http.HttpRequestActionBuilder;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Paths;
+
+import static io.gatling.javaapi.core.CoreDsl.responseTimeInMillis;
+
+// Records every response of a request into a binary results log while the simulation runs, for runs too long or too
+// fast for the text simulation.log; drop file from gatling.data.writers in gatling.conf to stop writing that one.
+// Wrap a request with BinaryResults.capture("Request name", http("Request name")...). The name is interned once here,
+// so recording a response is one synchronized append of a few varints (see BinaryLogWriter).
+// A response is KO when its status isn't 2xx or 304, like Gatling's default status check; failures of the request's
+// other checks, and requests that got no response at all, aren't visible from here.
+//
+// Runtime parameters:
+//   BINARY_LOG        file to write, e.g. target/gatling/results.vgl (default unset, which records nothing)
+//   BINARY_LOG_LEVEL  zstd compression level (default 3)
+public final class BinaryResults {
+
+    private static final String FILE = System.getProperty("BINARY_LOG");
+    private static final int LEVEL = Integer.getInteger("BINARY_LOG_LEVEL", 3);
+    private static final String KO_MESSAGE = "status.find.in([200, 209], 304), found ";
+
+    private static final class Holder {
+        private static final BinaryLogWriter SHARED = open();
+    }
+
+    private BinaryResults() {
+    }
+
+    public static boolean enabled() {
+        return FILE != null;
+    }
+
+    public static HttpRequestActionBuilder capture(String requestName, HttpRequestActionBuilder request) {
+        if (!enabled()) {
+            return request;
+        }
+        BinaryLogWriter writer = Holder.SHARED;
+        int nameId = writer.intern(requestName);
+        int[] koMessageIds = new int[600]; // Per status code, interned on first use
+        // The condition sees every response and records it; it never holds, so the check it guards never runs
+        return request.checkIf((response, session) -> {
+            int status = response.status().code();
+            boolean ok = (status >= 200 && status <= 209) || status == 304;
+            int messageId = 0;
+            if (!ok) {
+                int index = Math.min(Math.max(status, 0), koMessageIds.length - 1);
+                messageId = koMessageIds[index];
+                if (messageId == 0) {
+                    messageId = writer.intern(KO_MESSAGE + status);
+                    koMessageIds[index] = messageId;
+                }
+            }
+            try {
+                writer.request(0, nameId, response.startTimestamp(), response.endTimestamp(), ok, messageId);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            return false;
+        }).then(responseTimeInMillis());
+    }
+
+    private static BinaryLogWriter open() {
+        try {
+            BinaryLogWriter writer = new BinaryLogWriter(Paths.get(FILE), System.getProperty("gatling.simulationClass", "unknown"),
+                    "live", System.currentTimeMillis(), LEVEL);
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                try {
+                    writer.close();
+                } catch (IOException e) {
+                    System.err.println("Binary results log: failed to close " + FILE + ": " + e);
+                }
+            }, "binary-log-shutdown"));
+            return writer;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to open the binary results log " + FILE, e);
+        }
+    }
+}
@@ -0,0 +1,227 @@
+package videogamedb.results;
+
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.HistogramIterationValue;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.stream.Stream;
+
+// Compares a run against the stored baseline of its simulation and exits with 1 when it regressed, so a build can
+// fail on it. The regression profile runs it right after gatling:test (see pom.xml):
+//   mvn -Pregression verify -Dgatling.simulationClass=videogamedb.simulation.VideoGameDbSimulations -DSTUB=true
+//   mvn test-compile exec:java -Dexec.mainClass=videogamedb.results.RegressionGate -Dexec.classpathScope=test -Dexec.args="target/gatling/<run>"
+// The run is a simulation.log (gzipped or not), a binary results log, or a Gatling results folder; by default the
+// last run in target/gatling. The first time a simulation is seen its run becomes its baseline, <class>.json in
+// REGRESSION_BASELINE_DIR.
+//
+// Each request name is compared on three things, with a statistical test rather than a threshold on one percentile,
+// so that noise doesn't fail the build and a real shift does even when no single percentile crosses a line:
+//   response times  one-sided Mann-Whitney U test on the two histograms, which looks at the whole distribution. It's a
+//                   regression when significant and the probability that a response of the run is slower than one of
+//                   the baseline (the U statistic's effect size) is at least REGRESSION_EFFECT
+//   error rate      one-sided two-proportion z-test, a regression when significant and up by REGRESSION_ERROR_POINTS
+//   throughput      one-sided test of two Poisson rates, a regression when significant and down by REGRESSION_THROUGHPUT_PERCENT
+// Throughput only compares runs of the same load: the gate is given the load parameters of the run (LOAD_PARAMETERS,
+// which the regression profile passes on from the build's), they are stored in the baseline, and when they differ
+// from the baseline's the throughput test is skipped and says so. Names with fewer than REGRESSION_MIN_COUNT requests
+// in either run, or in only one of them, are listed but never fail the gate.
+//
+// Runtime parameters:
+//   REGRESSION_BASELINE_DIR         folder of the baselines, one per simulation class (default baselines)
+//   REGRESSION_UPDATE_BASELINE      true to store this run as the new baseline after comparing, and pass (default false)
+//   REGRESSION_ALPHA                significance level of the tests (default 0.01)
+//   REGRESSION_EFFECT               smallest effect size that counts, 0.5 is none, 0.56 small, 0.64 medium (default 0.56)
+//   REGRESSION_ERROR_POINTS         percentage points the error rate may rise (default 1)
+//   REGRESSION_THROUGHPUT_PERCENT   how much throughput may drop (default 10)
+//   REGRESSION_MIN_COUNT            requests a name needs in both runs to be tested (default 20)
+//   PROFILE, USERS, TARGET_RPS, STEP_USERS, THINK_TIME_MS   those the run was started with, unset for the defaults
+public final class RegressionGate {
+
+    static final List<String> LOAD_PARAMETERS = List.of("PROFILE", "USERS", "TARGET_RPS", "STEP_USERS", "THINK_TIME_MS");
+
+    private static final Path RESULTS = Path.of("target", "gatling");
+    private static final double ALPHA = Double.parseDouble(System.getProperty("REGRESSION_ALPHA", "0.01"));
+    private static final double EFFECT = Double.parseDouble(System.getProperty("REGRESSION_EFFECT", "0.56"));
+    private static final double ERROR_POINTS = Double.parseDouble(System.getProperty("REGRESSION_ERROR_POINTS", "1"));
+    private static final double THROUGHPUT_PERCENT = Double.parseDouble(System.getProperty("REGRESSION_THROUGHPUT_PERCENT", "10"));
+    private static final long MIN_COUNT = Long.getLong("REGRESSION_MIN_COUNT", 20);
+
+    private RegressionGate() {
+    }
+
+    public static void main(String[] args) throws IOException {
+        Path log = log(args.length > 0 ? Path.of(args[0]) : lastRun());
+        long started = System.nanoTime();
+        RunStatistics current = RunStatistics.read(log);
+        current.load(load());
+        System.out.printf("Read %d requests of %s from %s in %d ms%n", current.records(), current.simulationClass(), log,
+                (System.nanoTime() - started) / 1_000_000);
+
+        Path baselinePath = Path.of(System.getProperty("REGRESSION_BASELINE_DIR", "baselines"), current.simulationClass() + ".json");
+        if (!Files.exists(baselinePath)) {
+            Baseline.write(current, baselinePath);
+            System.out.printf("No baseline yet, this run is now the baseline: %s%n", baselinePath);
+            return;
+        }
+
+        int regressions = compare(Baseline.read(baselinePath), current);
+        if (Boolean.getBoolean("REGRESSION_UPDATE_BASELINE")) {
+            Baseline.write(current, baselinePath);
+            System.out.printf("Baseline updated: %s%n", baselinePath);
+            return;
+        }
+        if (regressions > 0) {
+            System.out.printf("%d request name(s) regressed against %s%n", regressions, baselinePath);
+            System.exit(1);
+        }
+        System.out.println("No regressions");
+    }
+
+    // The load parameters this gate was started with, those the run had; an empty one is unset
+    private static Map<String, String> load() {
+        Map<String, String> load = new TreeMap<>();
+        for (String name : LOAD_PARAMETERS) {
+            String value = System.getProperty(name, "").trim();
+            if (!value.isEmpty()) {
+                load.put(name, value);
+            }
+        }
+        return load;
+    }
+
+    // Prints the comparison of every request name, and returns how many regressed
+    static int compare(RunStatistics baseline, RunStatistics current) {
+        int regressions = 0;
+        boolean sameLoad = baseline.load() != null && baseline.load().equals(current.load());
+        if (!sameLoad) {
+            System.out.printf("Throughput not compared, the load differs: baseline %s, run %s%n",
+                    baseline.load() == null ? "unknown" : baseline.load(), current.load());
+        }
+        System.out.printf("%-36s %9s %9s %6s %6s %6s %6s %9s %9s %6s %6s %8s %8s  %s%n", "Request (ms)", "count", "now",
+                "p50", "now", "p95", "now", "P(slower)", "p", "KO%", "now", "req/s", "now", "");
+        Map<String, RunStatistics.Request> names = new TreeMap<>(baseline.requests());
+        current.requests().forEach(names::putIfAbsent);
+        for (String name : names.keySet()) {
+            RunStatistics.Request before = baseline.requests().get(name);
+            RunStatistics.Request now = current.requests().get(name);
+            if (before == null || now == null) {
+                System.out.printf("%-36s  only in the %s%n", name, before == null ? "run" : "baseline");
+                continue;
+            }
+            double[] latency = mannWhitney(before.histogram, now.histogram);
+            double errorP = twoProportions(before.ko, before.count(), now.ko, now.count());
+            double throughputP = poissonRates(before.count(), before.durationSeconds(), now.count(), now.durationSeconds());
+
+            StringBuilder verdict = new StringBuilder();
+            if (before.count() < MIN_COUNT || now.count() < MIN_COUNT) {
+                verdict.append("too few requests");
+            } else {
+                if (latency[1] < ALPHA && latency[0] >= EFFECT) {
+                    verdict.append("SLOWER ");
+                }
+                if (errorP < ALPHA && (now.errorRate() - before.errorRate()) * 100 > ERROR_POINTS) {
+                    verdict.append("MORE ERRORS ");
+                }
+                if (sameLoad && throughputP < ALPHA && 100 * (before.throughput() - now.throughput()) / before.throughput() > THROUGHPUT_PERCENT) {
+                    verdict.append("LESS THROUGHPUT ");
+                }
+                if (verdict.length() > 0) {
+                    regressions++;
+                }
+            }
+            System.out.printf("%-36s %9d %9d %6d %6d %6d %6d %9.3f %9.2g %6.2f %6.2f %8.1f %8.1f  %s%n", name,
+                    before.count(), now.count(),
+                    before.histogram.getValueAtPercentile(50), now.histogram.getValueAtPercentile(50),
+                    before.histogram.getValueAtPercentile(95), now.histogram.getValueAtPercentile(95),
+                    latency[0], latency[1], 100 * before.errorRate(), 100 * now.errorRate(),
+                    before.throughput(), now.throughput(), verdict.toString().trim());
+        }
+        return regressions;
+    }
+
+    // One-sided Mann-Whitney U test that the run's response times are larger than the baseline's, straight from the
+    // histograms: values in the same bucket are ties and share their mean rank. Returns the effect size, the
+    // probability that a response of the run is slower than one of the baseline (ties counting half), and the p-value.
+    static double[] mannWhitney(Histogram baseline, Histogram current) {
+        TreeMap<Long, long[]> buckets = new TreeMap<>();
+        for (HistogramIterationValue value : baseline.recordedValues()) {
+            buckets.computeIfAbsent(value.getValueIteratedTo(), v -> new long[2])[0] += value.getCountAtValueIteratedTo();
+        }
+        for (HistogramIterationValue value : current.recordedValues()) {
+            buckets.computeIfAbsent(value.getValueIteratedTo(), v -> new long[2])[1] += value.getCountAtValueIteratedTo();
+        }
+        double n1 = baseline.getTotalCount();
+        double n2 = current.getTotalCount();
+        if (n1 == 0 || n2 == 0) {
+            return new double[]{0.5, 1};
+        }
+        double rank = 0; // Of the last value of the previous bucket
+        double rankSum = 0; // Of the run's values
+        double ties = 0;
+        for (long[] counts : buckets.values()) {
+            double t = counts[0] + counts[1];
+            rankSum += counts[1] * (rank + (t + 1) / 2);
+            ties += t * t * t - t;
+            rank += t;
+        }
+        double n = n1 + n2;
+        double u = rankSum - n2 * (n2 + 1) / 2;
+        double variance = n1 * n2 / 12 * ((n + 1) - ties / (n * (n - 1)));
+        double p = variance <= 0 ? (u > n1 * n2 / 2 ? 0 : 1) : upperTail((u - n1 * n2 / 2 - 0.5) / Math.sqrt(variance));
+        return new double[]{u / (n1 * n2), p};
+    }
+
+    // One-sided p-value that the run's error rate is higher than the baseline's
+    static double twoProportions(long errors1, long count1, long errors2, long count2) {
+        if (count1 == 0 || count2 == 0) {
+            return 1;
+        }
+        double pooled = (double) (errors1 + errors2) / (count1 + count2);
+        double error = Math.sqrt(pooled * (1 - pooled) * (1.0 / count1 + 1.0 / count2));
+        double difference = (double) errors2 / count2 - (double) errors1 / count1;
+        return error == 0 ? (difference > 0 ? 0 : 1) : upperTail(difference / error);
+    }
+
+    // One-sided p-value that the run's request rate is lower than the baseline's, the counts being Poisson
+    static double poissonRates(long count1, double seconds1, long count2, double seconds2) {
+        double error = Math.sqrt(count1 / (seconds1 * seconds1) + count2 / (seconds2 * seconds2));
+        double difference = count1 / seconds1 - count2 / seconds2;
+        return error == 0 ? 1 : upperTail(difference / error);
+    }
+
+    // P(Z > z) of the standard normal distribution, from the complementary error function, to about 1e-7
+    static double upperTail(double z) {
+        double x = Math.abs(z) / Math.sqrt(2);
+        double t = 1 / (1 + 0.5 * x);
+        double erfc = t * Math.exp(-x * x - 1.26551223 + t * (1.00002368 + t * (0.37409196 + t * (0.09678418
+                + t * (-0.18628806 + t * (0.27886807 + t * (-1.13520398 + t * (1.48851587
+                + t * (-0.82215223 + t * 0.17087277)))))))));
+        return z >= 0 ? erfc / 2 : 1 - erfc / 2;
+    }
+
+    // The folder of the last run: the one Gatling's lastRun.txt names, else the newest
+    private static Path lastRun() throws IOException {
+        Path lastRun = RESULTS.resolve("lastRun.txt");
+        if (Files.exists(lastRun)) {
+            String name = new String(Files.readAllBytes(lastRun), StandardCharsets.UTF_8).trim();
+            if (!name.isEmpty() && Files.isDirectory(RESULTS.resolve(name))) {
+                return RESULTS.resolve(name);
+            }
+        }
+        try (Stream<Path> runs = Files.list(RESULTS)) {
+            return runs.filter(run -> Files.exists(run.resolve("simulation.log")))
+                    .max((a, b) -> Long.compare(a.toFile().lastModified(), b.toFile().lastModified()))
+                    .orElseThrow(() -> new IllegalArgumentException("No run in " + RESULTS));
+        }
+    }
+
+    private static Path log(Path path) {
+        return Files.isDirectory(path) ? path.resolve("simulation.log") : path;
+    }
+}
@@ -0,0 +1,174 @@
+package videogamedb.results;
+
+import org.HdrHistogram.Histogram;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.zip.GZIPInputStream;
+
+// What RegressionGate compares of a run, per request name: the response times in an HdrHistogram, the OK and KO counts
+// and the time between the first request's start and the last one's end. It's built in one streaming pass over a text
+// simulation.log (gzipped too, by its .gz name) or a binary results log, so memory depends on the number of request
+// names, not on the size of the log: a multi-GB log is read with the same few MB of heap as a small one.
+public final class RunStatistics implements BinaryLogReader.RecordVisitor {
+
+    private static final int READ_BUFFER = 1 << 20;
+
+    private final Map<String, Request> requests = new TreeMap<>();
+    private String simulationClass = "";
+    private Map<String, String> load; // The load parameters the run was started with, null when they aren't known
+    private long records;
+
+    public static RunStatistics read(Path log) throws IOException {
+        String name = log.getFileName().toString();
+        return name.endsWith(".vgl") ? readBinaryLog(log) : readSimulationLog(log);
+    }
+
+    public static RunStatistics readSimulationLog(Path log) throws IOException {
+        RunStatistics statistics = new RunStatistics();
+        InputStream in = Files.newInputStream(log);
+        if (log.getFileName().toString().endsWith(".gz")) {
+            in = new GZIPInputStream(in, READ_BUFFER);
+        }
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8), READ_BUFFER)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.startsWith("REQUEST\t")) {
+                    statistics.requestLine(line);
+                } else if (line.startsWith("RUN\t")) {
+                    int end = line.indexOf('\t', 4);
+                    statistics.simulationClass = line.substring(4, end < 0 ? line.length() : end);
+                }
+            }
+        }
+        return statistics;
+    }
+
+    public static RunStatistics readBinaryLog(Path log) throws IOException {
+        RunStatistics statistics = new RunStatistics();
+        try (BinaryLogReader reader = new BinaryLogReader(log)) {
+            statistics.simulationClass = reader.simulationClass();
+            for (int block = 0; block < reader.blockCount(); block++) {
+                reader.readBlock(block, statistics);
+            }
+        }
+        return statistics;
+    }
+
+    // REQUEST, group, name, start, end, OK|KO, message: parsed in place, only the name becomes a String
+    private void requestLine(String line) {
+        int groupEnd = line.indexOf('\t', 8);
+        int nameEnd = line.indexOf('\t', groupEnd + 1);
+        int startEnd = line.indexOf('\t', nameEnd + 1);
+        int endEnd = line.indexOf('\t', startEnd + 1);
+        if (groupEnd < 0 || nameEnd < 0 || startEnd < 0 || endEnd < 0) {
+            return; // A line cut short, e.g. by a crashed run
+        }
+        String name = groupEnd == 8 ? line.substring(groupEnd + 1, nameEnd)
+                : line.substring(8, groupEnd) + " / " + line.substring(groupEnd + 1, nameEnd);
+        boolean ok = line.startsWith("OK", endEnd + 1);
+        record(name, parseLong(line, nameEnd + 1, startEnd), parseLong(line, startEnd + 1, endEnd), ok);
+    }
+
+    @Override
+    public void request(String group, String name, long start, long end, boolean ok, String message) {
+        record(group.isEmpty() ? name : group + " / " + name, start, end, ok);
+    }
+
+    @Override
+    public void user(String scenario, boolean start, long timestamp) {
+    }
+
+    private void record(String name, long start, long end, boolean ok) {
+        requests.computeIfAbsent(name, newName -> new Request(new Histogram(3), 0, 0, Long.MAX_VALUE, Long.MIN_VALUE))
+                .record(start, end, ok);
+        records++;
+    }
+
+    private static long parseLong(String line, int from, int to) {
+        long value = 0;
+        for (int i = from; i < to; i++) {
+            value = value * 10 + (line.charAt(i) - '0');
+        }
+        return value;
+    }
+
+    public String simulationClass() {
+        return simulationClass;
+    }
+
+    public long records() {
+        return records;
+    }
+
+    public Map<String, Request> requests() {
+        return requests;
+    }
+
+    public Map<String, String> load() {
+        return load;
+    }
+
+    void load(Map<String, String> load) {
+        this.load = load;
+    }
+
+    void add(String name, Request request) {
+        requests.put(name, request);
+    }
+
+    void simulationClass(String simulationClass) {
+        this.simulationClass = simulationClass;
+    }
+
+    // The statistics of one request name
+    public static final class Request {
+        final Histogram histogram; // Response times in ms, auto-resizing so any value fits
+        long ok;
+        long ko;
+        long firstStart;
+        long lastEnd;
+
+        Request(Histogram histogram, long ok, long ko, long firstStart, long lastEnd) {
+            this.histogram = histogram;
+            this.ok = ok;
+            this.ko = ko;
+            this.firstStart = firstStart;
+            this.lastEnd = lastEnd;
+        }
+
+        void record(long start, long end, boolean ok) {
+            histogram.recordValue(Math.max(0, end - start));
+            if (ok) {
+                this.ok++;
+            } else {
+                ko++;
+            }
+            firstStart = Math.min(firstStart, start);
+            lastEnd = Math.max(lastEnd, end);
+        }
+
+        public long count() {
+            return ok + ko;
+        }
+
+        public double errorRate() {
+            return count() == 0 ? 0 : (double) ko / count();
+        }
+
+        public double durationSeconds() {
+            return Math.max(1, lastEnd - firstStart) / 1000.0;
+        }
+
+        public double throughput() {
+            return count() / durationSeconds();
+        }
+    }
+}
@@ -0,0 +1,85 @@
+package videogamedb.results;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+// Converts a Gatling text simulation.log into a binary results log (see BinaryLogWriter) in one streaming pass, e.g.
+// to archive a long run compactly or to report it with BinaryLogReport. REQUEST and USER records are kept; GROUP and
+// ERROR records are not part of the binary format and are skipped.
+//   mvn -B test-compile exec:java -Dexec.mainClass=videogamedb.results.SimulationLogConverter -Dexec.classpathScope=test -Dexec.args="<simulation.log> <out.vgl>"
+public final class SimulationLogConverter {
+
+    private static final int LEVEL = Integer.getInteger("BINARY_LOG_LEVEL", 3);
+
+    private SimulationLogConverter() {
+    }
+
+    public static long convert(Path simulationLog, Path binaryLog, int level) throws IOException {
+        long records = 0;
+        try (BufferedReader in = Files.newBufferedReader(simulationLog, StandardCharsets.UTF_8)) {
+            String[] run = split(in.readLine(), 6);
+            if (!"RUN".equals(run[0])) {
+                throw new IOException(simulationLog + " doesn't start with a RUN record");
+            }
+            String[] fields = new String[7];
+            try (BinaryLogWriter writer = new BinaryLogWriter(binaryLog, run[1], run[2], Long.parseLong(run[3]), level)) {
+                String line;
+                while ((line = in.readLine()) != null) {
+                    if (line.startsWith("REQUEST\t")) {
+                        split(line, fields); // REQUEST, group, name, start, end, OK|KO, message
+                        boolean ok = "OK".equals(fields[5]);
+                        writer.request(writer.intern(fields[1]), writer.intern(fields[2]),
+                                Long.parseLong(fields[3]), Long.parseLong(fields[4]), ok, ok ? 0 : writer.intern(fields[6]));
+                        records++;
+                    } else if (line.startsWith("USER\t")) {
+                        split(line, fields); // USER, scenario, START|END, timestamp
+                        writer.user(writer.intern(fields[1]), "START".equals(fields[2]), Long.parseLong(fields[3]));
+                        records++;
+                    }
+                }
+            }
+        }
+        return records;
+    }
+
+    // Splits a tab separated line into fields without a regex, missing trailing fields being empty
+    private static void split(String line, String[] fields) {
+        int from = 0;
+        for (int i = 0; i < fields.length; i++) {
+            if (from > line.length()) {
+                fields[i] = "";
+                continue;
+            }
+            int tab = line.indexOf('\t', from);
+            int to = tab < 0 || i == fields.length - 1 ? line.length() : tab;
+            fields[i] = line.substring(from, to);
+            from = to + 1;
+        }
+    }
+
+    private static String[] split(String line, int count) throws IOException {
+        if (line == null) {
+            throw new IOException("Empty simulation.log");
+        }
+        String[] fields = new String[count];
+        split(line, fields);
+        return fields;
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length != 2) {
+            throw new IllegalArgumentException("Usage: SimulationLogConverter <simulation.log> <binary results log>");
+        }
+        Path in = Paths.get(args[0]);
+        Path out = Paths.get(args[1]);
+        long started = System.nanoTime();
+        long records = convert(in, out, LEVEL);
+        System.out.printf("Converted %d records in %d ms: %d bytes of text to %d bytes (%.1f and %.1f bytes per record)%n",
+                records, (System.nanoTime() - started) / 1_000_000, Files.size(in), Files.size(out),
+                (double) Files.size(in) / records, (double) Files.size(out) / records);
+    }
+}
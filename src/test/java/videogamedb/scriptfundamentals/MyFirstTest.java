@@ -2,6 +2,7 @@ package videogamedb.scriptfundamentals;
 
 import io.gatling.javaapi.core.*;
 import io.gatling.javaapi.http.*;
+import videogamedb.stub.VideoGameDbStub;
 
 import static io.gatling.javaapi.core.CoreDsl.*;
 import static io.gatling.javaapi.http.HttpDsl.*;
@@ -9,7 +10,7 @@ import static io.gatling.javaapi.http.HttpDsl.*;
 public class MyFirstTest extends Simulation{
     // Http Configuration
     private HttpProtocolBuilder httpProtocol = http
-            .baseUrl("https://videogamedb.uk/api")
+            .baseUrl(VideoGameDbStub.baseUrl("https://videogamedb.uk/api"))
             .acceptHeader("application/json");
 
     // Scenario Definition
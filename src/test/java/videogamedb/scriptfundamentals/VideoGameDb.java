@@ -2,6 +2,8 @@ package videogamedb.scriptfundamentals;
 
 import io.gatling.javaapi.core.*;
 import io.gatling.javaapi.http.*;
+import videogamedb.auth.TokenCache;
+import videogamedb.stub.VideoGameDbStub;
 
 import static io.gatling.javaapi.core.CoreDsl.*;
 import static io.gatling.javaapi.http.HttpDsl.*;
@@ -9,18 +11,11 @@ import static io.gatling.javaapi.http.HttpDsl.*;
 public class VideoGameDb extends Simulation{
 
     private HttpProtocolBuilder httpProtocol = http
-            .baseUrl("https://videogamedb.uk/api")
+            .baseUrl(VideoGameDbStub.baseUrl("https://videogamedb.uk/api"))
             .acceptHeader("application/json")
             .contentTypeHeader("application/json");
 
-    private static ChainBuilder authenticate =
-            exec(http("Authenticate")
-                    .post("/authenticate")
-                    .body(StringBody("{\n" +
-                            " \"password\": \"admin\",\n" +
-                            " \"username\": \"admin\"\n" +
-                            "}"))
-                    .check(jsonPath("$.token").saveAs("jwtToken"))); // Save the token from the response as a variable called "jwtToken"
+    private static ChainBuilder authenticate = TokenCache.authenticate(); // Put a shared, cached token in the session variable "jwtToken"
 
     private static ChainBuilder createNewGame =
             exec(http("Create new game")
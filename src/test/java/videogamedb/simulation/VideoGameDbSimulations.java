@@ -2,50 +2,74 @@ package videogamedb.simulation;
 
 import io.gatling.javaapi.core.*;
 import io.gatling.javaapi.http.*;
+import videogamedb.cache.ClientCache;
+import videogamedb.metrics.LiveMetrics;
+import videogamedb.distributed.StartBarrier;
+import videogamedb.metrics.Pacing;
+import videogamedb.profiles.LoadProfile;
+import videogamedb.stub.VideoGameDbStub;
+import videogamedb.tuning.TuningProfile;
+
+import java.time.Duration;
 
 import static io.gatling.javaapi.core.CoreDsl.*;
 import static io.gatling.javaapi.http.HttpDsl.*;
 
 public class VideoGameDbSimulations extends Simulation {
 
-    private HttpProtocolBuilder httpProtocol = http
-            .baseUrl("https://videogamedb.uk/api")
-            .acceptHeader("application/json");
+    private static final String BASE_URL = VideoGameDbStub.baseUrl("https://videogamedb.uk/api");
+    private static final TuningProfile TUNING = TuningProfile.fromSystemProperties(); // Connection and event loop settings, see TuningProfile
+    private static final ClientCache CLIENT_CACHE = ClientCache.shared(); // Conditional GETs with -DCLIENT_CACHE=user or shared, see ClientCache
+
+    private HttpProtocolBuilder httpProtocol = Pacing.applyTo(CLIENT_CACHE.applyTo(TUNING.applyTo(http
+            .baseUrl(BASE_URL)
+            .acceptHeader("application/json"), BASE_URL + "/videogame/1")));
 
     private static final int USER_COUNT = Integer.parseInt(System.getProperty("USERS", "5")); // Store the system property USERS in a variable, and have it default to 5
     private static final int RAMP_DURATION = Integer.parseInt(System.getProperty("RAMP_DURATION","10")); // Store the system property RAMP_DURATION in a variable, and have it default to 10
     private static final int TEST_DURATION = Integer.parseInt(System.getProperty("TEST_DURATION","20")); // Store the system property TEST_DURATION in a variable, and have it default to 20
+    private static final Duration THINK_TIME = Duration.ofMillis(Long.getLong("THINK_TIME_MS", 5000)); // Time between calls, set THINK_TIME_MS to 0 for as many requests as the users can send
+    private static final LoadProfile LOAD_PROFILE = LoadProfile.fromSystemProperties(); // Pick the injection profile with the system property PROFILE, defaulting to a ramp of USERS
 
     @Override
     public void before(){
         System.out.printf("Running test with %d users%n", USER_COUNT);
         System.out.printf("Ramping users over %d seconds%n", RAMP_DURATION);
-        System.out.printf("Total test duration: %d seconds", TEST_DURATION);
+        System.out.printf("Total test duration: %d seconds%n", TEST_DURATION);
+        System.out.printf("Using the %s%n", LOAD_PROFILE.describe());
+        System.out.printf("Using the %s%n", TUNING.describe());
+        System.out.printf("Using the %s%n", CLIENT_CACHE.describe());
+        StartBarrier.await(); // Only waits when this is one injector of a distributed run
     }
 
     private static ChainBuilder getAllVideoGames =
-            exec(http("Get all video games")
-                    .get("/videogame"));
+            exec(CLIENT_CACHE.cached("/videogame", http("Get all video games")
+                    .get("/videogame")
+                    .check(LiveMetrics.latency("Get all video games")))); // Stream this request's response times while the test runs
 
     private static ChainBuilder getSpecificGame =
-            exec(http("Get specific video game")
-                    .get("/videogame/2"));
+            exec(CLIENT_CACHE.cached("/videogame/2", http("Get specific video game")
+                    .get("/videogame/2")
+                    .check(LiveMetrics.latency("Get specific video game"))));
 
     private ScenarioBuilder scn = scenario("Video game db - Section 7 code")
-            .forever().on(
-            exec(getAllVideoGames)
-            .pause(5)
-            .exec(getSpecificGame)
-            .pause(5)
-            .exec(getAllVideoGames)
+            .forever().on( // With -DPACING=true the 5 second pauses become a fixed schedule, see Pacing
+            exec(Pacing.step("Get all video games", Duration.ZERO, getAllVideoGames))
+            .exec(Pacing.step("Get specific video game", THINK_TIME, getSpecificGame))
+            .exec(Pacing.step("Get all video games", THINK_TIME, getAllVideoGames))
             );
 
     {
-        setUp(
-                scn.injectOpen(
-                        nothingFor(5), // Do nothing for 5 seconds
-                        rampUsers(USER_COUNT).during(RAMP_DURATION)
-                ).protocols(httpProtocol)
-        ).maxDuration(TEST_DURATION);
+        LOAD_PROFILE.applyTo(setUp(
+                LOAD_PROFILE.inject(scn).protocols(httpProtocol)
+        )); // Adds any throttling and the maximum duration the profile needs
+    }
+
+    @Override
+    public void after(){
+        System.out.println(CLIENT_CACHE.report());
+        if (Pacing.ENABLED) {
+            System.out.println(Pacing.report()); // Raw and coordinated-omission-corrected response times side by side
+        }
     }
 }
@@ -0,0 +1,78 @@
+package videogamedb.stub;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+// A response latency distribution for the stub, parsed from the STUB_LATENCY system property:
+//   none                    no added latency (default)
+//   fixed:<ms>              always <ms>
+//   uniform:<min>:<max>     uniformly between <min> and <max> ms
+//   exponential:<mean>      exponentially distributed with the given mean, i.e. a Poisson process
+//   lognormal:<median>:<s>  log-normal with the given median in ms and shape s, a long tail like real servers
+public abstract class Latency {
+
+    public static final Latency NONE = new Latency() {
+        @Override
+        public long sampleMicros() {
+            return 0;
+        }
+    };
+
+    // Returns the delay to add before responding, in microseconds
+    public abstract long sampleMicros();
+
+    public static Latency parse(String spec) {
+        String[] parts = spec.trim().split(":");
+        try {
+            switch (parts[0].toLowerCase()) {
+                case "none":
+                    return NONE;
+                case "fixed": {
+                    long micros = toMicros(Double.parseDouble(parts[1]));
+                    return new Latency() {
+                        @Override
+                        public long sampleMicros() {
+                            return micros;
+                        }
+                    };
+                }
+                case "uniform": {
+                    long min = toMicros(Double.parseDouble(parts[1]));
+                    long max = toMicros(Double.parseDouble(parts[2]));
+                    return new Latency() {
+                        @Override
+                        public long sampleMicros() {
+                            return min == max ? min : ThreadLocalRandom.current().nextLong(min, max + 1);
+                        }
+                    };
+                }
+                case "exponential": {
+                    double mean = Double.parseDouble(parts[1]) * 1000;
+                    return new Latency() {
+                        @Override
+                        public long sampleMicros() {
+                            return (long) (-mean * Math.log(1 - ThreadLocalRandom.current().nextDouble()));
+                        }
+                    };
+                }
+                case "lognormal": {
+                    double mu = Math.log(Double.parseDouble(parts[1]) * 1000);
+                    double sigma = Double.parseDouble(parts[2]);
+                    return new Latency() {
+                        @Override
+                        public long sampleMicros() {
+                            return (long) Math.exp(mu + sigma * ThreadLocalRandom.current().nextGaussian());
+                        }
+                    };
+                }
+                default:
+                    throw new IllegalArgumentException("Unknown latency distribution: " + spec);
+            }
+        } catch (ArrayIndexOutOfBoundsException | NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid latency distribution: " + spec, e);
+        }
+    }
+
+    private static long toMicros(double millis) {
+        return (long) (millis * 1000);
+    }
+}
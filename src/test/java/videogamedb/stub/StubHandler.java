@@ -0,0 +1,235 @@
+package videogamedb.stub;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import io.netty.buffer.ByteBufInputStream;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.ChannelFutureListener;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.SimpleChannelInboundHandler;
+import io.netty.handler.codec.DateFormatter;
+import io.netty.handler.codec.http.*;
+import io.netty.util.AsciiString;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Date;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Routes requests to the stubbed Video Game DB endpoints. Responses to reads are encoded once up front; writes keep the
+// created games in a bounded map so a GET after a POST returns what was created. Reads carry an ETag, and the data
+// that never changes a Last-Modified, and are answered with a 304 when the client already has them.
+final class StubHandler extends SimpleChannelInboundHandler<FullHttpRequest> {
+
+    private static final AsciiString APPLICATION_JSON = AsciiString.cached("application/json");
+    private static final AsciiString TEXT_PLAIN = AsciiString.cached("text/plain");
+    private static final int MAX_CREATED_GAMES = 100_000;
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+    private static final byte[] INJECTED_FAILURE = "{\"error\":\"Injected failure\"}".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] DELETED = "Video game deleted".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] FORBIDDEN = "Forbidden".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] NOT_FOUND = "Not found".getBytes(StandardCharsets.UTF_8);
+
+    private final Routes routes;
+
+    StubHandler(Routes routes) {
+        this.routes = routes;
+    }
+
+    // State shared by every connection
+    static final class Routes {
+        private final Latency latency;
+        private final double errorRate;
+        private final long tokenTtlSeconds;
+        private final byte[] allGames;
+        private final String allGamesETag;
+        private final String lastModified = DateFormatter.format(new Date()); // Of the seed data, when the stub started
+        private final byte[][] seededGames;
+        private final ConcurrentHashMap<Integer, byte[]> createdGames = new ConcurrentHashMap<>();
+        private final AtomicInteger nextId;
+
+        Routes(Latency latency, double errorRate, long tokenTtlSeconds) {
+            this.latency = latency;
+            this.errorRate = errorRate;
+            this.tokenTtlSeconds = tokenTtlSeconds;
+            try (InputStream in = StubHandler.class.getClassLoader().getResourceAsStream("data/gameJsonFile.json")) {
+                JsonNode games = MAPPER.readTree(in);
+                allGames = MAPPER.writeValueAsBytes(games);
+                allGamesETag = etag(allGames);
+                seededGames = new byte[games.size() + 1][];
+                for (JsonNode game : games) {
+                    int id = game.get("id").asInt();
+                    if (id > 0 && id < seededGames.length) {
+                        seededGames[id] = MAPPER.writeValueAsBytes(game);
+                    }
+                }
+                nextId = new AtomicInteger(seededGames.length);
+            } catch (IOException e) {
+                throw new UncheckedIOException("Failed to load the stub's seed data", e);
+            }
+        }
+
+        private byte[] game(int id) {
+            byte[] created = createdGames.get(id);
+            if (created != null) {
+                return created;
+            }
+            return id > 0 && id < seededGames.length ? seededGames[id] : null;
+        }
+
+        private String token() {
+            long now = System.currentTimeMillis() / 1000;
+            Base64.Encoder encoder = Base64.getUrlEncoder().withoutPadding();
+            String header = encoder.encodeToString("{\"alg\":\"HS256\"}".getBytes(StandardCharsets.UTF_8));
+            String payload = encoder.encodeToString(("{\"sub\":\"admin\",\"iat\":" + now + ",\"exp\":" + (now + tokenTtlSeconds) + "}").getBytes(StandardCharsets.UTF_8));
+            byte[] signature = new byte[32];
+            ThreadLocalRandom.current().nextBytes(signature);
+            return header + "." + payload + "." + encoder.encodeToString(signature);
+        }
+    }
+
+    @Override
+    protected void channelRead0(ChannelHandlerContext ctx, FullHttpRequest request) {
+        boolean keepAlive = HttpUtil.isKeepAlive(request);
+        FullHttpResponse response = ThreadLocalRandom.current().nextDouble() < routes.errorRate
+                ? response(HttpResponseStatus.INTERNAL_SERVER_ERROR, APPLICATION_JSON, INJECTED_FAILURE)
+                : route(request);
+
+        long delay = routes.latency.sampleMicros();
+        if (delay > 0) {
+            ctx.executor().schedule(() -> write(ctx, response, keepAlive), delay, TimeUnit.MICROSECONDS);
+        } else {
+            write(ctx, response, keepAlive);
+        }
+    }
+
+    private FullHttpResponse route(FullHttpRequest request) {
+        String path = new QueryStringDecoder(request.uri()).path();
+        if (path.startsWith("/api/")) {
+            path = path.substring(4);
+        }
+        HttpMethod method = request.method();
+
+        if (path.equals("/authenticate") && method.equals(HttpMethod.POST)) {
+            return response(HttpResponseStatus.OK, APPLICATION_JSON, ("{\"token\":\"" + routes.token() + "\"}").getBytes(StandardCharsets.UTF_8));
+        }
+        if (path.equals("/videogame")) {
+            if (method.equals(HttpMethod.GET)) {
+                return cacheable(request, routes.allGames, routes.allGamesETag, routes.lastModified);
+            }
+            if (method.equals(HttpMethod.POST)) {
+                return authorized(request) ? save(request, routes.nextId.getAndIncrement()) : forbidden();
+            }
+        }
+        if (path.startsWith("/videogame/")) {
+            int id;
+            try {
+                id = Integer.parseInt(path.substring("/videogame/".length()));
+            } catch (NumberFormatException e) {
+                return response(HttpResponseStatus.BAD_REQUEST, TEXT_PLAIN, "Invalid video game id".getBytes(StandardCharsets.UTF_8));
+            }
+            if (method.equals(HttpMethod.GET)) {
+                byte[] game = routes.game(id);
+                if (game == null) {
+                    return notFound();
+                }
+                boolean seeded = !routes.createdGames.containsKey(id); // Created games change, they only get an ETag
+                return cacheable(request, game, etag(game), seeded ? routes.lastModified : null);
+            }
+            if (method.equals(HttpMethod.PUT)) {
+                return authorized(request) ? save(request, id) : forbidden();
+            }
+            if (method.equals(HttpMethod.DELETE)) {
+                if (!authorized(request)) {
+                    return forbidden();
+                }
+                routes.createdGames.remove(id);
+                return response(HttpResponseStatus.OK, TEXT_PLAIN, DELETED);
+            }
+        }
+        return notFound();
+    }
+
+    // Stores the posted game under the given id and echoes it back with that id, like the real API
+    private FullHttpResponse save(FullHttpRequest request, int id) {
+        try {
+            JsonNode body = MAPPER.readTree((InputStream) new ByteBufInputStream(request.content()));
+            if (!(body instanceof ObjectNode)) {
+                return response(HttpResponseStatus.BAD_REQUEST, TEXT_PLAIN, "Expected a JSON object".getBytes(StandardCharsets.UTF_8));
+            }
+            ((ObjectNode) body).put("id", id);
+            byte[] game = MAPPER.writeValueAsBytes(body);
+            if (routes.createdGames.size() < MAX_CREATED_GAMES || routes.createdGames.containsKey(id)) {
+                routes.createdGames.put(id, game);
+            }
+            return response(HttpResponseStatus.OK, APPLICATION_JSON, game);
+        } catch (IOException e) {
+            return response(HttpResponseStatus.BAD_REQUEST, TEXT_PLAIN, "Invalid JSON".getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
+    // A 304 without a body when the client's copy is current: If-None-Match takes precedence over If-Modified-Since
+    private static FullHttpResponse cacheable(FullHttpRequest request, byte[] body, String etag, String lastModified) {
+        HttpHeaders headers = request.headers();
+        String ifNoneMatch = headers.get(HttpHeaderNames.IF_NONE_MATCH);
+        boolean notModified = ifNoneMatch != null
+                ? ifNoneMatch.equals(etag) || ifNoneMatch.equals("*")
+                : lastModified != null && lastModified.equals(headers.get(HttpHeaderNames.IF_MODIFIED_SINCE));
+        FullHttpResponse response = notModified
+                ? response(HttpResponseStatus.NOT_MODIFIED, APPLICATION_JSON, new byte[0])
+                : response(HttpResponseStatus.OK, APPLICATION_JSON, body);
+        response.headers().set(HttpHeaderNames.ETAG, etag);
+        if (lastModified != null) {
+            response.headers().set(HttpHeaderNames.LAST_MODIFIED, lastModified);
+        }
+        return response;
+    }
+
+    private static String etag(byte[] body) {
+        return "\"" + Integer.toHexString(Arrays.hashCode(body)) + "-" + Integer.toHexString(body.length) + "\"";
+    }
+
+    private static boolean authorized(FullHttpRequest request) {
+        String authorization = request.headers().get(HttpHeaderNames.AUTHORIZATION);
+        return authorization != null && authorization.startsWith("Bearer ") && authorization.length() > "Bearer ".length();
+    }
+
+    private static FullHttpResponse forbidden() {
+        return response(HttpResponseStatus.FORBIDDEN, TEXT_PLAIN, FORBIDDEN);
+    }
+
+    private static FullHttpResponse notFound() {
+        return response(HttpResponseStatus.NOT_FOUND, TEXT_PLAIN, NOT_FOUND);
+    }
+
+    private static FullHttpResponse response(HttpResponseStatus status, AsciiString contentType, byte[] body) {
+        FullHttpResponse response = new DefaultFullHttpResponse(HttpVersion.HTTP_1_1, status, Unpooled.wrappedBuffer(body));
+        response.headers()
+                .set(HttpHeaderNames.CONTENT_TYPE, contentType)
+                .setInt(HttpHeaderNames.CONTENT_LENGTH, body.length);
+        return response;
+    }
+
+    private static void write(ChannelHandlerContext ctx, FullHttpResponse response, boolean keepAlive) {
+        if (keepAlive) {
+            response.headers().set(HttpHeaderNames.CONNECTION, HttpHeaderValues.KEEP_ALIVE);
+            ctx.writeAndFlush(response, ctx.voidPromise());
+        } else {
+            response.headers().set(HttpHeaderNames.CONNECTION, HttpHeaderValues.CLOSE);
+            ctx.writeAndFlush(response).addListener(ChannelFutureListener.CLOSE);
+        }
+    }
+
+    @Override
+    public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause) {
+        ctx.close();
+    }
+}
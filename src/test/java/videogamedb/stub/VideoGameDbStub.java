@@ -0,0 +1,134 @@
+package videogamedb.stub;
+
+import io.netty.bootstrap.ServerBootstrap;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelInitializer;
+import io.netty.channel.ChannelOption;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.ServerChannel;
+import io.netty.channel.epoll.Epoll;
+import io.netty.channel.epoll.EpollEventLoopGroup;
+import io.netty.channel.epoll.EpollServerSocketChannel;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.socket.SocketChannel;
+import io.netty.channel.socket.nio.NioServerSocketChannel;
+import io.netty.handler.codec.http.HttpObjectAggregator;
+import io.netty.handler.codec.http.HttpServerCodec;
+import io.netty.handler.ssl.SslContext;
+import io.netty.util.concurrent.DefaultThreadFactory;
+
+import java.net.InetSocketAddress;
+import java.net.URI;
+
+// An in-process stub of the Video Game DB API (/api/authenticate and the /api/videogame CRUD endpoints) built on Netty,
+// so simulations can run without network access and we can measure how fast the load generator itself can go.
+// It answers from pre-encoded responses on the event loop and never blocks, so it comfortably outruns Gatling on the
+// same machine.
+//
+// Simulations opt in with -DSTUB=true, alongside USERS/RAMP_DURATION/TEST_DURATION:
+//   STUB             true to start the stub in the test JVM and point the simulation at it (default false)
+//   STUB_PORT        port to listen on (default 8089)
+//   STUB_LATENCY     latency distribution added to every response, see Latency (default none)
+//   STUB_ERROR_RATE  fraction of requests answered with a 500, between 0 and 1 (default 0)
+//   STUB_TOKEN_TTL   lifetime of the issued JWTs in seconds (default 3600)
+//   STUB_HOST        use a stub already running on this host and STUB_PORT instead of starting one, e.g. one shared by
+//                    several injector JVMs (default unset)
+//
+// It can also be run on its own, e.g. for injectors running in other JVMs, with its main method.
+public final class VideoGameDbStub implements AutoCloseable {
+
+    public static final boolean ENABLED = Boolean.parseBoolean(System.getProperty("STUB", "false"));
+    private static final int PORT = Integer.parseInt(System.getProperty("STUB_PORT", "8089"));
+    private static final String LATENCY = System.getProperty("STUB_LATENCY", "none");
+    private static final double ERROR_RATE = Double.parseDouble(System.getProperty("STUB_ERROR_RATE", "0"));
+    private static final long TOKEN_TTL = Long.parseLong(System.getProperty("STUB_TOKEN_TTL", "3600"));
+    private static final String HOST = System.getProperty("STUB_HOST");
+
+    private final EventLoopGroup group;
+    private final Channel channel;
+    private final int port;
+
+    // The stub shared by every simulation in this JVM, started the first time one asks for it
+    private static final class Holder {
+        private static final VideoGameDbStub SHARED = start(PORT, Latency.parse(LATENCY), ERROR_RATE, TOKEN_TTL);
+    }
+
+    // Returns the base URL a simulation should use: the real one, or the same path on the local stub when STUB=true
+    public static String baseUrl(String realBaseUrl) {
+        if (!ENABLED) {
+            return realBaseUrl;
+        }
+        String path = URI.create(realBaseUrl).getPath();
+        if (HOST != null) {
+            return "http://" + HOST + ":" + PORT + (path == null ? "" : path);
+        }
+        return "http://127.0.0.1:" + Holder.SHARED.port() + (path == null ? "" : path);
+    }
+
+    public static VideoGameDbStub start(int port, Latency latency, double errorRate, long tokenTtlSeconds) {
+        return start(port, latency, errorRate, tokenTtlSeconds, null);
+    }
+
+    // Serving HTTPS with the given context instead, for benchmarks that need TLS (see CaptureProxySimulation)
+    public static VideoGameDbStub start(int port, Latency latency, double errorRate, long tokenTtlSeconds, SslContext tls) {
+        boolean epoll = Epoll.isAvailable();
+        DefaultThreadFactory threadFactory = new DefaultThreadFactory("videogamedb-stub", true); // Daemon, so the stub never keeps the JVM alive
+        EventLoopGroup group = epoll ? new EpollEventLoopGroup(0, threadFactory) : new NioEventLoopGroup(0, threadFactory);
+        Class<? extends ServerChannel> channelClass = epoll ? EpollServerSocketChannel.class : NioServerSocketChannel.class;
+        StubHandler.Routes routes = new StubHandler.Routes(latency, errorRate, tokenTtlSeconds);
+
+        try {
+            Channel channel = new ServerBootstrap()
+                    .group(group)
+                    .channel(channelClass)
+                    .option(ChannelOption.SO_BACKLOG, 4096)
+                    .option(ChannelOption.SO_REUSEADDR, true)
+                    .childOption(ChannelOption.TCP_NODELAY, true)
+                    .childHandler(new ChannelInitializer<SocketChannel>() {
+                        @Override
+                        protected void initChannel(SocketChannel ch) {
+                            if (tls != null) {
+                                ch.pipeline().addLast(tls.newHandler(ch.alloc()));
+                            }
+                            ch.pipeline()
+                                    .addLast(new HttpServerCodec())
+                                    .addLast(new HttpObjectAggregator(1024 * 1024))
+                                    .addLast(new StubHandler(routes));
+                        }
+                    })
+                    .bind(port)
+                    .sync()
+                    .channel();
+            return new VideoGameDbStub(group, channel);
+        } catch (InterruptedException e) {
+            group.shutdownGracefully();
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while starting the stub", e);
+        } catch (RuntimeException e) {
+            group.shutdownGracefully();
+            throw e;
+        }
+    }
+
+    private VideoGameDbStub(EventLoopGroup group, Channel channel) {
+        this.group = group;
+        this.channel = channel;
+        this.port = ((InetSocketAddress) channel.localAddress()).getPort();
+    }
+
+    public int port() {
+        return port;
+    }
+
+    @Override
+    public void close() {
+        channel.close().syncUninterruptibly();
+        group.shutdownGracefully().syncUninterruptibly();
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        VideoGameDbStub stub = start(PORT, Latency.parse(LATENCY), ERROR_RATE, TOKEN_TTL);
+        System.out.printf("Video Game DB stub listening on http://127.0.0.1:%d/api%n", stub.port());
+        stub.channel.closeFuture().sync();
+    }
+}
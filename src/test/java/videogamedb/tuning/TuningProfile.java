@@ -0,0 +1,105 @@
+package videogamedb.tuning;
+
+import io.gatling.javaapi.http.HttpProtocolBuilder;
+
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.stream.Collectors;
+
+// Named sets of event loop, socket and connection pool settings, picked with -DTUNING=<profile>.
+// A profile has two halves:
+//   - protocol settings, applied per simulation by applyTo() on its HttpProtocolBuilder: whether the users share one
+//     connection pool or each keep their own, HTTP/2, caching and warm-up;
+//   - engine settings, in src/test/resources/tuning/<profile>.conf: how long idle keep-alive connections are kept, the
+//     per user HTTP cache and Netty's thread local buffers. Gatling reads them once, when it starts, so they are picked
+//     by the gatling.conf.file the JVM is started with: the pom does it for mvn gatling:test, Engine for runs from
+//     the IDE and TuningMatrix for the benchmark runs.
+// Native transport, the pooled allocator and tcpNoDelay are Gatling's defaults, so no profile sets them; what tells
+// the profiles apart most is the pool sharing.
+//
+//   default      Gatling's defaults: every user has its own keep-alive connections, like a browser
+//   max-rps      every user shares one connection pool, no HTTP cache, no warm-up: the least work per request
+//   max-users    shared pool with HTTP/2 multiplexing, no per user HTTP cache, idle connections closed sooner: the
+//                least memory and fewest sockets per user
+//   low-latency  each user's own connections kept open through think times of up to 5 minutes, HTTP/2 and a warm-up
+//                request to the system under test, so no measured request pays for a connect, a handshake or a cold JIT
+//
+// Native transport is epoll on Linux; the Netty in Gatling 3.8 has no io_uring transport, so there is no profile
+// for it. HTTP/2 is negotiated with ALPN over TLS, so it changes nothing against the plain HTTP stub.
+// Individual engine settings can still be overridden with -Dgatling.<path>=<value>, which wins over any .conf file,
+// e.g. -Dgatling.netty.useNativeTransport=false to compare with Java NIO.
+//
+// Runtime parameters:
+//   TUNING  default, max-rps, max-users or low-latency (default default)
+public enum TuningProfile {
+
+    DEFAULT,
+    MAX_RPS,
+    MAX_USERS,
+    LOW_LATENCY;
+
+    public static final String CONF_FILE_PROPERTY = "gatling.conf.file";
+
+    public static TuningProfile fromSystemProperties() {
+        return parse(System.getProperty("TUNING", "default"));
+    }
+
+    public static TuningProfile parse(String name) {
+        try {
+            return valueOf(name.trim().toUpperCase(Locale.ROOT).replace('-', '_'));
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Unknown tuning profile " + name + ", expected one of "
+                    + Arrays.stream(values()).map(TuningProfile::id).collect(Collectors.joining(", ")), e);
+        }
+    }
+
+    // The name used on the command line and for the .conf file, e.g. max-rps
+    public String id() {
+        return name().toLowerCase(Locale.ROOT).replace('_', '-');
+    }
+
+    // The classpath resource holding the profile's engine settings, for -Dgatling.conf.file
+    public String configFile() {
+        return "tuning/" + id() + ".conf";
+    }
+
+    // Sets the engine settings of the profile for a Gatling started later in this JVM, unless a file is already set
+    public void selectConfigFile() {
+        if (System.getProperty(CONF_FILE_PROPERTY) == null) {
+            System.setProperty(CONF_FILE_PROPERTY, configFile());
+        }
+    }
+
+    // The engine settings can't be checked from the protocol, so say which file this JVM was started with
+    public String describe() {
+        String file = System.getProperty(CONF_FILE_PROPERTY, "gatling.conf");
+        return String.format("%s tuning profile, engine settings from %s%s", id(), file,
+                file.equals(configFile()) ? "" : " (not " + configFile() + ", start the JVM with TUNING to match)");
+    }
+
+    // warmUpUrl is a cheap request to the system under test, sent once before the simulation starts by low-latency
+    public HttpProtocolBuilder applyTo(HttpProtocolBuilder protocol, String warmUpUrl) {
+        switch (this) {
+            case MAX_RPS:
+                return protocol
+                        .shareConnections()
+                        .disableCaching()
+                        .disableAutoReferer()
+                        .disableWarmUp();
+            case MAX_USERS:
+                return protocol
+                        .shareConnections()
+                        .enableHttp2()
+                        .disableCaching()
+                        .disableAutoReferer()
+                        .disableWarmUp();
+            case LOW_LATENCY:
+                return protocol
+                        .enableHttp2()
+                        .warmUp(warmUpUrl);
+            case DEFAULT:
+            default:
+                return protocol;
+        }
+    }
+}
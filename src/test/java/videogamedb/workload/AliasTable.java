@@ -0,0 +1,81 @@
+package videogamedb.workload;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+// Walker's alias method (Vose's construction): samples index i with probability weights[i] / sum(weights) in
+// constant time, whatever the number of weights. Each column holds its own index up to a threshold and an alias above
+// it, so a sample is one random column and one biased coin, both taken from a single ThreadLocalRandom long.
+// A column's threshold and alias sit next to each other, so a sample from a table too large for the CPU caches is one
+// cache miss rather than two. Building it is O(n) and it never changes afterwards, so any number of threads can share one.
+final class AliasTable {
+
+    private final int[] columns; // Per column, the probability of keeping its own index scaled to [0, 2^31), then its alias
+    private final int size;
+
+    AliasTable(double[] weights) {
+        int n = weights.length;
+        if (n == 0) {
+            throw new IllegalArgumentException("An alias table needs at least one weight");
+        }
+        double sum = 0;
+        for (double weight : weights) {
+            if (!(weight >= 0) || Double.isInfinite(weight)) {
+                throw new IllegalArgumentException("Weights must be finite and not negative: " + weight);
+            }
+            sum += weight;
+        }
+        if (sum <= 0) {
+            throw new IllegalArgumentException("Weights must not all be 0");
+        }
+
+        size = n;
+        columns = new int[2 * n];
+        double[] scaled = new double[n];
+        int[] small = new int[n];
+        int[] large = new int[n];
+        int smallCount = 0;
+        int largeCount = 0;
+        for (int i = 0; i < n; i++) {
+            scaled[i] = weights[i] * n / sum;
+            if (scaled[i] < 1) {
+                small[smallCount++] = i;
+            } else {
+                large[largeCount++] = i;
+            }
+        }
+        while (smallCount > 0 && largeCount > 0) {
+            int less = small[--smallCount];
+            int more = large[--largeCount];
+            columns[2 * less] = (int) (scaled[less] * Integer.MAX_VALUE);
+            columns[2 * less + 1] = more;
+            scaled[more] = scaled[more] + scaled[less] - 1;
+            if (scaled[more] < 1) {
+                small[smallCount++] = more;
+            } else {
+                large[largeCount++] = more;
+            }
+        }
+        // What's left is full up to rounding errors
+        while (largeCount > 0) {
+            int full = large[--largeCount];
+            columns[2 * full] = Integer.MAX_VALUE;
+            columns[2 * full + 1] = full;
+        }
+        while (smallCount > 0) {
+            int full = small[--smallCount];
+            columns[2 * full] = Integer.MAX_VALUE;
+            columns[2 * full + 1] = full;
+        }
+    }
+
+    int size() {
+        return size;
+    }
+
+    int sample() {
+        long random = ThreadLocalRandom.current().nextLong();
+        int column = (int) (((random >>> 32) * size) >>> 32); // The high 32 bits scaled to [0, n)
+        int coin = (int) random & Integer.MAX_VALUE;
+        return coin < columns[2 * column] ? column : columns[2 * column + 1];
+    }
+}
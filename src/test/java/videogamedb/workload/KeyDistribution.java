@@ -0,0 +1,145 @@
+package videogamedb.workload;
+
+import io.gatling.javaapi.core.ChainBuilder;
+
+import java.util.Locale;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static io.gatling.javaapi.core.CoreDsl.exec;
+
+// Which game ids the virtual users read, chosen at runtime with KEY_DISTRIBUTION. Uniform ids hit every key of the
+// server's caches equally, real traffic doesn't:
+//   uniform  every id in 1..KEY_SPACE equally (default, what we always did)
+//   zipfian  id k with probability proportional to 1 / k^ZIPF_EXPONENT, so id 1 is the most read
+//   hotspot  HOTSPOT_ACCESSES of the reads go to the first HOTSPOT_KEYS of the ids, the rest to the others
+//   latest   zipfian over the KEY_SPACE most recently written ids, the newest the most read; writes are reported with
+//            written(), ids start from KEY_SPACE until there are any
+// Sampling is O(1) whatever the key space, through an AliasTable built once for zipfian and latest, and takes its
+// randomness from ThreadLocalRandom: next() never locks and allocates nothing, so any number of users can share the
+// distribution. The table takes 8 bytes per id.
+//
+// Runtime parameters:
+//   KEY_DISTRIBUTION  uniform, zipfian, hotspot or latest (default uniform)
+//   KEY_SPACE         number of distinct ids (default 10, the games the API starts with)
+//   ZIPF_EXPONENT     skew of zipfian and latest, 0 is uniform (default 0.99)
+//   HOTSPOT_KEYS      fraction of the ids that are hot (default 0.2)
+//   HOTSPOT_ACCESSES  fraction of the reads that go to the hot ids (default 0.8)
+public final class KeyDistribution {
+
+    public enum Shape {
+        UNIFORM, ZIPFIAN, HOTSPOT, LATEST
+    }
+
+    private final Shape shape;
+    private final int keySpace;
+    private final double exponent;
+    private final int hotKeys;
+    private final double hotAccesses;
+    private final AliasTable table; // Ranks for zipfian and latest, unused for uniform and hotspot
+    private final int hotThreshold; // hotAccesses scaled to [0, 2^31)
+    private final AtomicInteger latest;
+
+    private static final class Holder {
+        private static final KeyDistribution SHARED = fromSystemProperties();
+    }
+
+    public static KeyDistribution shared() {
+        return Holder.SHARED;
+    }
+
+    public static KeyDistribution fromSystemProperties() {
+        return new KeyDistribution(
+                Shape.valueOf(System.getProperty("KEY_DISTRIBUTION", "uniform").toUpperCase(Locale.ROOT)),
+                Integer.getInteger("KEY_SPACE", 10),
+                Double.parseDouble(System.getProperty("ZIPF_EXPONENT", "0.99")),
+                Double.parseDouble(System.getProperty("HOTSPOT_KEYS", "0.2")),
+                Double.parseDouble(System.getProperty("HOTSPOT_ACCESSES", "0.8")));
+    }
+
+    public KeyDistribution(Shape shape, int keySpace, double exponent, double hotKeyFraction, double hotAccesses) {
+        if (keySpace <= 0) {
+            throw new IllegalArgumentException("KEY_SPACE must be positive: " + keySpace);
+        }
+        if (hotKeyFraction <= 0 || hotKeyFraction > 1 || hotAccesses < 0 || hotAccesses > 1) {
+            throw new IllegalArgumentException("HOTSPOT_KEYS must be in (0, 1] and HOTSPOT_ACCESSES in [0, 1]");
+        }
+        this.shape = shape;
+        this.keySpace = keySpace;
+        this.exponent = exponent;
+        this.hotKeys = (int) Math.max(1, Math.min(keySpace, Math.round(keySpace * hotKeyFraction)));
+        this.hotAccesses = hotAccesses;
+        this.latest = new AtomicInteger(keySpace);
+        this.hotThreshold = (int) Math.round(hotAccesses * Integer.MAX_VALUE);
+        switch (shape) {
+            case ZIPFIAN:
+            case LATEST:
+                double[] weights = new double[keySpace];
+                for (int rank = 0; rank < keySpace; rank++) {
+                    weights[rank] = 1 / Math.pow(rank + 1, exponent);
+                }
+                table = new AliasTable(weights);
+                break;
+            default:
+                table = null;
+        }
+    }
+
+    public Shape shape() {
+        return shape;
+    }
+
+    // The next id to read, from 1 to KEY_SPACE, or among the KEY_SPACE latest written for latest
+    public int next() {
+        switch (shape) {
+            case ZIPFIAN:
+                return table.sample() + 1;
+            case LATEST:
+                return Math.max(1, latest.get() - table.sample());
+            case HOTSPOT: // Two outcomes need no table: one long gives the hot or cold coin and the id within them
+                long random = ThreadLocalRandom.current().nextLong();
+                int within = (int) random & Integer.MAX_VALUE;
+                if (hotKeys == keySpace || (int) (random >>> 33) < hotThreshold) {
+                    return (int) ((long) within * hotKeys >>> 31) + 1;
+                }
+                return hotKeys + (int) ((long) within * (keySpace - hotKeys) >>> 31) + 1;
+            default:
+                return ThreadLocalRandom.current().nextInt(keySpace) + 1;
+        }
+    }
+
+    // Tells the latest distribution an id was written, ids are expected to grow like the API's
+    public void written(int id) {
+        if (shape == Shape.LATEST && id > latest.get()) {
+            latest.accumulateAndGet(id, Math::max);
+        }
+    }
+
+    // Saves the next id in the session under attribute
+    public ChainBuilder pick(String attribute) {
+        return exec(session -> session.set(attribute, next()));
+    }
+
+    // Reports a written id saved in the session under attribute, see written()
+    public ChainBuilder recordWrite(String attribute) {
+        return exec(session -> {
+            if (shape == Shape.LATEST && session.contains(attribute)) {
+                written(session.getInt(attribute));
+            }
+            return session;
+        });
+    }
+
+    public String describe() {
+        switch (shape) {
+            case ZIPFIAN:
+                return String.format("zipfian key distribution over %d ids, exponent %.2f", keySpace, exponent);
+            case LATEST:
+                return String.format("latest key distribution over the %d latest written ids, exponent %.2f", keySpace, exponent);
+            case HOTSPOT:
+                return String.format("hotspot key distribution: %.0f%% of the reads to %d of %d ids", hotAccesses * 100, hotKeys, keySpace);
+            default:
+                return String.format("uniform key distribution over %d ids", keySpace);
+        }
+    }
+}
@@ -0,0 +1,74 @@
+package videogamedb.workload;
+
+import io.gatling.javaapi.core.ChainBuilder;
+import io.gatling.javaapi.core.Choice;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import static io.gatling.javaapi.core.CoreDsl.randomSwitch;
+
+// The percentages of each operation in a weighted mix, e.g. WORKLOAD_MIX=getAll=10,getGame=70,create=10,delete=10,
+// for scenarios that pick their next request at random rather than following a fixed journey. Each loop of the
+// scenario runs one operation, through Gatling's randomSwitch, so over a run the requests follow the percentages
+// however many users there are. The percentages must add up to 100; an operation left out is never run.
+public final class WorkloadMix {
+
+    private final Map<String, Double> percentages;
+
+    public static WorkloadMix fromSystemProperties(String defaultMix) {
+        return parse(System.getProperty("WORKLOAD_MIX", defaultMix));
+    }
+
+    public static WorkloadMix parse(String spec) {
+        Map<String, Double> percentages = new LinkedHashMap<>();
+        for (String part : spec.split(",")) {
+            String[] operation = part.split("=");
+            if (operation.length != 2) {
+                throw new IllegalArgumentException("Expected operation=percentage in WORKLOAD_MIX, got " + part);
+            }
+            double percentage = Double.parseDouble(operation[1].trim());
+            if (percentage < 0) {
+                throw new IllegalArgumentException("Negative percentage in WORKLOAD_MIX: " + part);
+            }
+            percentages.merge(operation[0].trim(), percentage, Double::sum);
+        }
+        double total = percentages.values().stream().mapToDouble(Double::doubleValue).sum();
+        if (Math.abs(total - 100) > 1e-6) {
+            throw new IllegalArgumentException("WORKLOAD_MIX percentages add up to " + total + ", not 100: " + spec);
+        }
+        return new WorkloadMix(percentages);
+    }
+
+    private WorkloadMix(Map<String, Double> percentages) {
+        this.percentages = percentages;
+    }
+
+    public Map<String, Double> percentages() {
+        return percentages;
+    }
+
+    // A chain running one of the operations, picked with the mix's percentages
+    public ChainBuilder pick(Map<String, ChainBuilder> operations) {
+        List<Choice.WithWeight> choices = new ArrayList<>();
+        for (Map.Entry<String, Double> entry : percentages.entrySet()) {
+            ChainBuilder operation = operations.get(entry.getKey());
+            if (operation == null) {
+                throw new IllegalArgumentException("Unknown operation " + entry.getKey() + " in WORKLOAD_MIX, expected one of " + operations.keySet());
+            }
+            if (entry.getValue() > 0) {
+                choices.add(Choice.withWeight(entry.getValue(), operation));
+            }
+        }
+        return randomSwitch().on(choices);
+    }
+
+    public String describe() {
+        return percentages.entrySet().stream()
+                .map(entry -> String.format("%s %.0f%%", entry.getKey(), entry.getValue()))
+                .collect(Collectors.joining(", ", "workload mix: ", ""));
+    }
+}
@@ -0,0 +1,129 @@
+package videogamedb.workload;
+
+import io.gatling.javaapi.core.*;
+import io.gatling.javaapi.http.*;
+import videogamedb.auth.TokenCache;
+import videogamedb.bodies.BodyTemplate;
+import videogamedb.cache.ClientCache;
+import videogamedb.checks.BodyChecks;
+import videogamedb.correlation.GameIdPool;
+import videogamedb.distributed.StartBarrier;
+import videogamedb.failures.FailureLogAppender;
+import videogamedb.feeders.GameFeeder;
+import videogamedb.feeders.LazyFeeder;
+import videogamedb.metrics.LiveMetrics;
+import videogamedb.profiles.LoadProfile;
+import videogamedb.stub.VideoGameDbStub;
+import videogamedb.tuning.TuningProfile;
+
+import java.time.Duration;
+import java.util.Iterator;
+import java.util.Map;
+
+import static io.gatling.javaapi.core.CoreDsl.*;
+import static io.gatling.javaapi.http.HttpDsl.*;
+
+// A weighted mix of reads and writes instead of VideoGameDbFullTest's fixed journey: every loop each user runs one
+// operation picked with the WORKLOAD_MIX percentages, and the games read follow KEY_DISTRIBUTION, so the server's
+// caches see a skewed, production-like load:
+//   getAll   GET /videogame
+//   getGame  GET /videogame/{id}, the id from the key distribution; ids that don't exist (any more) are a 404, which
+//            is a miss for the server's cache too, so it isn't a failure
+//   create   POST /videogame, the new id goes into the GameIdPool and to the latest distribution
+//   delete   DELETE /videogame/{id} of a game any user created, skipped while there isn't one
+// With CLIENT_CACHE the reads are conditional once a user (or all of them) has a copy, see ClientCache.
+//   mvn gatling:test -Dgatling.simulationClass=videogamedb.workload.WorkloadMixSimulation -DSTUB=true -DKEY_DISTRIBUTION=zipfian
+//
+// Runtime parameters (see also LoadProfile, KeyDistribution and WorkloadMix):
+//   WORKLOAD_MIX   operation=percentage list adding up to 100 (default getAll=10,getGame=70,create=10,delete=10)
+//   THINK_TIME_MS  pause after each operation (default 1000)
+public class WorkloadMixSimulation extends Simulation {
+
+    private static final String BASE_URL = VideoGameDbStub.baseUrl("https://videogamedb.uk/api");
+    private static final TuningProfile TUNING = TuningProfile.fromSystemProperties(); // Connection and event loop settings, see TuningProfile
+    private static final ClientCache CLIENT_CACHE = ClientCache.shared(); // Conditional GETs with -DCLIENT_CACHE=user or shared
+
+    private HttpProtocolBuilder httpProtocol = CLIENT_CACHE.applyTo(TUNING.applyTo(http
+            .baseUrl(BASE_URL)
+            .acceptHeader("application/json")
+            .contentTypeHeader("application/json"), BASE_URL + "/videogame/1"));
+
+    private static final Duration THINK_TIME = Duration.ofMillis(Long.getLong("THINK_TIME_MS", 1000));
+    private static final LoadProfile LOAD_PROFILE = LoadProfile.fromSystemProperties();
+    private static final WorkloadMix MIX = WorkloadMix.fromSystemProperties("getAll=10,getGame=70,create=10,delete=10");
+    private static final KeyDistribution KEYS = KeyDistribution.shared();
+
+    private static Iterator<Map<String, Object>> customFeeder = LazyFeeder.of(GameFeeder::shared);
+    private static GameIdPool gameIdPool = new GameIdPool(256); // Games waiting to be deleted, few slots so a delete finds one in its few probes
+
+    @Override
+    public void before() {
+        System.out.printf("Using the %s%n", LOAD_PROFILE.describe());
+        System.out.printf("Using the %s%n", TUNING.describe());
+        System.out.printf("Using the %s%n", MIX.describe());
+        System.out.printf("Using the %s%n", KEYS.describe());
+        System.out.printf("Using the %s%n", CLIENT_CACHE.describe());
+        StartBarrier.await(); // Only waits when this is one injector of a distributed run
+    }
+
+    private static ChainBuilder getAllVideoGames =
+            exec(CLIENT_CACHE.cached("/videogame", http("Get all video games")
+                    .get("/videogame")
+                    .check(LiveMetrics.latency("Get all video games"))));
+
+    private static ChainBuilder getSpecificGame =
+            exec(KEYS.pick("readGameId"))
+                    .exec(CLIENT_CACHE.cached(session -> "/videogame/" + session.get("readGameId"), http("Get specific video game")
+                            .get("/videogame/#{readGameId}")
+                            .check(status().in(200, 304, 404))
+                            .check(LiveMetrics.latency("Get specific video game")), 404));
+
+    private static ChainBuilder createNewGame =
+            feed(customFeeder) // Its gameId is the one sent, the one created is saved apart so a failed create offers none
+                    .exec(session -> session.remove("createdGameId"))
+                    .exec(http("Create New Game")
+                            .post("/videogame")
+                            .header("Authorization", "Bearer #{jwtToken}")
+                            .body(BodyTemplate.of("bodies/newGameTemplate.json").body()).asJson()
+                            .check(BodyChecks.jsonInt("id").saveAs("createdGameId"))
+                            .check(LiveMetrics.latency("Create New Game")))
+                    .doIf(session -> session.contains("createdGameId")).then(
+                            exec(gameIdPool.offer("createdGameId")) // For any user's delete
+                                    .exec(KEYS.recordWrite("createdGameId")));
+
+    private static ChainBuilder deleteGame =
+            exec(session -> {
+                int id = gameIdPool.poll(); // Taken out of the pool, so no one else deletes it too
+                return id == 0 ? session.remove("deleteGameId") : session.set("deleteGameId", id);
+            })
+                    .doIf(session -> session.contains("deleteGameId")).then(
+                            exec(http("Delete video game")
+                                    .delete("/videogame/#{deleteGameId}")
+                                    .header("Authorization", "Bearer #{jwtToken}")
+                                    .check(BodyChecks.bodyIs("Video game deleted"))
+                                    .check(LiveMetrics.latency("Delete video game"))));
+
+    private static ScenarioBuilder scn = scenario("Video Game Db - workload mix")
+            .forever().on(
+                    exec(TokenCache.authenticate()) // Put a shared, cached token in the session variable "jwtToken", refreshed when it's due
+                            .exec(MIX.pick(Map.of(
+                                    "getAll", getAllVideoGames,
+                                    "getGame", getSpecificGame,
+                                    "create", createNewGame,
+                                    "delete", deleteGame)))
+                            .pause(THINK_TIME)
+            );
+
+    {
+        LOAD_PROFILE.applyTo(setUp(
+                LOAD_PROFILE.inject(scn).protocols(httpProtocol)
+        )); // Adds any throttling and the maximum duration the profile needs
+    }
+
+    @Override
+    public void after() {
+        System.out.println(TokenCache.shared().report());
+        System.out.println(FailureLogAppender.report()); // Failed requests sampled into target/failures
+        System.out.println(CLIENT_CACHE.report());
+    }
+}